@@ -17,12 +17,12 @@
  */
 package com.slytechs.jnet.jnetruntime.hash;
 
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
 import java.nio.ByteBuffer;
 import java.util.zip.CRC32;
 import java.util.zip.Checksum;
 
-import com.slytechs.jnet.jnetruntime.internal.ArrayUtils;
-
 /**
  * Utility class and a collection of different kinds of checksum generation
  * methods.
@@ -35,7 +35,9 @@ public class Checksums {
 
 	/**
 	 * Implements the IP Checksum 16 algorithm, for calculating the complement of 16
-	 * bit checksum.
+	 * bit checksum. This is the Internet checksum, see {@link InternetChecksum},
+	 * as a streaming {@link Checksum}. Data may be supplied in parts of any length,
+	 * an odd part's last byte is paired with the first byte of the next part.
 	 *
 	 * @author Sly Technologies Inc
 	 * @author repos@slytechs.com
@@ -43,9 +45,12 @@ public class Checksums {
 	 */
 	public static class CRC16 implements Checksum {
 
-		/** The value. */
+		/** The partial sum. */
 		private long value;
 
+		/** True if an odd number of bytes was summed, the next byte is a low byte. */
+		private boolean odd;
+
 		/**
 		 * Instantiates a new crc16.
 		 */
@@ -53,14 +58,15 @@ public class Checksums {
 		}
 
 		/**
-		 * Update.
+		 * Updates the checksum with a single byte.
 		 *
-		 * @param b the b
+		 * @param b the byte, in the low 8 bits
 		 * @see java.util.zip.Checksum#update(int)
 		 */
 		@Override
 		public void update(int b) {
-			value += b;
+			value = InternetChecksum.fold(value) + (odd ? (b & 0xFF) : (b & 0xFF) << 8);
+			odd = !odd;
 		}
 
 		/**
@@ -73,11 +79,41 @@ public class Checksums {
 		 */
 		@Override
 		public void update(byte[] b, int off, int len) {
-			for (int i = 0; i < len; i += 2) {
-				int v = Short.toUnsignedInt(ArrayUtils.getShort(b, off + i, true));
+			update(MemorySegment.ofArray(b), off, len);
+		}
+
+		/**
+		 * Updates the checksum with the bytes between the buffer's position and
+		 * limit, advancing the position to the limit.
+		 *
+		 * @param buffer the buffer
+		 * @see java.util.zip.Checksum#update(java.nio.ByteBuffer)
+		 */
+		@Override
+		public void update(ByteBuffer buffer) {
+			update(MemorySegment.ofBuffer(buffer), 0, buffer.remaining());
+			buffer.position(buffer.limit());
+		}
 
-				value += v;
+		/**
+		 * Updates the checksum with the bytes within a memory segment.
+		 *
+		 * @param segment the segment
+		 * @param offset  the offset
+		 * @param length  the length
+		 */
+		public void update(MemorySegment segment, long offset, long length) {
+			if (length == 0)
+				return;
+
+			if (odd) {
+				update(segment.get(ValueLayout.JAVA_BYTE, offset));
+				offset++;
+				length--;
 			}
+
+			value = InternetChecksum.sum(value, segment, offset, length);
+			odd = (length & 1) != 0;
 		}
 
 		/**
@@ -88,8 +124,7 @@ public class Checksums {
 		 */
 		@Override
 		public long getValue() {
-			value = ((value & 0xFFFF) + (value >> 16) & 0xFFFF);
-			return Short.toUnsignedLong((short) ~value);
+			return InternetChecksum.complement(value);
 		}
 
 		/**
@@ -100,10 +135,20 @@ public class Checksums {
 		@Override
 		public void reset() {
 			value = 0;
+			odd = false;
 		}
 
 	}
 
+	/** Size of the per thread scratch array, in bytes. */
+	private static final int SCRATCH_SIZE = 1024;
+
+	/** Per thread CRC-32 instance. */
+	private static final ThreadLocal<CRC32> CRC = ThreadLocal.withInitial(CRC32::new);
+
+	/** Per thread scratch array for segment data. */
+	private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[SCRATCH_SIZE]);
+
 	/**
 	 * Instantiates a new checksum utils.
 	 */
@@ -111,29 +156,36 @@ public class Checksums {
 	}
 
 	/**
-	 * Crc 16.
+	 * Internet checksum of an array.
 	 *
 	 * @param bytes the bytes
 	 * @return the int
 	 */
 	public static int crc16(byte[] bytes) {
-		Checksum checksum = new CRC16();
-		checksum.update(bytes, 0, bytes.length);
-
-		return (int) checksum.getValue();
+		return InternetChecksum.checksum(bytes, 0, bytes.length);
 	}
 
 	/**
-	 * Crc 16.
+	 * Internet checksum of the bytes between the buffer's position and limit. The
+	 * buffer's position is not modified.
 	 *
 	 * @param bytes the bytes
 	 * @return the int
 	 */
 	public static int crc16(ByteBuffer bytes) {
-		Checksum checksum = new CRC16();
-		checksum.update(bytes);
+		return InternetChecksum.checksum(bytes);
+	}
 
-		return (int) checksum.getValue();
+	/**
+	 * Internet checksum of the bytes within a memory segment.
+	 *
+	 * @param segment the segment
+	 * @param offset  the offset
+	 * @param length  the length
+	 * @return the int
+	 */
+	public static int crc16(MemorySegment segment, long offset, long length) {
+		return InternetChecksum.checksum(segment, offset, length);
 	}
 
 	/**
@@ -143,22 +195,54 @@ public class Checksums {
 	 * @return the long
 	 */
 	public static long crc32(byte[] bytes) {
-		Checksum checksum = new CRC32();
-		checksum.update(bytes, 0, bytes.length);
+		CRC32 crc = CRC.get();
+		crc.reset();
+		crc.update(bytes, 0, bytes.length);
 
-		return checksum.getValue();
+		return crc.getValue();
 	}
 
 	/**
-	 * Crc 32.
+	 * CRC-32 of the bytes between the buffer's position and limit. The buffer's
+	 * position is not modified.
 	 *
 	 * @param bytes the bytes
 	 * @return the long
 	 */
 	public static long crc32(ByteBuffer bytes) {
-		Checksum checksum = new CRC32();
-		checksum.update(bytes);
+		CRC32 crc = CRC.get();
+		crc.reset();
+
+		int position = bytes.position();
+		crc.update(bytes);
+		bytes.position(position);
+
+		return crc.getValue();
+	}
+
+	/**
+	 * CRC-32 of the bytes within a memory segment. The bytes are copied in chunks
+	 * through a per thread scratch array, so any kind of heap or native segment
+	 * and ranges longer than 2GB are supported without allocating.
+	 *
+	 * @param segment the segment
+	 * @param offset  the offset
+	 * @param length  the length
+	 * @return the long
+	 */
+	public static long crc32(MemorySegment segment, long offset, long length) {
+		CRC32 crc = CRC.get();
+		byte[] scratch = SCRATCH.get();
+		crc.reset();
+
+		for (long done = 0; done < length;) {
+			int chunk = (int) Math.min(SCRATCH_SIZE, length - done);
+
+			MemorySegment.copy(segment, ValueLayout.JAVA_BYTE, offset + done, scratch, 0, chunk);
+			crc.update(scratch, 0, chunk);
+			done += chunk;
+		}
 
-		return checksum.getValue();
+		return crc.getValue();
 	}
 }
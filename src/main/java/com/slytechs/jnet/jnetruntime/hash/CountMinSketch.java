@@ -0,0 +1,475 @@
+/*
+ * Sly Technologies Free License
+ *
+ * Copyright 2024 Sly Technologies Inc.
+ *
+ * Licensed under the Sly Technologies Free License (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.slytechs.com/free-license-text
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.slytechs.jnet.jnetruntime.hash;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import com.slytechs.jnet.jnetruntime.hash.HashTable.HashAlgorithm;
+
+/**
+ * A Count-Min sketch, estimating the frequency of keys in a stream using a
+ * fixed number of counters, with an optional list of the most frequent keys.
+ * <p>
+ * Each key increments one counter in each of {@code depth} rows of
+ * {@code width} counters, and its frequency is estimated by the smallest of
+ * them, which is never less than the true frequency. Updates are conservative,
+ * only raising the counters which are below the new estimate, which reduces
+ * the overestimation caused by colliding keys. The row counters are selected
+ * from the 2 halves of the key's 64-bit hashcode by double hashing, so the key
+ * is hashed only once.
+ * </p>
+ * <p>
+ * When created with a top K capacity, the keys with the highest estimates are
+ * also tracked in a min-heap, with a copy of each key, for top talker reports.
+ * A key only needs to be copied when it enters the top K.
+ * </p>
+ * <p>
+ * A sketch is not thread safe. Each thread or core updates its own sketch,
+ * and at the end of each interval the sketches are combined with
+ * {@link #merge(CountMinSketch)}, which adds the counters together.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+public final class CountMinSketch {
+
+	/**
+	 * Creates a sketch whose estimates exceed the true count by at most
+	 * {@code epsilon} times the total count, with probability
+	 * {@code 1 - delta}.
+	 *
+	 * @param epsilon the relative error, between 0 and 1
+	 * @param delta   the probability of exceeding the error, between 0 and 1
+	 * @return the count min sketch
+	 */
+	public static CountMinSketch forError(double epsilon, double delta) {
+		return forError(epsilon, delta, 0);
+	}
+
+	/**
+	 * Creates a sketch whose estimates exceed the true count by at most
+	 * {@code epsilon} times the total count, with probability
+	 * {@code 1 - delta}, tracking the most frequent keys.
+	 *
+	 * @param epsilon the relative error, between 0 and 1
+	 * @param delta   the probability of exceeding the error, between 0 and 1
+	 * @param topK    the number of most frequent keys to track, or 0
+	 * @return the count min sketch
+	 */
+	public static CountMinSketch forError(double epsilon, double delta, int topK) {
+		if (!(epsilon > 0 && epsilon < 1))
+			throw new IllegalArgumentException("invalid epsilon [%f]".formatted(epsilon));
+
+		if (!(delta > 0 && delta < 1))
+			throw new IllegalArgumentException("invalid delta [%f]".formatted(delta));
+
+		int width = (int) Math.ceil(Math.E / epsilon);
+		int depth = (int) Math.ceil(Math.log(1 / delta));
+
+		return new CountMinSketch(width, Math.max(1, depth), topK);
+	}
+
+	/** The counters, row by row. */
+	private final long[] counters;
+
+	/** The number of counters per row. */
+	private final int width;
+
+	/** The number of rows. */
+	private final int depth;
+
+	/** The most frequent keys, or null. */
+	private final TopKHeap topK;
+
+	/** The sum of all counts added. */
+	private long totalCount;
+
+	/** The hash algorithm. */
+	private HashAlgorithm hashAlgorithm = HashAlgorithms.xxHash64();
+
+	/**
+	 * Instantiates a new count min sketch.
+	 *
+	 * @param width the number of counters per row
+	 * @param depth the number of rows
+	 */
+	public CountMinSketch(int width, int depth) {
+		this(width, depth, 0);
+	}
+
+	/**
+	 * Instantiates a new count min sketch tracking the most frequent keys.
+	 *
+	 * @param width the number of counters per row
+	 * @param depth the number of rows
+	 * @param topK  the number of most frequent keys to track, or 0
+	 */
+	public CountMinSketch(int width, int depth, int topK) {
+		if (width < 1)
+			throw new IllegalArgumentException("invalid width [%d]".formatted(width));
+
+		if (depth < 1 || (long) width * depth > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("invalid depth [%d]".formatted(depth));
+
+		if (topK < 0)
+			throw new IllegalArgumentException("invalid top K [%d]".formatted(topK));
+
+		this.width = width;
+		this.depth = depth;
+		this.counters = new long[width * depth];
+		this.topK = (topK == 0) ? null : new TopKHeap(topK);
+	}
+
+	/**
+	 * Adds one occurrence of a key.
+	 *
+	 * @param key the key
+	 * @return the key's new estimated count
+	 */
+	public long add(ByteBuffer key) {
+		return add(key, 1);
+	}
+
+	/**
+	 * Adds occurrences of a key, such as a packet's byte count.
+	 *
+	 * @param key   the key
+	 * @param count the number of occurrences
+	 * @return the key's new estimated count
+	 */
+	public long add(ByteBuffer key, long count) {
+		long hashcode = hashAlgorithm.calculateHashcode(key);
+		long estimate = increment(hashcode, count);
+
+		if (topK != null && isTopKCandidate(hashcode, estimate))
+			topK.offer(hashcode, MemorySegment.ofBuffer(key), 0, key.remaining(), estimate, 0);
+
+		return estimate;
+	}
+
+	/**
+	 * Adds occurrences of a key.
+	 *
+	 * @param key    the key
+	 * @param offset the key offset
+	 * @param length the key length
+	 * @param count  the number of occurrences
+	 * @return the key's new estimated count
+	 */
+	public long add(byte[] key, int offset, int length, long count) {
+		long hashcode = hashAlgorithm.calculateHashcode(key, offset, length);
+		long estimate = increment(hashcode, count);
+
+		if (topK != null && isTopKCandidate(hashcode, estimate))
+			topK.offer(hashcode, MemorySegment.ofArray(key), offset, length, estimate, 0);
+
+		return estimate;
+	}
+
+	/**
+	 * Adds one occurrence of a key by its hashcode. Top K keys added by hashcode
+	 * are reported without their key.
+	 *
+	 * @param hashcode the hashcode
+	 * @return the key's new estimated count
+	 */
+	public long add(long hashcode) {
+		return add(hashcode, 1);
+	}
+
+	/**
+	 * Adds occurrences of a key by its hashcode.
+	 *
+	 * @param hashcode the hashcode
+	 * @param count    the number of occurrences
+	 * @return the key's new estimated count
+	 */
+	public long add(long hashcode, long count) {
+		long estimate = increment(hashcode, count);
+
+		if (topK != null && isTopKCandidate(hashcode, estimate))
+			topK.offer(hashcode, null, 0, 0, estimate, 0);
+
+		return estimate;
+	}
+
+	/**
+	 * Adds occurrences of a key.
+	 *
+	 * @param key    the key
+	 * @param offset the key offset
+	 * @param length the key length
+	 * @param count  the number of occurrences
+	 * @return the key's new estimated count
+	 */
+	public long add(MemorySegment key, long offset, int length, long count) {
+		long hashcode = hashAlgorithm.calculateHashcode(key, offset, length);
+		long estimate = increment(hashcode, count);
+
+		if (topK != null && isTopKCandidate(hashcode, estimate))
+			topK.offer(hashcode, key, offset, length, estimate, 0);
+
+		return estimate;
+	}
+
+	/**
+	 * Resets all counters and top K keys, for example at the start of an
+	 * interval.
+	 */
+	public void clear() {
+		Arrays.fill(counters, 0);
+		totalCount = 0;
+
+		if (topK != null)
+			topK.clear();
+	}
+
+	/**
+	 * Index of a key's counter in a row. The row hashes are derived from the 2
+	 * halves of the hashcode, and scaled to the width with a multiply and shift.
+	 *
+	 * @param hashcode the hashcode
+	 * @param row      the row
+	 * @return the counter index
+	 */
+	private int counterIndex(long hashcode, int row) {
+		int hash = (int) hashcode + row * (int) (hashcode >>> 32);
+
+		return row * width + (int) (((hash & 0xFFFFFFFFL) * width) >>> 32);
+	}
+
+	/**
+	 * Gets the number of rows.
+	 *
+	 * @return the depth
+	 */
+	public int depth() {
+		return depth;
+	}
+
+	/**
+	 * Upper bound of the overestimation of any key's count, which holds with the
+	 * probability given when the sketch was created.
+	 *
+	 * @return the error bound
+	 */
+	public long errorBound() {
+		return (long) Math.ceil(Math.E / width * totalCount);
+	}
+
+	/**
+	 * Estimates a key's count.
+	 *
+	 * @param key the key
+	 * @return the estimated count, never less than the true count
+	 */
+	public long estimate(ByteBuffer key) {
+		return estimate(hashAlgorithm.calculateHashcode(key));
+	}
+
+	/**
+	 * Estimates a key's count by its hashcode.
+	 *
+	 * @param hashcode the hashcode
+	 * @return the estimated count, never less than the true count
+	 */
+	public long estimate(long hashcode) {
+		long min = Long.MAX_VALUE;
+
+		for (int row = 0; row < depth; row++)
+			min = Math.min(min, counters[counterIndex(hashcode, row)]);
+
+		return min;
+	}
+
+	/**
+	 * Hash algorithm.
+	 *
+	 * @return the hash algorithm
+	 */
+	public HashAlgorithm hashAlgorithm() {
+		return hashAlgorithm;
+	}
+
+	/**
+	 * Adds to a key's counters using conservative update, raising each counter
+	 * only as far as the new estimate.
+	 *
+	 * @param hashcode the hashcode
+	 * @param count    the number of occurrences
+	 * @return the new estimate
+	 */
+	private long increment(long hashcode, long count) {
+		if (count < 0)
+			throw new IllegalArgumentException("negative count [%d]".formatted(count));
+
+		long estimate = estimate(hashcode) + count;
+
+		for (int row = 0; row < depth; row++) {
+			int i = counterIndex(hashcode, row);
+
+			if (counters[i] < estimate)
+				counters[i] = estimate;
+		}
+
+		totalCount += count;
+
+		return estimate;
+	}
+
+	/**
+	 * Updates a key already in the top K, or checks if a new key's estimate
+	 * qualifies it for the top K.
+	 *
+	 * @param hashcode the hashcode
+	 * @param estimate the key's estimate
+	 * @return true, if the key should be offered to the top K
+	 */
+	private boolean isTopKCandidate(long hashcode, long estimate) {
+		int slot = topK.find(hashcode);
+		if (slot != -1) {
+			topK.increase(slot, estimate);
+
+			return false;
+		}
+
+		return !topK.isFull() || estimate > topK.minCount();
+	}
+
+	/**
+	 * Adds another sketch's counts into this sketch. The sketches must have the
+	 * same dimensions and equal hash algorithms, the built in algorithms are
+	 * equal when of the same kind and seed. The merged estimates are never less
+	 * than the true counts of the combined streams, and the top K keys of both
+	 * sketches are ranked again by their merged estimates.
+	 *
+	 * @param other the other sketch
+	 * @return this sketch
+	 */
+	public CountMinSketch merge(CountMinSketch other) {
+		if (other.width != width || other.depth != depth)
+			throw new IllegalArgumentException("sketch dimensions differ [%dx%d]"
+					.formatted(other.width, other.depth));
+
+		if (!hashAlgorithm.equals(other.hashAlgorithm))
+			throw new IllegalArgumentException("hash algorithm differs [%s]".formatted(other.hashAlgorithm));
+
+		for (int i = 0; i < counters.length; i++)
+			counters[i] += other.counters[i];
+
+		totalCount += other.totalCount;
+
+		if (topK != null)
+			mergeTopK(other.topK);
+
+		return this;
+	}
+
+	/**
+	 * Ranks the union of this and another sketch's top K keys by their merged
+	 * estimates.
+	 *
+	 * @param other the other sketch's top K, or null
+	 */
+	private void mergeTopK(TopKHeap other) {
+		int count = topK.size() + ((other == null) ? 0 : other.size());
+		long[] hashcodes = new long[count];
+		byte[][] keys = new byte[count][];
+
+		int n = 0;
+		for (int i = 0; i < topK.size(); i++, n++) {
+			int slot = topK.slotAt(i);
+			hashcodes[n] = topK.hashcode(slot);
+			keys[n] = topK.key(slot);
+		}
+
+		for (int i = 0; other != null && i < other.size(); i++, n++) {
+			int slot = other.slotAt(i);
+			hashcodes[n] = other.hashcode(slot);
+			keys[n] = other.key(slot);
+		}
+
+		topK.clear();
+
+		for (int i = 0; i < count; i++) {
+			long estimate = estimate(hashcodes[i]);
+
+			if (topK.find(hashcodes[i]) == -1 && (!topK.isFull() || estimate > topK.minCount()))
+				topK.offer(hashcodes[i], (keys[i] == null) ? null : MemorySegment.ofArray(keys[i]), 0,
+						(keys[i] == null) ? 0 : keys[i].length, estimate, 0);
+		}
+	}
+
+	/**
+	 * Sets the hash algorithm. Must be set before any keys are added.
+	 *
+	 * @param newAlgorithm the new hash algorithm
+	 * @return this sketch
+	 */
+	public CountMinSketch setHashAlgorithm(HashAlgorithm newAlgorithm) {
+		this.hashAlgorithm = Objects.requireNonNull(newAlgorithm, "newAlgorithm");
+
+		return this;
+	}
+
+	/**
+	 * The most frequent keys, in decreasing order of estimated count. Their
+	 * errors are reported as 0, the sketch wide {@link #errorBound()} applies to
+	 * each of them.
+	 *
+	 * @return the top K keys, empty if the sketch does not track them
+	 */
+	public List<HeavyHitter> topK() {
+		return (topK == null) ? List.of() : topK.toList();
+	}
+
+	/**
+	 * Gets the sum of all counts added.
+	 *
+	 * @return the total count
+	 */
+	public long totalCount() {
+		return totalCount;
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "CountMinSketch [width=%d, depth=%d, total=%d, topK=%d]"
+				.formatted(width, depth, totalCount, (topK == null) ? 0 : topK.capacity());
+	}
+
+	/**
+	 * Gets the number of counters per row.
+	 *
+	 * @return the width
+	 */
+	public int width() {
+		return width;
+	}
+}
@@ -0,0 +1,276 @@
+/*
+ * Sly Technologies Free License
+ *
+ * Copyright 2024 Sly Technologies Inc.
+ *
+ * Licensed under the Sly Technologies Free License (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.slytechs.com/free-license-text
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.slytechs.jnet.jnetruntime.hash;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.Objects;
+
+import com.slytechs.jnet.jnetruntime.hash.HashTable.HashAlgorithm;
+
+/**
+ * A counting Bloom filter, which supports removing keys by replacing each bit
+ * of a Bloom filter with a 4-bit counter.
+ * <p>
+ * Like the {@link BlockedBloomFilter}, all of a key's counters fall within a
+ * single 64 byte block of 128 counters, so every operation costs a single cache
+ * miss. Adding a key increments its counters and removing it decrements them.
+ * A counter which reaches 15 saturates and is never decremented again, which
+ * errs on the side of false positives rather than false negatives. The filter
+ * uses 4 times the memory of a Bloom filter with the same false positive rate.
+ * </p>
+ * <p>
+ * The filter is stored in a single off-heap allocation, aligned to the block
+ * size.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+public final class CountingBloomFilter implements MembershipFilter.Deletable {
+
+	/** The Constant BLOCK_SIZE. */
+	public static final int BLOCK_SIZE = 64;
+
+	/** The number of 4-bit counters per block. */
+	private static final int BLOCK_COUNTERS = BLOCK_SIZE * 2;
+
+	/** The saturated counter value. */
+	private static final int MAX_COUNT = 15;
+
+	/** The maximum number of hash functions. */
+	public static final int MAX_HASH_COUNT = 16;
+
+	/** Extra bits over a standard Bloom filter, for the uneven block load. */
+	private static final double BLOCKING_OVERHEAD = 1.25;
+
+	/** Remixes the hashcode before deriving bit positions. */
+	private static final long C1 = 0x9E3779B97F4A7C15L;
+
+	/** Steps from one bit position to the next. */
+	private static final long C2 = 0xC2B2AE3D27D4EB4FL;
+
+	/**
+	 * Creates a filter sized for a number of keys and a target false positive
+	 * rate.
+	 *
+	 * @param expectedKeys      the expected number of keys
+	 * @param falsePositiveRate the target false positive rate, between 0 and 1
+	 * @return the counting bloom filter
+	 */
+	public static CountingBloomFilter forExpectedKeys(long expectedKeys, double falsePositiveRate) {
+		if (expectedKeys <= 0)
+			throw new IllegalArgumentException("invalid expected keys [%d]".formatted(expectedKeys));
+
+		if (!(falsePositiveRate > 0 && falsePositiveRate < 1))
+			throw new IllegalArgumentException("invalid false positive rate [%f]".formatted(falsePositiveRate));
+
+		double bitsPerKey = -Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)) * BLOCKING_OVERHEAD;
+		long blocks = Math.max(1, (long) Math.ceil(expectedKeys * bitsPerKey / BLOCK_COUNTERS));
+		int hashCount = (int) Math.round(-Math.log(falsePositiveRate) / Math.log(2));
+
+		return new CountingBloomFilter((int) Math.min(blocks, 1 << 30),
+				Math.max(1, Math.min(hashCount, MAX_HASH_COUNT)));
+	}
+
+	/** The blocks. */
+	private final MemorySegment blocks;
+
+	/** The number of blocks. */
+	private final int blockCount;
+
+	/** The number of bits set per key. */
+	private final int hashCount;
+
+	/** The hash algorithm. */
+	private HashAlgorithm hashAlgorithm = HashAlgorithms.xxHash64();
+
+	/**
+	 * Instantiates a new counting bloom filter.
+	 *
+	 * @param blockCount the number of 64 byte blocks
+	 * @param hashCount  the number of counters incremented per key, 1 to 16
+	 */
+	public CountingBloomFilter(int blockCount, int hashCount) {
+		if (blockCount < 1)
+			throw new IllegalArgumentException("invalid block count [%d]".formatted(blockCount));
+
+		if (hashCount < 1 || hashCount > MAX_HASH_COUNT)
+			throw new IllegalArgumentException("invalid hash count [%d]".formatted(hashCount));
+
+		this.blockCount = blockCount;
+		this.hashCount = hashCount;
+		this.blocks = Arena.ofAuto().allocate((long) blockCount * BLOCK_SIZE, BLOCK_SIZE);
+	}
+
+	/**
+	 * Adds the.
+	 *
+	 * @param hashcode the hashcode
+	 * @return true, if successful
+	 * @see com.slytechs.jnet.jnetruntime.hash.MembershipFilter#add(long)
+	 */
+	@Override
+	public boolean add(long hashcode) {
+		long block = blockOffset(hashcode);
+		long x = (hashcode * C1) | 1; // Odd, never multiplied down to 0
+
+		for (int i = 0; i < hashCount; i++, x *= C2) {
+			int counter = (int) (x >>> 57); // Top 7 bits, 0 to 127
+			long offset = block + ((counter >>> 4) << 3);
+			int shift = (counter & 15) << 2;
+			long word = blocks.get(ValueLayout.JAVA_LONG, offset);
+
+			if (((word >>> shift) & MAX_COUNT) != MAX_COUNT)
+				blocks.set(ValueLayout.JAVA_LONG, offset, word + (1L << shift));
+		}
+
+		return true;
+	}
+
+	/**
+	 * Byte offset of a hashcode's block, selected by the hashcode's high bits.
+	 * The high 32 bits are scaled to the block count with a multiply and shift
+	 * rather than a mask, so the block count does not need to be a power of 2.
+	 *
+	 * @param hashcode the hashcode
+	 * @return the block offset
+	 */
+	private long blockOffset(long hashcode) {
+		return (((hashcode >>> 32) * blockCount) >>> 32) * BLOCK_SIZE;
+	}
+
+	/**
+	 * Byte size.
+	 *
+	 * @return the long
+	 * @see com.slytechs.jnet.jnetruntime.hash.MembershipFilter#byteSize()
+	 */
+	@Override
+	public long byteSize() {
+		return blocks.byteSize();
+	}
+
+	/**
+	 * Clear.
+	 *
+	 * @see com.slytechs.jnet.jnetruntime.hash.MembershipFilter#clear()
+	 */
+	@Override
+	public void clear() {
+		blocks.fill((byte) 0);
+	}
+
+	/**
+	 * Hash algorithm.
+	 *
+	 * @return the hash algorithm
+	 * @see com.slytechs.jnet.jnetruntime.hash.MembershipFilter#hashAlgorithm()
+	 */
+	@Override
+	public HashAlgorithm hashAlgorithm() {
+		return hashAlgorithm;
+	}
+
+	/**
+	 * Gets the number of counters incremented per key.
+	 *
+	 * @return the hash count
+	 */
+	public int hashCount() {
+		return hashCount;
+	}
+
+	/**
+	 * Might contain.
+	 *
+	 * @param hashcode the hashcode
+	 * @return true, if successful
+	 * @see com.slytechs.jnet.jnetruntime.hash.MembershipFilter#mightContain(long)
+	 */
+	@Override
+	public boolean mightContain(long hashcode) {
+		long block = blockOffset(hashcode);
+		long x = (hashcode * C1) | 1;
+
+		for (int i = 0; i < hashCount; i++, x *= C2) {
+			int counter = (int) (x >>> 57);
+			long word = blocks.get(ValueLayout.JAVA_LONG, block + ((counter >>> 4) << 3));
+
+			if (((word >>> ((counter & 15) << 2)) & MAX_COUNT) == 0)
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Removes a key by decrementing its counters, unless the key is definitely
+	 * not present. Saturated counters are left as is.
+	 *
+	 * @param hashcode the hashcode
+	 * @return true, if the key might have been present and was removed
+	 * @see com.slytechs.jnet.jnetruntime.hash.MembershipFilter.Deletable#remove(long)
+	 */
+	@Override
+	public boolean remove(long hashcode) {
+		if (!mightContain(hashcode))
+			return false;
+
+		long block = blockOffset(hashcode);
+		long x = (hashcode * C1) | 1;
+
+		for (int i = 0; i < hashCount; i++, x *= C2) {
+			int counter = (int) (x >>> 57);
+			long offset = block + ((counter >>> 4) << 3);
+			int shift = (counter & 15) << 2;
+			long word = blocks.get(ValueLayout.JAVA_LONG, offset);
+			long count = (word >>> shift) & MAX_COUNT;
+
+			if (count != 0 && count != MAX_COUNT) // Same counter may repeat for a key
+				blocks.set(ValueLayout.JAVA_LONG, offset, word - (1L << shift));
+		}
+
+		return true;
+	}
+
+	/**
+	 * Sets the hash algorithm. Must be set before any keys are added.
+	 *
+	 * @param newAlgorithm the new hash algorithm
+	 * @return this filter
+	 */
+	public CountingBloomFilter setHashAlgorithm(HashAlgorithm newAlgorithm) {
+		this.hashAlgorithm = Objects.requireNonNull(newAlgorithm, "newAlgorithm");
+
+		return this;
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "CountingBloomFilter [blocks=%d, hashCount=%d, bytes=%d]"
+				.formatted(blockCount, hashCount, byteSize());
+	}
+}
@@ -0,0 +1,415 @@
+/*
+ * Sly Technologies Free License
+ *
+ * Copyright 2024 Sly Technologies Inc.
+ *
+ * Licensed under the Sly Technologies Free License (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.slytechs.com/free-license-text
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.slytechs.jnet.jnetruntime.hash;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.Objects;
+
+import com.slytechs.jnet.jnetruntime.hash.HashTable.HashAlgorithm;
+
+/**
+ * A cuckoo filter, storing a 16-bit fingerprint of each key in one of 2
+ * candidate buckets of 4 fingerprints each.
+ * <p>
+ * The fingerprint and alternate bucket are calculated the same way as the
+ * signature and alternate bucket of a {@link CuckooHashTable}, so a
+ * fingerprint can be moved to its other bucket without knowing the key. When
+ * both buckets are full, a fingerprint is kicked out to its alternate bucket,
+ * possibly displacing another, up to a maximum number of kicks. Unlike a
+ * Bloom filter, keys can be removed, and the filter reaches a load factor of
+ * about 95% with a false positive rate of about 8 / 65536, or 0.012%.
+ * </p>
+ * <p>
+ * Each bucket is a single 64-bit word in an off-heap allocation, and is
+ * searched for a fingerprint with a few SWAR instructions, without a loop.
+ * The same key may be added more than once, occupying an entry each time, and
+ * must then be removed as many times.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+public final class CuckooFilter implements MembershipFilter.Deletable {
+
+	/** The Constant ENTRIES_PER_BUCKET. */
+	public static final int ENTRIES_PER_BUCKET = 4;
+
+	/** The Constant DEFAULT_MAX_KICKS. */
+	public static final int DEFAULT_MAX_KICKS = 500;
+
+	/** The target load factor used to size the filter. */
+	private static final double TARGET_LOAD_FACTOR = 0.95;
+
+	/** The lowest bit of every 16-bit lane. */
+	private static final long LANES_LOW = 0x0001000100010001L;
+
+	/** The highest bit of every 16-bit lane. */
+	private static final long LANES_HIGH = 0x8000800080008000L;
+
+	/**
+	 * Creates a filter sized for a number of keys.
+	 *
+	 * @param expectedKeys the expected number of keys
+	 * @return the cuckoo filter
+	 */
+	public static CuckooFilter forExpectedKeys(long expectedKeys) {
+		if (expectedKeys <= 0)
+			throw new IllegalArgumentException("invalid expected keys [%d]".formatted(expectedKeys));
+
+		long buckets = Math.max(2, (long) Math.ceil(expectedKeys / (ENTRIES_PER_BUCKET * TARGET_LOAD_FACTOR)));
+
+		return new CuckooFilter((int) Math.min(Long.highestOneBit(buckets * 2 - 1), 1 << 30));
+	}
+
+	/**
+	 * Flags the lanes of a bucket which are zero. The lowest flagged lane is
+	 * always exact, higher lanes may be flagged by a borrow.
+	 *
+	 * @param word the bucket word
+	 * @return the high bit of each zero lane
+	 */
+	private static long zeroLanes(long word) {
+		return (word - LANES_LOW) & ~word & LANES_HIGH;
+	}
+
+	/** The buckets, 1 word each. */
+	private final MemorySegment buckets;
+
+	/** The bucket index mask. */
+	private final int bucketMask;
+
+	/** The max kicks. */
+	private int maxKicks = DEFAULT_MAX_KICKS;
+
+	/** Fingerprint kicked out of a full filter, or 0 if none. */
+	private int victimFingerprint;
+
+	/** One of the victim fingerprint's 2 candidate buckets. */
+	private int victimBucket;
+
+	/** The number of stored fingerprints. */
+	private long count;
+
+	/** Xorshift state choosing which fingerprint to kick out. */
+	private long random = 0x2545F4914F6CDD1DL;
+
+	/** The hash algorithm. */
+	private HashAlgorithm hashAlgorithm = HashAlgorithms.xxHash64();
+
+	/**
+	 * Instantiates a new cuckoo filter.
+	 *
+	 * @param bucketCount the number of buckets, a power of 2 of at least 2
+	 */
+	public CuckooFilter(int bucketCount) {
+		if (Integer.bitCount(bucketCount) != 1 || bucketCount < 2)
+			throw new IllegalArgumentException("bucket count not a power of 2 [%d]".formatted(bucketCount));
+
+		this.bucketMask = bucketCount - 1;
+		this.buckets = Arena.ofAuto().allocate((long) bucketCount * Long.BYTES, Long.BYTES);
+	}
+
+	/**
+	 * Adds a key's fingerprint to one of its buckets, kicking out other
+	 * fingerprints if both are full. If the maximum number of kicks is reached,
+	 * the last fingerprint kicked out is held aside and the filter is full.
+	 *
+	 * @param hashcode the hashcode
+	 * @return true, if added, false if the filter is full
+	 * @see com.slytechs.jnet.jnetruntime.hash.MembershipFilter#add(long)
+	 */
+	@Override
+	public boolean add(long hashcode) {
+		if (victimFingerprint != 0)
+			return false;
+
+		int fingerprint = fingerprintOf(hashcode);
+		int bucket1 = primaryBucketOf(hashcode);
+		int bucket2 = CuckooHashTable.alternateBucketOf(bucket1, fingerprint, bucketMask);
+
+		count++;
+
+		if (insert(bucket1, fingerprint) || insert(bucket2, fingerprint))
+			return true;
+
+		int bucket = ((nextRandom() & 1) == 0) ? bucket1 : bucket2;
+
+		for (int n = 0; n < maxKicks; n++) {
+			int shift = (int) (nextRandom() & 3) << 4;
+			long offset = (long) bucket << 3;
+			long word = buckets.get(ValueLayout.JAVA_LONG, offset);
+			int kicked = (int) (word >>> shift) & 0xFFFF;
+
+			buckets.set(ValueLayout.JAVA_LONG, offset, (word & ~(0xFFFFL << shift)) | ((long) fingerprint << shift));
+
+			fingerprint = kicked;
+			bucket = CuckooHashTable.alternateBucketOf(bucket, fingerprint, bucketMask);
+
+			if (insert(bucket, fingerprint))
+				return true;
+		}
+
+		this.victimFingerprint = fingerprint;
+		this.victimBucket = bucket;
+
+		return true;
+	}
+
+	/**
+	 * Byte size.
+	 *
+	 * @return the long
+	 * @see com.slytechs.jnet.jnetruntime.hash.MembershipFilter#byteSize()
+	 */
+	@Override
+	public long byteSize() {
+		return buckets.byteSize();
+	}
+
+	/**
+	 * Clear.
+	 *
+	 * @see com.slytechs.jnet.jnetruntime.hash.MembershipFilter#clear()
+	 */
+	@Override
+	public void clear() {
+		buckets.fill((byte) 0);
+		victimFingerprint = 0;
+		count = 0;
+	}
+
+	/**
+	 * Checks if a bucket holds a fingerprint.
+	 *
+	 * @param bucket      the bucket index
+	 * @param fingerprint the fingerprint
+	 * @return true, if found
+	 */
+	private boolean contains(int bucket, int fingerprint) {
+		long word = buckets.get(ValueLayout.JAVA_LONG, (long) bucket << 3);
+
+		return zeroLanes(word ^ (fingerprint * LANES_LOW)) != 0;
+	}
+
+	/**
+	 * Gets the number of stored fingerprints.
+	 *
+	 * @return the count
+	 */
+	public long count() {
+		return count;
+	}
+
+	/**
+	 * Fingerprint of a hashcode, the cuckoo hash table signature. Zero marks an
+	 * empty entry, so a zero signature is stored as 1.
+	 *
+	 * @param hashcode the hashcode
+	 * @return the fingerprint
+	 */
+	private static int fingerprintOf(long hashcode) {
+		int signature = CuckooHashTable.signatureOf(hashcode);
+
+		return (signature == 0) ? 1 : signature;
+	}
+
+	/**
+	 * Hash algorithm.
+	 *
+	 * @return the hash algorithm
+	 * @see com.slytechs.jnet.jnetruntime.hash.MembershipFilter#hashAlgorithm()
+	 */
+	@Override
+	public HashAlgorithm hashAlgorithm() {
+		return hashAlgorithm;
+	}
+
+	/**
+	 * Stores a fingerprint in a free entry of a bucket.
+	 *
+	 * @param bucket      the bucket index
+	 * @param fingerprint the fingerprint
+	 * @return true, if stored, false if the bucket is full
+	 */
+	private boolean insert(int bucket, int fingerprint) {
+		long offset = (long) bucket << 3;
+		long word = buckets.get(ValueLayout.JAVA_LONG, offset);
+		long free = zeroLanes(word);
+
+		if (free == 0)
+			return false;
+
+		int shift = Long.numberOfTrailingZeros(free) & ~15;
+		buckets.set(ValueLayout.JAVA_LONG, offset, word | ((long) fingerprint << shift));
+
+		return true;
+	}
+
+	/**
+	 * Load factor, the fraction of entries in use.
+	 *
+	 * @return the load factor
+	 */
+	public double loadFactor() {
+		return (double) count / ((bucketMask + 1L) * ENTRIES_PER_BUCKET);
+	}
+
+	/**
+	 * Might contain.
+	 *
+	 * @param hashcode the hashcode
+	 * @return true, if successful
+	 * @see com.slytechs.jnet.jnetruntime.hash.MembershipFilter#mightContain(long)
+	 */
+	@Override
+	public boolean mightContain(long hashcode) {
+		int fingerprint = fingerprintOf(hashcode);
+		int bucket1 = primaryBucketOf(hashcode);
+		int bucket2 = CuckooHashTable.alternateBucketOf(bucket1, fingerprint, bucketMask);
+
+		if (contains(bucket1, fingerprint) || contains(bucket2, fingerprint))
+			return true;
+
+		return (victimFingerprint == fingerprint)
+				&& (victimBucket == bucket1 || victimBucket == bucket2);
+	}
+
+	/**
+	 * Next xorshift random value.
+	 *
+	 * @return the random value
+	 */
+	private long nextRandom() {
+		random ^= random << 13;
+		random ^= random >>> 7;
+		random ^= random << 17;
+
+		return random;
+	}
+
+	/**
+	 * Primary bucket of a hashcode, taken from the high bits which do not
+	 * overlap the fingerprint bits.
+	 *
+	 * @param hashcode the hashcode
+	 * @return the bucket index
+	 */
+	private int primaryBucketOf(long hashcode) {
+		return (int) (hashcode >>> 32) & bucketMask;
+	}
+
+	/**
+	 * Removes one copy of a key's fingerprint. A fingerprint held aside by a full
+	 * filter is then given another chance to be stored.
+	 *
+	 * @param hashcode the hashcode
+	 * @return true, if found and removed
+	 * @see com.slytechs.jnet.jnetruntime.hash.MembershipFilter.Deletable#remove(long)
+	 */
+	@Override
+	public boolean remove(long hashcode) {
+		int fingerprint = fingerprintOf(hashcode);
+		int bucket1 = primaryBucketOf(hashcode);
+		int bucket2 = CuckooHashTable.alternateBucketOf(bucket1, fingerprint, bucketMask);
+
+		if (removeFrom(bucket1, fingerprint) || removeFrom(bucket2, fingerprint)) {
+			count--;
+
+			if (victimFingerprint != 0) {
+				int victim = victimFingerprint;
+				int alternate = CuckooHashTable.alternateBucketOf(victimBucket, victim, bucketMask);
+
+				if (insert(victimBucket, victim) || insert(alternate, victim))
+					victimFingerprint = 0;
+			}
+
+			return true;
+		}
+
+		if ((victimFingerprint == fingerprint) && (victimBucket == bucket1 || victimBucket == bucket2)) {
+			victimFingerprint = 0;
+			count--;
+
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Removes one copy of a fingerprint from a bucket.
+	 *
+	 * @param bucket      the bucket index
+	 * @param fingerprint the fingerprint
+	 * @return true, if found and removed
+	 */
+	private boolean removeFrom(int bucket, int fingerprint) {
+		long offset = (long) bucket << 3;
+		long word = buckets.get(ValueLayout.JAVA_LONG, offset);
+		long matches = zeroLanes(word ^ (fingerprint * LANES_LOW));
+
+		if (matches == 0)
+			return false;
+
+		int shift = Long.numberOfTrailingZeros(matches) & ~15;
+		buckets.set(ValueLayout.JAVA_LONG, offset, word & ~(0xFFFFL << shift));
+
+		return true;
+	}
+
+	/**
+	 * Sets the hash algorithm. Must be set before any keys are added.
+	 *
+	 * @param newAlgorithm the new hash algorithm
+	 * @return this filter
+	 */
+	public CuckooFilter setHashAlgorithm(HashAlgorithm newAlgorithm) {
+		this.hashAlgorithm = Objects.requireNonNull(newAlgorithm, "newAlgorithm");
+
+		return this;
+	}
+
+	/**
+	 * Sets the maximum number of fingerprints kicked out by a single add.
+	 *
+	 * @param newMaxKicks the new max kicks
+	 * @return this filter
+	 */
+	public CuckooFilter setMaxKicks(int newMaxKicks) {
+		if (newMaxKicks < 0)
+			throw new IllegalArgumentException("invalid max kicks [%d]".formatted(newMaxKicks));
+
+		this.maxKicks = newMaxKicks;
+
+		return this;
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "CuckooFilter [buckets=%d, count=%d, load=%.1f%%, bytes=%d]"
+				.formatted(bucketMask + 1, count, loadFactor() * 100, byteSize());
+	}
+}
@@ -17,9 +17,10 @@
  */
 package com.slytechs.jnet.jnetruntime.hash;
 
+import java.lang.foreign.MemorySegment;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.nio.ByteBuffer;
-import java.util.Arrays;
-import java.util.stream.IntStream;
 
 /**
  * Hash table based on Cuckoo hashing algorithm.
@@ -53,6 +54,26 @@ import java.util.stream.IntStream;
  * the algorithm requires a significant amount of memory overhead to maintain
  * the multiple hash tables and can be complex to implement.
  * </p>
+ * <p>
+ * Each bucket's 16-bit key signatures are packed next to each other in a
+ * single {@code short} array, along with an occupancy bitmask per bucket. A
+ * bucket scan compares all of the bucket's signatures at once, using the
+ * {@code jdk.incubator.vector} API when it is available at runtime or a scalar
+ * loop otherwise, producing a bitmask of candidate entries. Only the
+ * candidates, which are nearly always genuine matches, are dereferenced for a
+ * full key comparison.
+ * </p>
+ * <p>
+ * When concurrent readers are enabled, see
+ * {@link #enableConcurrentReaders(boolean)}, any number of threads may look up
+ * keys without locking while a single writer thread adds, removes and relocates
+ * entries. Each bucket has a sequence counter which the writer makes odd while
+ * it modifies the bucket, and even again once done. Readers retry a bucket scan
+ * if the counter was odd or changed during the scan, so they never act on a
+ * torn key or signature. A global sequence counter guards cuckoo path moves,
+ * during which an entry briefly resides in neither of the buckets a reader is
+ * scanning. Readers validate a miss against it.
+ * </p>
  *
  * @author Sly Technologies Inc
  * @author repos@slytechs.com
@@ -64,82 +85,43 @@ public final class CuckooHashTable<T> extends HashTable<T> {
 	public static final int DEFAULT_ENTRIES_PER_BUCKET_COUNT = 16;
 
 	/**
-	 * The Class Bucket.
+	 * The default maximum number of candidate entries examined by the
+	 * breadth-first displacement search, before an insertion is abandoned.
 	 */
-	private static class Bucket {
-
-		/** The bucket entries. */
-		private final BucketEntry[] bucketEntries;
-
-		/**
-		 * Instantiates a new bucket.
-		 *
-		 * @param indexCount  the index count
-		 * @param bucketIndex the bucket index
-		 * @param hashEntries the hash entries
-		 */
-		private Bucket(int indexCount, int bucketIndex, HashEntry<?>[] hashEntries) {
-			this.bucketEntries = new BucketEntry[indexCount];
-
-			int indexOffset = bucketIndex * indexCount;
-
-			IntStream
-					.range(0, indexCount)
-					.forEach(i -> bucketEntries[i] = new BucketEntry(indexOffset + i, hashEntries));
-		}
+	public static final int DEFAULT_MAX_KICKS = 512;
 
-		/**
-		 * To string.
-		 *
-		 * @return the string
-		 * @see java.lang.Object#toString()
-		 */
-		@Override
-		public String toString() {
-			return "Bucket [entries=" + Arrays.toString(bucketEntries) + "]";
-		}
+	/** Sequence counter array element access. */
+	private static final VarHandle VERSION = MethodHandles.arrayElementVarHandle(int[].class);
 
-	}
+	/** The maximum number of entries per bucket, limited by the occupancy mask. */
+	private static final int MAX_ENTRIES_PER_BUCKET_COUNT = 32;
 
 	/**
-	 * The Class BucketEntry.
+	 * Key signature of each bucket slot. Slot {@code i} of bucket {@code b} is at
+	 * {@code b * indexesPerBucket + i}.
 	 */
-	private static class BucketEntry {
+	private final short[] signatures;
 
-		/** The signature of a key. */
-		private int signature;
+	/** The hash table entry index owned by each bucket slot. */
+	private final int[] slotEntries;
 
-		/** The key. */
-		private final ByteBuffer key; // Shared reference with hash entry, for convenience
+	/** The bucket slot currently owning each hash table entry index. */
+	private final int[] entrySlots;
 
-		/** The index into the hash entry table. */
-		private final int index;
+	/** Bitmask of occupied slots within each bucket. */
+	private final int[] bucketOccupancy;
 
-		/**
-		 * Instantiates a new bucket entry.
-		 *
-		 * @param index   the index into the hash entry table
-		 * @param entries the entries
-		 */
-		BucketEntry(int index, HashEntry<?>[] entries) {
-			this.index = index;
-			this.key = entries[index].key();
-		}
+	/** Bitmask of slots within each bucket holding an entry outside its primary bucket. */
+	private final int[] bucketAlternate;
 
-		/**
-		 * To string.
-		 *
-		 * @return the string
-		 * @see java.lang.Object#toString()
-		 */
-		@Override
-		public String toString() {
-			return "BucketEntry [signature=" + signature + ", index=" + index + "]";
-		}
-	}
+	/** The number of entries residing in their alternative bucket. */
+	private int alternateCount;
 
-	/** The buckets. */
-	private final Bucket[] buckets;
+	/** The number of entries moved by displacement searches. */
+	private long kickCount;
+
+	/** The signature matcher used to scan buckets. */
+	private final SignatureMatcher signatureMatcher;
 
 	/** The bucket count. */
 	private final int bucketCount;
@@ -150,6 +132,36 @@ public final class CuckooHashTable<T> extends HashTable<T> {
 	/** The indexes per bucket. */
 	private final int indexesPerBucket;
 
+	/** Shift converting a bucket slot into its bucket index. */
+	private final int bucketShift;
+
+	/** Occupancy mask of a completely full bucket. */
+	private final int fullBucketMask;
+
+	/** The maximum number of entries examined by a displacement search. */
+	private int maxKicks;
+
+	/** Displacement search queue, bucket slot of each node. */
+	private int[] bfsSlot;
+
+	/** Displacement search queue, queue position of each node's parent. */
+	private int[] bfsParent;
+
+	/**
+	 * Sequence counter of each bucket, followed by the cuckoo path move counter,
+	 * or null when concurrent readers are not enabled.
+	 */
+	private int[] versions;
+
+	/** Eviction scratch space, the entries of both candidate buckets. */
+	private final int[] evictionCandidates;
+
+	/** Bulk lookup scratch space, the bucket index probed for each key. */
+	private int[] bulkBuckets = new int[0];
+
+	/** Bulk lookup scratch space, the signature hit mask for each key. */
+	private int[] bulkHits = new int[0];
+
 	/**
 	 * Instantiates a new cuckoo hash table.
 	 */
@@ -173,102 +185,518 @@ public final class CuckooHashTable<T> extends HashTable<T> {
 	 * @param indexesPerBucket the indexes per bucket
 	 */
 	public CuckooHashTable(int tableSize, int indexesPerBucket) {
-		super(tableSize);
+		this(tableSize, indexesPerBucket, MAX_KEY_SIZE_BYTES);
+	}
+
+	/**
+	 * Instantiates a new cuckoo hash table with a specific maximum key size.
+	 *
+	 * @param tableSize        the table size
+	 * @param indexesPerBucket the indexes per bucket, at most 32
+	 * @param keySizeBytes     the maximum key size in bytes
+	 */
+	public CuckooHashTable(int tableSize, int indexesPerBucket, int keySizeBytes) {
+		super(tableSize, keySizeBytes);
 
 		this.indexesPerBucket = indexesPerBucket;
 		assert Integer.bitCount(indexesPerBucket) == 1 : "indexes per bucket must be a power of 2";
 
+		if (indexesPerBucket > MAX_ENTRIES_PER_BUCKET_COUNT)
+			throw new IllegalArgumentException("too many indexes per bucket [%d > %d]"
+					.formatted(indexesPerBucket, MAX_ENTRIES_PER_BUCKET_COUNT));
+
 		this.bucketCount = tableSize / indexesPerBucket;
 		assert (bucketCount & 1) == 0 : ""
 				+ "table size not a power of 2 [%d]".formatted(bucketCount);
 
 		// Turn into bitmask since we're a power 2 size/count
 		this.bucketBitmask = bucketCount - 1;
+		this.bucketShift = Integer.numberOfTrailingZeros(indexesPerBucket);
+		this.fullBucketMask = (int) ((1L << indexesPerBucket) - 1);
+
+		this.signatures = new short[tableSize];
+		this.slotEntries = new int[tableSize];
+		this.entrySlots = new int[tableSize];
+		this.bucketOccupancy = new int[bucketCount];
+		this.bucketAlternate = new int[bucketCount];
+		this.signatureMatcher = SignatureMatcher.of(indexesPerBucket);
+		this.evictionCandidates = new int[indexesPerBucket * 2];
 
-		this.buckets = new Bucket[bucketCount];
+		/* Initially every bucket slot owns the hash entry with the same index */
+		for (int i = 0; i < tableSize; i++) {
+			slotEntries[i] = i;
+			entrySlots[i] = i;
+		}
 
-		IntStream
-				.range(0, bucketCount)
-				.forEach(i -> buckets[i] = new Bucket(indexesPerBucket, i, super.table));
+		setMaxKicks(DEFAULT_MAX_KICKS);
 	}
 
 	/**
 	 * Adds the.
 	 *
 	 * @param key      the key
+	 * @param offset   the offset
+	 * @param length   the length
 	 * @param data     the data
 	 * @param hashcode the hashcode
 	 * @return the int
 	 */
 	@Override
-	public int add(ByteBuffer key, T data, long hashcode) {
-		int index = lookup(key, hashcode);
+	public int add(MemorySegment key, long offset, int length, T data, long hashcode) {
+		int index = lookup(key, offset, length, hashcode);
 		if (index != -1)
 			return index;
 
-		index = getPrimaryBucketIndex(hashcode);
+		int signature = getShortSignature(hashcode);
+		int bucketIndex1 = getPrimaryBucketIndex(hashcode);
+		int bucketIndex2 = getAlternativeBucketIndex(bucketIndex1, signature);
+
+		int slot = findEmptyAndEvictIfNeccessary(bucketIndex1, bucketIndex2);
+		if (slot == -1 && isEvictionEnabled())
+			slot = evictVictim(bucketIndex1, bucketIndex2);
+
+		if (slot == -1)
+			return insertFailed(); // No more room in either bucket
+
+		int bucketIndex = slot >>> bucketShift;
+		beginWrite(bucketIndex);
 
-		BucketEntry empty = findEmptyAndEvictIfNeccessary(index);
-		if (empty == null)
-			return -1; // No more room in either bucket
+		try {
+			index = super.set(slotEntries[slot], key, offset, length, data);
+			if (index == -1)
+				return insertFailed(); // Key overflow slab is full
 
-		empty.signature = getShortSignature(hashcode);
-		super.set(empty.index, key, data);
+			signatures[slot] = (short) signature;
+			setSlotOccupied(slot, true);
 
-		return empty.index;
+			if (bucketIndex != bucketIndex1)
+				setSlotAlternate(slot, true);
+
+		} finally {
+			endWrite(bucketIndex); // Also on an invalid key, readers must not spin
+		}
+
+		return index;
 	}
 
 	/**
-	 * Find empty and evict if neccessary.
+	 * Find an empty bucket slot in either of the key's 2 buckets. If both buckets
+	 * are full, a displacement search is performed to make room.
 	 *
-	 * @param bucketIndex1 the bucket index 1
-	 * @return the bucket entry
+	 * @param bucketIndex1 the primary bucket index
+	 * @param bucketIndex2 the alternative bucket index
+	 * @return the empty bucket slot or -1 if no room could be made
 	 */
-	private BucketEntry findEmptyAndEvictIfNeccessary(int bucketIndex1) {
-		Bucket bucket1 = buckets[bucketIndex1];
+	private int findEmptyAndEvictIfNeccessary(int bucketIndex1, int bucketIndex2) {
+		int slot = findEmptySlot(bucketIndex1);
+		if (slot != -1)
+			return slot;
+
+		slot = findEmptySlot(bucketIndex2);
+		if (slot != -1)
+			return slot;
+
+		return displace(bucketIndex1, bucketIndex2);
+	}
 
-		int entryIndex1 = findEmptyIndex(bucket1);
-		if (entryIndex1 != -1) // Found an empty
-			return bucket1.bucketEntries[entryIndex1];
+	/**
+	 * Evicts a victim, chosen by the eviction policy among the entries of both of
+	 * the new key's buckets, when no room could be made by displacement.
+	 *
+	 * @param bucketIndex1 the primary bucket index
+	 * @param bucketIndex2 the alternative bucket index
+	 * @return the bucket slot freed by the eviction
+	 */
+	private int evictVictim(int bucketIndex1, int bucketIndex2) {
+		int count = 0;
 
-		// Evict first entry
-		entryIndex1 = 0;
-		BucketEntry evictee = bucket1.bucketEntries[entryIndex1];
+		for (int i = 0; i < indexesPerBucket; i++)
+			evictionCandidates[count++] = slotEntries[(bucketIndex1 << bucketShift) + i];
 
-		// Swap with empty entry in bucket2
-		int bucketIndex2 = getAlternativeBucketIndex(bucketIndex1, evictee.signature);
-		Bucket bucket2 = buckets[bucketIndex2];
-		int entryIndex2 = findEmptyIndex(bucket2);
-		if (entryIndex2 == -1)
-			return null; // No more entries
+		if (bucketIndex2 != bucketIndex1)
+			for (int i = 0; i < indexesPerBucket; i++)
+				evictionCandidates[count++] = slotEntries[(bucketIndex2 << bucketShift) + i];
 
-		BucketEntry empty = bucket2.bucketEntries[entryIndex2];
+		int victim = selectVictim(evictionCandidates, count);
+		int slot = entrySlots[victim];
 
-		/* Swap empty with evictee entries between the 2 buckets */
-		bucket1.bucketEntries[entryIndex1] = empty;
-		bucket2.bucketEntries[entryIndex2] = evictee;
+		evict(victim);
 
-		return empty;
+		return slot;
 	}
 
 	/**
-	 * Find empty index.
+	 * Breadth-first search for a cuckoo path, a chain of entries each of which can
+	 * be moved to its alternative bucket, ending in a bucket with an empty slot.
+	 * The search starts with every slot in the 2 full candidate buckets and is
+	 * bounded by the max kicks budget. Since the search is breadth-first, the
+	 * shortest path is always found, minimizing the number of entries moved.
 	 *
-	 * @param bucket the bucket
-	 * @return the int
+	 * @param bucketIndex1 the primary bucket index
+	 * @param bucketIndex2 the alternative bucket index
+	 * @return the empty bucket slot, now located in one of the 2 candidate
+	 *         buckets, or -1 if no path was found within the budget
 	 */
-	private int findEmptyIndex(Bucket bucket) {
-		BucketEntry[] bucketEntries = bucket.bucketEntries;
-		HashEntry<?>[] hashEntries = super.table;
+	private int displace(int bucketIndex1, int bucketIndex2) {
+		int tail = 0;
+
+		for (int i = 0; i < indexesPerBucket; i++)
+			tail = enqueue(tail, (bucketIndex1 << bucketShift) + i, -1);
+
+		if (bucketIndex2 != bucketIndex1)
+			for (int i = 0; i < indexesPerBucket; i++)
+				tail = enqueue(tail, (bucketIndex2 << bucketShift) + i, -1);
+
+		for (int head = 0; head < tail; head++) {
+			int slot = bfsSlot[head];
+			int bucketIndex = slot >>> bucketShift;
+
+			int altBucketIndex = getAlternativeBucketIndex(bucketIndex, signatures[slot] & 0xFFFF);
+			if (altBucketIndex == bucketIndex)
+				continue; // Can not be moved out of this bucket
+
+			int emptySlot = findEmptySlot(altBucketIndex);
+			if (emptySlot != -1 && isPathUnique(head))
+				return movePath(head, emptySlot);
 
-		for (int i = 0; i < bucketEntries.length; i++) {
-			if (hashEntries[bucketEntries[i].index].isEmpty())
-				return i;
+			for (int i = 0; (i < indexesPerBucket) && (tail < bfsSlot.length); i++)
+				tail = enqueue(tail, (altBucketIndex << bucketShift) + i, head);
 		}
 
 		return -1;
 	}
 
+	/**
+	 * Enqueue a displacement search node.
+	 *
+	 * @param tail   the queue tail
+	 * @param slot   the bucket slot
+	 * @param parent the queue position of the parent node, or -1 for root
+	 * @return the new queue tail
+	 */
+	private int enqueue(int tail, int slot, int parent) {
+		bfsSlot[tail] = slot;
+		bfsParent[tail] = parent;
+
+		return tail + 1;
+	}
+
+	/**
+	 * Checks that no bucket slot appears more than once on the path from the node
+	 * to its root. A path that loops back onto itself can not be moved.
+	 *
+	 * @param node the leaf node of the path
+	 * @return true, if path does not contain duplicate bucket slots
+	 */
+	private boolean isPathUnique(int node) {
+		for (int n1 = node; n1 != -1; n1 = bfsParent[n1])
+			for (int n2 = bfsParent[n1]; n2 != -1; n2 = bfsParent[n2])
+				if (bfsSlot[n1] == bfsSlot[n2])
+					return false;
+
+		return true;
+	}
+
+	/**
+	 * Moves each entry along the path into its alternative bucket, starting from
+	 * the leaf whose alternative bucket has an empty slot. The empty slot travels
+	 * back up the path and ends up in the root node's position.
+	 *
+	 * @param node      the leaf node of the path
+	 * @param emptySlot the empty bucket slot
+	 * @return the empty bucket slot, now at the root of the path
+	 */
+	private int movePath(int node, int emptySlot) {
+		beginWrite(bucketCount); // Move counter
+
+		for (; node != -1; node = bfsParent[node]) {
+			int slot = bfsSlot[node];
+
+			swapSlots(slot, emptySlot);
+			setSlotAlternate(emptySlot, !isSlotAlternate(emptySlot)); // Moved to its other bucket
+			kickCount++;
+
+			emptySlot = slot;
+		}
+
+		endWrite(bucketCount);
+
+		return emptySlot;
+	}
+
+	/**
+	 * Swaps the contents of 2 bucket slots, including the hash table entries
+	 * owned by each slot, their signatures, occupancy and alternate bucket bits.
+	 *
+	 * @param slot1 the first bucket slot
+	 * @param slot2 the second bucket slot
+	 */
+	private void swapSlots(int slot1, int slot2) {
+		int bucketIndex1 = slot1 >>> bucketShift;
+		int bucketIndex2 = slot2 >>> bucketShift;
+
+		beginWrite(bucketIndex1);
+		if (bucketIndex2 != bucketIndex1)
+			beginWrite(bucketIndex2);
+
+		int entry1 = slotEntries[slot1];
+		int entry2 = slotEntries[slot2];
+
+		slotEntries[slot1] = entry2;
+		slotEntries[slot2] = entry1;
+		entrySlots[entry2] = slot1;
+		entrySlots[entry1] = slot2;
+
+		short sig = signatures[slot1];
+		signatures[slot1] = signatures[slot2];
+		signatures[slot2] = sig;
+
+		boolean occupied1 = isSlotOccupied(slot1);
+		boolean occupied2 = isSlotOccupied(slot2);
+		setSlotOccupied(slot1, occupied2);
+		setSlotOccupied(slot2, occupied1);
+
+		boolean alternate1 = isSlotAlternate(slot1);
+		boolean alternate2 = isSlotAlternate(slot2);
+		setSlotAlternate(slot1, alternate2);
+		setSlotAlternate(slot2, alternate1);
+
+		if (bucketIndex2 != bucketIndex1)
+			endWrite(bucketIndex2);
+		endWrite(bucketIndex1);
+	}
+
+	/**
+	 * Marks the start of a writer modification of a bucket, or of the move
+	 * counter, by making its sequence counter odd. No-op unless concurrent readers
+	 * are enabled.
+	 *
+	 * @param bucketIndex the bucket index, or the bucket count for the move
+	 *                    counter
+	 */
+	private void beginWrite(int bucketIndex) {
+		if (versions == null)
+			return;
+
+		VERSION.setOpaque(versions, bucketIndex, versions[bucketIndex] + 1);
+		VarHandle.storeStoreFence(); // Odd counter is visible before any modification
+	}
+
+	/**
+	 * Marks the end of a writer modification, publishing it by making the
+	 * sequence counter even again. No-op unless concurrent readers are enabled.
+	 *
+	 * @param bucketIndex the bucket index, or the bucket count for the move
+	 *                    counter
+	 */
+	private void endWrite(int bucketIndex) {
+		if (versions == null)
+			return;
+
+		VERSION.setRelease(versions, bucketIndex, versions[bucketIndex] + 1);
+	}
+
+	/**
+	 * Scans a bucket for a key under its sequence counter, retrying until the scan
+	 * completes without any concurrent modification of the bucket.
+	 *
+	 * @param bucketIndex the bucket index, or the bucket count for the move
+	 *                    counter
+	 * @param key         the key
+	 * @param offset      the key offset
+	 * @param length      the key length
+	 * @param signature   the signature
+	 * @return the hash table entry index or -1 if not found
+	 */
+	private int readBucket(int bucketIndex, MemorySegment key, long offset, int length, int signature) {
+		for (;;) {
+			int version = (int) VERSION.getAcquire(versions, bucketIndex);
+
+			if ((version & 1) == 0) {
+				int index = findEntryIndex(bucketIndex, key, offset, length, signature);
+
+				VarHandle.loadLoadFence();
+				if ((int) VERSION.getOpaque(versions, bucketIndex) == version)
+					return index;
+			}
+
+			Thread.onSpinWait();
+		}
+	}
+
+	/**
+	 * Lock-free lookup used when concurrent readers are enabled. Hits are
+	 * validated by each bucket's sequence counter, misses are additionally
+	 * validated against the move counter, since an entry being moved along a
+	 * cuckoo path may be missed by scanning its buckets one after the other.
+	 *
+	 * @param key      the key
+	 * @param offset   the offset
+	 * @param length   the length
+	 * @param hashcode the hashcode
+	 * @return the hash table entry index or -1 if not found
+	 */
+	private int lookupConcurrent(MemorySegment key, long offset, int length, long hashcode) {
+		int signature = getShortSignature(hashcode);
+		int bucketIndex1 = getPrimaryBucketIndex(hashcode);
+		int bucketIndex2 = getAlternativeBucketIndex(bucketIndex1, signature);
+
+		for (;;) {
+			int moves = (int) VERSION.getAcquire(versions, bucketCount);
+
+			if ((moves & 1) == 0) {
+				int index = readBucket(bucketIndex1, key, offset, length, signature);
+				if (index == -1)
+					index = readBucket(bucketIndex2, key, offset, length, signature);
+
+				if (index != -1)
+					return index;
+
+				VarHandle.loadLoadFence();
+				if ((int) VERSION.getOpaque(versions, bucketCount) == moves)
+					return -1;
+			}
+
+			Thread.onSpinWait();
+		}
+	}
+
+	/**
+	 * Looks up a burst of keys one at a time with the lock-free lookup, used when
+	 * concurrent readers are enabled.
+	 *
+	 * @param keys      the keys
+	 * @param hashcodes the hashcodes
+	 * @param indexes   the indexes
+	 * @param count     the count
+	 * @return the number of keys found
+	 */
+	private int lookupBulkConcurrent(ByteBuffer[] keys, long[] hashcodes, int[] indexes, int count) {
+		int found = 0;
+
+		for (int i = 0; i < count; i++) {
+			ByteBuffer key = keys[i];
+
+			indexes[i] = lookupConcurrent(MemorySegment.ofBuffer(key), 0, key.remaining(), hashcodes[i]);
+			if (indexes[i] != -1)
+				found++;
+		}
+
+		return found;
+	}
+
+	/**
+	 * Enables or disables concurrent readers mode. When enabled, any number of
+	 * threads may call {@code lookup} without locking, while a single writer
+	 * thread performs all of the add and remove operations. Bulk lookups are
+	 * performed one key at a time in this mode and must be supplied with
+	 * precomputed hashcodes, since the table's hashcode scratch space is not
+	 * shared between threads, otherwise they throw. Reading an entry's data, or
+	 * its key after a lookup, is not guarded by the table and the entry may be
+	 * recycled by the writer at any time.
+	 * <p>
+	 * Eviction policies are not supported in this mode, since lookups would
+	 * update the policy's access state from the reader threads. The mode must be
+	 * set before the table is shared between threads.
+	 * </p>
+	 *
+	 * @param enable if true, enables concurrent readers
+	 * @return the cuckoo hash table
+	 * @throws IllegalStateException if enabled while an eviction policy is set
+	 */
+	public CuckooHashTable<T> enableConcurrentReaders(boolean enable) throws IllegalStateException {
+		if (enable && evictionPolicy() != EvictionPolicy.NONE)
+			throw new IllegalStateException("eviction policy %s not supported with concurrent readers"
+					.formatted(evictionPolicy()));
+
+		this.versions = enable ? new int[bucketCount + 1] : null;
+
+		return this;
+	}
+
+	/**
+	 * Checks if concurrent readers mode is enabled.
+	 *
+	 * @return true, if lookups may run concurrently with a single writer
+	 * @see com.slytechs.jnet.jnetruntime.hash.HashTable#isConcurrentReaders()
+	 */
+	@Override
+	public boolean isConcurrentReaders() {
+		return versions != null;
+	}
+
+	/**
+	 * Checks if a bucket slot holds an entry outside of its primary bucket.
+	 *
+	 * @param slot the bucket slot
+	 * @return true, if entry resides in its alternative bucket
+	 */
+	private boolean isSlotAlternate(int slot) {
+		return (bucketAlternate[slot >>> bucketShift] & (1 << (slot & (indexesPerBucket - 1)))) != 0;
+	}
+
+	/**
+	 * Sets or clears a bucket slot's alternate bucket bit, keeping the count of
+	 * entries in their alternative bucket up to date.
+	 *
+	 * @param slot      the bucket slot
+	 * @param alternate true if the slot's entry resides in its alternative bucket
+	 */
+	private void setSlotAlternate(int slot, boolean alternate) {
+		int bit = 1 << (slot & (indexesPerBucket - 1));
+		int bucketIndex = slot >>> bucketShift;
+
+		if (alternate == ((bucketAlternate[bucketIndex] & bit) != 0))
+			return;
+
+		if (alternate) {
+			bucketAlternate[bucketIndex] |= bit;
+			alternateCount++;
+		} else {
+			bucketAlternate[bucketIndex] &= ~bit;
+			alternateCount--;
+		}
+	}
+
+	/**
+	 * Checks if a bucket slot is occupied.
+	 *
+	 * @param slot the bucket slot
+	 * @return true, if slot is occupied
+	 */
+	private boolean isSlotOccupied(int slot) {
+		return (bucketOccupancy[slot >>> bucketShift] & (1 << (slot & (indexesPerBucket - 1)))) != 0;
+	}
+
+	/**
+	 * Sets or clears a bucket slot's occupancy bit.
+	 *
+	 * @param slot     the bucket slot
+	 * @param occupied true to mark as occupied, false to mark as empty
+	 */
+	private void setSlotOccupied(int slot, boolean occupied) {
+		int bit = 1 << (slot & (indexesPerBucket - 1));
+
+		if (occupied)
+			bucketOccupancy[slot >>> bucketShift] |= bit;
+		else
+			bucketOccupancy[slot >>> bucketShift] &= ~bit;
+	}
+
+	/**
+	 * Find empty slot.
+	 *
+	 * @param bucketIndex the bucket index
+	 * @return the empty bucket slot or -1 if bucket is full
+	 */
+	private int findEmptySlot(int bucketIndex) {
+		int free = ~bucketOccupancy[bucketIndex] & fullBucketMask;
+		if (free == 0)
+			return -1;
+
+		return (bucketIndex << bucketShift) + Integer.numberOfTrailingZeros(free);
+	}
+
 	/**
 	 * Gets the alternative bucket index.
 	 *
@@ -277,7 +705,22 @@ public final class CuckooHashTable<T> extends HashTable<T> {
 	 * @return the alternative bucket index
 	 */
 	private int getAlternativeBucketIndex(int index, int signature) {
-		return (index ^ signature) & bucketBitmask;
+		return alternateBucketOf(index, signature, bucketBitmask);
+	}
+
+	/**
+	 * Gets the alternative bucket of a signature, the other of its 2 candidate
+	 * buckets. The mapping is its own inverse, so either bucket and the signature
+	 * lead to the other bucket without knowing the original hashcode. Shared with
+	 * {@link CuckooFilter}.
+	 *
+	 * @param bucketIndex the bucket index
+	 * @param signature   the 16-bit signature
+	 * @param bucketMask  the bucket index mask
+	 * @return the alternative bucket index
+	 */
+	static int alternateBucketOf(int bucketIndex, int signature, int bucketMask) {
+		return (bucketIndex ^ signature) & bucketMask;
 	}
 
 	/**
@@ -297,6 +740,16 @@ public final class CuckooHashTable<T> extends HashTable<T> {
 	 * @return the short signature
 	 */
 	private int getShortSignature(long hashcode) {
+		return signatureOf(hashcode);
+	}
+
+	/**
+	 * Gets the 16-bit signature of a hashcode. Shared with {@link CuckooFilter}.
+	 *
+	 * @param hashcode the hashcode
+	 * @return the signature
+	 */
+	static int signatureOf(long hashcode) {
 		return (int) ((hashcode >> 16) & 0xFFFF);
 	}
 
@@ -304,49 +757,297 @@ public final class CuckooHashTable<T> extends HashTable<T> {
 	 * Lookup.
 	 *
 	 * @param key      the key
+	 * @param offset   the offset
+	 * @param length   the length
 	 * @param hashcode the hashcode
 	 * @return the int
-	 * @see com.slytechs.jnet.jnetruntime.hash.HashTable#lookup(java.nio.ByteBuffer,
-	 *      long)
+	 * @see com.slytechs.jnet.jnetruntime.hash.HashTable#lookup(java.lang.foreign.MemorySegment,
+	 *      long, int, long)
 	 */
 	@Override
-	public int lookup(ByteBuffer key, long hashcode) {
+	public int lookup(MemorySegment key, long offset, int length, long hashcode) {
+		if (versions != null)
+			return lookupConcurrent(key, offset, length, hashcode); // No eviction policy, nothing accessed
+
 		int signature = getShortSignature(hashcode);
 		int bucketIndex = getPrimaryBucketIndex(hashcode);
 
-		int index = findEntryIndex(bucketIndex, key, signature);
-		if (index != -1)
-			return buckets[bucketIndex].bucketEntries[index].index;
+		int index = findEntryIndex(bucketIndex, key, offset, length, signature);
+		if (index == -1) {
+			bucketIndex = getAlternativeBucketIndex(bucketIndex, signature);
+			index = findEntryIndex(bucketIndex, key, offset, length, signature);
+		}
 
-		index = getAlternativeBucketIndex(index, signature);
-		index = findEntryIndex(index, key, signature);
 		if (index != -1)
-			return buckets[bucketIndex].bucketEntries[index].index;
+			accessed(index);
 
-		return -1;
+		return index;
 	}
 
 	/**
-	 * Find entry index.
+	 * Looks up a burst of keys in stages. Each stage issues independent loads for
+	 * every key in the burst, allowing the CPU to overlap their memory latencies:
+	 * <ol>
+	 * <li>scan every key's primary bucket signatures into a hit mask</li>
+	 * <li>compare the keys of the primary bucket hits, and for the misses scan
+	 * their alternative bucket signatures</li>
+	 * <li>compare the keys of the alternative bucket hits</li>
+	 * </ol>
 	 *
-	 * @param index     the index
-	 * @param key       the key
-	 * @param signature the signature
+	 * @param keys      the keys
+	 * @param hashcodes the hashcodes
+	 * @param indexes   the indexes
+	 * @param count     the count
 	 * @return the int
+	 * @see com.slytechs.jnet.jnetruntime.hash.HashTable#lookupBulkStaged(java.nio.ByteBuffer[],
+	 *      long[], int[], int)
+	 */
+	@Override
+	protected int lookupBulkStaged(ByteBuffer[] keys, long[] hashcodes, int[] indexes, int count) {
+		if (versions != null)
+			return lookupBulkConcurrent(keys, hashcodes, indexes, count);
+
+		if (bulkHits.length < count) {
+			bulkBuckets = new int[count];
+			bulkHits = new int[count];
+		}
+
+		final int[] buckets = bulkBuckets;
+		final int[] hits = bulkHits;
+
+		/* Stage 1 - primary bucket signature scan */
+		for (int i = 0; i < count; i++) {
+			int bucketIndex = getPrimaryBucketIndex(hashcodes[i]);
+			short signature = (short) getShortSignature(hashcodes[i]);
+
+			buckets[i] = bucketIndex;
+			hits[i] = signatureMatcher.match(signatures, bucketIndex << bucketShift, signature)
+					& bucketOccupancy[bucketIndex];
+		}
+
+		/* Stage 2 - primary key compare, alternative bucket signature scan on miss */
+		for (int i = 0; i < count; i++) {
+			ByteBuffer key = keys[i];
+
+			indexes[i] = findHit(buckets[i], hits[i], MemorySegment.ofBuffer(key), 0, key.remaining());
+			if (indexes[i] != -1) {
+				hits[i] = 0;
+				continue;
+			}
+
+			int signature = getShortSignature(hashcodes[i]);
+			int bucketIndex = getAlternativeBucketIndex(buckets[i], signature);
+
+			buckets[i] = bucketIndex;
+			hits[i] = signatureMatcher.match(signatures, bucketIndex << bucketShift, (short) signature)
+					& bucketOccupancy[bucketIndex];
+		}
+
+		/* Stage 3 - alternative key compare */
+		int found = 0;
+		for (int i = 0; i < count; i++) {
+			if (hits[i] != 0) {
+				ByteBuffer key = keys[i];
+
+				indexes[i] = findHit(buckets[i], hits[i], MemorySegment.ofBuffer(key), 0, key.remaining());
+			}
+
+			if (indexes[i] != -1)
+				found++;
+		}
+
+		return found;
+	}
+
+	/**
+	 * Gets the maximum number of entries examined by a displacement search.
+	 *
+	 * @return the max kicks
+	 */
+	public int maxKicks() {
+		return maxKicks;
+	}
+
+	/**
+	 * Removes the hash entry at specified index and clears its bucket slot.
+	 *
+	 * @param index the hash table index
+	 * @see com.slytechs.jnet.jnetruntime.hash.HashTable#remove(int)
+	 */
+	@Override
+	protected void remove(int index) {
+		int slot = entrySlots[index];
+		int bucketIndex = slot >>> bucketShift;
+
+		beginWrite(bucketIndex);
+
+		setSlotOccupied(slot, false);
+		setSlotAlternate(slot, false);
+
+		super.remove(index);
+
+		endWrite(bucketIndex);
+	}
+
+	/**
+	 * Sets the maximum number of entries examined by the breadth-first
+	 * displacement search, when both of a new key's buckets are full. Larger
+	 * budgets allow the table to reach higher occupancy at the cost of slower
+	 * worst case insertions. The budget is never less than the number of entries
+	 * in the 2 candidate buckets.
+	 *
+	 * @param newMaxKicks the new max kicks
+	 * @return the cuckoo hash table
+	 */
+	public CuckooHashTable<T> setMaxKicks(int newMaxKicks) {
+		if (newMaxKicks < 0)
+			throw new IllegalArgumentException("invalid max kicks [%d]".formatted(newMaxKicks));
+
+		int queueSize = Math.max(newMaxKicks, indexesPerBucket * 2);
+
+		this.maxKicks = newMaxKicks;
+		this.bfsSlot = new int[queueSize];
+		this.bfsParent = new int[queueSize];
+
+		return this;
+	}
+
+	/**
+	 * Find the hash table entry index of a key within a bucket. All of the
+	 * bucket's signatures are compared at once and only occupied slots with a
+	 * matching signature have their keys compared.
+	 *
+	 * @param bucketIndex the bucket index
+	 * @param key         the key
+	 * @param offset      the key offset
+	 * @param length      the key length
+	 * @param signature   the signature
+	 * @return the hash table entry index or -1 if not found
+	 */
+	private int findEntryIndex(int bucketIndex, MemorySegment key, long offset, int length, int signature) {
+		int hits = signatureMatcher.match(signatures, bucketIndex << bucketShift, (short) signature)
+				& bucketOccupancy[bucketIndex];
+
+		return findHit(bucketIndex, hits, key, offset, length);
+	}
+
+	/**
+	 * Compares the keys of each signature hit within a bucket.
+	 *
+	 * @param bucketIndex the bucket index
+	 * @param hits        the occupied slot signature hit mask
+	 * @param key         the key
+	 * @param offset      the key offset
+	 * @param length      the key length
+	 * @return the hash table entry index or -1 if none of the hits matched
 	 */
-	private int findEntryIndex(int index, ByteBuffer key, int signature) {
-		Bucket bucket = buckets[index];
+	private int findHit(int bucketIndex, int hits, MemorySegment key, long offset, int length) {
+		int base = bucketIndex << bucketShift;
 
-		for (int i = 0; i < indexesPerBucket; i++) {
-			BucketEntry be = bucket.bucketEntries[i];
-			HashEntry<?> te = table[be.index];
-			if (!te.isEmpty() && (be.signature == signature) && matchKeys(be.key, key))
-				return i;
+		while (hits != 0) {
+			int index = slotEntries[base + Integer.numberOfTrailingZeros(hits)];
+			if (matchKey(index, key, offset, length))
+				return index;
+
+			hits &= hits - 1; // Clear lowest hit bit
 		}
 
 		return -1;
 	}
 
+	/**
+	 * Kick count.
+	 *
+	 * @return the long
+	 * @see com.slytechs.jnet.jnetruntime.hash.HashTable#kickCount()
+	 */
+	@Override
+	protected long kickCount() {
+		return kickCount;
+	}
+
+	/**
+	 * Probe length histogram, where probe length 0 is the primary bucket and 1 is
+	 * the alternative bucket. Maintained live, no scan is required.
+	 *
+	 * @return the long[]
+	 * @see com.slytechs.jnet.jnetruntime.hash.HashTable#probeLengthHistogram()
+	 */
+	@Override
+	protected long[] probeLengthHistogram() {
+		return new long[] {
+				getUsedEntriesCount() - alternateCount,
+				alternateCount };
+	}
+
+	/**
+	 * Bucket fill histogram, collected from the bucket occupancy masks.
+	 *
+	 * @return the long[]
+	 * @see com.slytechs.jnet.jnetruntime.hash.HashTable#bucketFillHistogram()
+	 */
+	@Override
+	protected long[] bucketFillHistogram() {
+		long[] histogram = new long[indexesPerBucket + 1];
+
+		for (int occupancy : bucketOccupancy)
+			histogram[Integer.bitCount(occupancy)]++;
+
+		return histogram;
+	}
+
+	/**
+	 * Snapshot layout size, the bucket signatures, slot and entry mappings and
+	 * bucket bitmasks.
+	 *
+	 * @return the long
+	 * @see com.slytechs.jnet.jnetruntime.hash.HashTable#snapshotLayoutSize()
+	 */
+	@Override
+	protected long snapshotLayoutSize() {
+		return (long) signatures.length * Short.BYTES
+				+ (long) (slotEntries.length + entrySlots.length) * Integer.BYTES
+				+ (long) (bucketOccupancy.length + bucketAlternate.length) * Integer.BYTES;
+	}
+
+	/**
+	 * Snapshot layout.
+	 *
+	 * @param dst    the dst
+	 * @param offset the offset
+	 * @see com.slytechs.jnet.jnetruntime.hash.HashTable#snapshotLayout(java.lang.foreign.MemorySegment,
+	 *      long)
+	 */
+	@Override
+	protected void snapshotLayout(MemorySegment dst, long offset) {
+		offset = copyTo(signatures, dst, offset);
+		offset = copyTo(slotEntries, dst, offset);
+		offset = copyTo(entrySlots, dst, offset);
+		offset = copyTo(bucketOccupancy, dst, offset);
+		copyTo(bucketAlternate, dst, offset);
+	}
+
+	/**
+	 * Restore layout.
+	 *
+	 * @param src    the src
+	 * @param offset the offset
+	 * @see com.slytechs.jnet.jnetruntime.hash.HashTable#restoreLayout(java.lang.foreign.MemorySegment,
+	 *      long)
+	 */
+	@Override
+	protected void restoreLayout(MemorySegment src, long offset) {
+		offset = copyFrom(src, offset, signatures);
+		offset = copyFrom(src, offset, slotEntries);
+		offset = copyFrom(src, offset, entrySlots);
+		offset = copyFrom(src, offset, bucketOccupancy);
+		copyFrom(src, offset, bucketAlternate);
+
+		this.alternateCount = 0;
+		for (int alternate : bucketAlternate)
+			alternateCount += Integer.bitCount(alternate);
+	}
+
 	/**
 	 * To string extra.
 	 *
@@ -355,6 +1056,7 @@ public final class CuckooHashTable<T> extends HashTable<T> {
 	 */
 	@Override
 	protected String toStringExtra() {
-		return ", buckets=%d/%d".formatted(bucketCount, indexesPerBucket);
+		return ", buckets=%d/%d, maxKicks=%d, matcher=%s"
+				.formatted(bucketCount, indexesPerBucket, maxKicks, signatureMatcher);
 	}
 }
@@ -0,0 +1,50 @@
+/*
+ * Sly Technologies Free License
+ *
+ * Copyright 2024 Sly Technologies Inc.
+ *
+ * Licensed under the Sly Technologies Free License (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.slytechs.com/free-license-text
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.slytechs.jnet.jnetruntime.hash;
+
+/**
+ * Replacement policy applied by a hash table when a new key finds no free
+ * entry. Instead of failing the insertion, a victim is chosen among the small,
+ * fixed set of entries the new key could have occupied, and is evicted to make
+ * room. The set of candidates depends on the table: the single direct mapped
+ * entry for {@link HashTable}, the entries of both candidate buckets for
+ * {@link CuckooHashTable} and a window of probe slots starting at the key's
+ * home slot for {@link RobinHoodHashTable}. Insertion therefore remains O(1).
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ * @see HashTable#setEvictionPolicy(EvictionPolicy)
+ */
+public enum EvictionPolicy {
+
+	/** Never evict, insertion of a new key fails when there is no room. */
+	NONE,
+
+	/**
+	 * CLOCK second chance replacement. Every access sets an entry's reference
+	 * bit. A rotating hand sweeps the candidates, clearing reference bits, and
+	 * evicts the first candidate found without one.
+	 */
+	CLOCK,
+
+	/**
+	 * Approximate LRU replacement. Every access records a logical access time and
+	 * the least recently used of the candidates is evicted.
+	 */
+	SAMPLED_LRU,
+}
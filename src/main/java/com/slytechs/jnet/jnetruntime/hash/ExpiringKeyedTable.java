@@ -0,0 +1,619 @@
+/*
+ * Sly Technologies Free License
+ *
+ * Copyright 2024 Sly Technologies Inc.
+ *
+ * Licensed under the Sly Technologies Free License (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.slytechs.com/free-license-text
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.slytechs.jnet.jnetruntime.hash;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import com.slytechs.jnet.jnetruntime.hash.HashTable.HashEntry;
+import com.slytechs.jnet.jnetruntime.time.TimestampSource;
+import com.slytechs.jnet.jnetruntime.util.IsExpirable;
+
+/**
+ * A keyed table which expires entries that have been idle for longer than a
+ * timeout, such as a flow table aging out inactive flows.
+ * <p>
+ * Every add and successful lookup records the entry's last seen time, read
+ * from a pluggable {@link TimestampSource}. Using a packet timestamp source
+ * allows pcap files to be replayed with expiration driven by capture time
+ * instead of wall clock time.
+ * </p>
+ * <p>
+ * Expiration is driven by a hashed timing wheel, instead of a sweep over the
+ * whole table. Each entry is linked into the wheel slot of its expiration
+ * tick, using intrusive linked lists indexed by table entry index. Touching an
+ * entry only updates its last seen time, it is not relinked. When the wheel
+ * reaches a slot, entries which are idle past the timeout are evicted and the
+ * others are relinked into the slot of their new deadline. Each entry is
+ * therefore relinked at most once per timeout period, and the cost of
+ * expiration is amortized O(1) per entry. The wheel is advanced as a side
+ * effect of add, lookup and remove, or explicitly using {@link #expire()} when
+ * there is no traffic.
+ * </p>
+ * <p>
+ * Expired entries are delivered to the {@link ExpirationListener} before their
+ * table slot is recycled. Entries are expired at most one tick after their
+ * timeout. The wrapped table must not be modified directly while owned by this
+ * table.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ * @param <T> the generic type
+ */
+public final class ExpiringKeyedTable<T> implements KeyedTable<T> {
+
+	/**
+	 * Notified of each entry expired due to inactivity, before its table slot is
+	 * recycled.
+	 *
+	 * @param <T> the generic type
+	 */
+	@FunctionalInterface
+	public interface ExpirationListener<T> {
+
+		/**
+		 * On expired.
+		 *
+		 * @param entry the expired entry, still holding its key and data
+		 */
+		void onExpired(HashEntry<T> entry);
+	}
+
+	/** The default number of wheel ticks per timeout period. */
+	public static final int DEFAULT_TICKS_PER_TIMEOUT = 64;
+
+	/** Marks the end of a wheel slot list, or an entry not linked into the wheel. */
+	private static final int NIL = -1;
+
+	/** Marks a wheel which has not yet seen its first timestamp. */
+	private static final long NO_TICK = Long.MIN_VALUE;
+
+	/** The wrapped table. */
+	private final HashTable<T> table;
+
+	/** The timestamp source. */
+	private final TimestampSource timestampSource;
+
+	/** The idle timeout in milliseconds. */
+	private final long timeoutMillis;
+
+	/** The wheel tick duration in milliseconds. */
+	private final long tickMillis;
+
+	/** The wheel slot mask. */
+	private final int wheelMask;
+
+	/** Head entry index of each wheel slot list. */
+	private final int[] wheel;
+
+	/** Next entry index in the wheel slot list, per table entry. */
+	private final int[] next;
+
+	/** Previous entry index in the wheel slot list, per table entry. */
+	private final int[] prev;
+
+	/** The wheel slot each table entry is linked into, or NIL. */
+	private final int[] entrySlot;
+
+	/** Last seen time in milliseconds, per table entry. */
+	private final long[] lastSeen;
+
+	/** The last wheel tick processed. */
+	private long currentTick = NO_TICK;
+
+	/** The expiration listener. */
+	private ExpirationListener<T> expirationListener = e -> {};
+
+	/** The number of entries expired so far. */
+	private long expiredCount;
+
+	/**
+	 * Instantiates a new expiring keyed table.
+	 *
+	 * @param table           the table to wrap, which must be empty
+	 * @param timestampSource the timestamp source
+	 * @param idleTimeout     the idle timeout
+	 * @param unit            the idle timeout unit
+	 */
+	public ExpiringKeyedTable(HashTable<T> table, TimestampSource timestampSource, long idleTimeout,
+			TimeUnit unit) {
+		this(table, timestampSource, idleTimeout, unit, DEFAULT_TICKS_PER_TIMEOUT);
+	}
+
+	/**
+	 * Instantiates a new expiring keyed table.
+	 *
+	 * @param table           the table to wrap, which must be empty
+	 * @param timestampSource the timestamp source
+	 * @param idleTimeout     the idle timeout
+	 * @param unit            the idle timeout unit
+	 * @param ticksPerTimeout the number of wheel ticks per timeout period, which
+	 *                        determines the expiration precision
+	 */
+	public ExpiringKeyedTable(HashTable<T> table, TimestampSource timestampSource, long idleTimeout,
+			TimeUnit unit, int ticksPerTimeout) {
+		this.table = Objects.requireNonNull(table, "table");
+		this.timestampSource = Objects.requireNonNull(timestampSource, "timestampSource");
+		this.timeoutMillis = unit.toMillis(idleTimeout);
+
+		if (timeoutMillis <= 0)
+			throw new IllegalArgumentException("invalid idle timeout [%d ms]".formatted(timeoutMillis));
+
+		if (ticksPerTimeout <= 0)
+			throw new IllegalArgumentException("invalid ticks per timeout [%d]".formatted(ticksPerTimeout));
+
+		if (table.getUsedEntriesCount() != 0)
+			throw new IllegalArgumentException("table not empty [%d]".formatted(table.getUsedEntriesCount()));
+
+		this.tickMillis = Math.max(1, timeoutMillis / ticksPerTimeout);
+
+		/* A deadline is never more than timeout + 1 ticks ahead of the wheel */
+		long ticks = (timeoutMillis / tickMillis) + 2;
+		int wheelSize = Integer.highestOneBit((int) Math.min(ticks, 1 << 30) - 1) << 1;
+
+		this.wheel = new int[wheelSize];
+		this.wheelMask = wheelSize - 1;
+		Arrays.fill(wheel, NIL);
+
+		int size = table.size();
+		this.next = new int[size];
+		this.prev = new int[size];
+		this.entrySlot = new int[size];
+		this.lastSeen = new long[size];
+		Arrays.fill(entrySlot, NIL);
+	}
+
+	/**
+	 * Reads the current time and advances the wheel up to it.
+	 *
+	 * @return the current time in milliseconds
+	 */
+	private long now() {
+		long now = timestampSource.millis();
+		advance(now);
+
+		return now;
+	}
+
+	/**
+	 * Processes every wheel slot between the last processed tick and the current
+	 * time. If more than a full rotation has elapsed, every slot is processed
+	 * once.
+	 *
+	 * @param now the current time in milliseconds
+	 */
+	private void advance(long now) {
+		long nowTick = Math.floorDiv(now, tickMillis);
+
+		if (currentTick == NO_TICK || nowTick <= currentTick) {
+			if (currentTick == NO_TICK)
+				currentTick = nowTick;
+
+			return;
+		}
+
+		if (nowTick - currentTick > wheelMask) {
+			for (int slot = 0; slot <= wheelMask; slot++)
+				processSlot(slot, now);
+
+		} else {
+			while (currentTick < nowTick)
+				processSlot((int) (++currentTick & wheelMask), now);
+		}
+
+		currentTick = nowTick;
+	}
+
+	/**
+	 * Detaches a wheel slot's list, then evicts each idle entry and relinks each
+	 * active entry into the slot of its new deadline.
+	 *
+	 * @param slot the wheel slot
+	 * @param now  the current time in milliseconds
+	 */
+	private void processSlot(int slot, long now) {
+		int index = wheel[slot];
+		wheel[slot] = NIL;
+
+		while (index != NIL) {
+			int following = next[index];
+			entrySlot[index] = NIL;
+
+			if (table.get(index).isEmpty()) {
+				/* Already removed, such as by the wrapped table's eviction policy */
+			} else if (now - lastSeen[index] >= timeoutMillis)
+				evict(index);
+			else
+				link(index);
+
+			index = following;
+		}
+	}
+
+	/**
+	 * Evicts an entry, notifying the listener before the table slot is recycled.
+	 *
+	 * @param index the entry index
+	 */
+	private void evict(int index) {
+		expiredCount++;
+		expirationListener.onExpired(table.get(index));
+		table.remove(index);
+	}
+
+	/**
+	 * Links an entry into the wheel slot of its deadline, the first tick at or
+	 * after the time it becomes idle past the timeout.
+	 *
+	 * @param index the entry index
+	 */
+	private void link(int index) {
+		long deadline = lastSeen[index] + timeoutMillis;
+		int slot = (int) (Math.ceilDiv(deadline, tickMillis) & wheelMask);
+
+		int head = wheel[slot];
+		next[index] = head;
+		prev[index] = NIL;
+		if (head != NIL)
+			prev[head] = index;
+
+		wheel[slot] = index;
+		entrySlot[index] = slot;
+	}
+
+	/**
+	 * Unlinks an entry from its wheel slot.
+	 *
+	 * @param index the entry index
+	 */
+	private void unlink(int index) {
+		int slot = entrySlot[index];
+		if (slot == NIL)
+			return;
+
+		if (prev[index] == NIL)
+			wheel[slot] = next[index];
+		else
+			next[prev[index]] = next[index];
+
+		if (next[index] != NIL)
+			prev[next[index]] = prev[index];
+
+		entrySlot[index] = NIL;
+	}
+
+	/**
+	 * Records an add or a lookup hit, linking new entries into the wheel.
+	 *
+	 * @param index the entry index or -1
+	 * @param now   the current time in milliseconds
+	 * @return the entry index
+	 */
+	private int touch(int index, long now) {
+		if (index == -1)
+			return -1;
+
+		lastSeen[index] = now;
+		if (entrySlot[index] == NIL)
+			link(index);
+
+		return index;
+	}
+
+	/**
+	 * Adds the.
+	 *
+	 * @param key  the key
+	 * @param data the data
+	 * @return the int
+	 * @see com.slytechs.jnet.jnetruntime.hash.KeyedTable#add(java.nio.ByteBuffer,
+	 *      java.lang.Object)
+	 */
+	@Override
+	public int add(ByteBuffer key, T data) {
+		long now = now();
+
+		return touch(table.add(key, data), now);
+	}
+
+	/**
+	 * Adds the.
+	 *
+	 * @param key    the key
+	 * @param offset the offset
+	 * @param length the length
+	 * @param data   the data
+	 * @return the int
+	 * @see com.slytechs.jnet.jnetruntime.hash.KeyedTable#add(byte[], int, int,
+	 *      java.lang.Object)
+	 */
+	@Override
+	public int add(byte[] key, int offset, int length, T data) {
+		long now = now();
+
+		return touch(table.add(key, offset, length, data), now);
+	}
+
+	/**
+	 * Adds the.
+	 *
+	 * @param key    the key
+	 * @param offset the offset
+	 * @param length the length
+	 * @param data   the data
+	 * @return the int
+	 * @see com.slytechs.jnet.jnetruntime.hash.KeyedTable#add(java.lang.foreign.MemorySegment,
+	 *      long, int, java.lang.Object)
+	 */
+	@Override
+	public int add(MemorySegment key, long offset, int length, T data) {
+		long now = now();
+
+		return touch(table.add(key, offset, length, data), now);
+	}
+
+	/**
+	 * Expires all entries idle past the timeout, as of the timestamp source's
+	 * current time. Called implicitly by every add, lookup and remove operation,
+	 * this method only needs to be called when there is no traffic.
+	 *
+	 * @return the total number of entries expired so far
+	 */
+	public long expire() {
+		now();
+
+		return expiredCount;
+	}
+
+	/**
+	 * Creates an expirable view of an entry, reporting its expiration based on its
+	 * last seen time.
+	 *
+	 * @param index the entry index
+	 * @return the expirable view
+	 */
+	public IsExpirable expirable(int index) {
+		return new IsExpirable() {
+
+			@Override
+			public boolean isExpired() {
+				return table.get(index).isEmpty()
+						|| timestampSource.millis() - lastSeen[index] >= timeoutMillis;
+			}
+
+			@Override
+			public long expiresIn(TimeUnit unit) {
+				long remaining = lastSeen[index] + timeoutMillis - timestampSource.millis();
+
+				return unit.convert(Math.max(0, remaining), TimeUnit.MILLISECONDS);
+			}
+
+			@Override
+			public TimestampSource timestampSource() {
+				return timestampSource;
+			}
+
+			@Override
+			public void expire() {
+				if (!table.get(index).isEmpty()) {
+					unlink(index);
+					evict(index);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Gets the.
+	 *
+	 * @param index the index
+	 * @return the hash entry
+	 * @see com.slytechs.jnet.jnetruntime.hash.KeyedTable#get(int)
+	 */
+	@Override
+	public HashEntry<T> get(int index) {
+		return table.get(index);
+	}
+
+	/**
+	 * Gets the number of entries expired so far.
+	 *
+	 * @return the expired count
+	 */
+	public long getExpiredCount() {
+		return expiredCount;
+	}
+
+	/**
+	 * Gets the used entries count.
+	 *
+	 * @return the used entries count
+	 */
+	public long getUsedEntriesCount() {
+		return table.getUsedEntriesCount();
+	}
+
+	/**
+	 * Iterator.
+	 *
+	 * @return the iterator
+	 * @see java.lang.Iterable#iterator()
+	 */
+	@Override
+	public Iterator<Entry<T>> iterator() {
+		return table.iterator();
+	}
+
+	/**
+	 * Gets the last seen time of an entry.
+	 *
+	 * @param index the entry index
+	 * @return the last seen time in milliseconds
+	 */
+	public long lastSeen(int index) {
+		return lastSeen[index];
+	}
+
+	/**
+	 * Lookup.
+	 *
+	 * @param key the key
+	 * @return the int
+	 * @see com.slytechs.jnet.jnetruntime.hash.KeyedTable#lookup(java.nio.ByteBuffer)
+	 */
+	@Override
+	public int lookup(ByteBuffer key) {
+		long now = now();
+
+		return touch(table.lookup(key), now);
+	}
+
+	/**
+	 * Lookup.
+	 *
+	 * @param key    the key
+	 * @param offset the offset
+	 * @param length the length
+	 * @return the int
+	 * @see com.slytechs.jnet.jnetruntime.hash.KeyedTable#lookup(byte[], int, int)
+	 */
+	@Override
+	public int lookup(byte[] key, int offset, int length) {
+		long now = now();
+
+		return touch(table.lookup(key, offset, length), now);
+	}
+
+	/**
+	 * Lookup.
+	 *
+	 * @param key    the key
+	 * @param offset the offset
+	 * @param length the length
+	 * @return the int
+	 * @see com.slytechs.jnet.jnetruntime.hash.KeyedTable#lookup(java.lang.foreign.MemorySegment,
+	 *      long, int)
+	 */
+	@Override
+	public int lookup(MemorySegment key, long offset, int length) {
+		long now = now();
+
+		return touch(table.lookup(key, offset, length), now);
+	}
+
+	/**
+	 * Removes the.
+	 *
+	 * @param key the key
+	 * @return true, if successful
+	 * @see com.slytechs.jnet.jnetruntime.hash.KeyedTable#remove(java.nio.ByteBuffer)
+	 */
+	@Override
+	public boolean remove(ByteBuffer key) {
+		now();
+
+		return remove(table.lookup(key));
+	}
+
+	/**
+	 * Removes the.
+	 *
+	 * @param key    the key
+	 * @param offset the offset
+	 * @param length the length
+	 * @return true, if successful
+	 * @see com.slytechs.jnet.jnetruntime.hash.KeyedTable#remove(byte[], int, int)
+	 */
+	@Override
+	public boolean remove(byte[] key, int offset, int length) {
+		now();
+
+		return remove(table.lookup(key, offset, length));
+	}
+
+	/**
+	 * Removes the.
+	 *
+	 * @param key    the key
+	 * @param offset the offset
+	 * @param length the length
+	 * @return true, if successful
+	 * @see com.slytechs.jnet.jnetruntime.hash.KeyedTable#remove(java.lang.foreign.MemorySegment,
+	 *      long, int)
+	 */
+	@Override
+	public boolean remove(MemorySegment key, long offset, int length) {
+		now();
+
+		return remove(table.lookup(key, offset, length));
+	}
+
+	/**
+	 * Removes an entry by index, without notifying the expiration listener.
+	 *
+	 * @param index the entry index or -1
+	 * @return true, if successful
+	 */
+	private boolean remove(int index) {
+		if (index == -1)
+			return false;
+
+		unlink(index);
+		table.remove(index);
+
+		return true;
+	}
+
+	/**
+	 * Sets the expiration listener.
+	 *
+	 * @param newListener the new expiration listener
+	 * @return this table
+	 */
+	public ExpiringKeyedTable<T> setExpirationListener(ExpirationListener<T> newListener) {
+		this.expirationListener = Objects.requireNonNull(newListener, "newListener");
+
+		return this;
+	}
+
+	/**
+	 * Gets the wrapped table.
+	 *
+	 * @return the hash table
+	 */
+	public HashTable<T> table() {
+		return table;
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "ExpiringKeyedTable [timeout=%dms, tick=%dms, wheel=%d, expired=%d, table=%s]"
+				.formatted(timeoutMillis, tickMillis, wheel.length, expiredCount, table);
+	}
+}
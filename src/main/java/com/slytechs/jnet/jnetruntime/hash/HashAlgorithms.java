@@ -0,0 +1,790 @@
+/*
+ * Sly Technologies Free License
+ *
+ * Copyright 2024 Sly Technologies Inc.
+ *
+ * Licensed under the Sly Technologies Free License (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.slytechs.com/free-license-text
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.slytechs.jnet.jnetruntime.hash;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.CRC32C;
+
+import com.slytechs.jnet.jnetruntime.hash.HashTable.HashAlgorithm;
+
+/**
+ * A collection of fast, non-cryptographic hash algorithms suitable for hash
+ * table keys.
+ *
+ * <p>
+ * All of the algorithms read the key data in place, 8 bytes at a time where
+ * possible, and do not modify the position or limit of byte buffers. Byte
+ * arrays and byte buffers are hashed through a memory segment view of their
+ * contents, which the JIT compiler is able to scalar replace once the call is
+ * inlined.
+ * </p>
+ * <dl>
+ * <dt>{@link #xxHash64()}</dt>
+ * <dd>XXH64, the default algorithm used by {@link HashTable}</dd>
+ * <dt>{@link #murmur3()}</dt>
+ * <dd>lower 64 bits of MurmurHash3 x64 128-bit</dd>
+ * <dt>{@link #wyhash()}</dt>
+ * <dd>wyhash final version 4, fastest on short keys</dd>
+ * <dt>{@link #crc32c()}</dt>
+ * <dd>CRC-32C (Castagnoli), hardware accelerated on most CPUs</dd>
+ * <dt>{@link #toeplitz()}</dt>
+ * <dd>Toeplitz hash, matches NIC receive side scaling (RSS)</dd>
+ * </dl>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+public final class HashAlgorithms {
+
+	/**
+	 * Base class for algorithms implemented over memory segments. The byte array
+	 * and byte buffer variants are funneled through a segment view.
+	 */
+	private static abstract class SegmentHashAlgorithm implements HashAlgorithm {
+
+		/**
+		 * Calculate hashcode.
+		 *
+		 * @param buffer the buffer
+		 * @return the long
+		 * @see com.slytechs.jnet.jnetruntime.hash.HashTable.HashAlgorithm#calculateHashcode(java.nio.ByteBuffer)
+		 */
+		@Override
+		public final long calculateHashcode(ByteBuffer buffer) {
+			return calculateHashcode(MemorySegment.ofBuffer(buffer), 0, buffer.remaining());
+		}
+
+		/**
+		 * Calculate hashcode.
+		 *
+		 * @param array  the array
+		 * @param offset the offset
+		 * @param length the length
+		 * @return the long
+		 * @see com.slytechs.jnet.jnetruntime.hash.HashTable.HashAlgorithm#calculateHashcode(byte[],
+		 *      int, int)
+		 */
+		@Override
+		public final long calculateHashcode(byte[] array, int offset, int length) {
+			return calculateHashcode(MemorySegment.ofArray(array), offset, length);
+		}
+
+		/**
+		 * Calculate hashcode.
+		 *
+		 * @param segment the segment
+		 * @param offset  the offset
+		 * @param length  the length
+		 * @return the long
+		 * @see com.slytechs.jnet.jnetruntime.hash.HashTable.HashAlgorithm#calculateHashcode(java.lang.foreign.MemorySegment,
+		 *      long, int)
+		 */
+		@Override
+		public abstract long calculateHashcode(MemorySegment segment, long offset, int length);
+	}
+
+	/**
+	 * XXH64 algorithm by Yann Collet.
+	 */
+	private static final class XxHash64 extends SegmentHashAlgorithm {
+
+		/** The Constant P1. */
+		private static final long P1 = 0x9E3779B185EBCA87L;
+
+		/** The Constant P2. */
+		private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+
+		/** The Constant P3. */
+		private static final long P3 = 0x165667B19E3779F9L;
+
+		/** The Constant P4. */
+		private static final long P4 = 0x85EBCA77C2B2AE63L;
+
+		/** The Constant P5. */
+		private static final long P5 = 0x27D4EB2F165667C5L;
+
+		/**
+		 * Round.
+		 *
+		 * @param acc   the accumulator
+		 * @param input the input lane
+		 * @return the new accumulator
+		 */
+		private static long round(long acc, long input) {
+			return Long.rotateLeft(acc + input * P2, 31) * P1;
+		}
+
+		/**
+		 * Merge round.
+		 *
+		 * @param acc the accumulator
+		 * @param val the lane value
+		 * @return the new accumulator
+		 */
+		private static long mergeRound(long acc, long val) {
+			return (acc ^ round(0, val)) * P1 + P4;
+		}
+
+		/** The seed. */
+		private final long seed;
+
+		/**
+		 * Instantiates a new xx hash 64.
+		 *
+		 * @param seed the seed
+		 */
+		XxHash64(long seed) {
+			this.seed = seed;
+		}
+
+		/**
+		 * Calculate hashcode.
+		 *
+		 * @param segment the segment
+		 * @param offset  the offset
+		 * @param length  the length
+		 * @return the long
+		 * @see com.slytechs.jnet.jnetruntime.hash.HashAlgorithms.SegmentHashAlgorithm#calculateHashcode(java.lang.foreign.MemorySegment,
+		 *      long, int)
+		 */
+		@Override
+		public long calculateHashcode(MemorySegment segment, long offset, int length) {
+			long p = offset;
+			long end = offset + length;
+			long h;
+
+			if (length >= 32) {
+				long v1 = seed + P1 + P2;
+				long v2 = seed + P2;
+				long v3 = seed;
+				long v4 = seed - P1;
+
+				for (long limit = end - 32; p <= limit; p += 32) {
+					v1 = round(v1, segment.get(LONG_LE, p));
+					v2 = round(v2, segment.get(LONG_LE, p + 8));
+					v3 = round(v3, segment.get(LONG_LE, p + 16));
+					v4 = round(v4, segment.get(LONG_LE, p + 24));
+				}
+
+				h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7)
+						+ Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+				h = mergeRound(h, v1);
+				h = mergeRound(h, v2);
+				h = mergeRound(h, v3);
+				h = mergeRound(h, v4);
+
+			} else {
+				h = seed + P5;
+			}
+
+			h += length;
+
+			for (; p + 8 <= end; p += 8) {
+				h ^= round(0, segment.get(LONG_LE, p));
+				h = Long.rotateLeft(h, 27) * P1 + P4;
+			}
+
+			if (p + 4 <= end) {
+				h ^= Integer.toUnsignedLong(segment.get(INT_LE, p)) * P1;
+				h = Long.rotateLeft(h, 23) * P2 + P3;
+				p += 4;
+			}
+
+			for (; p < end; p++) {
+				h ^= Byte.toUnsignedLong(segment.get(ValueLayout.JAVA_BYTE, p)) * P5;
+				h = Long.rotateLeft(h, 11) * P1;
+			}
+
+			h ^= h >>> 33;
+			h *= P2;
+			h ^= h >>> 29;
+			h *= P3;
+			h ^= h >>> 32;
+
+			return h;
+		}
+
+		/**
+		 * Equals, algorithms of the same kind and seed produce the same hashcodes.
+		 *
+		 * @param obj the obj
+		 * @return true, if successful
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(Object obj) {
+			return (obj instanceof XxHash64 other) && (other.seed == seed);
+		}
+
+		/**
+		 * Hash code.
+		 *
+		 * @return the int
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode() {
+			return 31 * toString().hashCode() + Long.hashCode(seed);
+		}
+
+		/**
+		 * To string.
+		 *
+		 * @return the string
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return "xxHash64";
+		}
+	}
+
+	/**
+	 * MurmurHash3 x64 128-bit algorithm by Austin Appleby, returning the lower 64
+	 * bits of the 128-bit result.
+	 */
+	private static final class Murmur3 extends SegmentHashAlgorithm {
+
+		/** The Constant C1. */
+		private static final long C1 = 0x87C37B91114253D5L;
+
+		/** The Constant C2. */
+		private static final long C2 = 0x4CF5AD432745937FL;
+
+		/**
+		 * Final avalanche mix.
+		 *
+		 * @param k the k
+		 * @return the mixed value
+		 */
+		private static long fmix(long k) {
+			k ^= k >>> 33;
+			k *= 0xFF51AFD7ED558CCDL;
+			k ^= k >>> 33;
+			k *= 0xC4CEB9FE1A85EC53L;
+			k ^= k >>> 33;
+
+			return k;
+		}
+
+		/**
+		 * Mix k1.
+		 *
+		 * @param k1 the k1
+		 * @return the mixed value
+		 */
+		private static long mixK1(long k1) {
+			return Long.rotateLeft(k1 * C1, 31) * C2;
+		}
+
+		/**
+		 * Mix k2.
+		 *
+		 * @param k2 the k2
+		 * @return the mixed value
+		 */
+		private static long mixK2(long k2) {
+			return Long.rotateLeft(k2 * C2, 33) * C1;
+		}
+
+		/** The seed. */
+		private final long seed;
+
+		/**
+		 * Instantiates a new murmur 3.
+		 *
+		 * @param seed the seed
+		 */
+		Murmur3(long seed) {
+			this.seed = seed;
+		}
+
+		/**
+		 * Calculate hashcode.
+		 *
+		 * @param segment the segment
+		 * @param offset  the offset
+		 * @param length  the length
+		 * @return the long
+		 * @see com.slytechs.jnet.jnetruntime.hash.HashAlgorithms.SegmentHashAlgorithm#calculateHashcode(java.lang.foreign.MemorySegment,
+		 *      long, int)
+		 */
+		@Override
+		public long calculateHashcode(MemorySegment segment, long offset, int length) {
+			long h1 = seed;
+			long h2 = seed;
+			long p = offset;
+			long end = offset + length;
+
+			for (long limit = end - 16; p <= limit; p += 16) {
+				h1 ^= mixK1(segment.get(LONG_LE, p));
+				h1 = (Long.rotateLeft(h1, 27) + h2) * 5 + 0x52DCE729;
+
+				h2 ^= mixK2(segment.get(LONG_LE, p + 8));
+				h2 = (Long.rotateLeft(h2, 31) + h1) * 5 + 0x38495AB5;
+			}
+
+			int tail = (int) (end - p);
+			if (tail > 8) {
+				h2 ^= mixK2(readPartial(segment, p + 8, tail - 8));
+				h1 ^= mixK1(segment.get(LONG_LE, p));
+
+			} else if (tail > 0) {
+				h1 ^= mixK1(readPartial(segment, p, tail));
+			}
+
+			h1 ^= length;
+			h2 ^= length;
+
+			h1 += h2;
+			h2 += h1;
+
+			h1 = fmix(h1);
+			h2 = fmix(h2);
+
+			h1 += h2;
+
+			return h1;
+		}
+
+		/**
+		 * Equals, algorithms of the same kind and seed produce the same hashcodes.
+		 *
+		 * @param obj the obj
+		 * @return true, if successful
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(Object obj) {
+			return (obj instanceof Murmur3 other) && (other.seed == seed);
+		}
+
+		/**
+		 * Hash code.
+		 *
+		 * @return the int
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode() {
+			return 31 * toString().hashCode() + Long.hashCode(seed);
+		}
+
+		/**
+		 * To string.
+		 *
+		 * @return the string
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return "murmur3";
+		}
+	}
+
+	/**
+	 * Wyhash final version 4 algorithm by Wang Yi.
+	 */
+	private static final class WyHash extends SegmentHashAlgorithm {
+
+		/** The Constant S0, default secret. */
+		private static final long S0 = 0x2D358DCCAA6C78A5L;
+
+		/** The Constant S1, default secret. */
+		private static final long S1 = 0x8BB84B93962EACC9L;
+
+		/** The Constant S2, default secret. */
+		private static final long S2 = 0x4B33A62ED433D4A3L;
+
+		/** The Constant S3, default secret. */
+		private static final long S3 = 0x4D5A2DA51DE1AA47L;
+
+		/**
+		 * Multiply 2 64-bit values into a 128-bit result and fold the halves.
+		 *
+		 * @param a the a
+		 * @param b the b
+		 * @return the xor of the low and high 64 bits of the product
+		 */
+		private static long mix(long a, long b) {
+			return (a * b) ^ Math.unsignedMultiplyHigh(a, b);
+		}
+
+		/**
+		 * Read an unsigned 32-bit little endian value.
+		 *
+		 * @param segment the segment
+		 * @param p       the offset
+		 * @return the long
+		 */
+		private static long r4(MemorySegment segment, long p) {
+			return Integer.toUnsignedLong(segment.get(INT_LE, p));
+		}
+
+		/** The seed. */
+		private final long seed;
+
+		/**
+		 * Instantiates a new wy hash.
+		 *
+		 * @param seed the seed
+		 */
+		WyHash(long seed) {
+			this.seed = seed;
+		}
+
+		/**
+		 * Calculate hashcode.
+		 *
+		 * @param segment the segment
+		 * @param offset  the offset
+		 * @param length  the length
+		 * @return the long
+		 * @see com.slytechs.jnet.jnetruntime.hash.HashAlgorithms.SegmentHashAlgorithm#calculateHashcode(java.lang.foreign.MemorySegment,
+		 *      long, int)
+		 */
+		@Override
+		public long calculateHashcode(MemorySegment segment, long offset, int length) {
+			long p = offset;
+			long s = seed ^ mix(seed ^ S0, S1);
+			long a;
+			long b;
+
+			if (length <= 16) {
+				if (length >= 4) {
+					long d = (length >>> 3) << 2;
+					a = (r4(segment, p) << 32) | r4(segment, p + d);
+					b = (r4(segment, p + length - 4) << 32) | r4(segment, p + length - 4 - d);
+
+				} else if (length > 0) {
+					a = (Byte.toUnsignedLong(segment.get(ValueLayout.JAVA_BYTE, p)) << 16)
+							| (Byte.toUnsignedLong(segment.get(ValueLayout.JAVA_BYTE, p + (length >>> 1))) << 8)
+							| Byte.toUnsignedLong(segment.get(ValueLayout.JAVA_BYTE, p + length - 1));
+					b = 0;
+
+				} else {
+					a = b = 0;
+				}
+
+			} else {
+				long i = length;
+
+				if (i >= 48) {
+					long see1 = s;
+					long see2 = s;
+
+					do {
+						s = mix(segment.get(LONG_LE, p) ^ S1, segment.get(LONG_LE, p + 8) ^ s);
+						see1 = mix(segment.get(LONG_LE, p + 16) ^ S2, segment.get(LONG_LE, p + 24) ^ see1);
+						see2 = mix(segment.get(LONG_LE, p + 32) ^ S3, segment.get(LONG_LE, p + 40) ^ see2);
+						p += 48;
+						i -= 48;
+					} while (i >= 48);
+
+					s ^= see1 ^ see2;
+				}
+
+				while (i > 16) {
+					s = mix(segment.get(LONG_LE, p) ^ S1, segment.get(LONG_LE, p + 8) ^ s);
+					i -= 16;
+					p += 16;
+				}
+
+				a = segment.get(LONG_LE, p + i - 16);
+				b = segment.get(LONG_LE, p + i - 8);
+			}
+
+			a ^= S1;
+			b ^= s;
+
+			long lo = a * b;
+			long hi = Math.unsignedMultiplyHigh(a, b);
+
+			return mix(lo ^ S0 ^ length, hi ^ S1);
+		}
+
+		/**
+		 * Equals, algorithms of the same kind and seed produce the same hashcodes.
+		 *
+		 * @param obj the obj
+		 * @return true, if successful
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(Object obj) {
+			return (obj instanceof WyHash other) && (other.seed == seed);
+		}
+
+		/**
+		 * Hash code.
+		 *
+		 * @return the int
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode() {
+			return 31 * toString().hashCode() + Long.hashCode(seed);
+		}
+
+		/**
+		 * To string.
+		 *
+		 * @return the string
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return "wyhash";
+		}
+	}
+
+	/**
+	 * CRC-32C based on the JDK's hardware accelerated implementation. A checksum
+	 * instance and a scratch array, through which segment keys are copied in
+	 * chunks, are cached per thread.
+	 */
+	private static final class Crc32c implements HashAlgorithm {
+
+		/** Size of the per thread scratch array, in bytes. */
+		private static final int SCRATCH_SIZE = 256;
+
+		/** Per thread checksum instance. */
+		private static final ThreadLocal<CRC32C> CRC = ThreadLocal.withInitial(CRC32C::new);
+
+		/** Per thread scratch array for segment keys. */
+		private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[SCRATCH_SIZE]);
+
+		/**
+		 * Calculate hashcode.
+		 *
+		 * @param buffer the buffer
+		 * @return the long
+		 * @see com.slytechs.jnet.jnetruntime.hash.HashTable.HashAlgorithm#calculateHashcode(java.nio.ByteBuffer)
+		 */
+		@Override
+		public long calculateHashcode(ByteBuffer buffer) {
+			CRC32C crc = CRC.get();
+			crc.reset();
+
+			int position = buffer.position();
+			crc.update(buffer);
+			buffer.position(position);
+
+			return crc.getValue();
+		}
+
+		/**
+		 * Calculate hashcode.
+		 *
+		 * @param array  the array
+		 * @param offset the offset
+		 * @param length the length
+		 * @return the long
+		 * @see com.slytechs.jnet.jnetruntime.hash.HashTable.HashAlgorithm#calculateHashcode(byte[],
+		 *      int, int)
+		 */
+		@Override
+		public long calculateHashcode(byte[] array, int offset, int length) {
+			CRC32C crc = CRC.get();
+			crc.reset();
+			crc.update(array, offset, length);
+
+			return crc.getValue();
+		}
+
+		/**
+		 * Calculate hashcode. The segment's bytes are copied through a per thread
+		 * scratch array, so neither heap nor native segments allocate a slice or
+		 * buffer view.
+		 *
+		 * @param segment the segment
+		 * @param offset  the byte offset into the segment
+		 * @param length  the number of bytes to hash
+		 * @return the long
+		 * @see com.slytechs.jnet.jnetruntime.hash.HashTable.HashAlgorithm#calculateHashcode(java.lang.foreign.MemorySegment,
+		 *      long, int)
+		 */
+		@Override
+		public long calculateHashcode(MemorySegment segment, long offset, int length) {
+			CRC32C crc = CRC.get();
+			byte[] scratch = SCRATCH.get();
+			crc.reset();
+
+			for (int done = 0; done < length;) {
+				int chunk = Math.min(SCRATCH_SIZE, length - done);
+
+				MemorySegment.copy(segment, ValueLayout.JAVA_BYTE, offset + done, scratch, 0, chunk);
+				crc.update(scratch, 0, chunk);
+				done += chunk;
+			}
+
+			return crc.getValue();
+		}
+
+		/**
+		 * To string.
+		 *
+		 * @return the string
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return "crc32c";
+		}
+	}
+
+	/** Unaligned little endian long layout. */
+	static final ValueLayout.OfLong LONG_LE = ValueLayout.JAVA_LONG_UNALIGNED
+			.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+	/** Unaligned little endian int layout. */
+	static final ValueLayout.OfInt INT_LE = ValueLayout.JAVA_INT_UNALIGNED
+			.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+	/** The Constant XXHASH64. */
+	private static final HashAlgorithm XXHASH64 = new XxHash64(0);
+
+	/** The Constant MURMUR3. */
+	private static final HashAlgorithm MURMUR3 = new Murmur3(0);
+
+	/** The Constant WYHASH. */
+	private static final HashAlgorithm WYHASH = new WyHash(0);
+
+	/** The Constant CRC32C. */
+	private static final HashAlgorithm CRC32C = new Crc32c();
+
+	/**
+	 * Reads up to 7 bytes as a little endian value, zero extended.
+	 *
+	 * @param segment the segment
+	 * @param p       the offset
+	 * @param count   the number of bytes to read
+	 * @return the long
+	 */
+	private static long readPartial(MemorySegment segment, long p, int count) {
+		long v = 0;
+		for (int i = count - 1; i >= 0; i--)
+			v = (v << 8) | Byte.toUnsignedLong(segment.get(ValueLayout.JAVA_BYTE, p + i));
+
+		return v;
+	}
+
+	/**
+	 * CRC-32C (Castagnoli) hash algorithm, producing a 32-bit hashcode.
+	 *
+	 * @return the hash algorithm
+	 */
+	public static HashAlgorithm crc32c() {
+		return CRC32C;
+	}
+
+	/**
+	 * Lower 64 bits of MurmurHash3 x64 128-bit hash algorithm, with a seed of 0.
+	 *
+	 * @return the hash algorithm
+	 */
+	public static HashAlgorithm murmur3() {
+		return MURMUR3;
+	}
+
+	/**
+	 * Lower 64 bits of MurmurHash3 x64 128-bit hash algorithm.
+	 *
+	 * @param seed the seed
+	 * @return the hash algorithm
+	 */
+	public static HashAlgorithm murmur3(long seed) {
+		return new Murmur3(seed);
+	}
+
+	/**
+	 * Toeplitz RSS hash algorithm, with the default Microsoft RSS key.
+	 *
+	 * @return the hash algorithm
+	 */
+	public static ToeplitzHash toeplitz() {
+		return new ToeplitzHash();
+	}
+
+	/**
+	 * Toeplitz RSS hash algorithm.
+	 *
+	 * @param key the secret key, either 40 or 52 bytes long
+	 * @return the hash algorithm
+	 */
+	public static ToeplitzHash toeplitz(byte[] key) {
+		return new ToeplitzHash(key);
+	}
+
+	/**
+	 * Toeplitz RSS hash algorithm with a 40 byte symmetric key, which hashes
+	 * both directions of a flow to the same value.
+	 *
+	 * @return the hash algorithm
+	 */
+	public static ToeplitzHash toeplitzSymmetric() {
+		return new ToeplitzHash(ToeplitzHash.symmetricKey(ToeplitzHash.KEY_SIZE_40));
+	}
+
+	/**
+	 * Wyhash final version 4 hash algorithm, with a seed of 0.
+	 *
+	 * @return the hash algorithm
+	 */
+	public static HashAlgorithm wyhash() {
+		return WYHASH;
+	}
+
+	/**
+	 * Wyhash final version 4 hash algorithm.
+	 *
+	 * @param seed the seed
+	 * @return the hash algorithm
+	 */
+	public static HashAlgorithm wyhash(long seed) {
+		return new WyHash(seed);
+	}
+
+	/**
+	 * XXH64 hash algorithm, with a seed of 0.
+	 *
+	 * @return the hash algorithm
+	 */
+	public static HashAlgorithm xxHash64() {
+		return XXHASH64;
+	}
+
+	/**
+	 * XXH64 hash algorithm.
+	 *
+	 * @param seed the seed
+	 * @return the hash algorithm
+	 */
+	public static HashAlgorithm xxHash64(long seed) {
+		return new XxHash64(seed);
+	}
+
+	/**
+	 * Instantiates a new hash algorithms.
+	 */
+	private HashAlgorithms() {
+	}
+}
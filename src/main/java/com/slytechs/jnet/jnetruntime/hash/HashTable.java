@@ -17,13 +17,26 @@
  */
 package com.slytechs.jnet.jnetruntime.hash;
 
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 import java.util.function.IntFunction;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * A simple hash table where entries are looked up using the hash value either
@@ -62,6 +75,30 @@ import java.util.stream.Stream;
  * allowing for efficient storage and lookup of network connection information,
  * as well as supporting firewall rules and caching of frequently accessed data.
  * </p>
+ * <p>
+ * All of the keys are stored in a single, contiguous off-heap key arena, which
+ * is allocated once when the table is constructed. Each entry owns a fixed size
+ * key slot at offset {@code index * keyStride} within the arena, where the key
+ * stride is the configured key size rounded up to a multiple of 8 bytes. This
+ * keeps key comparisons to a single memory region per probe and avoids
+ * allocating a separate native buffer for every table entry.
+ * </p>
+ * <p>
+ * Keys longer than the key size, such as DNS names or tunnelled IPv6 tuples,
+ * can be stored once an overflow slab is enabled with
+ * {@link #enableKeyOverflow(long)}. A long key's first key size bytes stay in
+ * its inline key slot, while the whole key is stored in an off-heap overflow
+ * block referenced by offset. Lookups still filter candidates by hashcode or
+ * signature and by key length, then compare the inline prefix, and only read
+ * the overflow block when the prefixes match.
+ * </p>
+ * <p>
+ * The table's contents can be saved to a memory-mapped snapshot file and
+ * reloaded on a warm restart, see {@link #snapshot(Path, SnapshotCodec)} and
+ * {@link #restore(Path, SnapshotCodec)}. The key arena and the table's layout
+ * arrays are copied in bulk, so restoring a table is much faster than adding
+ * its entries one at a time.
+ * </p>
  *
  * @author Sly Technologies Inc
  * @author repos@slytechs.com
@@ -72,6 +109,12 @@ public class HashTable<T> implements KeyedTable<T> {
 	/**
 	 * An algorithm which calculates a hash code from buffer data. The data in the
 	 * buffer is used between the buffer's position and limit properties.
+	 * <p>
+	 * Implementations may override the memory segment and byte array variants to
+	 * hash the data in place. The default implementations wrap the data in a
+	 * byte buffer. Allocation free implementations are provided by
+	 * {@link HashAlgorithms}.
+	 * </p>
 	 */
 	@FunctionalInterface
 	public interface HashAlgorithm {
@@ -83,6 +126,107 @@ public class HashTable<T> implements KeyedTable<T> {
 		 * @return the long
 		 */
 		long calculateHashcode(ByteBuffer buffer);
+
+		/**
+		 * Calculate hashcode of the bytes within a memory segment.
+		 *
+		 * @param segment the segment
+		 * @param offset  the byte offset into the segment
+		 * @param length  the number of bytes to hash
+		 * @return the long
+		 */
+		default long calculateHashcode(MemorySegment segment, long offset, int length) {
+			return calculateHashcode(segment.asSlice(offset, length).asByteBuffer());
+		}
+
+		/**
+		 * Calculate hashcode of the bytes within a byte array.
+		 *
+		 * @param array  the array
+		 * @param offset the offset into the array
+		 * @param length the number of bytes to hash
+		 * @return the long
+		 */
+		default long calculateHashcode(byte[] array, int offset, int length) {
+			return calculateHashcode(ByteBuffer.wrap(array, offset, length));
+		}
+	}
+
+	/**
+	 * Notified of each entry evicted by the table's eviction policy, to make room
+	 * for a new key.
+	 *
+	 * @param <T> the generic type
+	 * @see EvictionPolicy
+	 */
+	@FunctionalInterface
+	public interface EvictionListener<T> {
+
+		/**
+		 * On evicted.
+		 *
+		 * @param entry the evicted entry, still holding its key and data
+		 */
+		void onEvicted(HashEntry<T> entry);
+	}
+
+	/**
+	 * Serializes entry data to and from fixed size records within a snapshot
+	 * file.
+	 *
+	 * @param <T> the generic type
+	 * @see HashTable#snapshot(Path, SnapshotCodec)
+	 */
+	public interface SnapshotCodec<T> {
+
+		/**
+		 * A codec which saves no data, restored entries have null data.
+		 *
+		 * @param <T> the generic type
+		 * @return the snapshot codec
+		 */
+		static <T> SnapshotCodec<T> keysOnly() {
+			return new SnapshotCodec<T>() {
+
+				@Override
+				public int dataSize() {
+					return 0;
+				}
+
+				@Override
+				public void encode(T data, MemorySegment dst, long offset) {}
+
+				@Override
+				public T decode(MemorySegment src, long offset) {
+					return null;
+				}
+			};
+		}
+
+		/**
+		 * The fixed size in bytes of each entry's data record.
+		 *
+		 * @return the data size
+		 */
+		int dataSize();
+
+		/**
+		 * Encodes an entry's data into its record.
+		 *
+		 * @param data   the data, possibly null
+		 * @param dst    the snapshot segment
+		 * @param offset the byte offset of the record within the segment
+		 */
+		void encode(T data, MemorySegment dst, long offset);
+
+		/**
+		 * Decodes an entry's data from its record.
+		 *
+		 * @param src    the snapshot segment
+		 * @param offset the byte offset of the record within the segment
+		 * @return the data
+		 */
+		T decode(MemorySegment src, long offset);
 	}
 
 	/**
@@ -92,8 +236,23 @@ public class HashTable<T> implements KeyedTable<T> {
 	 */
 	public static class HashEntry<T> implements Entry<T> {
 
-		/** The key. */
-		private final ByteBuffer key;
+		/** The table owning this entry, notified of occupancy changes. */
+		private final HashTable<T> owner;
+
+		/** The key arena shared by all entries in the table. */
+		private final MemorySegment keyArena;
+
+		/** The byte offset of this entry's key slot within the key arena. */
+		private final long keyOffset;
+
+		/** The key slot size in bytes. */
+		private final int keySize;
+
+		/** The length of the currently stored key in bytes. */
+		private int keyLength;
+
+		/** Offset of the key's overflow block, or -1 if the key is stored inline. */
+		private long overflowOffset = -1;
 
 		/** The index. */
 		private final int index;
@@ -107,21 +266,18 @@ public class HashTable<T> implements KeyedTable<T> {
 		/**
 		 * Instantiates a new hash entry.
 		 *
-		 * @param index the index
-		 */
-		private HashEntry(int index) {
-			this(index, MAX_KEY_SIZE_BYTES);
-		}
-
-		/**
-		 * Instantiates a new hash entry.
-		 *
-		 * @param index        the index
-		 * @param keySizeBytes the key size bytes
+		 * @param owner     the table owning this entry
+		 * @param index     the index
+		 * @param keyArena  the key arena shared by all entries
+		 * @param keyOffset the offset of the entry's key slot within the arena
+		 * @param keySize   the key slot size in bytes
 		 */
-		private HashEntry(int index, int keySizeBytes) {
+		private HashEntry(HashTable<T> owner, int index, MemorySegment keyArena, long keyOffset, int keySize) {
+			this.owner = owner;
 			this.index = index;
-			this.key = ByteBuffer.allocateDirect(keySizeBytes);
+			this.keyArena = keyArena;
+			this.keyOffset = keyOffset;
+			this.keySize = keySize;
 		}
 
 		/**
@@ -157,12 +313,50 @@ public class HashTable<T> implements KeyedTable<T> {
 		}
 
 		/**
-		 * Key.
+		 * Key as a byte buffer view of the entry's key slot in the key arena. The
+		 * returned buffer's position is 0 and its limit is the key length.
 		 *
 		 * @return the byte buffer
 		 */
 		public ByteBuffer key() {
-			return key;
+			return keySegment().asByteBuffer();
+		}
+
+		/**
+		 * Key as a memory segment view of the entry's key slot in the key arena,
+		 * sized to the current key length.
+		 *
+		 * @return the memory segment
+		 */
+		public MemorySegment keySegment() {
+			return keyBase().asSlice(keyBaseOffset(), keyLength);
+		}
+
+		/**
+		 * Segment holding the whole key, the key arena or the overflow slab.
+		 *
+		 * @return the segment
+		 */
+		private MemorySegment keyBase() {
+			return (overflowOffset == -1) ? keyArena : owner.keyOverflow.segment();
+		}
+
+		/**
+		 * Offset of the whole key within its segment.
+		 *
+		 * @return the offset
+		 */
+		private long keyBaseOffset() {
+			return (overflowOffset == -1) ? keyOffset : overflowOffset;
+		}
+
+		/**
+		 * Length of the currently stored key in bytes.
+		 *
+		 * @return the key length
+		 */
+		public int keyLength() {
+			return keyLength;
 		}
 
 		/**
@@ -176,35 +370,160 @@ public class HashTable<T> implements KeyedTable<T> {
 		}
 
 		/**
-		 * Sets the empty.
+		 * Sets the empty state, updating the owning table's used entries count.
 		 *
 		 * @param b the new empty
 		 */
 		@Override
 		public void setEmpty(boolean b) {
+			if (b == isEmpty)
+				return;
+
 			this.isEmpty = b;
+			owner.usedCount += b ? -1 : 1;
+			owner.occupied[index >>> 6] ^= 1L << index;
 		}
 
 		/**
 		 * Clear key.
 		 */
 		public void clearKey() {
-			this.key.putLong(0, 0);
-			this.key.putLong(1, 0);
+			releaseOverflow();
+			this.keyArena.asSlice(keyOffset, keySize).fill((byte) 0);
+			this.keyLength = 0;
+		}
+
+		/**
+		 * Frees the key's overflow block, if it has one, leaving an empty key.
+		 */
+		private void releaseOverflow() {
+			if (overflowOffset != -1) {
+				owner.keyOverflow.free(overflowOffset, keyLength);
+				overflowOffset = -1;
+				keyLength = 0;
+			}
 		}
 
 		/**
-		 * Sets the key.
+		 * Sets the key by copying the bytes between the new key's position and limit
+		 * into the entry's key slot. The new key buffer's position and limit are not
+		 * modified.
 		 *
 		 * @param newKey the new key
+		 * @throws IllegalArgumentException if the key is larger than the key slot
+		 *                                  and key overflow is not enabled
+		 * @throws IllegalStateException    if the key overflow slab is full
+		 */
+		public void setKey(ByteBuffer newKey) throws IllegalArgumentException {
+			setKey(MemorySegment.ofBuffer(newKey), 0, newKey.remaining());
+		}
+
+		/**
+		 * Sets the key by copying the key bytes from a memory segment into the
+		 * entry's key slot.
+		 *
+		 * @param newKey the segment containing the new key
+		 * @param offset the byte offset of the key within the segment
+		 * @param length the key length in bytes
+		 * @throws IllegalArgumentException if the key is larger than the key slot
+		 *                                  and key overflow is not enabled
+		 * @throws IllegalStateException    if the key overflow slab is full
+		 */
+		public void setKey(MemorySegment newKey, long offset, int length) throws IllegalArgumentException {
+			if (!storeKey(newKey, offset, length))
+				throw new IllegalStateException("key overflow slab full [%d bytes]".formatted(length));
+		}
+
+		/**
+		 * Stores a key inline, or in an overflow block if it is larger than the key
+		 * slot. An overflow block already held by the entry is reused when the new
+		 * key is of the same size class.
+		 *
+		 * @param newKey the segment containing the new key
+		 * @param offset the byte offset of the key within the segment
+		 * @param length the key length in bytes
+		 * @return true, if stored, false if the key overflow slab is full
+		 * @throws IllegalArgumentException if the key is larger than the key slot
+		 *                                  and key overflow is not enabled
+		 */
+		boolean storeKey(MemorySegment newKey, long offset, int length) throws IllegalArgumentException {
+			if (length <= keySize) {
+				releaseOverflow();
+				MemorySegment.copy(newKey, offset, keyArena, keyOffset, length);
+				this.keyLength = length;
+
+				return true;
+			}
+
+			KeyOverflowSlab slab = owner.keyOverflow;
+			if (slab == null)
+				throw new IllegalArgumentException("key too large [%d > %d]"
+						.formatted(length, keySize));
+
+			if (overflowOffset == -1 || !KeyOverflowSlab.fits(keyLength, length)) {
+				long block = slab.allocate(length);
+				if (block == -1)
+					return false;
+
+				releaseOverflow();
+				this.overflowOffset = block;
+			}
+
+			MemorySegment.copy(newKey, offset, keyArena, keyOffset, keySize); // Inline prefix
+			MemorySegment.copy(newKey, offset, slab.segment(), overflowOffset, length);
+			this.keyLength = length;
+
+			return true;
+		}
+
+		/**
+		 * Match the stored key against the key bytes between the buffer's position
+		 * and limit.
+		 *
+		 * @param key the key to match
+		 * @return true, if both keys are of same length and contents
+		 */
+		boolean matchKey(ByteBuffer key) {
+			return matchKey(MemorySegment.ofBuffer(key), 0, key.remaining());
+		}
+
+		/**
+		 * Match the stored key against the key bytes within a memory segment.
+		 *
+		 * @param key    the segment containing the key to match
+		 * @param offset the byte offset of the key within the segment
+		 * @param length the key length in bytes
+		 * @return true, if both keys are of same length and contents
 		 */
-		public void setKey(ByteBuffer newKey) {
+		boolean matchKey(MemorySegment key, long offset, int length) {
+			if (length != keyLength)
+				return false;
+
+			/* Read once, a writer racing a concurrent reader may release the block */
+			long overflow = overflowOffset;
+
+			if (overflow == -1 && length > keySize)
+				return false;
 
-			this.key.clear()
-					.put(newKey)
-					.flip();
+			MemorySegment base = (overflow == -1) ? keyArena : owner.keyOverflow.segment();
+			long baseOffset = (overflow == -1) ? keyOffset : overflow;
 
-			newKey.flip();
+			if (baseOffset + length > base.byteSize())
+				return false;
+
+			if (owner.symmetricLayout != null)
+				return owner.symmetricLayout.match(base, baseOffset, length, key, offset, length)
+						!= SymmetricKeyLayout.NO_MATCH;
+
+			/* Only keys with a matching inline prefix read the overflow block */
+			if (overflow != -1 && MemorySegment.mismatch(
+					keyArena, keyOffset, keyOffset + keySize,
+					key, offset, offset + keySize) != -1)
+				return false;
+
+			return MemorySegment.mismatch(
+					base, baseOffset, baseOffset + length,
+					key, offset, offset + length) == -1;
 		}
 
 		/**
@@ -215,16 +534,41 @@ public class HashTable<T> implements KeyedTable<T> {
 		 */
 		@Override
 		public String toString() {
-			return "HashEntry [index=" + index + ", key=" + key + ", data=" + data + "]";
+			return "HashEntry [index=" + index + ", key=" + key() + ", data=" + data + "]";
 		}
 	}
 
-	/** The Constant MAX_KEY_SIZE_BYTES. */
+	/**
+	 * The default key size, the largest key stored without enabling key
+	 * overflow.
+	 */
 	public static final int MAX_KEY_SIZE_BYTES = 64;
 
 	/** The Constant DEFAULT_TABLE_SIZE. */
 	public static final int DEFAULT_TABLE_SIZE = 1024;
 
+	/** The key arena alignment, a typical CPU cache line size. */
+	private static final long KEY_ARENA_ALIGNMENT = 64;
+
+	/** Snapshot file magic number, "JNETHSNP" in ASCII. */
+	private static final long SNAPSHOT_MAGIC = 0x4A4E455448534E50L;
+
+	/** The snapshot file format version. */
+	private static final int SNAPSHOT_VERSION = 1;
+
+	/** The snapshot file header size, the key arena copy follows. */
+	private static final int SNAPSHOT_HEADER_SIZE = 64;
+
+	/** Key hashed to verify the snapshot's hash algorithm matches the table's. */
+	private static final byte[] SNAPSHOT_PROBE_KEY = "jnetruntime.HashTable.snapshot"
+			.getBytes(StandardCharsets.US_ASCII);
+
+	/** Snapshot header and length fields, in native byte order. */
+	private static final ValueLayout.OfInt SNAPSHOT_INT = ValueLayout.JAVA_INT_UNALIGNED;
+
+	/** Snapshot header long fields, in native byte order. */
+	private static final ValueLayout.OfLong SNAPSHOT_LONG = ValueLayout.JAVA_LONG_UNALIGNED;
+
 	/**
 	 * Match keys.
 	 *
@@ -242,8 +586,23 @@ public class HashTable<T> implements KeyedTable<T> {
 	/** The entries count. */
 	private final int tableSize;
 
+	/** The maximum key size in bytes. */
+	private final int keySize;
+
+	/** The distance in bytes between consecutive key slots in the key arena. */
+	private final int keyStride;
+
+	/** Single off-heap allocation holding every entry's key slot. */
+	private final MemorySegment keyArena;
+
+	/** Slab holding keys longer than the key size, or null if not enabled. */
+	private KeyOverflowSlab keyOverflow;
+
 	/** The hash algorithm. */
-	private HashAlgorithm hashAlgorithm = Checksums::crc32;
+	private HashAlgorithm hashAlgorithm = HashAlgorithms.xxHash64();
+
+	/** The symmetric flow key layout, or null for order sensitive keys. */
+	private SymmetricKeyLayout symmetricLayout;
 
 	/** The table mask. */
 	private final int tableMask;
@@ -251,24 +610,78 @@ public class HashTable<T> implements KeyedTable<T> {
 	/** The sticky data. */
 	private boolean stickyData;
 
+	/** The number of used entries, maintained as entries change state. */
+	private int usedCount;
+
+	/** Bitmap of the used entries, 1 bit per entry index. */
+	private final long[] occupied;
+
+	/** The number of add operations which found no room for a new key. */
+	private long failedInsertCount;
+
+	/** Scratch space for hashcodes calculated by bulk operations. */
+	private long[] bulkHashcodes = new long[0];
+
+	/** The eviction policy. */
+	private EvictionPolicy evictionPolicy = EvictionPolicy.NONE;
+
+	/** The eviction listener. */
+	private EvictionListener<T> evictionListener = e -> {};
+
+	/** CLOCK reference bit of each entry, allocated with the policy. */
+	private boolean[] referenced;
+
+	/** SAMPLED_LRU logical access time of each entry, allocated with the policy. */
+	private int[] accessTimes;
+
+	/** SAMPLED_LRU logical clock, incremented on every access. */
+	private int accessClock;
+
+	/** CLOCK hand, the rotating starting position within the candidates. */
+	private int clockHand;
+
+	/** The number of entries evicted to make room for new keys. */
+	private long evictionCount;
+
 	/**
 	 * Instantiates a new hash table.
 	 *
 	 * @param entriesCount the total number of hash entries in the table
 	 */
+	public HashTable(int entriesCount) {
+		this(entriesCount, MAX_KEY_SIZE_BYTES);
+	}
+
+	/**
+	 * Instantiates a new hash table with a specific maximum key size. All keys are
+	 * stored in a single off-heap key arena of {@code entriesCount * keyStride}
+	 * bytes.
+	 *
+	 * @param entriesCount the total number of hash entries in the table
+	 * @param keySizeBytes the maximum key size in bytes
+	 */
 	@SuppressWarnings({ "rawtypes",
 			"unchecked" })
-	public HashTable(int entriesCount) {
+	public HashTable(int entriesCount, int keySizeBytes) {
+		if (keySizeBytes <= 0)
+			throw new IllegalArgumentException("invalid key size [%d]".formatted(keySizeBytes));
+
 		this.tableSize = entriesCount;
 		this.table = new HashEntry[entriesCount];
+		this.occupied = new long[(entriesCount + 63) >>> 6];
 		this.tableMask = entriesCount - 1;
 		assert (entriesCount & 1) == 0 : ""
 				+ "hash table size not a power of 2 [%d]".formatted(entriesCount);
 
+		this.keySize = keySizeBytes;
+		this.keyStride = (keySizeBytes + 7) & ~7;
+		this.keyArena = Arena.ofAuto()
+				.allocate((long) entriesCount * keyStride, KEY_ARENA_ALIGNMENT);
+
 		/* Allocate all the entries */
 		IntStream
 				.range(0, entriesCount)
-				.forEach(i -> table[i] = new HashEntry(i));
+				.forEach(i -> table[i] = new HashEntry(this, i, keyArena, (long) i * keyStride, keySizeBytes));
 	}
 
 	/**
@@ -291,16 +704,154 @@ public class HashTable<T> implements KeyedTable<T> {
 	 * @param hashcode the hashcode
 	 * @return the int
 	 */
-	public int add(ByteBuffer key, T data, long hashcode) {
+	public final int add(ByteBuffer key, T data, long hashcode) {
+		return add(MemorySegment.ofBuffer(key), 0, key.remaining(), data, hashcode);
+	}
+
+	/**
+	 * Adds the.
+	 *
+	 * @param key    the key
+	 * @param offset the offset
+	 * @param length the length
+	 * @param data   the data
+	 * @return the int
+	 * @see com.slytechs.jnet.jnetruntime.hash.KeyedTable#add(byte[], int, int,
+	 *      java.lang.Object)
+	 */
+	@Override
+	public final int add(byte[] key, int offset, int length, T data) {
+		return add(MemorySegment.ofArray(key), offset, length, data,
+				hashAlgorithm.calculateHashcode(key, offset, length));
+	}
+
+	/**
+	 * Adds the.
+	 *
+	 * @param key    the key
+	 * @param offset the offset
+	 * @param length the length
+	 * @param data   the data
+	 * @return the int
+	 * @see com.slytechs.jnet.jnetruntime.hash.KeyedTable#add(java.lang.foreign.MemorySegment,
+	 *      long, int, java.lang.Object)
+	 */
+	@Override
+	public final int add(MemorySegment key, long offset, int length, T data) {
+		return add(key, offset, length, data, calculateHashcode(key, offset, length));
+	}
+
+	/**
+	 * Adds a new entry or retrieves an existing entry, using a precomputed
+	 * hashcode. All of the other add variants end up here, subclasses override
+	 * this method to implement their own placement.
+	 *
+	 * @param key      the segment containing the key
+	 * @param offset   the byte offset of the key within the segment
+	 * @param length   the key length in bytes
+	 * @param data     the data
+	 * @param hashcode the hashcode
+	 * @return index of the table entry, or -1 on failure
+	 */
+	public int add(MemorySegment key, long offset, int length, T data, long hashcode) {
 		int index = index(hashcode);
 		HashEntry<T> entry = table[index];
 		if (entry.isEmpty) {
-			return set(index, key, data);
+			index = set(index, key, offset, length, data);
 
-		} else if (matchKeys(entry.key, key))
+		} else if (entry.matchKey(key, offset, length)) {
+			accessed(index);
 			return index;
 
-		return -1;
+		} else if (evictionPolicy != EvictionPolicy.NONE) {
+			evict(index); // The only candidate
+			index = set(index, key, offset, length, data);
+
+		} else {
+			index = -1;
+		}
+
+		return (index == -1) ? insertFailed() : index;
+	}
+
+	/**
+	 * Adds or retrieves existing entries for a burst of keys. The burst is first
+	 * looked up in bulk, see {@link #lookupBulk(ByteBuffer[], long[], int[], int)},
+	 * and only the keys not found are then added one at a time, in order, so
+	 * duplicate keys within the same burst resolve to the same entry.
+	 * <p>
+	 * When an eviction policy is set, adding a missing key may evict an entry
+	 * already resolved earlier in the burst. The staged lookup is then skipped,
+	 * each key is resolved in order with {@link #add(ByteBuffer, Object, long)},
+	 * and keys whose entry was evicted by a later key of the same burst receive
+	 * an index of -1.
+	 * </p>
+	 *
+	 * @param keys      the keys
+	 * @param data      the data for each key, or null to add entries without data
+	 * @param hashcodes the precomputed hashcodes of each key, or null to have them
+	 *                  calculated using the table's hash algorithm
+	 * @param indexes   receives the table index of each key, or -1 if the key
+	 *                  could not be added
+	 * @param count     the number of keys in the burst
+	 * @return the number of keys which have a valid table index
+	 */
+	public final int addBulk(ByteBuffer[] keys, T[] data, long[] hashcodes, int[] indexes, int count) {
+		long[] hashes = bulkHashcodes(keys, hashcodes, count);
+
+		int valid = 0;
+		if (evictionPolicy != EvictionPolicy.NONE) {
+			for (int i = 0; i < count; i++)
+				indexes[i] = add(keys[i], (data == null) ? null : data[i], hashes[i]);
+
+			/* Drop the indexes whose entries were evicted later in the burst */
+			for (int i = 0; i < count; i++) {
+				int index = indexes[i];
+				if (index != -1 && (table[index].isEmpty || !matchKey(index, keys[i])))
+					indexes[i] = -1;
+
+				if (indexes[i] != -1)
+					valid++;
+			}
+
+			return valid;
+		}
+
+		lookupBulkStaged(keys, hashes, indexes, count);
+
+		for (int i = 0; i < count; i++) {
+			if (indexes[i] == -1)
+				indexes[i] = add(keys[i], (data == null) ? null : data[i], hashes[i]);
+			else
+				accessed(indexes[i]);
+
+			if (indexes[i] != -1)
+				valid++;
+		}
+
+		return valid;
+	}
+
+	/**
+	 * Returns the hashcodes for a burst of keys, calculating them into a scratch
+	 * array if they were not supplied by the caller.
+	 *
+	 * @param keys      the keys
+	 * @param hashcodes the precomputed hashcodes or null
+	 * @param count     the number of keys in the burst
+	 * @return the hashcodes
+	 */
+	private long[] bulkHashcodes(ByteBuffer[] keys, long[] hashcodes, int count) {
+		if (hashcodes != null)
+			return hashcodes;
+
+		if (bulkHashcodes.length < count)
+			bulkHashcodes = new long[count];
+
+		for (int i = 0; i < count; i++)
+			bulkHashcodes[i] = calculateHashcode(keys[i]);
+
+		return bulkHashcodes;
 	}
 
 	/**
@@ -310,13 +861,58 @@ public class HashTable<T> implements KeyedTable<T> {
 	 * @return the long
 	 */
 	protected final long calculateHashcode(ByteBuffer key) {
+		int position = key.position();
 		long hash = hashAlgorithm.calculateHashcode(key);
 
-		key.flip();
+		key.position(position); // In case algorithm consumed the key
 
 		return hash;
 	}
 
+	/**
+	 * Calculate hashcode of a key within a memory segment.
+	 *
+	 * @param key    the segment containing the key
+	 * @param offset the byte offset of the key within the segment
+	 * @param length the key length in bytes
+	 * @return the long
+	 */
+	protected final long calculateHashcode(MemorySegment key, long offset, int length) {
+		return hashAlgorithm.calculateHashcode(key, offset, length);
+	}
+
+	/**
+	 * Enables storage of keys longer than the table's key size, in an off-heap
+	 * overflow slab of the given size. The slab is divided into power of 2 sized
+	 * blocks of at least {@value KeyOverflowSlab#MIN_BLOCK_SIZE} bytes, one per
+	 * long key, so a slab should be sized for about twice the expected bytes of
+	 * long keys. When the slab is full, adding another long key fails like an
+	 * add to a full table. Must be enabled before any entries are added.
+	 *
+	 * @param slabSizeBytes the overflow slab size in bytes
+	 * @return the hash table
+	 * @throws IllegalStateException if the table already holds entries or has
+	 *                               key overflow enabled
+	 */
+	public final HashTable<T> enableKeyOverflow(long slabSizeBytes) throws IllegalStateException {
+		if (usedCount != 0 || keyOverflow != null)
+			throw new IllegalStateException("key overflow must be enabled once on an empty table");
+
+		this.keyOverflow = new KeyOverflowSlab(slabSizeBytes);
+
+		return this;
+	}
+
+	/**
+	 * Checks if lookups may run concurrently with a writer thread. The base table
+	 * does not support concurrent readers.
+	 *
+	 * @return true, if lookups may run concurrently with a single writer
+	 */
+	public boolean isConcurrentReaders() {
+		return false;
+	}
+
 	/**
 	 * Enable sticky data mode. Sticky data is persistent across remove calls in
 	 * order to enable reuse of previously set data.
@@ -349,9 +945,7 @@ public class HashTable<T> implements KeyedTable<T> {
 	 * @return the unused entries count
 	 */
 	public long getUnusedEntriesCount() {
-		return Arrays.stream(table)
-				.filter(e -> e.isEmpty)
-				.count();
+		return tableSize - usedCount;
 	}
 
 	/**
@@ -360,56 +954,595 @@ public class HashTable<T> implements KeyedTable<T> {
 	 * @return the used entries count
 	 */
 	public long getUsedEntriesCount() {
-		return Arrays.stream(table)
-				.filter(e -> !e.isEmpty)
-				.count();
+		return usedCount;
 	}
 
 	/**
-	 * Index.
+	 * Records a failed insert, for subclasses which could not find room for a new
+	 * key.
 	 *
-	 * @param hashCode the hash code
-	 * @return the int
+	 * @return always -1, the add failure index
 	 */
-	private int index(long hashCode) {
-		return (int) (hashCode & tableMask);
+	protected final int insertFailed() {
+		failedInsertCount++;
+
+		return -1;
 	}
 
 	/**
-	 * Lookup.
+	 * Records an access to an entry for the eviction policy, setting its CLOCK
+	 * reference bit or its SAMPLED_LRU access time. Called on every insertion and
+	 * every successful lookup.
 	 *
-	 * @param key the key
-	 * @return the int
-	 * @see com.slytechs.jnet.jnetruntime.hash.KeyedTable#lookup(java.nio.ByteBuffer)
+	 * @param index the entry index
 	 */
-	@Override
-	public final int lookup(ByteBuffer key) {
-		return lookup(key, calculateHashcode(key));
+	protected final void accessed(int index) {
+		switch (evictionPolicy) {
+		case CLOCK -> referenced[index] = true;
+		case SAMPLED_LRU -> accessTimes[index] = ++accessClock;
+		case NONE -> {}
+		}
 	}
 
 	/**
-	 * Lookup.
+	 * Gets the eviction policy.
 	 *
-	 * @param key      the key
-	 * @param hashcode the hashcode
-	 * @return the int
+	 * @return the eviction policy
 	 */
-	public int lookup(ByteBuffer key, long hashcode) {
-		int index = index(hashcode);
-		HashEntry<T> entry = table[index];
-
-		if (!entry.isEmpty && matchKeys(entry.key, key))
-			return index;
-
-		return -1;
+	public EvictionPolicy evictionPolicy() {
+		return evictionPolicy;
 	}
 
 	/**
-	 * Removes the.
+	 * Checks if an eviction policy other than {@link EvictionPolicy#NONE} is set.
 	 *
-	 * @param key the key
-	 * @return true, if successful
-	 * @see com.slytechs.jnet.jnetruntime.hash.KeyedTable#remove(java.nio.ByteBuffer)
+	 * @return true, if full tables evict entries to make room for new keys
+	 */
+	protected final boolean isEvictionEnabled() {
+		return evictionPolicy != EvictionPolicy.NONE;
+	}
+
+	/**
+	 * Selects a victim among the candidate entries a new key could occupy,
+	 * according to the eviction policy.
+	 *
+	 * @param candidates the used candidate entry indexes
+	 * @param count      the number of candidates
+	 * @return the victim entry index
+	 */
+	protected final int selectVictim(int[] candidates, int count) {
+		if (evictionPolicy == EvictionPolicy.SAMPLED_LRU) {
+			int victim = candidates[0];
+			int oldestAge = accessClock - accessTimes[victim];
+
+			for (int i = 1; i < count; i++) {
+				int age = accessClock - accessTimes[candidates[i]]; // Wraps safely
+				if (Integer.compareUnsigned(age, oldestAge) > 0) {
+					victim = candidates[i];
+					oldestAge = age;
+				}
+			}
+
+			return victim;
+		}
+
+		/* CLOCK - at most a single pass clearing bits, then the hand's start wins */
+		int start = Integer.remainderUnsigned(clockHand++, count);
+		for (int i = 0; i < count; i++) {
+			int candidate = candidates[(start + i) % count];
+			if (!referenced[candidate])
+				return candidate;
+
+			referenced[candidate] = false;
+		}
+
+		return candidates[start];
+	}
+
+	/**
+	 * Evicts an entry, notifying the eviction listener before the entry is
+	 * removed by {@link #remove(int)}.
+	 *
+	 * @param index the entry index
+	 */
+	protected final void evict(int index) {
+		evicting(index);
+		remove(index);
+	}
+
+	/**
+	 * Counts an eviction and notifies the eviction listener, for subclasses which
+	 * remove the victim entry themselves.
+	 *
+	 * @param index the victim entry index, not yet removed
+	 */
+	protected final void evicting(int index) {
+		evictionCount++;
+		evictionListener.onEvicted(table[index]);
+	}
+
+	/**
+	 * Sets the eviction policy applied when a new key finds no free entry. See
+	 * {@link EvictionPolicy} for the candidate entries considered by each table.
+	 *
+	 * @param newPolicy the new eviction policy
+	 * @return the hash table
+	 * @throws IllegalStateException if an eviction policy is set while concurrent
+	 *                               readers are enabled, since lookups would
+	 *                               update the policy's access state from reader
+	 *                               threads
+	 */
+	public HashTable<T> setEvictionPolicy(EvictionPolicy newPolicy) throws IllegalStateException {
+		Objects.requireNonNull(newPolicy, "newPolicy");
+		if (newPolicy != EvictionPolicy.NONE && isConcurrentReaders())
+			throw new IllegalStateException("eviction policy %s not supported with concurrent readers"
+					.formatted(newPolicy));
+
+		this.evictionPolicy = newPolicy;
+		this.referenced = (newPolicy == EvictionPolicy.CLOCK) ? new boolean[tableSize] : null;
+		this.accessTimes = (newPolicy == EvictionPolicy.SAMPLED_LRU) ? new int[tableSize] : null;
+
+		return this;
+	}
+
+	/**
+	 * Sets the listener notified of each entry evicted by the eviction policy.
+	 *
+	 * @param newListener the new eviction listener
+	 * @return the hash table
+	 */
+	public HashTable<T> setEvictionListener(EvictionListener<T> newListener) {
+		this.evictionListener = Objects.requireNonNull(newListener, "newListener");
+
+		return this;
+	}
+
+	/**
+	 * Number of existing entries relocated to make room for new ones. The base
+	 * table never relocates entries.
+	 *
+	 * @return the kick count
+	 */
+	protected long kickCount() {
+		return 0;
+	}
+
+	/**
+	 * Collects the probe length histogram, see
+	 * {@link HashTableStats#probeLengthHistogram()}. Every used entry of the base
+	 * table is at its home position.
+	 *
+	 * @return a new probe length histogram
+	 */
+	protected long[] probeLengthHistogram() {
+		return new long[] { usedCount };
+	}
+
+	/**
+	 * Collects the bucket fill histogram, see
+	 * {@link HashTableStats#bucketFillHistogram()}. Every entry of the base table
+	 * is a single entry bucket.
+	 *
+	 * @return a new bucket fill histogram
+	 */
+	protected long[] bucketFillHistogram() {
+		return new long[] { tableSize - usedCount, usedCount };
+	}
+
+	/**
+	 * Takes a snapshot of the table's load statistics. The occupancy and counters
+	 * are maintained live and cost nothing to read, while the histograms are
+	 * collected by a scan of the table's primitive arrays.
+	 *
+	 * @return the hash table stats
+	 */
+	public HashTableStats stats() {
+		return new HashTableStats(tableSize, usedCount, failedInsertCount, evictionCount, kickCount(),
+				probeLengthHistogram(), bucketFillHistogram());
+	}
+
+	/**
+	 * Size in bytes of the table's layout arrays within a snapshot. The base table
+	 * places each entry at its home index and has no layout arrays.
+	 *
+	 * @return the snapshot layout size in bytes
+	 */
+	protected long snapshotLayoutSize() {
+		return 0;
+	}
+
+	/**
+	 * Copies the table's layout arrays, such as bucket signatures, into a
+	 * snapshot.
+	 *
+	 * @param dst    the snapshot segment
+	 * @param offset the byte offset of the layout section
+	 */
+	protected void snapshotLayout(MemorySegment dst, long offset) {
+	}
+
+	/**
+	 * Restores the table's layout arrays from a snapshot, and recomputes any
+	 * counters derived from them.
+	 *
+	 * @param src    the snapshot segment
+	 * @param offset the byte offset of the layout section
+	 */
+	protected void restoreLayout(MemorySegment src, long offset) {
+	}
+
+	/**
+	 * Bulk copies an int array to a snapshot segment.
+	 *
+	 * @param array  the array
+	 * @param dst    the snapshot segment
+	 * @param offset the byte offset within the segment
+	 * @return the byte offset following the copied array
+	 */
+	protected static long copyTo(int[] array, MemorySegment dst, long offset) {
+		long bytes = (long) array.length * Integer.BYTES;
+		MemorySegment.copy(MemorySegment.ofArray(array), 0, dst, offset, bytes);
+
+		return offset + bytes;
+	}
+
+	/**
+	 * Bulk copies a short array to a snapshot segment.
+	 *
+	 * @param array  the array
+	 * @param dst    the snapshot segment
+	 * @param offset the byte offset within the segment
+	 * @return the byte offset following the copied array
+	 */
+	protected static long copyTo(short[] array, MemorySegment dst, long offset) {
+		long bytes = (long) array.length * Short.BYTES;
+		MemorySegment.copy(MemorySegment.ofArray(array), 0, dst, offset, bytes);
+
+		return offset + bytes;
+	}
+
+	/**
+	 * Bulk copies an int array from a snapshot segment.
+	 *
+	 * @param src    the snapshot segment
+	 * @param offset the byte offset within the segment
+	 * @param array  the array
+	 * @return the byte offset following the copied array
+	 */
+	protected static long copyFrom(MemorySegment src, long offset, int[] array) {
+		long bytes = (long) array.length * Integer.BYTES;
+		MemorySegment.copy(src, offset, MemorySegment.ofArray(array), 0, bytes);
+
+		return offset + bytes;
+	}
+
+	/**
+	 * Bulk copies a short array from a snapshot segment.
+	 *
+	 * @param src    the snapshot segment
+	 * @param offset the byte offset within the segment
+	 * @param array  the array
+	 * @return the byte offset following the copied array
+	 */
+	protected static long copyFrom(MemorySegment src, long offset, short[] array) {
+		long bytes = (long) array.length * Short.BYTES;
+		MemorySegment.copy(src, offset, MemorySegment.ofArray(array), 0, bytes);
+
+		return offset + bytes;
+	}
+
+	/**
+	 * Identifies the table's type and hash algorithm, by hashing the class name
+	 * and a fixed probe key. A snapshot only restores into a table of the same
+	 * type, configuration and hash algorithm.
+	 *
+	 * @return the snapshot fingerprint
+	 */
+	private long snapshotFingerprint() {
+		return hashAlgorithm.calculateHashcode(SNAPSHOT_PROBE_KEY, 0, SNAPSHOT_PROBE_KEY.length)
+				^ getClass().getName().hashCode();
+	}
+
+	/**
+	 * Snapshots only cover the key arena, not the key overflow slab.
+	 *
+	 * @throws UnsupportedOperationException if key overflow is enabled
+	 */
+	private void checkSnapshotSupported() throws UnsupportedOperationException {
+		if (keyOverflow != null)
+			throw new UnsupportedOperationException("snapshot of a table with key overflow");
+	}
+
+	/**
+	 * Saves the table's contents to a memory-mapped snapshot file, replacing the
+	 * file if it exists. The file holds a copy of the key arena, each entry's key
+	 * length, each entry's data record encoded by the codec and the table's
+	 * layout arrays, in native byte order.
+	 *
+	 * @param file  the snapshot file
+	 * @param codec the codec encoding each used entry's data
+	 * @throws IOException                   Signals that an I/O exception has
+	 *                                       occurred.
+	 * @throws UnsupportedOperationException if key overflow is enabled
+	 */
+	public void snapshot(Path file, SnapshotCodec<T> codec) throws IOException {
+		checkSnapshotSupported();
+
+		int dataSize = codec.dataSize();
+		long layoutSize = snapshotLayoutSize();
+		long arenaOffset = SNAPSHOT_HEADER_SIZE;
+		long lengthsOffset = arenaOffset + keyArena.byteSize();
+		long dataOffset = lengthsOffset + (long) tableSize * Integer.BYTES;
+		long layoutOffset = dataOffset + (long) tableSize * dataSize;
+
+		try (var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+				var arena = Arena.ofConfined()) {
+
+			MemorySegment mapped = channel.map(MapMode.READ_WRITE, 0, layoutOffset + layoutSize, arena);
+
+			mapped.set(SNAPSHOT_LONG, 0, SNAPSHOT_MAGIC);
+			mapped.set(SNAPSHOT_INT, 8, SNAPSHOT_VERSION);
+			mapped.set(SNAPSHOT_INT, 12, tableSize);
+			mapped.set(SNAPSHOT_INT, 16, keyStride);
+			mapped.set(SNAPSHOT_INT, 20, dataSize);
+			mapped.set(SNAPSHOT_INT, 24, usedCount);
+			mapped.set(SNAPSHOT_LONG, 32, snapshotFingerprint());
+			mapped.set(SNAPSHOT_LONG, 40, layoutSize);
+
+			MemorySegment.copy(keyArena, 0, mapped, arenaOffset, keyArena.byteSize());
+
+			for (int i = 0; i < tableSize; i++) {
+				HashEntry<T> entry = table[i];
+				int length = entry.isEmpty ? -1 : entry.keyLength;
+
+				mapped.set(SNAPSHOT_INT, lengthsOffset + (long) i * Integer.BYTES, length);
+
+				if (!entry.isEmpty && dataSize > 0)
+					codec.encode(entry.data, mapped, dataOffset + (long) i * dataSize);
+			}
+
+			snapshotLayout(mapped, layoutOffset);
+			mapped.force();
+		}
+	}
+
+	/**
+	 * Replaces the table's contents with those of a snapshot file. The snapshot
+	 * must have been taken by a table of the same type, size, key size and hash
+	 * algorithm. Entry indexes are preserved, while eviction state is reset and
+	 * all restored entries start out as equally recently used. The table must not
+	 * be accessed concurrently while it is being restored.
+	 *
+	 * @param file  the snapshot file
+	 * @param codec the codec decoding each used entry's data
+	 * @throws IOException                   Signals that an I/O exception has
+	 *                                       occurred, or the file is not a
+	 *                                       compatible snapshot
+	 * @throws UnsupportedOperationException if key overflow is enabled
+	 */
+	public void restore(Path file, SnapshotCodec<T> codec) throws IOException {
+		checkSnapshotSupported();
+
+		try (var channel = FileChannel.open(file, StandardOpenOption.READ);
+				var arena = Arena.ofConfined()) {
+
+			MemorySegment mapped = channel.map(MapMode.READ_ONLY, 0, channel.size(), arena);
+			if (mapped.byteSize() < SNAPSHOT_HEADER_SIZE
+					|| mapped.get(SNAPSHOT_LONG, 0) != SNAPSHOT_MAGIC
+					|| mapped.get(SNAPSHOT_INT, 8) != SNAPSHOT_VERSION)
+				throw new IOException("not a hash table snapshot [%s]".formatted(file));
+
+			int dataSize = mapped.get(SNAPSHOT_INT, 20);
+			long layoutSize = mapped.get(SNAPSHOT_LONG, 40);
+
+			if (mapped.get(SNAPSHOT_INT, 12) != tableSize
+					|| mapped.get(SNAPSHOT_INT, 16) != keyStride
+					|| mapped.get(SNAPSHOT_LONG, 32) != snapshotFingerprint()
+					|| layoutSize != snapshotLayoutSize())
+				throw new IOException("snapshot does not match table configuration [%s]".formatted(file));
+
+			if (dataSize != codec.dataSize())
+				throw new IOException("snapshot data size mismatch [%d != %d]"
+						.formatted(dataSize, codec.dataSize()));
+
+			long arenaOffset = SNAPSHOT_HEADER_SIZE;
+			long lengthsOffset = arenaOffset + keyArena.byteSize();
+			long dataOffset = lengthsOffset + (long) tableSize * Integer.BYTES;
+			long layoutOffset = dataOffset + (long) tableSize * dataSize;
+
+			if (mapped.byteSize() != layoutOffset + layoutSize)
+				throw new IOException("truncated hash table snapshot [%s]".formatted(file));
+
+			MemorySegment.copy(mapped, arenaOffset, keyArena, 0, keyArena.byteSize());
+
+			int used = 0;
+			for (int i = 0; i < tableSize; i++) {
+				HashEntry<T> entry = table[i];
+				int length = mapped.get(SNAPSHOT_INT, lengthsOffset + (long) i * Integer.BYTES);
+
+				entry.isEmpty = (length < 0);
+				if (length < 0)
+					occupied[i >>> 6] &= ~(1L << i);
+				else
+					occupied[i >>> 6] |= 1L << i;
+				entry.keyLength = Math.max(length, 0);
+				entry.data = (length < 0 || dataSize == 0)
+						? (stickyData ? entry.data : null)
+						: codec.decode(mapped, dataOffset + (long) i * dataSize);
+
+				if (length >= 0)
+					used++;
+			}
+
+			this.usedCount = used;
+			restoreLayout(mapped, layoutOffset);
+
+			if (referenced != null)
+				Arrays.fill(referenced, false);
+			if (accessTimes != null)
+				Arrays.fill(accessTimes, accessClock);
+		}
+	}
+
+	/**
+	 * Index.
+	 *
+	 * @param hashCode the hash code
+	 * @return the int
+	 */
+	private int index(long hashCode) {
+		return (int) (hashCode & tableMask);
+	}
+
+	/**
+	 * Lookup.
+	 *
+	 * @param key the key
+	 * @return the int
+	 * @see com.slytechs.jnet.jnetruntime.hash.KeyedTable#lookup(java.nio.ByteBuffer)
+	 */
+	@Override
+	public final int lookup(ByteBuffer key) {
+		return lookup(key, calculateHashcode(key));
+	}
+
+	/**
+	 * Lookup.
+	 *
+	 * @param key      the key
+	 * @param hashcode the hashcode
+	 * @return the int
+	 */
+	public final int lookup(ByteBuffer key, long hashcode) {
+		return lookup(MemorySegment.ofBuffer(key), 0, key.remaining(), hashcode);
+	}
+
+	/**
+	 * Lookup.
+	 *
+	 * @param key    the key
+	 * @param offset the offset
+	 * @param length the length
+	 * @return the int
+	 * @see com.slytechs.jnet.jnetruntime.hash.KeyedTable#lookup(byte[], int, int)
+	 */
+	@Override
+	public final int lookup(byte[] key, int offset, int length) {
+		return lookup(MemorySegment.ofArray(key), offset, length,
+				hashAlgorithm.calculateHashcode(key, offset, length));
+	}
+
+	/**
+	 * Lookup.
+	 *
+	 * @param key    the key
+	 * @param offset the offset
+	 * @param length the length
+	 * @return the int
+	 * @see com.slytechs.jnet.jnetruntime.hash.KeyedTable#lookup(java.lang.foreign.MemorySegment,
+	 *      long, int)
+	 */
+	@Override
+	public final int lookup(MemorySegment key, long offset, int length) {
+		return lookup(key, offset, length, calculateHashcode(key, offset, length));
+	}
+
+	/**
+	 * Looks up an entry using a precomputed hashcode. All of the other lookup
+	 * variants end up here, subclasses override this method to implement their
+	 * own probe sequence.
+	 *
+	 * @param key      the segment containing the key
+	 * @param offset   the byte offset of the key within the segment
+	 * @param length   the key length in bytes
+	 * @param hashcode the hashcode
+	 * @return index of the table entry, or -1 if not found
+	 */
+	public int lookup(MemorySegment key, long offset, int length, long hashcode) {
+		int index = index(hashcode);
+		HashEntry<T> entry = table[index];
+
+		if (!entry.isEmpty && entry.matchKey(key, offset, length)) {
+			accessed(index);
+			return index;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Looks up a burst of keys at once. Instead of hashing, fetching and comparing
+	 * each key in turn, every stage of the lookup is applied to the whole burst
+	 * before moving on to the next stage. The memory loads issued by each stage
+	 * are independent of each other, which allows the CPU to overlap their
+	 * latencies instead of stalling on each key.
+	 *
+	 * @param keys      the keys
+	 * @param hashcodes the precomputed hashcodes of each key, or null to have them
+	 *                  calculated using the table's hash algorithm
+	 * @param indexes   receives the table index of each key, or -1 if not found
+	 * @param count     the number of keys in the burst
+	 * @return the number of keys found
+	 * @throws IllegalStateException if hashcodes is null while concurrent readers
+	 *                               are enabled, since the scratch space used to
+	 *                               calculate them is not shared between threads
+	 */
+	public final int lookupBulk(ByteBuffer[] keys, long[] hashcodes, int[] indexes, int count)
+			throws IllegalStateException {
+		if (hashcodes == null && isConcurrentReaders())
+			throw new IllegalStateException("bulk lookups require precomputed hashcodes with concurrent readers");
+
+		int found = lookupBulkStaged(keys, bulkHashcodes(keys, hashcodes, count), indexes, count);
+
+		if (evictionPolicy != EvictionPolicy.NONE)
+			for (int i = 0; i < count; i++)
+				if (indexes[i] != -1)
+					accessed(indexes[i]);
+
+		return found;
+	}
+
+	/**
+	 * Looks up a burst of keys, whose hashcodes have already been calculated, one
+	 * stage at a time. Subclasses override this method to stage their own probe
+	 * sequence.
+	 *
+	 * @param keys      the keys
+	 * @param hashcodes the hashcodes of each key
+	 * @param indexes   receives the table index of each key, or -1 if not found
+	 * @param count     the number of keys in the burst
+	 * @return the number of keys found
+	 */
+	protected int lookupBulkStaged(ByteBuffer[] keys, long[] hashcodes, int[] indexes, int count) {
+
+		/* Stage 1 - load each key's entry state */
+		for (int i = 0; i < count; i++) {
+			int index = index(hashcodes[i]);
+			indexes[i] = table[index].isEmpty ? -1 : index;
+		}
+
+		/* Stage 2 - compare keys of occupied entries */
+		int found = 0;
+		for (int i = 0; i < count; i++) {
+			if (indexes[i] == -1)
+				continue;
+
+			if (matchKey(indexes[i], keys[i]))
+				found++;
+			else
+				indexes[i] = -1;
+		}
+
+		return found;
+	}
+
+	/**
+	 * Removes the.
+	 *
+	 * @param key the key
+	 * @return true, if successful
+	 * @see com.slytechs.jnet.jnetruntime.hash.KeyedTable#remove(java.nio.ByteBuffer)
 	 */
 	@Override
 	public final boolean remove(ByteBuffer key) {
@@ -423,17 +1556,58 @@ public class HashTable<T> implements KeyedTable<T> {
 	 * @param hashcode the hashcode
 	 * @return true, if successful
 	 */
-	public boolean remove(ByteBuffer key, long hashcode) {
-		int index = index(hashcode);
-		HashEntry<T> entry = table[index];
+	public final boolean remove(ByteBuffer key, long hashcode) {
+		return remove(MemorySegment.ofBuffer(key), 0, key.remaining(), hashcode);
+	}
 
-		if (!entry.isEmpty && matchKeys(entry.key, key)) {
-			remove(index);
+	/**
+	 * Removes the.
+	 *
+	 * @param key    the key
+	 * @param offset the offset
+	 * @param length the length
+	 * @return true, if successful
+	 * @see com.slytechs.jnet.jnetruntime.hash.KeyedTable#remove(byte[], int, int)
+	 */
+	@Override
+	public final boolean remove(byte[] key, int offset, int length) {
+		return remove(MemorySegment.ofArray(key), offset, length,
+				hashAlgorithm.calculateHashcode(key, offset, length));
+	}
 
-			return true;
-		}
+	/**
+	 * Removes the.
+	 *
+	 * @param key    the key
+	 * @param offset the offset
+	 * @param length the length
+	 * @return true, if successful
+	 * @see com.slytechs.jnet.jnetruntime.hash.KeyedTable#remove(java.lang.foreign.MemorySegment,
+	 *      long, int)
+	 */
+	@Override
+	public final boolean remove(MemorySegment key, long offset, int length) {
+		return remove(key, offset, length, calculateHashcode(key, offset, length));
+	}
 
-		return false;
+	/**
+	 * Removes an entry using a precomputed hashcode. All of the other remove
+	 * variants end up here.
+	 *
+	 * @param key      the segment containing the key
+	 * @param offset   the byte offset of the key within the segment
+	 * @param length   the key length in bytes
+	 * @param hashcode the hashcode
+	 * @return true, if entry was found and removed, otherwise false
+	 */
+	public boolean remove(MemorySegment key, long offset, int length, long hashcode) {
+		int index = lookup(key, offset, length, hashcode);
+		if (index == -1)
+			return false;
+
+		remove(index);
+
+		return true;
 	}
 
 	/**
@@ -443,6 +1617,7 @@ public class HashTable<T> implements KeyedTable<T> {
 	 */
 	protected void remove(int index) {
 		table[index].setEmpty(true);
+		table[index].releaseOverflow();
 		if (!stickyData)
 			table[index].setData(null);
 	}
@@ -456,14 +1631,39 @@ public class HashTable<T> implements KeyedTable<T> {
 	 * @return the int
 	 */
 	protected final int set(int index, ByteBuffer key, T data) {
+		return set(index, MemorySegment.ofBuffer(key), 0, key.remaining(), data);
+	}
+
+	/**
+	 * Sets the key and data of the entry at the specified index and marks it as
+	 * used.
+	 *
+	 * @param index  the index
+	 * @param key    the segment containing the key
+	 * @param offset the byte offset of the key within the segment
+	 * @param length the key length in bytes
+	 * @param data   the data
+	 * @return the index, or -1 if the key did not fit in the key overflow slab
+	 * @throws IllegalArgumentException if the key is larger than the key size and
+	 *                                  key overflow is not enabled
+	 */
+	protected final int set(int index, MemorySegment key, long offset, int length, T data) {
 		HashEntry<T> hashEntry = table[index];
 
-		hashEntry.setKey(key);
+		if (!hashEntry.storeKey(key, offset, length))
+			return -1;
+
 		hashEntry.setEmpty(false);
 
 		if (!stickyData || data != null)
 			hashEntry.setData(data);
 
+		/* New entries start without a CLOCK reference bit, so a scan evicts itself first */
+		if (evictionPolicy == EvictionPolicy.CLOCK)
+			referenced[index] = false;
+		else
+			accessed(index);
+
 		return index;
 	}
 
@@ -479,6 +1679,101 @@ public class HashTable<T> implements KeyedTable<T> {
 		return this;
 	}
 
+	/**
+	 * Gets the maximum key size in bytes this table was configured with.
+	 *
+	 * @return the key size in bytes
+	 */
+	public int keySize() {
+		return keySize;
+	}
+
+	/**
+	 * Gets the bytes of the key overflow slab in use by long keys.
+	 *
+	 * @return the used overflow bytes, or 0 if key overflow is not enabled
+	 */
+	public long keyOverflowUsed() {
+		return (keyOverflow == null) ? 0 : keyOverflow.usedBytes();
+	}
+
+	/**
+	 * Match the key stored in the entry at the specified index against the key
+	 * bytes between the buffer's position and limit.
+	 *
+	 * @param index the hash table index
+	 * @param key   the key to match
+	 * @return true, if the keys match
+	 */
+	protected final boolean matchKey(int index, ByteBuffer key) {
+		return table[index].matchKey(key);
+	}
+
+	/**
+	 * Match the key stored in the entry at the specified index against a key
+	 * within a memory segment.
+	 *
+	 * @param index  the hash table index
+	 * @param key    the segment containing the key
+	 * @param offset the byte offset of the key within the segment
+	 * @param length the key length in bytes
+	 * @return true, if the keys match
+	 */
+	protected final boolean matchKey(int index, MemorySegment key, long offset, int length) {
+		return table[index].matchKey(key, offset, length);
+	}
+
+	/**
+	 * Checks if a key matches the key stored at an index only with its endpoints
+	 * swapped, that is the key travels in the reverse direction of the key which
+	 * created the entry. Always false unless a symmetric key layout is set.
+	 *
+	 * @param index the hash table index, as returned by a lookup of the key
+	 * @param key   the key
+	 * @return true, if the key is the reverse direction of the stored key
+	 */
+	public final boolean isReverseMatch(int index, ByteBuffer key) {
+		return isReverseMatch(index, MemorySegment.ofBuffer(key), 0, key.remaining());
+	}
+
+	/**
+	 * Checks if a key matches the key stored at an index only with its endpoints
+	 * swapped, that is the key travels in the reverse direction of the key which
+	 * created the entry. Always false unless a symmetric key layout is set.
+	 *
+	 * @param index  the hash table index, as returned by a lookup of the key
+	 * @param key    the segment containing the key
+	 * @param offset the byte offset of the key within the segment
+	 * @param length the key length in bytes
+	 * @return true, if the key is the reverse direction of the stored key
+	 */
+	public final boolean isReverseMatch(int index, MemorySegment key, long offset, int length) {
+		if (symmetricLayout == null)
+			return false;
+
+		HashEntry<T> entry = table[index];
+
+		return symmetricLayout.match(entry.keyBase(), entry.keyBaseOffset(), entry.keyLength, key, offset, length)
+				== SymmetricKeyLayout.REVERSE;
+	}
+
+	/**
+	 * Sets a symmetric flow key layout, under which both directions of a flow hash
+	 * to and match the same entry. The layout also becomes the table's hash
+	 * algorithm, replacing any previously set algorithm. Must be set before any
+	 * entries are added.
+	 *
+	 * @param newLayout the new layout, or null to restore order sensitive keys
+	 *                  hashed with the default algorithm
+	 * @return the hash table
+	 */
+	public final HashTable<T> setSymmetricKeyLayout(SymmetricKeyLayout newLayout) {
+		this.symmetricLayout = newLayout;
+		this.hashAlgorithm = (newLayout == null) ? HashAlgorithms.xxHash64() : newLayout;
+
+		return this;
+	}
+
 	/**
 	 * Size.
 	 *
@@ -488,6 +1783,67 @@ public class HashTable<T> implements KeyedTable<T> {
 		return tableSize;
 	}
 
+	/**
+	 * Performs an action on the index of each used entry, in index order. The used
+	 * entries are found in the table's occupancy bitmap, 64 entries per word, so
+	 * runs of empty entries are skipped without reading them. The table must not
+	 * be modified by the action.
+	 *
+	 * @param action the action receiving each used entry's index
+	 */
+	public final void forEachOccupied(IntConsumer action) {
+		for (int w = 0; w < occupied.length; w++) {
+			for (long bits = occupied[w]; bits != 0; bits &= bits - 1)
+				action.accept((w << 6) | Long.numberOfTrailingZeros(bits));
+		}
+	}
+
+	/**
+	 * Creates a spliterator over the used entries. The spliterator splits the
+	 * table's index range in halves, down to 1024 entries, and reports the exact
+	 * number of used entries in each part by counting bits in the occupancy
+	 * bitmap, so parallel streams and fork-join tasks can balance the work across
+	 * cores. The table must not be modified while the spliterator is in use.
+	 *
+	 * @return the spliterator, {@link Spliterator#SIZED SIZED} and
+	 *         {@link Spliterator#SUBSIZED SUBSIZED}
+	 */
+	public final Spliterator<Entry<T>> spliteratorOccupied() {
+		return new OccupiedSpliterator(0, tableSize, usedCount);
+	}
+
+	/**
+	 * Stream of the used entries, which may be made parallel. See
+	 * {@link #spliteratorOccupied()}.
+	 *
+	 * @return the entry stream
+	 */
+	public final Stream<Entry<T>> streamOccupied() {
+		return StreamSupport.stream(spliteratorOccupied(), false);
+	}
+
+	/**
+	 * Counts the used entries within an index range.
+	 *
+	 * @param from the first index
+	 * @param to   the index after the last
+	 * @return the number of used entries
+	 */
+	private int countOccupied(int from, int to) {
+		int count = 0;
+
+		for (int i = from; i < to; i = (i | 63) + 1) {
+			long bits = occupied[i >>> 6] & (-1L << i);
+
+			if (to - (i & ~63) < 64)
+				bits &= (1L << to) - 1;
+
+			count += Long.bitCount(bits);
+		}
+
+		return count;
+	}
+
 	/**
 	 * Fills every hash table entry with the data value supplied by the factory.
 	 * Allows initialization of the the table. All of the filled entries remain
@@ -506,7 +1862,8 @@ public class HashTable<T> implements KeyedTable<T> {
 	}
 
 	/**
-	 * Stream all the hash table entries.
+	 * Stream all the hash table entries, including the empty ones. See
+	 * {@link #streamOccupied()} for a stream of the used entries only.
 	 *
 	 * @return the entry stream
 	 */
@@ -552,7 +1909,142 @@ public class HashTable<T> implements KeyedTable<T> {
 	}
 
 	/**
-	 * Iterator.
+	 * Spliterator over the used entries within an index range, using the
+	 * occupancy bitmap to skip empty entries and to size each split exactly.
+	 */
+	private final class OccupiedSpliterator implements Spliterator<Entry<T>> {
+
+		/** The smallest index range split off. */
+		private static final int MIN_SPLIT = 1024;
+
+		/** The next index. */
+		private int index;
+
+		/** The index after the last. */
+		private final int fence;
+
+		/** The number of used entries not yet traversed. */
+		private long remaining;
+
+		/**
+		 * Instantiates a new occupied spliterator.
+		 *
+		 * @param index     the first index
+		 * @param fence     the index after the last
+		 * @param remaining the number of used entries in the range
+		 */
+		OccupiedSpliterator(int index, int fence, long remaining) {
+			this.index = index;
+			this.fence = fence;
+			this.remaining = remaining;
+		}
+
+		/**
+		 * Characteristics.
+		 *
+		 * @return the int
+		 * @see java.util.Spliterator#characteristics()
+		 */
+		@Override
+		public int characteristics() {
+			return SIZED | SUBSIZED | ORDERED | DISTINCT | NONNULL;
+		}
+
+		/**
+		 * Estimate size.
+		 *
+		 * @return the long
+		 * @see java.util.Spliterator#estimateSize()
+		 */
+		@Override
+		public long estimateSize() {
+			return remaining;
+		}
+
+		/**
+		 * For each remaining.
+		 *
+		 * @param action the action
+		 * @see java.util.Spliterator#forEachRemaining(java.util.function.Consumer)
+		 */
+		@Override
+		public void forEachRemaining(Consumer<? super Entry<T>> action) {
+			int i = index;
+
+			while (i < fence) {
+				long bits = occupied[i >>> 6] & (-1L << i);
+				int wordEnd = Math.min((i | 63) + 1, fence);
+
+				for (; bits != 0; bits &= bits - 1) {
+					int next = (i & ~63) | Long.numberOfTrailingZeros(bits);
+					if (next >= wordEnd)
+						break;
+
+					action.accept(table[next]);
+				}
+
+				i = wordEnd;
+			}
+
+			index = fence;
+			remaining = 0;
+		}
+
+		/**
+		 * Try advance.
+		 *
+		 * @param action the action
+		 * @return true, if successful
+		 * @see java.util.Spliterator#tryAdvance(java.util.function.Consumer)
+		 */
+		@Override
+		public boolean tryAdvance(Consumer<? super Entry<T>> action) {
+			for (int i = index; i < fence; i = (i | 63) + 1) {
+				long bits = occupied[i >>> 6] & (-1L << i);
+				if (bits == 0)
+					continue;
+
+				int next = (i & ~63) | Long.numberOfTrailingZeros(bits);
+				if (next >= fence)
+					break;
+
+				index = next + 1;
+				remaining--;
+				action.accept(table[next]);
+
+				return true;
+			}
+
+			index = fence;
+
+			return false;
+		}
+
+		/**
+		 * Splits off the first half of the remaining index range, on a bitmap word
+		 * boundary.
+		 *
+		 * @return the spliterator
+		 * @see java.util.Spliterator#trySplit()
+		 */
+		@Override
+		public Spliterator<Entry<T>> trySplit() {
+			int mid = ((index + fence) >>> 1) & ~63;
+			if (mid - index < MIN_SPLIT)
+				return null;
+
+			int count = countOccupied(index, mid);
+			var prefix = new OccupiedSpliterator(index, mid, count);
+
+			index = mid;
+			remaining -= count;
+
+			return prefix;
+		}
+	}
+
+	/**
+	 * Iterator over all the hash table entries, including the empty ones.
 	 *
 	 * @return the iterator
 	 * @see java.lang.Iterable#iterator()
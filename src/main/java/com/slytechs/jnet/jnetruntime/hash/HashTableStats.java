@@ -0,0 +1,219 @@
+/*
+ * Sly Technologies Free License
+ *
+ * Copyright 2024 Sly Technologies Inc.
+ *
+ * Licensed under the Sly Technologies Free License (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.slytechs.com/free-license-text
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.slytechs.jnet.jnetruntime.hash;
+
+import java.util.Arrays;
+
+/**
+ * An immutable snapshot of a hash table's load statistics.
+ * <p>
+ * The occupancy, failed insert and kick counters are maintained live by the
+ * table and are copied in constant time. The probe length and bucket fill
+ * histograms are collected when the snapshot is taken, by scanning the table's
+ * compact primitive arrays without touching any of the entry objects.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ * @see HashTable#stats()
+ */
+public final class HashTableStats {
+
+	/** The table size. */
+	private final int tableSize;
+
+	/** The used entries count. */
+	private final long usedCount;
+
+	/** The failed insert count. */
+	private final long failedInsertCount;
+
+	/** The eviction count. */
+	private final long evictionCount;
+
+	/** The kick count. */
+	private final long kickCount;
+
+	/** The probe length histogram. */
+	private final long[] probeLengthHistogram;
+
+	/** The bucket fill histogram. */
+	private final long[] bucketFillHistogram;
+
+	/**
+	 * Instantiates a new hash table stats snapshot.
+	 *
+	 * @param tableSize            the table size
+	 * @param usedCount            the used entries count
+	 * @param failedInsertCount    the failed insert count
+	 * @param evictionCount        the eviction count
+	 * @param kickCount            the kick count
+	 * @param probeLengthHistogram the probe length histogram
+	 * @param bucketFillHistogram  the bucket fill histogram
+	 */
+	HashTableStats(int tableSize, long usedCount, long failedInsertCount, long evictionCount,
+			long kickCount, long[] probeLengthHistogram, long[] bucketFillHistogram) {
+		this.tableSize = tableSize;
+		this.usedCount = usedCount;
+		this.failedInsertCount = failedInsertCount;
+		this.evictionCount = evictionCount;
+		this.kickCount = kickCount;
+		this.probeLengthHistogram = probeLengthHistogram;
+		this.bucketFillHistogram = bucketFillHistogram;
+	}
+
+	/**
+	 * Average probe length of all the used entries.
+	 *
+	 * @return the average probe length, or 0 if the table is empty
+	 */
+	public double averageProbeLength() {
+		long count = 0;
+		long sum = 0;
+
+		for (int i = 0; i < probeLengthHistogram.length; i++) {
+			count += probeLengthHistogram[i];
+			sum += probeLengthHistogram[i] * i;
+		}
+
+		return (count == 0) ? 0 : (double) sum / count;
+	}
+
+	/**
+	 * Distribution of bucket fill levels. Element {@code i} of the histogram is
+	 * the number of buckets containing exactly {@code i} used entries. Tables
+	 * which are not organized into buckets return an empty histogram.
+	 *
+	 * @return a copy of the bucket fill histogram
+	 */
+	public long[] bucketFillHistogram() {
+		return bucketFillHistogram.clone();
+	}
+
+	/**
+	 * Number of entries evicted by the table's eviction policy to make room for
+	 * new keys, since the table was created.
+	 *
+	 * @return the eviction count
+	 */
+	public long evictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * Number of add operations which failed because no room could be found for a
+	 * new key, since the table was created.
+	 *
+	 * @return the failed insert count
+	 */
+	public long failedInsertCount() {
+		return failedInsertCount;
+	}
+
+	/**
+	 * Number of existing entries relocated to make room for new ones, since the
+	 * table was created. For a cuckoo table, these are the entries moved to their
+	 * alternative bucket.
+	 *
+	 * @return the kick count
+	 */
+	public long kickCount() {
+		return kickCount;
+	}
+
+	/**
+	 * Maximum probe length of any used entry.
+	 *
+	 * @return the max probe length, or 0 if the table is empty
+	 */
+	public int maxProbeLength() {
+		for (int i = probeLengthHistogram.length - 1; i > 0; i--)
+			if (probeLengthHistogram[i] != 0)
+				return i;
+
+		return 0;
+	}
+
+	/**
+	 * Fraction of the table's entries which are in use.
+	 *
+	 * @return the occupancy between 0 and 1
+	 */
+	public double occupancy() {
+		return (tableSize == 0) ? 0 : (double) usedCount / tableSize;
+	}
+
+	/**
+	 * Distribution of probe lengths. Element {@code i} of the histogram is the
+	 * number of used entries found {@code i} probes away from their home
+	 * position. For a cuckoo table, probe length 0 is the primary bucket and 1 is
+	 * the alternative bucket.
+	 *
+	 * @return a copy of the probe length histogram
+	 */
+	public long[] probeLengthHistogram() {
+		return probeLengthHistogram.clone();
+	}
+
+	/**
+	 * Table size.
+	 *
+	 * @return the total number of entries in the table
+	 */
+	public int tableSize() {
+		return tableSize;
+	}
+
+	/**
+	 * Unused entries count.
+	 *
+	 * @return the unused count
+	 */
+	public long unusedCount() {
+		return tableSize - usedCount;
+	}
+
+	/**
+	 * Used entries count.
+	 *
+	 * @return the used count
+	 */
+	public long usedCount() {
+		return usedCount;
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "HashTableStats [used=%d/%d (%.1f%%), failedInserts=%d, evictions=%d, kicks=%d, avgProbe=%.2f, maxProbe=%d, probes=%s, bucketFill=%s]"
+				.formatted(
+						usedCount, tableSize, occupancy() * 100.,
+						failedInsertCount,
+						evictionCount,
+						kickCount,
+						averageProbeLength(),
+						maxProbeLength(),
+						Arrays.toString(probeLengthHistogram),
+						Arrays.toString(bucketFillHistogram));
+	}
+}
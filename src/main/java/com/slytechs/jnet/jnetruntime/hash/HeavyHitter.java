@@ -0,0 +1,109 @@
+/*
+ * Sly Technologies Free License
+ *
+ * Copyright 2024 Sly Technologies Inc.
+ *
+ * Licensed under the Sly Technologies Free License (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.slytechs.com/free-license-text
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.slytechs.jnet.jnetruntime.hash;
+
+import java.nio.ByteBuffer;
+import java.util.HexFormat;
+
+/**
+ * A frequently seen key reported by a heavy hitter sketch, such as a top
+ * talker flow.
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+public final class HeavyHitter {
+
+	/** The hashcode. */
+	private final long hashcode;
+
+	/** The key, or null if the key was added by hashcode only. */
+	private final byte[] key;
+
+	/** The count. */
+	private final long count;
+
+	/** The maximum overestimation of the count. */
+	private final long error;
+
+	/**
+	 * Instantiates a new heavy hitter.
+	 *
+	 * @param hashcode the hashcode
+	 * @param key      the key, or null
+	 * @param count    the estimated count
+	 * @param error    the maximum overestimation of the count
+	 */
+	HeavyHitter(long hashcode, byte[] key, long count, long error) {
+		this.hashcode = hashcode;
+		this.key = key;
+		this.count = count;
+		this.error = error;
+	}
+
+	/**
+	 * Gets the estimated count, which is never less than the true count.
+	 *
+	 * @return the count
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Gets the maximum overestimation of the count, the count less the error is
+	 * a guaranteed lower bound of the true count. A Count-Min sketch reports 0,
+	 * its {@link CountMinSketch#errorBound()} applies to all keys.
+	 *
+	 * @return the error
+	 */
+	public long getError() {
+		return error;
+	}
+
+	/**
+	 * Gets the hashcode.
+	 *
+	 * @return the hashcode
+	 */
+	public long getHashcode() {
+		return hashcode;
+	}
+
+	/**
+	 * Gets a read-only view of the key.
+	 *
+	 * @return the key, or null if the key was added by hashcode only
+	 */
+	public ByteBuffer getKey() {
+		return (key == null) ? null : ByteBuffer.wrap(key).asReadOnlyBuffer();
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "HeavyHitter [key=%s, count=%d, error=%d]"
+				.formatted((key == null) ? "0x%016X".formatted(hashcode) : HexFormat.of().formatHex(key),
+						count, error);
+	}
+}
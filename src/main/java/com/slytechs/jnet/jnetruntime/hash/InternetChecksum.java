@@ -0,0 +1,237 @@
+/*
+ * Sly Technologies Free License
+ *
+ * Copyright 2024 Sly Technologies Inc.
+ *
+ * Licensed under the Sly Technologies Free License (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.slytechs.com/free-license-text
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.slytechs.jnet.jnetruntime.hash;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The Internet checksum (RFC 1071), the 16-bit ones' complement of the ones'
+ * complement sum of 16-bit big-endian words, used by the IPv4, ICMP, TCP and
+ * UDP headers.
+ * <p>
+ * The data is summed 8 bytes per step: each big-endian long is split into its
+ * 2 32-bit halves, which are added to a 64-bit accumulator without any carry
+ * handling, since 2^30 steps fit before it could overflow. The accumulator is
+ * folded to 16 bits with end-around carries only at the end. An odd trailing
+ * byte is summed as the high byte of a word padded with zero.
+ * </p>
+ * <p>
+ * Partial sums returned by the {@code sum} methods can be chained, for example
+ * to add a TCP or UDP pseudo header sum to the segment sum, as long as every
+ * part but the last has an even length. A checksum can also be updated in place
+ * when a header field is rewritten, without summing the header again, using
+ * the RFC 1624 update methods.
+ * </p>
+ * <p>
+ * All methods are static and allocation free. Byte arrays and buffers are
+ * summed through a memory segment view, and buffer positions are not modified.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+public final class InternetChecksum {
+
+	/** Big-endian unaligned long. */
+	private static final ValueLayout.OfLong LONG_BE = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+	/** Big-endian unaligned int. */
+	private static final ValueLayout.OfInt INT_BE = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+	/** Big-endian unaligned short. */
+	private static final ValueLayout.OfShort SHORT_BE = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+	/** Most longs summed before the accumulator is folded again. */
+	private static final long MAX_RUN = 1L << 30;
+
+	/**
+	 * Calculates the checksum of the bytes within an array.
+	 *
+	 * @param array  the array
+	 * @param offset the offset
+	 * @param length the length
+	 * @return the 16-bit checksum
+	 */
+	public static int checksum(byte[] array, int offset, int length) {
+		return complement(sum(0, MemorySegment.ofArray(array), offset, length));
+	}
+
+	/**
+	 * Calculates the checksum of the bytes between a buffer's position and limit.
+	 *
+	 * @param buffer the buffer
+	 * @return the 16-bit checksum
+	 */
+	public static int checksum(ByteBuffer buffer) {
+		return complement(sum(0, buffer));
+	}
+
+	/**
+	 * Calculates the checksum of the bytes within a memory segment.
+	 *
+	 * @param segment the segment
+	 * @param offset  the offset
+	 * @param length  the length
+	 * @return the 16-bit checksum
+	 */
+	public static int checksum(MemorySegment segment, long offset, long length) {
+		return complement(sum(0, segment, offset, length));
+	}
+
+	/**
+	 * Checksum of a sum, its folded ones' complement.
+	 *
+	 * @param sum the partial sum
+	 * @return the 16-bit checksum
+	 */
+	public static int complement(long sum) {
+		return ~fold(sum) & 0xFFFF;
+	}
+
+	/**
+	 * Folds a partial sum to 16 bits with end-around carries.
+	 *
+	 * @param sum the partial sum
+	 * @return the 16-bit ones' complement sum
+	 */
+	public static int fold(long sum) {
+		sum = (sum & 0xFFFFFFFFL) + (sum >>> 32);
+		sum = (sum & 0xFFFFFFFFL) + (sum >>> 32);
+		sum = (sum & 0xFFFF) + (sum >>> 16);
+		sum = (sum & 0xFFFF) + (sum >>> 16);
+		sum = (sum & 0xFFFF) + (sum >>> 16);
+
+		return (int) sum;
+	}
+
+	/**
+	 * Partial sum of an IPv4 TCP or UDP pseudo header, to be added to the sum of
+	 * the segment or datagram.
+	 *
+	 * @param srcAddress the source address
+	 * @param dstAddress the destination address
+	 * @param protocol   the IP protocol number
+	 * @param length     the TCP or UDP length, header and payload
+	 * @return the partial sum
+	 */
+	public static long pseudoHeaderSum(int srcAddress, int dstAddress, int protocol, int length) {
+		return (srcAddress & 0xFFFFFFFFL) + (dstAddress & 0xFFFFFFFFL) + (protocol & 0xFF) + (length & 0xFFFF);
+	}
+
+	/**
+	 * Adds the bytes within an array to a partial sum.
+	 *
+	 * @param sum    the partial sum, 0 to start a new sum
+	 * @param array  the array
+	 * @param offset the offset
+	 * @param length the length, even unless this is the last part
+	 * @return the new partial sum
+	 */
+	public static long sum(long sum, byte[] array, int offset, int length) {
+		return sum(sum, MemorySegment.ofArray(array), offset, length);
+	}
+
+	/**
+	 * Adds the bytes between a buffer's position and limit to a partial sum.
+	 *
+	 * @param sum    the partial sum, 0 to start a new sum
+	 * @param buffer the buffer
+	 * @return the new partial sum
+	 */
+	public static long sum(long sum, ByteBuffer buffer) {
+		return sum(sum, MemorySegment.ofBuffer(buffer), 0, buffer.remaining());
+	}
+
+	/**
+	 * Adds the bytes within a memory segment to a partial sum.
+	 *
+	 * @param sum     the partial sum, 0 to start a new sum
+	 * @param segment the segment
+	 * @param offset  the offset
+	 * @param length  the length, even unless this is the last part
+	 * @return the new partial sum
+	 */
+	public static long sum(long sum, MemorySegment segment, long offset, long length) {
+		long end = offset + length;
+
+		for (long longs = length >>> 3; longs > 0;) {
+			long run = Math.min(longs, MAX_RUN);
+			longs -= run;
+
+			sum = fold(sum); // Headroom for the run, whatever the sum passed in
+			for (long runEnd = offset + run * Long.BYTES; offset < runEnd; offset += Long.BYTES) {
+				long word = segment.get(LONG_BE, offset);
+				sum += (word >>> 32) + (word & 0xFFFFFFFFL);
+			}
+		}
+
+		if (end - offset >= Integer.BYTES) {
+			sum += segment.get(INT_BE, offset) & 0xFFFFFFFFL;
+			offset += Integer.BYTES;
+		}
+
+		if (end - offset >= Short.BYTES) {
+			sum += segment.get(SHORT_BE, offset) & 0xFFFF;
+			offset += Short.BYTES;
+		}
+
+		if (offset < end)
+			sum += (segment.get(ValueLayout.JAVA_BYTE, offset) & 0xFF) << 8;
+
+		return sum;
+	}
+
+	/**
+	 * Updates a checksum after a 16-bit field it covers was rewritten, using
+	 * equation 3 of RFC 1624. The result is the same as recalculating the
+	 * checksum over the rewritten data.
+	 *
+	 * @param checksum the old checksum
+	 * @param oldValue the old 16-bit field value
+	 * @param newValue the new 16-bit field value
+	 * @return the new checksum
+	 */
+	public static int update(int checksum, int oldValue, int newValue) {
+		return complement((~checksum & 0xFFFF) + (~oldValue & 0xFFFF) + (newValue & 0xFFFF));
+	}
+
+	/**
+	 * Updates a checksum after a 32-bit field it covers was rewritten, such as an
+	 * IPv4 address rewritten by NAT, which is also covered by the TCP and UDP
+	 * pseudo headers.
+	 *
+	 * @param checksum the old checksum
+	 * @param oldValue the old 32-bit field value
+	 * @param newValue the new 32-bit field value
+	 * @return the new checksum
+	 */
+	public static int update32(int checksum, int oldValue, int newValue) {
+		return complement((~checksum & 0xFFFF)
+				+ (~oldValue >>> 16) + (~oldValue & 0xFFFF)
+				+ (newValue >>> 16) + (newValue & 0xFFFF));
+	}
+
+	/**
+	 * Instantiates a new internet checksum.
+	 */
+	private InternetChecksum() {
+	}
+}
@@ -0,0 +1,209 @@
+/*
+ * Sly Technologies Free License
+ *
+ * Copyright 2024 Sly Technologies Inc.
+ *
+ * Licensed under the Sly Technologies Free License (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.slytechs.com/free-license-text
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.slytechs.jnet.jnetruntime.hash;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+
+/**
+ * IPv4 longest prefix match table, using the DIR-24-8 layout.
+ * <p>
+ * The first 24 bits of an address index directly into a table of 16M entries,
+ * which resolves any route with a prefix of 24 bits or less in a single memory
+ * access. Entries covered by longer prefixes point to a group of 256 entries
+ * indexed by the last 8 bits of the address, for a maximum of 2 memory
+ * accesses per lookup. The first level table occupies 64MB.
+ * </p>
+ * <p>
+ * Next hops are application defined values between 0 and
+ * {@link #MAX_NEXT_HOP}, typically indexes into a route or interface array.
+ * Adding and removing routes is a control plane operation, which may touch up
+ * to 16M entries for short prefixes, and must not run concurrently with
+ * lookups.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+public final class Ipv4LpmTable {
+
+	/** Returned by lookups when no route matches the address. */
+	public static final int NO_ROUTE = -1;
+
+	/** The Constant MAX_NEXT_HOP. */
+	public static final int MAX_NEXT_HOP = LpmTrie.VALUE_MASK;
+
+	/** The Constant DEFAULT_GROUP_COUNT. */
+	public static final int DEFAULT_GROUP_COUNT = 256;
+
+	/** Network byte order address layout. */
+	private static final ValueLayout.OfInt ADDRESS = ValueLayout.JAVA_INT_UNALIGNED
+			.withOrder(ByteOrder.BIG_ENDIAN);
+
+	/**
+	 * Converts an address to its network byte order bytes.
+	 *
+	 * @param address the address
+	 * @return the address bytes
+	 */
+	private static byte[] toBytes(int address) {
+		return new byte[] {
+				(byte) (address >>> 24),
+				(byte) (address >>> 16),
+				(byte) (address >>> 8),
+				(byte) address };
+	}
+
+	/** The trie. */
+	private final LpmTrie trie;
+
+	/** The first level table, 1 entry per /24. */
+	private final int[] tbl24;
+
+	/**
+	 * Instantiates a new IPv4 LPM table with the default number of groups.
+	 */
+	public Ipv4LpmTable() {
+		this(DEFAULT_GROUP_COUNT);
+	}
+
+	/**
+	 * Instantiates a new IPv4 LPM table.
+	 *
+	 * @param groupCount the maximum number of /24 networks holding routes with
+	 *                   prefixes longer than 24 bits
+	 */
+	public Ipv4LpmTable(int groupCount) {
+		this.trie = new LpmTrie(Integer.BYTES, 24, groupCount);
+		this.tbl24 = trie.root;
+	}
+
+	/**
+	 * Adds a route, or replaces the next hop of an existing route.
+	 *
+	 * @param prefix  the prefix address, host bits are ignored
+	 * @param depth   the prefix length, 0 to 32
+	 * @param nextHop the next hop
+	 * @return true, if added, false if the table has no free groups left
+	 * @throws IllegalArgumentException if the depth or next hop are out of range
+	 */
+	public boolean add(int prefix, int depth, int nextHop) throws IllegalArgumentException {
+		if (nextHop < 0 || nextHop > MAX_NEXT_HOP)
+			throw new IllegalArgumentException("next hop out of range [%d]".formatted(nextHop));
+
+		return trie.add(toBytes(prefix), depth, nextHop);
+	}
+
+	/**
+	 * Looks up the next hop of the longest prefix matching an address.
+	 *
+	 * @param address the address
+	 * @return the next hop, or {@link #NO_ROUTE}
+	 */
+	public int lookup(int address) {
+		int e = tbl24[address >>> 8];
+
+		if ((e & LpmTrie.EXTENDED) != 0)
+			e = trie.groups[((e & LpmTrie.VALUE_MASK) << 8) | (address & 0xFF)];
+
+		return ((e & LpmTrie.VALID) == 0) ? NO_ROUTE : (e & LpmTrie.VALUE_MASK);
+	}
+
+	/**
+	 * Looks up the next hop of an address read from memory, in network byte
+	 * order, for example straight from a packet's IP header.
+	 *
+	 * @param segment the segment
+	 * @param offset  the byte offset of the address
+	 * @return the next hop, or {@link #NO_ROUTE}
+	 */
+	public int lookup(MemorySegment segment, long offset) {
+		return lookup(segment.get(ADDRESS, offset));
+	}
+
+	/**
+	 * Looks up a burst of addresses. The first level entries of all of the
+	 * addresses are loaded in a first pass, allowing their cache misses to
+	 * overlap, and only the addresses which need it are resolved further in a
+	 * second pass.
+	 *
+	 * @param addresses the addresses
+	 * @param nextHops  the array receiving each address's next hop, or
+	 *                  {@link #NO_ROUTE}
+	 * @param count     the number of addresses
+	 * @return the number of addresses which matched a route
+	 */
+	public int lookupBulk(int[] addresses, int[] nextHops, int count) {
+		int[] groups = trie.groups;
+
+		/* Stage 1 - first level entries */
+		for (int i = 0; i < count; i++)
+			nextHops[i] = tbl24[addresses[i] >>> 8];
+
+		/* Stage 2 - resolve groups and decode */
+		int found = 0;
+		for (int i = 0; i < count; i++) {
+			int e = nextHops[i];
+
+			if ((e & LpmTrie.EXTENDED) != 0)
+				e = groups[((e & LpmTrie.VALUE_MASK) << 8) | (addresses[i] & 0xFF)];
+
+			if ((e & LpmTrie.VALID) == 0) {
+				nextHops[i] = NO_ROUTE;
+			} else {
+				nextHops[i] = e & LpmTrie.VALUE_MASK;
+				found++;
+			}
+		}
+
+		return found;
+	}
+
+	/**
+	 * Removes a route. Addresses it covered fall back to the longest remaining
+	 * route covering them, if any.
+	 *
+	 * @param prefix the prefix address, host bits are ignored
+	 * @param depth  the prefix length, 0 to 32
+	 * @return true, if the route existed and was removed
+	 */
+	public boolean remove(int prefix, int depth) {
+		return trie.remove(toBytes(prefix), depth);
+	}
+
+	/**
+	 * Number of routes in the table.
+	 *
+	 * @return the route count
+	 */
+	public int size() {
+		return trie.ruleCount();
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "Ipv4LpmTable [routes=%d, groups=%d]".formatted(size(), trie.groupsInUse());
+	}
+}
@@ -0,0 +1,204 @@
+/*
+ * Sly Technologies Free License
+ *
+ * Copyright 2024 Sly Technologies Inc.
+ *
+ * Licensed under the Sly Technologies Free License (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.slytechs.com/free-license-text
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.slytechs.jnet.jnetruntime.hash;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+
+/**
+ * IPv6 longest prefix match table, using a multibit trie.
+ * <p>
+ * The first 16 bits of an address index directly into a table of 64K entries,
+ * and each following level is a group of 256 entries indexed by the next 8 bits
+ * of the address. A route is expanded to every entry it covers at the level
+ * holding its last prefix bit, so a lookup costs 1 memory access for prefixes
+ * of up to 16 bits, and 1 more for every 8 bits beyond that, for example 5 for
+ * a /48 and 7 for a /64. Only the levels actually needed by the routes are
+ * allocated.
+ * </p>
+ * <p>
+ * Next hops are application defined values between 0 and
+ * {@link #MAX_NEXT_HOP}. Adding and removing routes is a control plane
+ * operation and must not run concurrently with lookups.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+public final class Ipv6LpmTable {
+
+	/** Returned by lookups when no route matches the address. */
+	public static final int NO_ROUTE = -1;
+
+	/** The Constant MAX_NEXT_HOP. */
+	public static final int MAX_NEXT_HOP = LpmTrie.VALUE_MASK;
+
+	/** The Constant DEFAULT_GROUP_COUNT. */
+	public static final int DEFAULT_GROUP_COUNT = 8192;
+
+	/** The Constant ADDRESS_SIZE. */
+	public static final int ADDRESS_SIZE = 16;
+
+	/** Network byte order layout of the first 16 address bits. */
+	private static final ValueLayout.OfShort ROOT_BITS = ValueLayout.JAVA_SHORT_UNALIGNED
+			.withOrder(ByteOrder.BIG_ENDIAN);
+
+	/** The trie. */
+	private final LpmTrie trie;
+
+	/** The first level table, 1 entry per /16. */
+	private final int[] root;
+
+	/**
+	 * Instantiates a new IPv6 LPM table with the default number of groups.
+	 */
+	public Ipv6LpmTable() {
+		this(DEFAULT_GROUP_COUNT);
+	}
+
+	/**
+	 * Instantiates a new IPv6 LPM table.
+	 *
+	 * @param groupCount the maximum number of 256 entry groups, each route longer
+	 *                   than 16 bits needs up to 1 group per 8 bits beyond the
+	 *                   first 16, shared with routes having a common prefix
+	 */
+	public Ipv6LpmTable(int groupCount) {
+		this.trie = new LpmTrie(ADDRESS_SIZE, 16, groupCount);
+		this.root = trie.root;
+	}
+
+	/**
+	 * Adds a route, or replaces the next hop of an existing route.
+	 *
+	 * @param prefix  the 16 byte prefix address, host bits are ignored
+	 * @param depth   the prefix length, 0 to 128
+	 * @param nextHop the next hop
+	 * @return true, if added, false if the table has no free groups left
+	 * @throws IllegalArgumentException if the address length, depth or next hop
+	 *                                  are out of range
+	 */
+	public boolean add(byte[] prefix, int depth, int nextHop) throws IllegalArgumentException {
+		if (nextHop < 0 || nextHop > MAX_NEXT_HOP)
+			throw new IllegalArgumentException("next hop out of range [%d]".formatted(nextHop));
+
+		return trie.add(prefix, depth, nextHop);
+	}
+
+	/**
+	 * Looks up the next hop of the longest prefix matching an address.
+	 *
+	 * @param address the 16 byte address
+	 * @return the next hop, or {@link #NO_ROUTE}
+	 */
+	public int lookup(byte[] address) {
+		return lookup(MemorySegment.ofArray(address), 0);
+	}
+
+	/**
+	 * Looks up the next hop of an address read from memory, in network byte
+	 * order, for example straight from a packet's IP header.
+	 *
+	 * @param segment the segment
+	 * @param offset  the byte offset of the address
+	 * @return the next hop, or {@link #NO_ROUTE}
+	 */
+	public int lookup(MemorySegment segment, long offset) {
+		return resolve(root[segment.get(ROOT_BITS, offset) & 0xFFFF], segment, offset);
+	}
+
+	/**
+	 * Resolves a first level entry through any groups, to a next hop.
+	 *
+	 * @param e       the first level entry
+	 * @param segment the segment
+	 * @param offset  the byte offset of the address
+	 * @return the next hop, or {@link #NO_ROUTE}
+	 */
+	private int resolve(int e, MemorySegment segment, long offset) {
+		int[] groups = trie.groups;
+
+		for (long i = offset + 2; (e & LpmTrie.EXTENDED) != 0; i++)
+			e = groups[((e & LpmTrie.VALUE_MASK) << 8) | (segment.get(ValueLayout.JAVA_BYTE, i) & 0xFF)];
+
+		return ((e & LpmTrie.VALID) == 0) ? NO_ROUTE : (e & LpmTrie.VALUE_MASK);
+	}
+
+	/**
+	 * Looks up a burst of addresses. The first level entries of all of the
+	 * addresses are loaded in a first pass, allowing their cache misses to
+	 * overlap, and the remaining levels are resolved in a second pass.
+	 *
+	 * @param segments the segments holding each address, such as packets
+	 * @param offsets  the byte offset of each address within its segment
+	 * @param nextHops the array receiving each address's next hop, or
+	 *                 {@link #NO_ROUTE}
+	 * @param count    the number of addresses
+	 * @return the number of addresses which matched a route
+	 */
+	public int lookupBulk(MemorySegment[] segments, long[] offsets, int[] nextHops, int count) {
+
+		/* Stage 1 - first level entries */
+		for (int i = 0; i < count; i++)
+			nextHops[i] = root[segments[i].get(ROOT_BITS, offsets[i]) & 0xFFFF];
+
+		/* Stage 2 - resolve groups and decode */
+		int found = 0;
+		for (int i = 0; i < count; i++) {
+			nextHops[i] = resolve(nextHops[i], segments[i], offsets[i]);
+
+			if (nextHops[i] != NO_ROUTE)
+				found++;
+		}
+
+		return found;
+	}
+
+	/**
+	 * Removes a route. Addresses it covered fall back to the longest remaining
+	 * route covering them, if any.
+	 *
+	 * @param prefix the 16 byte prefix address, host bits are ignored
+	 * @param depth  the prefix length, 0 to 128
+	 * @return true, if the route existed and was removed
+	 */
+	public boolean remove(byte[] prefix, int depth) {
+		return trie.remove(prefix, depth);
+	}
+
+	/**
+	 * Number of routes in the table.
+	 *
+	 * @return the route count
+	 */
+	public int size() {
+		return trie.ruleCount();
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "Ipv6LpmTable [routes=%d, groups=%d]".formatted(size(), trie.groupsInUse());
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * Sly Technologies Free License
+ *
+ * Copyright 2024 Sly Technologies Inc.
+ *
+ * Licensed under the Sly Technologies Free License (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.slytechs.com/free-license-text
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.slytechs.jnet.jnetruntime.hash;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.Arrays;
+
+/**
+ * Off-heap slab holding the keys which do not fit in a hash table's inline
+ * key slots. Blocks are carved from a single allocation in power of 2 size
+ * classes, starting at {@value #MIN_BLOCK_SIZE} bytes, and are referenced by
+ * their offset within the slab. Freed blocks are kept on a free list per size
+ * class, linked through their first 8 bytes, and are reused before any new
+ * space is carved from the slab.
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+final class KeyOverflowSlab {
+
+	/** The smallest block size. */
+	static final int MIN_BLOCK_SIZE = 64;
+
+	/** Log2 of the smallest block size. */
+	private static final int MIN_BLOCK_SHIFT = Integer.numberOfTrailingZeros(MIN_BLOCK_SIZE);
+
+	/** Number of size classes, up to 2GB blocks. */
+	private static final int CLASS_COUNT = Integer.SIZE - MIN_BLOCK_SHIFT;
+
+	/** Free list terminator. */
+	private static final long NONE = -1;
+
+	/**
+	 * Size class of a block holding a number of bytes.
+	 *
+	 * @param length the length
+	 * @return the size class
+	 */
+	private static int sizeClassOf(int length) {
+		return Math.max(0, Integer.SIZE - Integer.numberOfLeadingZeros(length - 1) - MIN_BLOCK_SHIFT);
+	}
+
+	/** The slab. */
+	private final MemorySegment slab;
+
+	/** Head of each size class's free list. */
+	private final long[] freeHeads = new long[CLASS_COUNT];
+
+	/** Offset of the uncarved remainder of the slab. */
+	private long top;
+
+	/** The bytes in allocated blocks. */
+	private long usedBytes;
+
+	/**
+	 * Instantiates a new key overflow slab.
+	 *
+	 * @param sizeBytes the slab size in bytes
+	 */
+	KeyOverflowSlab(long sizeBytes) {
+		if (sizeBytes < MIN_BLOCK_SIZE)
+			throw new IllegalArgumentException("invalid overflow slab size [%d]".formatted(sizeBytes));
+
+		this.slab = Arena.ofAuto().allocate(sizeBytes, MIN_BLOCK_SIZE);
+		Arrays.fill(freeHeads, NONE);
+	}
+
+	/**
+	 * Allocates a block for a key.
+	 *
+	 * @param length the key length
+	 * @return the block offset, or -1 if the slab is full
+	 */
+	long allocate(int length) {
+		int sizeClass = sizeClassOf(length);
+		long blockSize = (long) MIN_BLOCK_SIZE << sizeClass;
+		long offset = freeHeads[sizeClass];
+
+		if (offset != NONE) {
+			freeHeads[sizeClass] = slab.get(ValueLayout.JAVA_LONG, offset);
+
+		} else if (top + blockSize <= slab.byteSize()) {
+			offset = top;
+			top += blockSize;
+
+		} else {
+			return -1;
+		}
+
+		usedBytes += blockSize;
+
+		return offset;
+	}
+
+	/**
+	 * Byte size.
+	 *
+	 * @return the slab size in bytes
+	 */
+	long byteSize() {
+		return slab.byteSize();
+	}
+
+	/**
+	 * Checks if a block of the right size class can be reused for a new length.
+	 *
+	 * @param oldLength the length the block was allocated for
+	 * @param newLength the new length
+	 * @return true, if both lengths use the same size class
+	 */
+	static boolean fits(int oldLength, int newLength) {
+		return sizeClassOf(oldLength) == sizeClassOf(newLength);
+	}
+
+	/**
+	 * Returns a block to its size class's free list.
+	 *
+	 * @param offset the block offset
+	 * @param length the key length the block was allocated for
+	 */
+	void free(long offset, int length) {
+		int sizeClass = sizeClassOf(length);
+
+		slab.set(ValueLayout.JAVA_LONG, offset, freeHeads[sizeClass]);
+		freeHeads[sizeClass] = offset;
+		usedBytes -= (long) MIN_BLOCK_SIZE << sizeClass;
+	}
+
+	/**
+	 * The slab memory.
+	 *
+	 * @return the segment
+	 */
+	MemorySegment segment() {
+		return slab;
+	}
+
+	/**
+	 * Bytes in allocated blocks.
+	 *
+	 * @return the used bytes
+	 */
+	long usedBytes() {
+		return usedBytes;
+	}
+}
@@ -17,10 +17,20 @@
  */
 package com.slytechs.jnet.jnetruntime.hash;
 
+import java.lang.foreign.MemorySegment;
 import java.nio.ByteBuffer;
 
 /**
  * A table which uses keys to hold state and data.
+ * <p>
+ * Keys can be supplied as the bytes between a byte buffer's position and limit,
+ * or as a range of bytes within a memory segment or a byte array. The segment
+ * and array variants allow keys to be hashed, compared and copied straight out
+ * of packet memory, without wrapping or duplicating buffers. None of the
+ * variants modify the key's position or limit. The default implementations of
+ * the segment and array variants delegate to the byte buffer variant,
+ * implementations are expected to override them with allocation free versions.
+ * </p>
  *
  * @author Sly Technologies Inc
  * @author repos@slytechs.com
@@ -81,6 +91,34 @@ public interface KeyedTable<T> extends Iterable<KeyedTable.Entry<T>> {
 	 */
 	int add(ByteBuffer key, T data);
 
+	/**
+	 * Adds a new entry or retrieves an existing entry if one exists.
+	 *
+	 * @param key    the array containing the key
+	 * @param offset the offset of the key within the array
+	 * @param length the key length in bytes
+	 * @param data   the data
+	 * @return index of the table entry is returned if added successfully or an
+	 *         existing entry already found, otherwise -1 on failure
+	 */
+	default int add(byte[] key, int offset, int length, T data) {
+		return add(MemorySegment.ofArray(key), offset, length, data);
+	}
+
+	/**
+	 * Adds a new entry or retrieves an existing entry if one exists.
+	 *
+	 * @param key    the segment containing the key
+	 * @param offset the byte offset of the key within the segment
+	 * @param length the key length in bytes
+	 * @param data   the data
+	 * @return index of the table entry is returned if added successfully or an
+	 *         existing entry already found, otherwise -1 on failure
+	 */
+	default int add(MemorySegment key, long offset, int length, T data) {
+		return add(key.asSlice(offset, length).asByteBuffer(), data);
+	}
+
 	/**
 	 * Looks up an entry using key and returns null if not found.
 	 *
@@ -90,6 +128,32 @@ public interface KeyedTable<T> extends Iterable<KeyedTable.Entry<T>> {
 	 */
 	int lookup(ByteBuffer key);
 
+	/**
+	 * Looks up an entry using key.
+	 *
+	 * @param key    the array containing the key
+	 * @param offset the offset of the key within the array
+	 * @param length the key length in bytes
+	 * @return index of the table entry is returned if found, otherwise -1 on
+	 *         failure
+	 */
+	default int lookup(byte[] key, int offset, int length) {
+		return lookup(MemorySegment.ofArray(key), offset, length);
+	}
+
+	/**
+	 * Looks up an entry using key.
+	 *
+	 * @param key    the segment containing the key
+	 * @param offset the byte offset of the key within the segment
+	 * @param length the key length in bytes
+	 * @return index of the table entry is returned if found, otherwise -1 on
+	 *         failure
+	 */
+	default int lookup(MemorySegment key, long offset, int length) {
+		return lookup(key.asSlice(offset, length).asByteBuffer());
+	}
+
 	/**
 	 * Removes the entry for ke.
 	 *
@@ -98,6 +162,30 @@ public interface KeyedTable<T> extends Iterable<KeyedTable.Entry<T>> {
 	 */
 	boolean remove(ByteBuffer key);
 
+	/**
+	 * Removes the entry for key.
+	 *
+	 * @param key    the array containing the key
+	 * @param offset the offset of the key within the array
+	 * @param length the key length in bytes
+	 * @return true, if entry was found and removed, otherwise false
+	 */
+	default boolean remove(byte[] key, int offset, int length) {
+		return remove(MemorySegment.ofArray(key), offset, length);
+	}
+
+	/**
+	 * Removes the entry for key.
+	 *
+	 * @param key    the segment containing the key
+	 * @param offset the byte offset of the key within the segment
+	 * @param length the key length in bytes
+	 * @return true, if entry was found and removed, otherwise false
+	 */
+	default boolean remove(MemorySegment key, long offset, int length) {
+		return remove(key.asSlice(offset, length).asByteBuffer());
+	}
+
 	/**
 	 * Gets a table entry at the specified index.
 	 *
@@ -0,0 +1,303 @@
+/*
+ * Sly Technologies Free License
+ *
+ * Copyright 2024 Sly Technologies Inc.
+ *
+ * Licensed under the Sly Technologies Free License (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.slytechs.com/free-license-text
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.slytechs.jnet.jnetruntime.hash;
+
+import java.util.Arrays;
+
+/**
+ * A fixed size hash table keyed by a primitive {@code long}, such as a 64-bit
+ * connection or flow id.
+ * <p>
+ * Keys are stored in a probe array and probed linearly from a multiply-shift
+ * hash of the key, so a lookup costs a multiplication and a few primitive array
+ * loads and compares, without touching any key objects or byte buffers. Each
+ * probe slot refers to an entry by index, and the entries themselves never
+ * move.
+ * </p>
+ * <p>
+ * Removal uses backward-shift deletion: the slots following the removed one
+ * are pulled back into the hole whenever that keeps them reachable from their
+ * home slot, until an empty slot is reached. No tombstones are left behind, so
+ * lookups of missing keys stay short under any amount of add/remove churn, and
+ * there is never a rehash pause.
+ * </p>
+ * <p>
+ * Entry indexes are stable and remain valid until the entry is removed. They
+ * range from 0 to {@link #size()} - 1.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ * @param <T> the generic type
+ */
+public final class LongHashTable<T> {
+
+	/** Marks an unused probe slot, or an entry which is not in the table. */
+	private static final int EMPTY = -1;
+
+	/** Multiplier of the multiply-shift hash, the 64-bit golden ratio. */
+	private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+	/** The key of each occupied probe slot. */
+	private final long[] slotKeys;
+
+	/** The entry index of each probe slot, or EMPTY. */
+	private final int[] slotEntries;
+
+	/** The probe slot of each entry, or EMPTY. */
+	private final int[] entrySlots;
+
+	/** The data of each entry. */
+	private final Object[] data;
+
+	/** Stack of unused entry indexes. */
+	private final int[] freeEntries;
+
+	/** The number of unused entry indexes on the stack. */
+	private int freeCount;
+
+	/** The hash shift, keeping the high bits of the product as slot index. */
+	private final int shift;
+
+	/** The slot index mask. */
+	private final int mask;
+
+	/**
+	 * Instantiates a new long hash table.
+	 *
+	 * @param size the table size, a power of 2
+	 */
+	public LongHashTable(int size) {
+		if (Integer.bitCount(size) != 1 || size < 2)
+			throw new IllegalArgumentException("table size not a power of 2 [%d]".formatted(size));
+
+		this.slotKeys = new long[size];
+		this.slotEntries = new int[size];
+		this.entrySlots = new int[size];
+		this.data = new Object[size];
+		this.freeEntries = new int[size];
+		this.mask = size - 1;
+		this.shift = Long.SIZE - Integer.numberOfTrailingZeros(size);
+
+		clear();
+	}
+
+	/**
+	 * Adds a new entry or retrieves an existing entry if one exists.
+	 *
+	 * @param key  the key
+	 * @param data the data
+	 * @return index of the table entry is returned if added successfully or an
+	 *         existing entry already found, otherwise -1 when the table is full
+	 */
+	public int add(long key, T data) {
+		int i = slotOf(key);
+
+		for (int n = 0; n <= mask; n++, i = (i + 1) & mask) {
+			int entry = slotEntries[i];
+
+			if (entry == EMPTY)
+				return insert(i, key, data);
+
+			if (slotKeys[i] == key)
+				return entry;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Removes all entries.
+	 */
+	public void clear() {
+		Arrays.fill(slotEntries, EMPTY);
+		Arrays.fill(entrySlots, EMPTY);
+		Arrays.fill(data, null);
+
+		for (int i = 0; i < freeEntries.length; i++)
+			freeEntries[i] = freeEntries.length - 1 - i; // Lowest entry index is on top
+
+		this.freeCount = freeEntries.length;
+	}
+
+	/**
+	 * Gets the data of an entry.
+	 *
+	 * @param index the entry index
+	 * @return the data
+	 */
+	@SuppressWarnings("unchecked")
+	public T data(int index) {
+		return (T) data[index];
+	}
+
+	/**
+	 * Gets the used entries count.
+	 *
+	 * @return the used entries count
+	 */
+	public int getUsedEntriesCount() {
+		return freeEntries.length - freeCount;
+	}
+
+	/**
+	 * Stores a new entry in an empty probe slot.
+	 *
+	 * @param slot the empty slot
+	 * @param key  the key
+	 * @param data the data
+	 * @return the new entry index
+	 */
+	private int insert(int slot, long key, T data) {
+		int entry = freeEntries[--freeCount];
+
+		this.slotKeys[slot] = key;
+		this.slotEntries[slot] = entry;
+		this.entrySlots[entry] = slot;
+		this.data[entry] = data;
+
+		return entry;
+	}
+
+	/**
+	 * Checks if an entry slot is empty.
+	 *
+	 * @param index the entry index
+	 * @return true, if no entry is stored at index
+	 */
+	public boolean isEmpty(int index) {
+		return entrySlots[index] == EMPTY;
+	}
+
+	/**
+	 * Gets the key of an entry.
+	 *
+	 * @param index the entry index
+	 * @return the key
+	 */
+	public long key(int index) {
+		return slotKeys[entrySlots[index]];
+	}
+
+	/**
+	 * Looks up an entry using key.
+	 *
+	 * @param key the key
+	 * @return index of the table entry is returned if found, otherwise -1
+	 */
+	public int lookup(long key) {
+		int i = slotOf(key);
+
+		for (int n = 0; n <= mask; n++, i = (i + 1) & mask) {
+			int entry = slotEntries[i];
+
+			if (entry == EMPTY || slotKeys[i] == key)
+				return entry;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Removes an entry by its index.
+	 *
+	 * @param index the entry index
+	 */
+	public void remove(int index) {
+		int hole = entrySlots[index];
+		if (hole == EMPTY)
+			return;
+
+		data[index] = null;
+		entrySlots[index] = EMPTY;
+		freeEntries[freeCount++] = index;
+		slotEntries[hole] = EMPTY;
+
+		/* Pull back every following slot which stays reachable from its home slot */
+		for (int j = (hole + 1) & mask; slotEntries[j] != EMPTY; j = (j + 1) & mask) {
+			int home = slotOf(slotKeys[j]);
+
+			if (((j - home) & mask) >= ((j - hole) & mask)) {
+				int entry = slotEntries[j];
+
+				slotKeys[hole] = slotKeys[j];
+				slotEntries[hole] = entry;
+				entrySlots[entry] = hole;
+				slotEntries[j] = EMPTY;
+				hole = j;
+			}
+		}
+	}
+
+	/**
+	 * Removes the entry for key.
+	 *
+	 * @param key the key
+	 * @return true, if entry was found and removed, otherwise false
+	 */
+	public boolean remove(long key) {
+		int index = lookup(key);
+		if (index == -1)
+			return false;
+
+		remove(index);
+
+		return true;
+	}
+
+	/**
+	 * Sets the data of an entry.
+	 *
+	 * @param index the entry index
+	 * @param data  the new data
+	 */
+	public void setData(int index, T data) {
+		this.data[index] = data;
+	}
+
+	/**
+	 * Table size.
+	 *
+	 * @return the size
+	 */
+	public int size() {
+		return slotKeys.length;
+	}
+
+	/**
+	 * Multiply-shift hash of a key to its home slot.
+	 *
+	 * @param key the key
+	 * @return the slot index
+	 */
+	private int slotOf(long key) {
+		return (int) ((key * MULTIPLIER) >>> shift);
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "LongHashTable [used=%d, size=%d]"
+				.formatted(getUsedEntriesCount(), size());
+	}
+}
@@ -0,0 +1,427 @@
+/*
+ * Sly Technologies Free License
+ *
+ * Copyright 2024 Sly Technologies Inc.
+ *
+ * Licensed under the Sly Technologies Free License (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.slytechs.com/free-license-text
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.slytechs.jnet.jnetruntime.hash;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * A fixed size hash table keyed by a 128-bit key held in 2 primitive
+ * {@code long} values, sized for fixed width flow keys such as an IPv4 5-tuple.
+ * <p>
+ * Keys of up to 16 bytes can be loaded directly from packet memory using the
+ * memory segment variants, which read the key as 2 big endian longs, zero
+ * padded on the right. Since padding is not distinguishable from key bytes,
+ * all keys stored in a table should have the same length.
+ * </p>
+ * <p>
+ * Key halves are stored in probe arrays and probed linearly from a
+ * multiply-shift hash of the key, so a lookup costs 2 multiplications and a few
+ * primitive array loads and compares, without touching any key objects or byte
+ * buffers. Each probe slot refers to an entry by index, and the entries
+ * themselves never move.
+ * </p>
+ * <p>
+ * Removal uses backward-shift deletion, as in {@link LongHashTable}, so no
+ * tombstones are left behind and lookups of missing keys stay short under any
+ * amount of add/remove churn.
+ * </p>
+ * <p>
+ * Entry indexes are stable and remain valid until the entry is removed. They
+ * range from 0 to {@link #size()} - 1.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ * @param <T> the generic type
+ */
+public final class LongPairHashTable<T> {
+
+	/** Marks an unused probe slot, or an entry which is not in the table. */
+	private static final int EMPTY = -1;
+
+	/** Multiplier of the multiply-shift hash, the 64-bit golden ratio. */
+	private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+	/** Multiplier folding the high key half into the low half. */
+	private static final long HIGH_MULTIPLIER = 0xC2B2AE3D27D4EB4FL;
+
+	/** The Constant MAX_KEY_SIZE_BYTES. */
+	public static final int MAX_KEY_SIZE_BYTES = 2 * Long.BYTES;
+
+	/** Big endian unaligned long layout used to load keys from memory. */
+	private static final ValueLayout.OfLong KEY_LAYOUT = ValueLayout.JAVA_LONG_UNALIGNED
+			.withOrder(ByteOrder.BIG_ENDIAN);
+
+	/** The high key half of each occupied probe slot. */
+	private final long[] highs;
+
+	/** The low key half of each occupied probe slot. */
+	private final long[] lows;
+
+	/** The entry index of each probe slot, or EMPTY. */
+	private final int[] slotEntries;
+
+	/** The probe slot of each entry, or EMPTY. */
+	private final int[] entrySlots;
+
+	/** The data of each entry. */
+	private final Object[] data;
+
+	/** Stack of unused entry indexes. */
+	private final int[] freeEntries;
+
+	/** The number of unused entry indexes on the stack. */
+	private int freeCount;
+
+	/** The hash shift, keeping the high bits of the product as slot index. */
+	private final int shift;
+
+	/** The slot index mask. */
+	private final int mask;
+
+	/**
+	 * Instantiates a new long pair hash table.
+	 *
+	 * @param size the table size, a power of 2
+	 */
+	public LongPairHashTable(int size) {
+		if (Integer.bitCount(size) != 1 || size < 2)
+			throw new IllegalArgumentException("table size not a power of 2 [%d]".formatted(size));
+
+		this.highs = new long[size];
+		this.lows = new long[size];
+		this.slotEntries = new int[size];
+		this.entrySlots = new int[size];
+		this.data = new Object[size];
+		this.freeEntries = new int[size];
+		this.mask = size - 1;
+		this.shift = Long.SIZE - Integer.numberOfTrailingZeros(size);
+
+		clear();
+	}
+
+	/**
+	 * Adds a new entry or retrieves an existing entry if one exists.
+	 *
+	 * @param high the high 64 bits of the key
+	 * @param low  the low 64 bits of the key
+	 * @param data the data
+	 * @return index of the table entry is returned if added successfully or an
+	 *         existing entry already found, otherwise -1 when the table is full
+	 */
+	public int add(long high, long low, T data) {
+		int i = slotOf(high, low);
+
+		for (int n = 0; n <= mask; n++, i = (i + 1) & mask) {
+			int entry = slotEntries[i];
+
+			if (entry == EMPTY)
+				return insert(i, high, low, data);
+
+			if (lows[i] == low && highs[i] == high)
+				return entry;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Adds a new entry or retrieves an existing entry, with the key loaded from
+	 * memory.
+	 *
+	 * @param key    the segment containing the key
+	 * @param offset the byte offset of the key within the segment
+	 * @param length the key length in bytes, at most 16
+	 * @param data   the data
+	 * @return index of the table entry is returned if added successfully or an
+	 *         existing entry already found, otherwise -1 when the table is full
+	 */
+	public int add(MemorySegment key, long offset, int length, T data) {
+		checkKeyLength(length);
+
+		return add(loadHigh(key, offset, length), loadLow(key, offset, length), data);
+	}
+
+	/**
+	 * Validates a key length.
+	 *
+	 * @param length the key length in bytes
+	 */
+	private static void checkKeyLength(int length) {
+		if (length < 0 || length > MAX_KEY_SIZE_BYTES)
+			throw new IllegalArgumentException("key length out of range [%d]".formatted(length));
+	}
+
+	/**
+	 * Removes all entries.
+	 */
+	public void clear() {
+		Arrays.fill(slotEntries, EMPTY);
+		Arrays.fill(entrySlots, EMPTY);
+		Arrays.fill(data, null);
+
+		for (int i = 0; i < freeEntries.length; i++)
+			freeEntries[i] = freeEntries.length - 1 - i; // Lowest entry index is on top
+
+		this.freeCount = freeEntries.length;
+	}
+
+	/**
+	 * Gets the data of an entry.
+	 *
+	 * @param index the entry index
+	 * @return the data
+	 */
+	@SuppressWarnings("unchecked")
+	public T data(int index) {
+		return (T) data[index];
+	}
+
+	/**
+	 * Gets the used entries count.
+	 *
+	 * @return the used entries count
+	 */
+	public int getUsedEntriesCount() {
+		return freeEntries.length - freeCount;
+	}
+
+	/**
+	 * Stores a new entry in an empty probe slot.
+	 *
+	 * @param slot the empty slot
+	 * @param high the high 64 bits of the key
+	 * @param low  the low 64 bits of the key
+	 * @param data the data
+	 * @return the new entry index
+	 */
+	private int insert(int slot, long high, long low, T data) {
+		int entry = freeEntries[--freeCount];
+
+		this.highs[slot] = high;
+		this.lows[slot] = low;
+		this.slotEntries[slot] = entry;
+		this.entrySlots[entry] = slot;
+		this.data[entry] = data;
+
+		return entry;
+	}
+
+	/**
+	 * Checks if an entry slot is empty.
+	 *
+	 * @param index the entry index
+	 * @return true, if no entry is stored at index
+	 */
+	public boolean isEmpty(int index) {
+		return entrySlots[index] == EMPTY;
+	}
+
+	/**
+	 * Gets the high 64 bits of an entry's key.
+	 *
+	 * @param index the entry index
+	 * @return the high key half
+	 */
+	public long keyHigh(int index) {
+		return highs[entrySlots[index]];
+	}
+
+	/**
+	 * Gets the low 64 bits of an entry's key.
+	 *
+	 * @param index the entry index
+	 * @return the low key half
+	 */
+	public long keyLow(int index) {
+		return lows[entrySlots[index]];
+	}
+
+	/**
+	 * Loads the high 64 bits of a key from memory, the first 8 key bytes.
+	 *
+	 * @param key    the segment containing the key
+	 * @param offset the byte offset of the key within the segment
+	 * @param length the key length in bytes, at most 16
+	 * @return the high key half
+	 */
+	public static long loadHigh(MemorySegment key, long offset, int length) {
+		return load(key, offset, Math.min(length, Long.BYTES));
+	}
+
+	/**
+	 * Loads the low 64 bits of a key from memory, the key bytes following the
+	 * first 8, zero padded on the right.
+	 *
+	 * @param key    the segment containing the key
+	 * @param offset the byte offset of the key within the segment
+	 * @param length the key length in bytes, at most 16
+	 * @return the low key half
+	 */
+	public static long loadLow(MemorySegment key, long offset, int length) {
+		return (length <= Long.BYTES) ? 0 : load(key, offset + Long.BYTES, length - Long.BYTES);
+	}
+
+	/**
+	 * Loads up to 8 bytes as a big endian long, zero padded on the right.
+	 *
+	 * @param key    the segment
+	 * @param offset the byte offset
+	 * @param length the number of bytes, at most 8
+	 * @return the long value
+	 */
+	private static long load(MemorySegment key, long offset, int length) {
+		if (length == Long.BYTES)
+			return key.get(KEY_LAYOUT, offset);
+
+		long value = 0;
+		for (int i = 0; i < length; i++)
+			value |= (key.get(ValueLayout.JAVA_BYTE, offset + i) & 0xFFL) << (56 - (i << 3));
+
+		return value;
+	}
+
+	/**
+	 * Looks up an entry using key.
+	 *
+	 * @param high the high 64 bits of the key
+	 * @param low  the low 64 bits of the key
+	 * @return index of the table entry is returned if found, otherwise -1
+	 */
+	public int lookup(long high, long low) {
+		int i = slotOf(high, low);
+
+		for (int n = 0; n <= mask; n++, i = (i + 1) & mask) {
+			int entry = slotEntries[i];
+
+			if (entry == EMPTY || (lows[i] == low && highs[i] == high))
+				return entry;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Looks up an entry, with the key loaded from memory.
+	 *
+	 * @param key    the segment containing the key
+	 * @param offset the byte offset of the key within the segment
+	 * @param length the key length in bytes, at most 16
+	 * @return index of the table entry is returned if found, otherwise -1
+	 */
+	public int lookup(MemorySegment key, long offset, int length) {
+		checkKeyLength(length);
+
+		return lookup(loadHigh(key, offset, length), loadLow(key, offset, length));
+	}
+
+	/**
+	 * Removes an entry by its index.
+	 *
+	 * @param index the entry index
+	 */
+	public void remove(int index) {
+		int hole = entrySlots[index];
+		if (hole == EMPTY)
+			return;
+
+		data[index] = null;
+		entrySlots[index] = EMPTY;
+		freeEntries[freeCount++] = index;
+		slotEntries[hole] = EMPTY;
+
+		/* Pull back every following slot which stays reachable from its home slot */
+		for (int j = (hole + 1) & mask; slotEntries[j] != EMPTY; j = (j + 1) & mask) {
+			int home = slotOf(highs[j], lows[j]);
+
+			if (((j - home) & mask) >= ((j - hole) & mask)) {
+				int entry = slotEntries[j];
+
+				highs[hole] = highs[j];
+				lows[hole] = lows[j];
+				slotEntries[hole] = entry;
+				entrySlots[entry] = hole;
+				slotEntries[j] = EMPTY;
+				hole = j;
+			}
+		}
+	}
+
+	/**
+	 * Removes the entry for key.
+	 *
+	 * @param high the high 64 bits of the key
+	 * @param low  the low 64 bits of the key
+	 * @return true, if entry was found and removed, otherwise false
+	 */
+	public boolean remove(long high, long low) {
+		int index = lookup(high, low);
+		if (index == -1)
+			return false;
+
+		remove(index);
+
+		return true;
+	}
+
+	/**
+	 * Sets the data of an entry.
+	 *
+	 * @param index the entry index
+	 * @param data  the new data
+	 */
+	public void setData(int index, T data) {
+		this.data[index] = data;
+	}
+
+	/**
+	 * Table size.
+	 *
+	 * @return the size
+	 */
+	public int size() {
+		return highs.length;
+	}
+
+	/**
+	 * Multiply-shift hash of a key to its home slot. The high half is folded into
+	 * the low half by its own multiplication first.
+	 *
+	 * @param high the high 64 bits of the key
+	 * @param low  the low 64 bits of the key
+	 * @return the slot index
+	 */
+	private int slotOf(long high, long low) {
+		return (int) (((low ^ (high * HIGH_MULTIPLIER)) * MULTIPLIER) >>> shift);
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "LongPairHashTable [used=%d, size=%d]"
+				.formatted(getUsedEntriesCount(), size());
+	}
+}
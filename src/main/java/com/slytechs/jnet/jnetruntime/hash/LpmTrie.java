@@ -0,0 +1,415 @@
+/*
+ * Sly Technologies Free License
+ *
+ * Copyright 2024 Sly Technologies Inc.
+ *
+ * Licensed under the Sly Technologies Free License (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.slytechs.com/free-license-text
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.slytechs.jnet.jnetruntime.hash;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Multibit trie shared by the longest prefix match tables. The first level is
+ * a directly indexed table covering the first {@code rootBits} bits of the
+ * address, followed by any number of 256 entry groups, each covering the next 8
+ * bits. Prefixes are expanded to every entry they cover at the level holding
+ * their last bit, so a lookup is a single load per level.
+ * <p>
+ * Each entry is an int holding a valid bit, an extension bit, the depth of the
+ * prefix which wrote it and either a next hop or, when extended, the index of
+ * the group holding the next 8 bits. The rules themselves are also kept in a
+ * map, which is used to find the covering prefix that replaces a deleted one.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+final class LpmTrie {
+
+	/** Entry bit set when the entry holds a route or a group. */
+	static final int VALID = 1 << 31;
+
+	/** Entry bit set when the entry points to a group. */
+	static final int EXTENDED = 1 << 30;
+
+	/** Bit position of the prefix depth field. */
+	private static final int DEPTH_SHIFT = 22;
+
+	/** Mask of the next hop or group index field. */
+	static final int VALUE_MASK = (1 << DEPTH_SHIFT) - 1;
+
+	/** Entries per group. */
+	private static final int GROUP_SIZE = 256;
+
+	/**
+	 * Encodes a route entry.
+	 *
+	 * @param depth   the prefix depth
+	 * @param nextHop the next hop
+	 * @return the entry
+	 */
+	private static int route(int depth, int nextHop) {
+		return VALID | (depth << DEPTH_SHIFT) | nextHop;
+	}
+
+	/**
+	 * Gets the prefix depth of a route entry.
+	 *
+	 * @param entry the entry
+	 * @return the depth
+	 */
+	private static int depthOf(int entry) {
+		return (entry >>> DEPTH_SHIFT) & 0xFF;
+	}
+
+	/** The number of address bits covered by the first level. */
+	final int rootBits;
+
+	/** The address length in bytes. */
+	private final int addressLength;
+
+	/** The first level table. */
+	final int[] root;
+
+	/** The groups, 256 entries each. */
+	int[] groups;
+
+	/** Stack of free group indexes. */
+	private final int[] freeGroups;
+
+	/** Number of free group indexes on the stack. */
+	private int freeCount;
+
+	/** The rules, keyed by masked prefix bytes followed by the depth. */
+	private final Map<ByteBuffer, Integer> rules = new HashMap<>();
+
+	/**
+	 * Instantiates a new trie.
+	 *
+	 * @param addressLength the address length in bytes
+	 * @param rootBits      the number of bits covered by the first level, a
+	 *                      multiple of 8
+	 * @param maxGroups     the maximum number of groups
+	 */
+	LpmTrie(int addressLength, int rootBits, int maxGroups) {
+		if (maxGroups <= 0 || maxGroups > VALUE_MASK + 1)
+			throw new IllegalArgumentException("invalid group count [%d]".formatted(maxGroups));
+
+		this.addressLength = addressLength;
+		this.rootBits = rootBits;
+		this.root = new int[1 << rootBits];
+		this.groups = new int[Math.min(maxGroups, 64) * GROUP_SIZE];
+		this.freeGroups = new int[maxGroups];
+
+		for (int i = 0; i < maxGroups; i++)
+			freeGroups[i] = maxGroups - 1 - i; // Lowest group index is on top
+
+		this.freeCount = maxGroups;
+	}
+
+	/**
+	 * Adds or replaces a rule.
+	 *
+	 * @param prefix  the prefix address bytes
+	 * @param depth   the prefix length in bits
+	 * @param nextHop the next hop
+	 * @return true, if added, false if not enough free groups
+	 */
+	boolean add(byte[] prefix, int depth, int nextHop) {
+		byte[] masked = mask(prefix, depth);
+		int levels = (depth <= rootBits) ? 0 : (depth - rootBits + 7) / 8;
+		if (levels > freeCount)
+			return false;
+
+		rules.put(ruleKey(masked, depth), nextHop);
+
+		int entry = route(depth, nextHop);
+		if (depth <= rootBits) {
+			int span = rootBits - depth;
+			fill(root, 0, (rootIndex(masked) >>> span) << span, 1 << span, depth, entry);
+
+			return true;
+		}
+
+		boolean inRoot = true;
+		int base = 0;
+		int index = rootIndex(masked);
+
+		for (int levelEnd = rootBits + 8;; levelEnd += 8) {
+			int e = inRoot ? root[index] : groups[base + index];
+			int group;
+
+			if ((e & EXTENDED) == 0) {
+				group = allocateGroup(e); // May reallocate the groups array
+
+				if (inRoot)
+					root[index] = VALID | EXTENDED | group;
+				else
+					groups[base + index] = VALID | EXTENDED | group;
+			} else {
+				group = e & VALUE_MASK;
+			}
+
+			inRoot = false;
+			base = group * GROUP_SIZE;
+			index = masked[(levelEnd >>> 3) - 1] & 0xFF;
+
+			if (depth <= levelEnd) {
+				int span = levelEnd - depth;
+				fill(groups, base, (index >>> span) << span, 1 << span, depth, entry);
+
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Allocates a group, initialized with copies of the entry it replaces.
+	 *
+	 * @param entry the entry being extended
+	 * @return the group index
+	 */
+	private int allocateGroup(int entry) {
+		int group = freeGroups[--freeCount];
+		int end = (group + 1) * GROUP_SIZE;
+
+		if (end > groups.length)
+			groups = Arrays.copyOf(groups, Math.min(Math.max(end, groups.length * 2),
+					freeGroups.length * GROUP_SIZE));
+
+		Arrays.fill(groups, group * GROUP_SIZE, end, entry);
+
+		return group;
+	}
+
+	/**
+	 * Tries to collapse a group back into a single entry, when all of its entries
+	 * are identical routes written by prefixes ending above the group's level.
+	 *
+	 * @param group      the group index
+	 * @param levelStart the depth at which the group's 8 bits begin
+	 * @return the collapsed entry, or -1 (an extended entry) if the group is kept
+	 */
+	private int collapse(int group, int levelStart) {
+		int base = group * GROUP_SIZE;
+		int first = groups[base];
+
+		if ((first & EXTENDED) != 0 || ((first & VALID) != 0 && depthOf(first) > levelStart))
+			return -1;
+
+		for (int i = 1; i < GROUP_SIZE; i++)
+			if (groups[base + i] != first)
+				return -1;
+
+		freeGroups[freeCount++] = group;
+
+		return first;
+	}
+
+	/**
+	 * Number of groups in use.
+	 *
+	 * @return the group count
+	 */
+	int groupsInUse() {
+		return freeGroups.length - freeCount;
+	}
+
+	/**
+	 * Writes a route to a range of entries, except over routes of longer
+	 * prefixes, descending into any groups within the range.
+	 *
+	 * @param table the table
+	 * @param base  the base offset of the table or group
+	 * @param start the first entry
+	 * @param count the number of entries
+	 * @param depth the route's prefix depth
+	 * @param entry the route entry
+	 */
+	private void fill(int[] table, int base, int start, int count, int depth, int entry) {
+		for (int i = base + start; i < base + start + count; i++) {
+			int e = table[i];
+
+			if ((e & EXTENDED) != 0)
+				fill(groups, (e & VALUE_MASK) * GROUP_SIZE, 0, GROUP_SIZE, depth, entry);
+			else if ((e & VALID) == 0 || depthOf(e) <= depth)
+				table[i] = entry;
+		}
+	}
+
+	/**
+	 * Masks an address to its prefix bits.
+	 *
+	 * @param prefix the prefix address bytes
+	 * @param depth  the prefix length in bits
+	 * @return a new masked copy of the prefix
+	 */
+	private byte[] mask(byte[] prefix, int depth) {
+		if (prefix.length != addressLength)
+			throw new IllegalArgumentException("invalid address length [%d]".formatted(prefix.length));
+
+		if (depth < 0 || depth > addressLength * 8)
+			throw new IllegalArgumentException("invalid prefix depth [%d]".formatted(depth));
+
+		byte[] masked = new byte[addressLength];
+		for (int i = 0; i < addressLength; i++) {
+			int bits = Math.min(Math.max(depth - i * 8, 0), 8);
+			masked[i] = (byte) (prefix[i] & (0xFF00 >>> bits));
+		}
+
+		return masked;
+	}
+
+	/**
+	 * Removes a rule, replacing its entries with those of the longest remaining
+	 * rule covering it, and releasing any groups no longer needed.
+	 *
+	 * @param prefix the prefix address bytes
+	 * @param depth  the prefix length in bits
+	 * @return true, if the rule existed and was removed
+	 */
+	boolean remove(byte[] prefix, int depth) {
+		byte[] masked = mask(prefix, depth);
+		if (rules.remove(ruleKey(masked, depth)) == null)
+			return false;
+
+		int replacement = 0;
+		for (int d = depth - 1; d >= 0; d--) {
+			Integer hop = rules.get(ruleKey(mask(masked, d), d));
+			if (hop != null) {
+				replacement = route(d, hop);
+				break;
+			}
+		}
+
+		if (depth <= rootBits) {
+			int span = rootBits - depth;
+			replace(root, 0, (rootIndex(masked) >>> span) << span, 1 << span, depth, replacement, rootBits);
+
+			return true;
+		}
+
+		int levels = (depth - rootBits + 7) / 8;
+		int[] pathIndexes = new int[levels + 1];
+		int[] pathGroups = new int[levels + 1];
+
+		int index = rootIndex(masked);
+		int e = root[index];
+		int levelEnd = rootBits;
+
+		for (int level = 0; (e & EXTENDED) != 0; level++) {
+			int group = e & VALUE_MASK;
+			pathIndexes[level] = index;
+			pathGroups[level] = group;
+
+			levelEnd += 8;
+			index = masked[(levelEnd >>> 3) - 1] & 0xFF;
+
+			if (depth <= levelEnd) {
+				int span = levelEnd - depth;
+				replace(groups, group * GROUP_SIZE, (index >>> span) << span, 1 << span, depth, replacement,
+						levelEnd);
+
+				/* Collapse the path bottom up, while groups become uniform */
+				for (int l = level; l >= 0; l--) {
+					int collapsed = collapse(pathGroups[l], rootBits + l * 8);
+					if (collapsed == -1)
+						break;
+
+					if (l == 0)
+						root[pathIndexes[0]] = collapsed;
+					else
+						groups[pathGroups[l - 1] * GROUP_SIZE + pathIndexes[l]] = collapsed;
+				}
+
+				return true;
+			}
+
+			e = groups[group * GROUP_SIZE + index];
+		}
+
+		return true;
+	}
+
+	/**
+	 * Replaces the entries of a deleted route within a range, descending into any
+	 * groups within the range and collapsing those which become uniform.
+	 *
+	 * @param table       the table
+	 * @param base        the base offset of the table or group
+	 * @param start       the first entry
+	 * @param count       the number of entries
+	 * @param depth       the deleted route's prefix depth
+	 * @param replacement the replacement entry, 0 for no route
+	 * @param levelEnd    the depth at which the table's bits end
+	 */
+	private void replace(int[] table, int base, int start, int count, int depth, int replacement,
+			int levelEnd) {
+		for (int i = base + start; i < base + start + count; i++) {
+			int e = table[i];
+
+			if ((e & EXTENDED) != 0) {
+				int group = e & VALUE_MASK;
+				replace(groups, group * GROUP_SIZE, 0, GROUP_SIZE, depth, replacement, levelEnd + 8);
+
+				int collapsed = collapse(group, levelEnd);
+				if (collapsed != -1)
+					table[i] = collapsed;
+
+			} else if ((e & VALID) != 0 && depthOf(e) == depth) {
+				table[i] = replacement;
+			}
+		}
+	}
+
+	/**
+	 * First level index of an address.
+	 *
+	 * @param address the address bytes
+	 * @return the index
+	 */
+	private int rootIndex(byte[] address) {
+		int index = 0;
+		for (int i = 0; i < rootBits / 8; i++)
+			index = (index << 8) | (address[i] & 0xFF);
+
+		return index;
+	}
+
+	/**
+	 * Key of a rule in the rules map.
+	 *
+	 * @param masked the masked prefix bytes
+	 * @param depth  the prefix depth
+	 * @return the key
+	 */
+	private ByteBuffer ruleKey(byte[] masked, int depth) {
+		return ByteBuffer.allocate(addressLength + 1)
+				.put(masked)
+				.put((byte) depth)
+				.flip();
+	}
+
+	/**
+	 * Number of rules.
+	 *
+	 * @return the rule count
+	 */
+	int ruleCount() {
+		return rules.size();
+	}
+}
@@ -0,0 +1,224 @@
+/*
+ * Sly Technologies Free License
+ *
+ * Copyright 2024 Sly Technologies Inc.
+ *
+ * Licensed under the Sly Technologies Free License (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.slytechs.com/free-license-text
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.slytechs.jnet.jnetruntime.hash;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+
+import com.slytechs.jnet.jnetruntime.hash.HashTable.HashAlgorithm;
+
+/**
+ * A probabilistic set membership filter. A filter answers whether a key might
+ * have been added, with no false negatives and a small, configurable rate of
+ * false positives, in a fraction of the memory a {@link HashTable} needs to
+ * store the keys themselves. Typical uses are pre-screening packets against
+ * large block lists, before the more expensive flow table lookup.
+ * <p>
+ * Keys are hashed with the filter's hash algorithm. Callers which already
+ * calculated a key's hashcode with the same algorithm can use the hashcode
+ * variants directly.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+public interface MembershipFilter {
+
+	/**
+	 * A membership filter which also supports removing previously added keys.
+	 * Only keys which were actually added may be removed, removing any other key
+	 * can introduce false negatives.
+	 */
+	interface Deletable extends MembershipFilter {
+
+		/**
+		 * Removes a key using its hashcode.
+		 *
+		 * @param hashcode the hashcode
+		 * @return true, if the key might have been present and was removed
+		 */
+		boolean remove(long hashcode);
+
+		/**
+		 * Removes a key.
+		 *
+		 * @param key the key
+		 * @return true, if the key might have been present and was removed
+		 */
+		default boolean remove(ByteBuffer key) {
+			return remove(hashAlgorithm().calculateHashcode(key));
+		}
+
+		/**
+		 * Removes a key.
+		 *
+		 * @param key    the segment containing the key
+		 * @param offset the byte offset of the key within the segment
+		 * @param length the key length in bytes
+		 * @return true, if the key might have been present and was removed
+		 */
+		default boolean remove(MemorySegment key, long offset, int length) {
+			return remove(hashAlgorithm().calculateHashcode(key, offset, length));
+		}
+	}
+
+	/**
+	 * Adds a key using its hashcode.
+	 *
+	 * @param hashcode the hashcode
+	 * @return true, if the filter changed, false if the key was already
+	 *         represented or the filter is full
+	 */
+	boolean add(long hashcode);
+
+	/**
+	 * Adds a key.
+	 *
+	 * @param key the key
+	 * @return true, if the filter changed
+	 */
+	default boolean add(ByteBuffer key) {
+		return add(hashAlgorithm().calculateHashcode(key));
+	}
+
+	/**
+	 * Adds a key.
+	 *
+	 * @param key    the array containing the key
+	 * @param offset the offset of the key within the array
+	 * @param length the key length in bytes
+	 * @return true, if the filter changed
+	 */
+	default boolean add(byte[] key, int offset, int length) {
+		return add(hashAlgorithm().calculateHashcode(key, offset, length));
+	}
+
+	/**
+	 * Adds a key.
+	 *
+	 * @param key    the segment containing the key
+	 * @param offset the byte offset of the key within the segment
+	 * @param length the key length in bytes
+	 * @return true, if the filter changed
+	 */
+	default boolean add(MemorySegment key, long offset, int length) {
+		return add(hashAlgorithm().calculateHashcode(key, offset, length));
+	}
+
+	/**
+	 * Size in bytes of the filter's off-heap storage.
+	 *
+	 * @return the byte size
+	 */
+	long byteSize();
+
+	/**
+	 * Removes all keys.
+	 */
+	void clear();
+
+	/**
+	 * The hash algorithm used to hash keys.
+	 *
+	 * @return the hash algorithm
+	 */
+	HashAlgorithm hashAlgorithm();
+
+	/**
+	 * Checks if a key might have been added, using its hashcode.
+	 *
+	 * @param hashcode the hashcode
+	 * @return false if the key was definitely not added, true if it might have
+	 *         been
+	 */
+	boolean mightContain(long hashcode);
+
+	/**
+	 * Checks if a key might have been added.
+	 *
+	 * @param key the key
+	 * @return false if the key was definitely not added, true if it might have
+	 *         been
+	 */
+	default boolean mightContain(ByteBuffer key) {
+		return mightContain(hashAlgorithm().calculateHashcode(key));
+	}
+
+	/**
+	 * Checks if a key might have been added.
+	 *
+	 * @param key    the array containing the key
+	 * @param offset the offset of the key within the array
+	 * @param length the key length in bytes
+	 * @return false if the key was definitely not added, true if it might have
+	 *         been
+	 */
+	default boolean mightContain(byte[] key, int offset, int length) {
+		return mightContain(hashAlgorithm().calculateHashcode(key, offset, length));
+	}
+
+	/**
+	 * Checks if a key might have been added.
+	 *
+	 * @param key    the segment containing the key
+	 * @param offset the byte offset of the key within the segment
+	 * @param length the key length in bytes
+	 * @return false if the key was definitely not added, true if it might have
+	 *         been
+	 */
+	default boolean mightContain(MemorySegment key, long offset, int length) {
+		return mightContain(hashAlgorithm().calculateHashcode(key, offset, length));
+	}
+
+	/**
+	 * Queries a burst of keys. All of the keys are hashed first, then each is
+	 * queried in turn. The queries are independent of each other, which lets the
+	 * CPU overlap their cache misses.
+	 *
+	 * @param keys      the keys
+	 * @param hashcodes receives the hashcode of each key, may be reused with the
+	 *                  hashcode variant
+	 * @param results   receives the result of each query
+	 * @param count     the number of keys in the burst
+	 * @return the number of keys which might have been added
+	 */
+	default int mightContainBulk(ByteBuffer[] keys, long[] hashcodes, boolean[] results, int count) {
+		HashAlgorithm algorithm = hashAlgorithm();
+		for (int i = 0; i < count; i++)
+			hashcodes[i] = algorithm.calculateHashcode(keys[i]);
+
+		return mightContainBulk(hashcodes, results, count);
+	}
+
+	/**
+	 * Queries a burst of hashcodes.
+	 *
+	 * @param hashcodes the hashcodes
+	 * @param results   receives the result of each query
+	 * @param count     the number of hashcodes in the burst
+	 * @return the number of keys which might have been added
+	 */
+	default int mightContainBulk(long[] hashcodes, boolean[] results, int count) {
+		int found = 0;
+		for (int i = 0; i < count; i++)
+			if (results[i] = mightContain(hashcodes[i]))
+				found++;
+
+		return found;
+	}
+}
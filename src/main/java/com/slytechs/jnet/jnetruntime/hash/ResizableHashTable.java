@@ -0,0 +1,658 @@
+/*
+ * Sly Technologies Free License
+ *
+ * Copyright 2024 Sly Technologies Inc.
+ *
+ * Licensed under the Sly Technologies Free License (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.slytechs.com/free-license-text
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.slytechs.jnet.jnetruntime.hash;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
+
+import com.slytechs.jnet.jnetruntime.hash.HashTable.HashAlgorithm;
+import com.slytechs.jnet.jnetruntime.hash.HashTable.HashEntry;
+
+/**
+ * A keyed table which grows by doubling its capacity, without ever stopping to
+ * rehash all of its entries at once.
+ * <p>
+ * The table is composed of fixed size {@link HashTable} instances. When the
+ * load factor is exceeded, a new table of twice the size is allocated and
+ * becomes the active table, receiving all new entries. The previous table is
+ * drained incrementally, a few entries at a time on each add, lookup and remove
+ * operation, until it is empty and released. While a migration is in progress
+ * both tables are live and lookups consult both, so the cost of growing is
+ * spread evenly over the packet path instead of causing a multi-millisecond
+ * pause.
+ * </p>
+ * <p>
+ * The hashcode of every entry is kept alongside it, and migration reinserts
+ * entries with their original hashcode, so entries added with a caller
+ * supplied hashcode remain reachable through the same hashcode after any
+ * number of resizes.
+ * </p>
+ * <h2>Entry handles</h2>
+ * <p>
+ * The indexes returned by this table are handles, made up of the entry's index
+ * within its table and a table selector bit ({@code 1 << 30}). Before the
+ * first resize, handles are identical to plain table indexes. A handle remains
+ * valid until its entry is removed or migrated. When an entry is migrated to
+ * the new table its handle changes, and the {@link RemapListener} is notified
+ * with the old and new handles so that any copies held by the application can
+ * be updated. Entries which are never migrated keep their handles across any
+ * number of resizes.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ * @param <T> the generic type
+ */
+public final class ResizableHashTable<T> implements KeyedTable<T> {
+
+	/**
+	 * Notified when an entry is migrated from the old table to the new table, and
+	 * its handle changes.
+	 *
+	 * @param <T> the generic type
+	 */
+	@FunctionalInterface
+	public interface RemapListener<T> {
+
+		/**
+		 * On remap.
+		 *
+		 * @param oldIndex the entry's handle in the old table, no longer valid
+		 * @param newIndex the entry's new handle
+		 * @param data     the entry's data
+		 */
+		void onRemap(int oldIndex, int newIndex, T data);
+	}
+
+	/** The Constant DEFAULT_LOAD_FACTOR. */
+	public static final double DEFAULT_LOAD_FACTOR = 0.75;
+
+	/** The default number of old table entries migrated per operation. */
+	public static final int DEFAULT_MIGRATION_STEP = 8;
+
+	/** Table selector bit within an entry handle. */
+	private static final int TABLE_BIT = 1 << 30;
+
+	/** The Constant MAX_TABLE_SIZE. */
+	public static final int MAX_TABLE_SIZE = TABLE_BIT;
+
+	/** Factory creating a hash table of a given size. */
+	private final IntFunction<HashTable<T>> factory;
+
+	/** The table receiving all new entries. */
+	private HashTable<T> active;
+
+	/** The hashcode of each active table entry, by entry index. */
+	private long[] activeHashcodes;
+
+	/** The hashcode of each old table entry, by entry index. */
+	private long[] migratingHashcodes;
+
+	/** Handle selector bit of the active table. */
+	private int activeBit;
+
+	/** The table being drained, or null when no migration is in progress. */
+	private HashTable<T> migrating;
+
+	/** The next old table entry index to migrate. */
+	private int migrationCursor;
+
+	/** The hash algorithm shared by all tables. */
+	private HashAlgorithm hashAlgorithm = HashAlgorithms.xxHash64();
+
+	/** The remap listener. */
+	private RemapListener<T> remapListener = (o, n, d) -> {};
+
+	/** The load factor. */
+	private double loadFactor = DEFAULT_LOAD_FACTOR;
+
+	/** The number of entries migrated per operation. */
+	private int migrationStep = DEFAULT_MIGRATION_STEP;
+
+	/** The step needed to drain the old table before the active table fills. */
+	private int requiredMigrationStep = 1;
+
+	/** The max table size. */
+	private int maxTableSize = MAX_TABLE_SIZE;
+
+	/**
+	 * Instantiates a new resizable hash table backed by cuckoo hash tables.
+	 *
+	 * @param initialSize the initial table size, a power of 2
+	 */
+	public ResizableHashTable(int initialSize) {
+		this(initialSize, CuckooHashTable::new);
+	}
+
+	/**
+	 * Instantiates a new resizable hash table.
+	 *
+	 * @param initialSize the initial table size, a power of 2
+	 * @param factory     the factory creating each of the backing hash tables
+	 *                    from a table size
+	 */
+	public ResizableHashTable(int initialSize, IntFunction<HashTable<T>> factory) {
+		if (Integer.bitCount(initialSize) != 1 || initialSize > MAX_TABLE_SIZE)
+			throw new IllegalArgumentException("initial size not a power of 2 [%d]"
+					.formatted(initialSize));
+
+		this.factory = Objects.requireNonNull(factory, "factory");
+		this.active = newTable(initialSize);
+		this.activeHashcodes = new long[initialSize];
+	}
+
+	/**
+	 * Creates a new backing table using the shared hash algorithm.
+	 *
+	 * @param size the size
+	 * @return the hash table
+	 */
+	private HashTable<T> newTable(int size) {
+		return factory.apply(size)
+				.setHashAlgorithm(hashAlgorithm);
+	}
+
+	/**
+	 * Adds the.
+	 *
+	 * @param key  the key
+	 * @param data the data
+	 * @return the int
+	 * @see com.slytechs.jnet.jnetruntime.hash.KeyedTable#add(java.nio.ByteBuffer,
+	 *      java.lang.Object)
+	 */
+	@Override
+	public int add(ByteBuffer key, T data) {
+		return add(MemorySegment.ofBuffer(key), 0, key.remaining(), data);
+	}
+
+	/**
+	 * Adds the.
+	 *
+	 * @param key    the key
+	 * @param offset the offset
+	 * @param length the length
+	 * @param data   the data
+	 * @return the int
+	 * @see com.slytechs.jnet.jnetruntime.hash.KeyedTable#add(byte[], int, int,
+	 *      java.lang.Object)
+	 */
+	@Override
+	public int add(byte[] key, int offset, int length, T data) {
+		return add(MemorySegment.ofArray(key), offset, length, data,
+				hashAlgorithm.calculateHashcode(key, offset, length));
+	}
+
+	/**
+	 * Adds the.
+	 *
+	 * @param key    the key
+	 * @param offset the offset
+	 * @param length the length
+	 * @param data   the data
+	 * @return the int
+	 * @see com.slytechs.jnet.jnetruntime.hash.KeyedTable#add(java.lang.foreign.MemorySegment,
+	 *      long, int, java.lang.Object)
+	 */
+	@Override
+	public int add(MemorySegment key, long offset, int length, T data) {
+		return add(key, offset, length, data, hashAlgorithm.calculateHashcode(key, offset, length));
+	}
+
+	/**
+	 * Adds a new entry or retrieves an existing entry, using a precomputed
+	 * hashcode. Starts a new migration if the active table's load factor would be
+	 * exceeded, or if the active table has no room for the key.
+	 *
+	 * @param key      the segment containing the key
+	 * @param offset   the byte offset of the key within the segment
+	 * @param length   the key length in bytes
+	 * @param data     the data
+	 * @param hashcode the hashcode
+	 * @return the entry handle, or -1 on failure
+	 */
+	public int add(MemorySegment key, long offset, int length, T data, long hashcode) {
+		migrateStep();
+
+		if (migrating != null) {
+			int index = migrating.lookup(key, offset, length, hashcode);
+			if (index != -1)
+				return index | (activeBit ^ TABLE_BIT);
+
+		} else if (active.getUsedEntriesCount() >= active.size() * loadFactor) {
+			grow();
+		}
+
+		int index = active.add(key, offset, length, data, hashcode);
+		if (index == -1 && grow())
+			index = active.add(key, offset, length, data, hashcode);
+
+		if (index == -1)
+			return -1;
+
+		activeHashcodes[index] = hashcode;
+
+		return index | activeBit;
+	}
+
+	/**
+	 * Doubles the table capacity. Refused while a migration is in progress,
+	 * since only 2 tables can be live at any one time and draining the old table
+	 * at once would stall the caller. The active table is twice the size of the
+	 * old one, so with the load factor check an add only fails here when the
+	 * backing table rejects a key well below its load factor.
+	 *
+	 * @return true, if a larger table was allocated, false if at max size or
+	 *         migrating
+	 */
+	private boolean grow() {
+		int newSize = active.size() * 2;
+		if (newSize > maxTableSize || newSize <= 0 || migrating != null)
+			return false;
+
+		this.migrating = active;
+		this.migratingHashcodes = activeHashcodes;
+		this.migrationCursor = 0;
+		this.active = newTable(newSize);
+		this.activeHashcodes = new long[newSize];
+		this.activeBit ^= TABLE_BIT;
+
+		/*
+		 * Every add migrates at least one step, so spread the old table's slots
+		 * over the adds which fit in the active table before it reaches its load
+		 * factor, counting the old entries which will be moved there.
+		 */
+		long slack = Math.max(1, (long) (newSize * loadFactor) - migrating.getUsedEntriesCount());
+		this.requiredMigrationStep = (int) ((migrating.size() + slack - 1) / slack);
+
+		return true;
+	}
+
+	/**
+	 * Migrates up to the migration step number of entries from the old table to
+	 * the active table. When the end of the old table is reached and it is empty,
+	 * the old table is released.
+	 */
+	private void migrateStep() {
+		if (migrating == null)
+			return;
+
+		int step = Math.max(migrationStep, requiredMigrationStep);
+		int end = (int) Math.min((long) migrationCursor + step, migrating.size());
+
+		for (int i = migrationCursor; i < end; i++)
+			migrateEntry(i);
+
+		migrationCursor = end;
+
+		if (migrationCursor == migrating.size()) {
+			if (migrating.getUsedEntriesCount() == 0)
+				releaseMigrating(); // Migration complete
+			else
+				migrationCursor = 0; // Entries which found no room, retry them
+		}
+	}
+
+	/**
+	 * Releases the drained old table.
+	 */
+	private void releaseMigrating() {
+		this.migrating = null;
+		this.migratingHashcodes = null;
+	}
+
+	/**
+	 * Moves a single entry from the old table to the active table, reinserting it
+	 * with its original hashcode, and notifies the remap listener. An entry which
+	 * finds no room in the active table stays in the old table and remains
+	 * accessible.
+	 *
+	 * @param index the old table entry index
+	 */
+	private void migrateEntry(int index) {
+		HashEntry<T> entry = migrating.get(index);
+		if (entry.isEmpty())
+			return;
+
+		T data = entry.data();
+		long hashcode = migratingHashcodes[index];
+		int newIndex = active.add(entry.keySegment(), 0, entry.keyLength(), data, hashcode);
+		if (newIndex == -1)
+			return;
+
+		activeHashcodes[newIndex] = hashcode;
+
+		migrating.remove(index);
+		remapListener.onRemap(index | (activeBit ^ TABLE_BIT), newIndex | activeBit, data);
+	}
+
+	/**
+	 * Completes any migration in progress, moving all of the remaining entries
+	 * from the old table to the active table at once. This pauses the caller for
+	 * the whole old table, and is never done implicitly by the table itself.
+	 *
+	 * @return this table
+	 */
+	public ResizableHashTable<T> completeMigration() {
+		while (migrating != null) {
+			long remaining = migrating.getUsedEntriesCount();
+
+			for (int i = migrationCursor; i < migrating.size(); i++)
+				migrateEntry(i);
+
+			migrationCursor = 0;
+
+			if (migrating.getUsedEntriesCount() == 0)
+				releaseMigrating();
+			else if (migrating.getUsedEntriesCount() == remaining)
+				break; // No progress, the active table is full
+		}
+
+		return this;
+	}
+
+	/**
+	 * Gets the entry for a handle.
+	 *
+	 * @param index the entry handle
+	 * @return the entry
+	 * @see com.slytechs.jnet.jnetruntime.hash.KeyedTable#get(int)
+	 */
+	@Override
+	public HashEntry<T> get(int index) {
+		if ((index & TABLE_BIT) == activeBit)
+			return active.get(index & ~TABLE_BIT);
+
+		if (migrating == null)
+			throw new IllegalArgumentException("stale entry handle [0x%X]".formatted(index));
+
+		return migrating.get(index & ~TABLE_BIT);
+	}
+
+	/**
+	 * Capacity of the active table.
+	 *
+	 * @return the capacity
+	 */
+	public int capacity() {
+		return active.size();
+	}
+
+	/**
+	 * Gets the used entries count across both tables.
+	 *
+	 * @return the used entries count
+	 */
+	public long getUsedEntriesCount() {
+		return active.getUsedEntriesCount()
+				+ ((migrating == null) ? 0 : migrating.getUsedEntriesCount());
+	}
+
+	/**
+	 * Checks if a migration is in progress.
+	 *
+	 * @return true, if both an old and a new table are live
+	 */
+	public boolean isMigrating() {
+		return migrating != null;
+	}
+
+	/**
+	 * Iterator over the entries of the active table, followed by the entries of
+	 * the old table if a migration is in progress.
+	 *
+	 * @return the iterator
+	 * @see java.lang.Iterable#iterator()
+	 */
+	@Override
+	public Iterator<Entry<T>> iterator() {
+		Stream<Entry<T>> entries = active.stream();
+		if (migrating != null)
+			entries = Stream.concat(entries, migrating.stream());
+
+		return entries.iterator();
+	}
+
+	/**
+	 * Lookup.
+	 *
+	 * @param key the key
+	 * @return the int
+	 * @see com.slytechs.jnet.jnetruntime.hash.KeyedTable#lookup(java.nio.ByteBuffer)
+	 */
+	@Override
+	public int lookup(ByteBuffer key) {
+		return lookup(MemorySegment.ofBuffer(key), 0, key.remaining());
+	}
+
+	/**
+	 * Lookup.
+	 *
+	 * @param key    the key
+	 * @param offset the offset
+	 * @param length the length
+	 * @return the int
+	 * @see com.slytechs.jnet.jnetruntime.hash.KeyedTable#lookup(byte[], int, int)
+	 */
+	@Override
+	public int lookup(byte[] key, int offset, int length) {
+		return lookup(MemorySegment.ofArray(key), offset, length,
+				hashAlgorithm.calculateHashcode(key, offset, length));
+	}
+
+	/**
+	 * Lookup.
+	 *
+	 * @param key    the key
+	 * @param offset the offset
+	 * @param length the length
+	 * @return the int
+	 * @see com.slytechs.jnet.jnetruntime.hash.KeyedTable#lookup(java.lang.foreign.MemorySegment,
+	 *      long, int)
+	 */
+	@Override
+	public int lookup(MemorySegment key, long offset, int length) {
+		return lookup(key, offset, length, hashAlgorithm.calculateHashcode(key, offset, length));
+	}
+
+	/**
+	 * Looks up an entry using a precomputed hashcode, in the active table first
+	 * and then in the old table.
+	 *
+	 * @param key      the segment containing the key
+	 * @param offset   the byte offset of the key within the segment
+	 * @param length   the key length in bytes
+	 * @param hashcode the hashcode
+	 * @return the entry handle, or -1 if not found
+	 */
+	public int lookup(MemorySegment key, long offset, int length, long hashcode) {
+		migrateStep();
+
+		int index = active.lookup(key, offset, length, hashcode);
+		if (index != -1)
+			return index | activeBit;
+
+		if (migrating != null) {
+			index = migrating.lookup(key, offset, length, hashcode);
+			if (index != -1)
+				return index | (activeBit ^ TABLE_BIT);
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Removes the.
+	 *
+	 * @param key the key
+	 * @return true, if successful
+	 * @see com.slytechs.jnet.jnetruntime.hash.KeyedTable#remove(java.nio.ByteBuffer)
+	 */
+	@Override
+	public boolean remove(ByteBuffer key) {
+		return remove(MemorySegment.ofBuffer(key), 0, key.remaining());
+	}
+
+	/**
+	 * Removes the.
+	 *
+	 * @param key    the key
+	 * @param offset the offset
+	 * @param length the length
+	 * @return true, if successful
+	 * @see com.slytechs.jnet.jnetruntime.hash.KeyedTable#remove(byte[], int, int)
+	 */
+	@Override
+	public boolean remove(byte[] key, int offset, int length) {
+		return remove(MemorySegment.ofArray(key), offset, length,
+				hashAlgorithm.calculateHashcode(key, offset, length));
+	}
+
+	/**
+	 * Removes the.
+	 *
+	 * @param key    the key
+	 * @param offset the offset
+	 * @param length the length
+	 * @return true, if successful
+	 * @see com.slytechs.jnet.jnetruntime.hash.KeyedTable#remove(java.lang.foreign.MemorySegment,
+	 *      long, int)
+	 */
+	@Override
+	public boolean remove(MemorySegment key, long offset, int length) {
+		return remove(key, offset, length, hashAlgorithm.calculateHashcode(key, offset, length));
+	}
+
+	/**
+	 * Removes an entry using a precomputed hashcode, from whichever table holds
+	 * it.
+	 *
+	 * @param key      the segment containing the key
+	 * @param offset   the byte offset of the key within the segment
+	 * @param length   the key length in bytes
+	 * @param hashcode the hashcode
+	 * @return true, if entry was found and removed, otherwise false
+	 */
+	public boolean remove(MemorySegment key, long offset, int length, long hashcode) {
+		migrateStep();
+
+		if (active.remove(key, offset, length, hashcode))
+			return true;
+
+		return (migrating != null) && migrating.remove(key, offset, length, hashcode);
+	}
+
+	/**
+	 * Sets the hash algorithm used by all current and future backing tables.
+	 * Changing the algorithm rehashes nothing, it should be set before any
+	 * entries are added.
+	 *
+	 * @param newAlgorithm the new hash algorithm
+	 * @return this table
+	 */
+	public ResizableHashTable<T> setHashAlgorithm(HashAlgorithm newAlgorithm) {
+		this.hashAlgorithm = Objects.requireNonNull(newAlgorithm, "newAlgorithm");
+
+		active.setHashAlgorithm(newAlgorithm);
+		if (migrating != null)
+			migrating.setHashAlgorithm(newAlgorithm);
+
+		return this;
+	}
+
+	/**
+	 * Sets the load factor of the active table, at which point it is grown.
+	 *
+	 * @param newLoadFactor the new load factor, greater than 0 and at most 1
+	 * @return this table
+	 */
+	public ResizableHashTable<T> setLoadFactor(double newLoadFactor) {
+		if (!(newLoadFactor > 0 && newLoadFactor <= 1))
+			throw new IllegalArgumentException("invalid load factor [%.2f]".formatted(newLoadFactor));
+
+		this.loadFactor = newLoadFactor;
+
+		return this;
+	}
+
+	/**
+	 * Sets the maximum size the table is allowed to grow to.
+	 *
+	 * @param newMaxTableSize the new max table size
+	 * @return this table
+	 */
+	public ResizableHashTable<T> setMaxTableSize(int newMaxTableSize) {
+		if (newMaxTableSize <= 0 || newMaxTableSize > MAX_TABLE_SIZE)
+			throw new IllegalArgumentException("invalid max table size [%d]".formatted(newMaxTableSize));
+
+		this.maxTableSize = newMaxTableSize;
+
+		return this;
+	}
+
+	/**
+	 * Sets the number of old table entries examined, and migrated if used, on
+	 * each add, lookup and remove operation while a migration is in progress.
+	 * The step is raised automatically when needed to drain the old table before
+	 * the active table reaches its load factor.
+	 *
+	 * @param newMigrationStep the new migration step
+	 * @return this table
+	 */
+	public ResizableHashTable<T> setMigrationStep(int newMigrationStep) {
+		if (newMigrationStep <= 0)
+			throw new IllegalArgumentException("invalid migration step [%d]".formatted(newMigrationStep));
+
+		this.migrationStep = newMigrationStep;
+
+		return this;
+	}
+
+	/**
+	 * Sets the listener notified when a migrated entry's handle changes.
+	 *
+	 * @param newListener the new remap listener
+	 * @return this table
+	 */
+	public ResizableHashTable<T> setRemapListener(RemapListener<T> newListener) {
+		this.remapListener = Objects.requireNonNull(newListener, "newListener");
+
+		return this;
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "ResizableHashTable [used=%d, capacity=%d, migrating=%s, active=%s%s]"
+				.formatted(
+						getUsedEntriesCount(),
+						capacity(),
+						isMigrating(),
+						active,
+						(migrating == null) ? "" : ", old=" + migrating);
+	}
+}
@@ -0,0 +1,540 @@
+/*
+ * Sly Technologies Free License
+ * 
+ * Copyright 2024 Sly Technologies Inc.
+ *
+ * Licensed under the Sly Technologies Free License (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.slytechs.com/free-license-text
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.slytechs.jnet.jnetruntime.hash;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+
+/**
+ * Hash table based on open addressing with Robin Hood linear probing.
+ * 
+ * <p>
+ * Unlike the direct-mapped {@link HashTable}, a colliding key is not rejected.
+ * Instead the table probes consecutive slots starting at the key's home slot
+ * until a free slot is found. Robin Hood hashing keeps the probe sequences
+ * short and uniform: during insertion, an entry that is closer to its home slot
+ * ("rich") gives up its slot to the entry being inserted which is further away
+ * from its own home slot ("poor"). This bounds the variance of probe lengths
+ * and allows lookups of missing keys to terminate early, as soon as a slot with
+ * a shorter probe distance than the current one is encountered.
+ * </p>
+ * <p>
+ * Removal uses backward-shift deletion, where the entries following the removed
+ * slot are shifted back by one until an empty slot or an entry sitting in its
+ * home slot is reached. No tombstones are left behind, so lookup performance
+ * does not degrade over time with add/remove churn.
+ * </p>
+ * <p>
+ * Probe slots only hold the index of the hash table entry they refer to, along
+ * with the entry's probe length and hashcode. Entries never move when slots
+ * are shifted, which keeps every {@code index} returned by {@link #add} stable
+ * for as long as the entry remains in the table. Probe length is bounded by a
+ * configurable maximum, beyond which an insertion fails, which allows the
+ * table to be safely run at 80-90% load factor.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ * @param <T> the generic type
+ */
+public final class RobinHoodHashTable<T> extends HashTable<T> {
+
+	/** The Constant DEFAULT_MAX_PROBE_LENGTH. */
+	public static final int DEFAULT_MAX_PROBE_LENGTH = 64;
+
+	/** The number of probe slots, from a key's home slot, considered for eviction. */
+	private static final int EVICTION_WINDOW = 8;
+
+	/** Marks an unused probe slot. */
+	private static final int EMPTY_SLOT = -1;
+
+	/** The hash table entry index stored in each probe slot. */
+	private final int[] slots;
+
+	/** The distance of each occupied slot from its entry's home slot. */
+	private final short[] probeLengths;
+
+	/** The lower 32 bits of the hashcode of each occupied slot's entry. */
+	private final int[] slotHashes;
+
+	/** The probe slot currently holding each hash table entry. */
+	private final int[] entrySlots;
+
+	/** Stack of unused hash table entry indexes. */
+	private final int[] freeEntries;
+
+	/** The number of unused hash table entry indexes on the stack. */
+	private int freeCount;
+
+	/** The slot bitmask. */
+	private final int slotMask;
+
+	/** The maximum allowed probe length. */
+	private final int maxProbeLength;
+
+	/** Eviction scratch space, the entries within the eviction window. */
+	private final int[] evictionCandidates = new int[EVICTION_WINDOW];
+
+	/** The number of entries shifted down to make room for new ones. */
+	private long kickCount;
+
+	/**
+	 * Instantiates a new robin hood hash table.
+	 */
+	public RobinHoodHashTable() {
+		this(DEFAULT_TABLE_SIZE);
+	}
+
+	/**
+	 * Instantiates a new robin hood hash table.
+	 *
+	 * @param tableSize the table size
+	 */
+	public RobinHoodHashTable(int tableSize) {
+		this(tableSize, DEFAULT_MAX_PROBE_LENGTH);
+	}
+
+	/**
+	 * Instantiates a new robin hood hash table.
+	 *
+	 * @param tableSize      the table size
+	 * @param maxProbeLength the maximum number of slots probed past the home slot
+	 */
+	public RobinHoodHashTable(int tableSize, int maxProbeLength) {
+		this(tableSize, maxProbeLength, MAX_KEY_SIZE_BYTES);
+	}
+
+	/**
+	 * Instantiates a new robin hood hash table.
+	 *
+	 * @param tableSize      the table size
+	 * @param maxProbeLength the maximum number of slots probed past the home slot
+	 * @param keySizeBytes   the maximum key size in bytes
+	 */
+	public RobinHoodHashTable(int tableSize, int maxProbeLength, int keySizeBytes) {
+		super(tableSize, keySizeBytes);
+		assert Integer.bitCount(tableSize) == 1 : ""
+				+ "table size not a power of 2 [%d]".formatted(tableSize);
+
+		if (maxProbeLength <= 0 || maxProbeLength > Short.MAX_VALUE)
+			throw new IllegalArgumentException("invalid max probe length [%d]"
+					.formatted(maxProbeLength));
+
+		this.maxProbeLength = Math.min(maxProbeLength, tableSize - 1);
+		this.slotMask = tableSize - 1;
+		this.slots = new int[tableSize];
+		this.probeLengths = new short[tableSize];
+		this.slotHashes = new int[tableSize];
+		this.entrySlots = new int[tableSize];
+		this.freeEntries = new int[tableSize];
+
+		for (int i = 0; i < tableSize; i++) {
+			slots[i] = EMPTY_SLOT;
+			entrySlots[i] = EMPTY_SLOT;
+			freeEntries[i] = tableSize - 1 - i; // Lowest entry index is on top
+		}
+
+		this.freeCount = tableSize;
+	}
+
+	/**
+	 * Adds the.
+	 *
+	 * @param key      the key
+	 * @param offset   the offset
+	 * @param length   the length
+	 * @param data     the data
+	 * @param hashcode the hashcode
+	 * @return the int
+	 * @see com.slytechs.jnet.jnetruntime.hash.HashTable#add(java.lang.foreign.MemorySegment,
+	 *      long, int, java.lang.Object, long)
+	 */
+	@Override
+	public int add(MemorySegment key, long offset, int length, T data, long hashcode) {
+		int slot = findSlot(key, offset, length, hashcode);
+		if (slot != EMPTY_SLOT) {
+			accessed(slots[slot]);
+			return slots[slot];
+		}
+
+		int entryIndex = insert(key, offset, length, data, hashcode);
+		if (entryIndex == -1 && isEvictionEnabled() && evictVictim((int) hashcode))
+			entryIndex = insert(key, offset, length, data, hashcode);
+
+		return (entryIndex == -1) ? insertFailed() : entryIndex;
+	}
+
+	/**
+	 * Inserts a new key, shifting richer entries down by one slot.
+	 *
+	 * @param key      the key
+	 * @param offset   the offset
+	 * @param length   the length
+	 * @param data     the data
+	 * @param hashcode the hashcode
+	 * @return the new entry index, or -1 if the table is full or the probe limit
+	 *         would be exceeded
+	 */
+	private int insert(MemorySegment key, long offset, int length, T data, long hashcode) {
+		if (freeCount == 0)
+			return -1; // Table is full
+
+		int hash = (int) hashcode;
+		int pos = hash & slotMask;
+		int probeLength = 0;
+
+		/* Skip over all the entries that are as poor or poorer than the new one */
+		while (slots[pos] != EMPTY_SLOT && probeLengths[pos] >= probeLength) {
+			if (++probeLength > maxProbeLength)
+				return -1;
+
+			pos = (pos + 1) & slotMask;
+		}
+
+		/*
+		 * Find the first empty slot at or after the insertion point, making sure none
+		 * of the entries which will be shifted down by one exceed the probe limit.
+		 */
+		int end = pos;
+		while (slots[end] != EMPTY_SLOT) {
+			if (probeLengths[end] >= maxProbeLength)
+				return -1;
+
+			end = (end + 1) & slotMask;
+		}
+
+		int entryIndex = freeEntries[freeCount - 1];
+		if (set(entryIndex, key, offset, length, data) == -1) // Throws on invalid key before any slot is modified
+			return -1; // Key overflow slab is full
+
+		freeCount--;
+
+		/* Shift the richer entries down by one, starting from the empty slot */
+		while (end != pos) {
+			int prev = (end - 1) & slotMask;
+
+			slots[end] = slots[prev];
+			probeLengths[end] = (short) (probeLengths[prev] + 1);
+			slotHashes[end] = slotHashes[prev];
+			entrySlots[slots[end]] = end;
+			kickCount++;
+
+			end = prev;
+		}
+
+		slots[pos] = entryIndex;
+		probeLengths[pos] = (short) probeLength;
+		slotHashes[pos] = hash;
+		entrySlots[entryIndex] = pos;
+
+		return entryIndex;
+	}
+
+	/**
+	 * Evicts a victim, chosen by the eviction policy among the entries occupying
+	 * the first few probe slots starting at the new key's home slot.
+	 *
+	 * @param hash the lower 32 bits of the new key's hashcode
+	 * @return true, if an entry was evicted
+	 */
+	private boolean evictVictim(int hash) {
+		int window = Math.min(EVICTION_WINDOW, maxProbeLength + 1);
+		int count = 0;
+
+		for (int i = 0, pos = hash & slotMask; i < window; i++, pos = (pos + 1) & slotMask)
+			if (slots[pos] != EMPTY_SLOT)
+				evictionCandidates[count++] = slots[pos];
+
+		if (count == 0)
+			return false;
+
+		int victim = selectVictim(evictionCandidates, count);
+
+		for (int i = 0, pos = hash & slotMask; i < window; i++, pos = (pos + 1) & slotMask) {
+			if (slots[pos] == victim) {
+				evicting(victim);
+				removeSlot(pos);
+
+				break;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Find the probe slot holding the key.
+	 *
+	 * @param key      the key
+	 * @param offset   the offset
+	 * @param length   the length
+	 * @param hashcode the hashcode
+	 * @return the slot or -1 if not found
+	 */
+	private int findSlot(MemorySegment key, long offset, int length, long hashcode) {
+		int hash = (int) hashcode;
+		int pos = hash & slotMask;
+
+		for (int probeLength = 0; probeLength <= maxProbeLength; probeLength++) {
+			int entryIndex = slots[pos];
+
+			/* Robin Hood invariant: key would have displaced a richer entry */
+			if (entryIndex == EMPTY_SLOT || probeLengths[pos] < probeLength)
+				return EMPTY_SLOT;
+
+			if (slotHashes[pos] == hash && matchKey(entryIndex, key, offset, length))
+				return pos;
+
+			pos = (pos + 1) & slotMask;
+		}
+
+		return EMPTY_SLOT;
+	}
+
+	/**
+	 * Lookup.
+	 *
+	 * @param key      the key
+	 * @param offset   the offset
+	 * @param length   the length
+	 * @param hashcode the hashcode
+	 * @return the int
+	 * @see com.slytechs.jnet.jnetruntime.hash.HashTable#lookup(java.lang.foreign.MemorySegment,
+	 *      long, int, long)
+	 */
+	@Override
+	public int lookup(MemorySegment key, long offset, int length, long hashcode) {
+		int slot = findSlot(key, offset, length, hashcode);
+		if (slot == EMPTY_SLOT)
+			return -1;
+
+		accessed(slots[slot]);
+
+		return slots[slot];
+	}
+
+	/**
+	 * Looks up a burst of keys. Each key's probe sequence is a contiguous run of
+	 * slots, so the burst is simply probed in order once all of the hashcodes are
+	 * known.
+	 *
+	 * @param keys      the keys
+	 * @param hashcodes the hashcodes
+	 * @param indexes   the indexes
+	 * @param count     the count
+	 * @return the int
+	 * @see com.slytechs.jnet.jnetruntime.hash.HashTable#lookupBulkStaged(java.nio.ByteBuffer[],
+	 *      long[], int[], int)
+	 */
+	@Override
+	protected int lookupBulkStaged(ByteBuffer[] keys, long[] hashcodes, int[] indexes, int count) {
+		int found = 0;
+
+		for (int i = 0; i < count; i++) {
+			indexes[i] = lookup(keys[i], hashcodes[i]);
+			if (indexes[i] != -1)
+				found++;
+		}
+
+		return found;
+	}
+
+	/**
+	 * Gets the maximum probe length.
+	 *
+	 * @return the max probe length
+	 */
+	public int maxProbeLength() {
+		return maxProbeLength;
+	}
+
+	/**
+	 * Removes the entry using backward-shift deletion.
+	 *
+	 * @param key      the key
+	 * @param offset   the offset
+	 * @param length   the length
+	 * @param hashcode the hashcode
+	 * @return true, if successful
+	 * @see com.slytechs.jnet.jnetruntime.hash.HashTable#remove(java.lang.foreign.MemorySegment,
+	 *      long, int, long)
+	 */
+	@Override
+	public boolean remove(MemorySegment key, long offset, int length, long hashcode) {
+		int pos = findSlot(key, offset, length, hashcode);
+		if (pos == EMPTY_SLOT)
+			return false;
+
+		removeSlot(pos);
+
+		return true;
+	}
+
+	/**
+	 * Removes the entry occupying a probe slot using backward-shift deletion.
+	 *
+	 * @param pos the probe slot
+	 */
+	private void removeSlot(int pos) {
+		int entryIndex = slots[pos];
+
+		/* Pull back every following entry which is not in its home slot */
+		int next = (pos + 1) & slotMask;
+		while (slots[next] != EMPTY_SLOT && probeLengths[next] > 0) {
+			slots[pos] = slots[next];
+			probeLengths[pos] = (short) (probeLengths[next] - 1);
+			slotHashes[pos] = slotHashes[next];
+			entrySlots[slots[pos]] = pos;
+
+			pos = next;
+			next = (next + 1) & slotMask;
+		}
+
+		slots[pos] = EMPTY_SLOT;
+		probeLengths[pos] = 0;
+		entrySlots[entryIndex] = EMPTY_SLOT;
+
+		freeEntries[freeCount++] = entryIndex;
+		super.remove(entryIndex);
+	}
+
+	/**
+	 * Removes the hash entry at specified index through the probe slot it
+	 * occupies. The key is not rehashed, so entries added with a caller supplied
+	 * hashcode are removed as well.
+	 *
+	 * @param index the hash table index
+	 * @see com.slytechs.jnet.jnetruntime.hash.HashTable#remove(int)
+	 */
+	@Override
+	protected void remove(int index) {
+		int pos = entrySlots[index];
+		if (pos != EMPTY_SLOT)
+			removeSlot(pos);
+	}
+
+	/**
+	 * Kick count.
+	 *
+	 * @return the long
+	 * @see com.slytechs.jnet.jnetruntime.hash.HashTable#kickCount()
+	 */
+	@Override
+	protected long kickCount() {
+		return kickCount;
+	}
+
+	/**
+	 * Probe length histogram, collected from the probe length of every occupied
+	 * slot.
+	 *
+	 * @return the long[]
+	 * @see com.slytechs.jnet.jnetruntime.hash.HashTable#probeLengthHistogram()
+	 */
+	@Override
+	protected long[] probeLengthHistogram() {
+		long[] histogram = new long[maxProbeLength + 1];
+
+		for (int i = 0; i < slots.length; i++)
+			if (slots[i] != EMPTY_SLOT)
+				histogram[probeLengths[i]]++;
+
+		return histogram;
+	}
+
+	/**
+	 * Bucket fill histogram, which is empty since entries are not organized into
+	 * buckets.
+	 *
+	 * @return the long[]
+	 * @see com.slytechs.jnet.jnetruntime.hash.HashTable#bucketFillHistogram()
+	 */
+	@Override
+	protected long[] bucketFillHistogram() {
+		return new long[0];
+	}
+
+	/**
+	 * Snapshot layout size, the slot arrays and the free entry stack.
+	 *
+	 * @return the long
+	 * @see com.slytechs.jnet.jnetruntime.hash.HashTable#snapshotLayoutSize()
+	 */
+	@Override
+	protected long snapshotLayoutSize() {
+		return Long.BYTES
+				+ (long) (slots.length + slotHashes.length + freeEntries.length) * Integer.BYTES
+				+ (long) probeLengths.length * Short.BYTES;
+	}
+
+	/**
+	 * Snapshot layout.
+	 *
+	 * @param dst    the dst
+	 * @param offset the offset
+	 * @see com.slytechs.jnet.jnetruntime.hash.HashTable#snapshotLayout(java.lang.foreign.MemorySegment,
+	 *      long)
+	 */
+	@Override
+	protected void snapshotLayout(MemorySegment dst, long offset) {
+		dst.set(ValueLayout.JAVA_LONG_UNALIGNED, offset, freeCount);
+
+		offset = copyTo(slots, dst, offset + Long.BYTES);
+		offset = copyTo(slotHashes, dst, offset);
+		offset = copyTo(freeEntries, dst, offset);
+		copyTo(probeLengths, dst, offset);
+	}
+
+	/**
+	 * Restore layout.
+	 *
+	 * @param src    the src
+	 * @param offset the offset
+	 * @see com.slytechs.jnet.jnetruntime.hash.HashTable#restoreLayout(java.lang.foreign.MemorySegment,
+	 *      long)
+	 */
+	@Override
+	protected void restoreLayout(MemorySegment src, long offset) {
+		this.freeCount = (int) src.get(ValueLayout.JAVA_LONG_UNALIGNED, offset);
+
+		offset = copyFrom(src, offset + Long.BYTES, slots);
+		offset = copyFrom(src, offset, slotHashes);
+		offset = copyFrom(src, offset, freeEntries);
+		copyFrom(src, offset, probeLengths);
+
+		/* Entry to slot mapping is derived from the slots, not part of the layout */
+		for (int i = 0; i < entrySlots.length; i++)
+			entrySlots[i] = EMPTY_SLOT;
+
+		for (int i = 0; i < slots.length; i++)
+			if (slots[i] != EMPTY_SLOT)
+				entrySlots[slots[i]] = i;
+	}
+
+	/**
+	 * To string extra.
+	 *
+	 * @return the string
+	 * @see com.slytechs.jnet.jnetruntime.hash.HashTable#toStringExtra()
+	 */
+	@Override
+	protected String toStringExtra() {
+		return ", maxProbe=%d".formatted(maxProbeLength);
+	}
+}
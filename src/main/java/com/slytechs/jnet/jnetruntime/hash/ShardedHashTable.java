@@ -0,0 +1,496 @@
+/*
+ * Sly Technologies Free License
+ *
+ * Copyright 2024 Sly Technologies Inc.
+ *
+ * Licensed under the Sly Technologies Free License (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.slytechs.com/free-license-text
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.slytechs.jnet.jnetruntime.hash;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
+
+import com.slytechs.jnet.jnetruntime.hash.HashTable.HashAlgorithm;
+import com.slytechs.jnet.jnetruntime.hash.HashTable.HashEntry;
+
+/**
+ * A keyed table partitioned into a number of independent hash table shards, for
+ * scaling writes across cores.
+ * <p>
+ * Each key is routed to a shard selected by the high bits of its hashcode. The
+ * low bits remain available to the shard itself for bucket selection, so the
+ * two selections are independent. The shards share no mutable state with each
+ * other or with this table, and each is intended to be owned by a single worker
+ * thread. As long as every key is processed by the worker owning its shard, for
+ * example by steering packets to capture threads using {@link #shardOf(long)},
+ * the workers add, look up and remove entries without any locking or cross-core
+ * cache line traffic.
+ * </p>
+ * <p>
+ * The indexes returned by this table are handles, made up of the shard number
+ * in the upper bits and the entry's index within the shard in the lower bits.
+ * See {@link #shardOfHandle(int)} and {@link #indexOfHandle(int)}.
+ * </p>
+ * <p>
+ * Callers which already computed a key's hashcode, for example to route it,
+ * should use the hashcode variants of add, lookup and remove to avoid hashing
+ * the key a second time.
+ * </p>
+ * <p>
+ * Shards receive the hashcodes computed by this table's hash algorithm, so
+ * every shard must use the same algorithm. The constructor sets the table's
+ * algorithm on each shard created by the factory, replacing whatever the
+ * factory configured, and {@link #setHashAlgorithm(HashAlgorithm)} propagates
+ * to all shards. Changing the algorithm directly on a shard is not supported.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ * @param <T> the generic type
+ */
+public final class ShardedHashTable<T> implements KeyedTable<T> {
+
+	/** The Constant MAX_TOTAL_SIZE. */
+	public static final int MAX_TOTAL_SIZE = 1 << 30;
+
+	/** The shards. */
+	private final HashTable<T>[] shards;
+
+	/** Number of hashcode bits used to select a shard. */
+	private final int shardBits;
+
+	/** Number of handle bits holding the index within a shard. */
+	private final int indexBits;
+
+	/** The hash algorithm shared by all shards. */
+	private HashAlgorithm hashAlgorithm = HashAlgorithms.xxHash64();
+
+	/**
+	 * Instantiates a new sharded hash table backed by cuckoo hash tables.
+	 *
+	 * @param shardCount the number of shards, a power of 2
+	 * @param shardSize  the size of each shard, a power of 2
+	 */
+	public ShardedHashTable(int shardCount, int shardSize) {
+		this(shardCount, shardSize, CuckooHashTable::new);
+	}
+
+	/**
+	 * Instantiates a new sharded hash table.
+	 *
+	 * @param shardCount the number of shards, a power of 2
+	 * @param shardSize  the size of each shard, a power of 2
+	 * @param factory    the factory creating each of the shards from a table size,
+	 *                   the hash algorithm of each shard is replaced with this
+	 *                   table's algorithm
+	 */
+	@SuppressWarnings("unchecked")
+	public ShardedHashTable(int shardCount, int shardSize, IntFunction<HashTable<T>> factory) {
+		if (Integer.bitCount(shardCount) != 1)
+			throw new IllegalArgumentException("shard count not a power of 2 [%d]".formatted(shardCount));
+
+		if (Integer.bitCount(shardSize) != 1)
+			throw new IllegalArgumentException("shard size not a power of 2 [%d]".formatted(shardSize));
+
+		if ((long) shardCount * shardSize > MAX_TOTAL_SIZE)
+			throw new IllegalArgumentException("total size too large [%d]"
+					.formatted((long) shardCount * shardSize));
+
+		Objects.requireNonNull(factory, "factory");
+
+		this.shardBits = Integer.numberOfTrailingZeros(shardCount);
+		this.indexBits = Integer.numberOfTrailingZeros(shardSize);
+		this.shards = (HashTable<T>[]) new HashTable<?>[shardCount];
+
+		for (int i = 0; i < shardCount; i++)
+			shards[i] = factory.apply(shardSize)
+					.setHashAlgorithm(hashAlgorithm);
+	}
+
+	/**
+	 * Adds the.
+	 *
+	 * @param key  the key
+	 * @param data the data
+	 * @return the int
+	 * @see com.slytechs.jnet.jnetruntime.hash.KeyedTable#add(java.nio.ByteBuffer,
+	 *      java.lang.Object)
+	 */
+	@Override
+	public int add(ByteBuffer key, T data) {
+		return add(MemorySegment.ofBuffer(key), 0, key.remaining(), data);
+	}
+
+	/**
+	 * Adds the.
+	 *
+	 * @param key    the key
+	 * @param offset the offset
+	 * @param length the length
+	 * @param data   the data
+	 * @return the int
+	 * @see com.slytechs.jnet.jnetruntime.hash.KeyedTable#add(byte[], int, int,
+	 *      java.lang.Object)
+	 */
+	@Override
+	public int add(byte[] key, int offset, int length, T data) {
+		return add(MemorySegment.ofArray(key), offset, length, data,
+				hashAlgorithm.calculateHashcode(key, offset, length));
+	}
+
+	/**
+	 * Adds the.
+	 *
+	 * @param key    the key
+	 * @param offset the offset
+	 * @param length the length
+	 * @param data   the data
+	 * @return the int
+	 * @see com.slytechs.jnet.jnetruntime.hash.KeyedTable#add(java.lang.foreign.MemorySegment,
+	 *      long, int, java.lang.Object)
+	 */
+	@Override
+	public int add(MemorySegment key, long offset, int length, T data) {
+		return add(key, offset, length, data, hashAlgorithm.calculateHashcode(key, offset, length));
+	}
+
+	/**
+	 * Adds a new entry or retrieves an existing entry in the key's shard, using a
+	 * precomputed hashcode.
+	 *
+	 * @param key      the segment containing the key
+	 * @param offset   the byte offset of the key within the segment
+	 * @param length   the key length in bytes
+	 * @param data     the data
+	 * @param hashcode the hashcode
+	 * @return the entry handle, or -1 on failure
+	 */
+	public int add(MemorySegment key, long offset, int length, T data, long hashcode) {
+		int shard = shardOf(hashcode);
+		int index = shards[shard].add(key, offset, length, data, hashcode);
+
+		return (index == -1) ? -1 : handle(shard, index);
+	}
+
+	/**
+	 * Calculates a key's hashcode using the shared hash algorithm.
+	 *
+	 * @param key    the segment containing the key
+	 * @param offset the byte offset of the key within the segment
+	 * @param length the key length in bytes
+	 * @return the hashcode
+	 */
+	public long calculateHashcode(MemorySegment key, long offset, int length) {
+		return hashAlgorithm.calculateHashcode(key, offset, length);
+	}
+
+	/**
+	 * Gets the entry for a handle.
+	 *
+	 * @param index the entry handle
+	 * @return the entry
+	 * @see com.slytechs.jnet.jnetruntime.hash.KeyedTable#get(int)
+	 */
+	@Override
+	public HashEntry<T> get(int index) {
+		return shards[shardOfHandle(index)].get(indexOfHandle(index));
+	}
+
+	/**
+	 * Gets the used entries count, summed over all shards. The sum is not atomic
+	 * when shards are being modified by their workers.
+	 *
+	 * @return the used entries count
+	 */
+	public long getUsedEntriesCount() {
+		long used = 0;
+		for (HashTable<T> shard : shards)
+			used += shard.getUsedEntriesCount();
+
+		return used;
+	}
+
+	/**
+	 * Makes an entry handle out of a shard number and an index within the shard.
+	 *
+	 * @param shard the shard number
+	 * @param index the index within the shard
+	 * @return the handle
+	 */
+	private int handle(int shard, int index) {
+		return (shard << indexBits) | index;
+	}
+
+	/**
+	 * Gets the index within its shard of an entry handle.
+	 *
+	 * @param handle the entry handle
+	 * @return the index within the shard
+	 */
+	public int indexOfHandle(int handle) {
+		return handle & ((1 << indexBits) - 1);
+	}
+
+	/**
+	 * Iterator over the entries of all of the shards, in shard order.
+	 *
+	 * @return the iterator
+	 * @see java.lang.Iterable#iterator()
+	 */
+	@Override
+	public Iterator<Entry<T>> iterator() {
+		return Arrays.stream(shards)
+				.flatMap(HashTable::stream)
+				.iterator();
+	}
+
+	/**
+	 * Lookup.
+	 *
+	 * @param key the key
+	 * @return the int
+	 * @see com.slytechs.jnet.jnetruntime.hash.KeyedTable#lookup(java.nio.ByteBuffer)
+	 */
+	@Override
+	public int lookup(ByteBuffer key) {
+		return lookup(MemorySegment.ofBuffer(key), 0, key.remaining());
+	}
+
+	/**
+	 * Lookup.
+	 *
+	 * @param key    the key
+	 * @param offset the offset
+	 * @param length the length
+	 * @return the int
+	 * @see com.slytechs.jnet.jnetruntime.hash.KeyedTable#lookup(byte[], int, int)
+	 */
+	@Override
+	public int lookup(byte[] key, int offset, int length) {
+		return lookup(MemorySegment.ofArray(key), offset, length,
+				hashAlgorithm.calculateHashcode(key, offset, length));
+	}
+
+	/**
+	 * Lookup.
+	 *
+	 * @param key    the key
+	 * @param offset the offset
+	 * @param length the length
+	 * @return the int
+	 * @see com.slytechs.jnet.jnetruntime.hash.KeyedTable#lookup(java.lang.foreign.MemorySegment,
+	 *      long, int)
+	 */
+	@Override
+	public int lookup(MemorySegment key, long offset, int length) {
+		return lookup(key, offset, length, hashAlgorithm.calculateHashcode(key, offset, length));
+	}
+
+	/**
+	 * Looks up an entry in the key's shard, using a precomputed hashcode.
+	 *
+	 * @param key      the segment containing the key
+	 * @param offset   the byte offset of the key within the segment
+	 * @param length   the key length in bytes
+	 * @param hashcode the hashcode
+	 * @return the entry handle, or -1 if not found
+	 */
+	public int lookup(MemorySegment key, long offset, int length, long hashcode) {
+		int shard = shardOf(hashcode);
+		int index = shards[shard].lookup(key, offset, length, hashcode);
+
+		return (index == -1) ? -1 : handle(shard, index);
+	}
+
+	/**
+	 * Removes the.
+	 *
+	 * @param key the key
+	 * @return true, if successful
+	 * @see com.slytechs.jnet.jnetruntime.hash.KeyedTable#remove(java.nio.ByteBuffer)
+	 */
+	@Override
+	public boolean remove(ByteBuffer key) {
+		return remove(MemorySegment.ofBuffer(key), 0, key.remaining());
+	}
+
+	/**
+	 * Removes the.
+	 *
+	 * @param key    the key
+	 * @param offset the offset
+	 * @param length the length
+	 * @return true, if successful
+	 * @see com.slytechs.jnet.jnetruntime.hash.KeyedTable#remove(byte[], int, int)
+	 */
+	@Override
+	public boolean remove(byte[] key, int offset, int length) {
+		return remove(MemorySegment.ofArray(key), offset, length,
+				hashAlgorithm.calculateHashcode(key, offset, length));
+	}
+
+	/**
+	 * Removes the.
+	 *
+	 * @param key    the key
+	 * @param offset the offset
+	 * @param length the length
+	 * @return true, if successful
+	 * @see com.slytechs.jnet.jnetruntime.hash.KeyedTable#remove(java.lang.foreign.MemorySegment,
+	 *      long, int)
+	 */
+	@Override
+	public boolean remove(MemorySegment key, long offset, int length) {
+		return remove(key, offset, length, hashAlgorithm.calculateHashcode(key, offset, length));
+	}
+
+	/**
+	 * Removes an entry from the key's shard, using a precomputed hashcode.
+	 *
+	 * @param key      the segment containing the key
+	 * @param offset   the byte offset of the key within the segment
+	 * @param length   the key length in bytes
+	 * @param hashcode the hashcode
+	 * @return true, if entry was found and removed, otherwise false
+	 */
+	public boolean remove(MemorySegment key, long offset, int length, long hashcode) {
+		return shards[shardOf(hashcode)].remove(key, offset, length, hashcode);
+	}
+
+	/**
+	 * Sets the hash algorithm used by all of the shards. Changing the algorithm
+	 * rehashes nothing and changes the routing of keys, it must be set before any
+	 * entries are added or any keys are routed.
+	 *
+	 * @param newAlgorithm the new hash algorithm
+	 * @return this table
+	 */
+	public ShardedHashTable<T> setHashAlgorithm(HashAlgorithm newAlgorithm) {
+		this.hashAlgorithm = Objects.requireNonNull(newAlgorithm, "newAlgorithm");
+
+		for (HashTable<T> shard : shards)
+			shard.setHashAlgorithm(newAlgorithm);
+
+		return this;
+	}
+
+	/**
+	 * Gets a shard, for direct use by the worker thread which owns it. The
+	 * shard's hash algorithm must not be changed directly, use
+	 * {@link #setHashAlgorithm(HashAlgorithm)} on this table instead.
+	 *
+	 * @param shard the shard number
+	 * @return the shard's hash table
+	 */
+	public HashTable<T> shard(int shard) {
+		return shards[shard];
+	}
+
+	/**
+	 * Gets the number of shards.
+	 *
+	 * @return the shard count
+	 */
+	public int shardCount() {
+		return shards.length;
+	}
+
+	/**
+	 * Routes a key to its shard, and hence to the worker owning that shard.
+	 *
+	 * @param key the key
+	 * @return the shard number
+	 */
+	public int shardOf(ByteBuffer key) {
+		return shardOf(hashAlgorithm.calculateHashcode(key));
+	}
+
+	/**
+	 * Routes a key to its shard, and hence to the worker owning that shard.
+	 *
+	 * @param key    the array containing the key
+	 * @param offset the offset of the key within the array
+	 * @param length the key length in bytes
+	 * @return the shard number
+	 */
+	public int shardOf(byte[] key, int offset, int length) {
+		return shardOf(hashAlgorithm.calculateHashcode(key, offset, length));
+	}
+
+	/**
+	 * Routes a hashcode to its shard using the hashcode's high bits.
+	 *
+	 * @param hashcode the key's hashcode, calculated by the shared hash algorithm
+	 * @return the shard number
+	 */
+	public int shardOf(long hashcode) {
+		return (shardBits == 0) ? 0 : (int) (hashcode >>> (Long.SIZE - shardBits));
+	}
+
+	/**
+	 * Routes a key to its shard, and hence to the worker owning that shard.
+	 *
+	 * @param key    the segment containing the key
+	 * @param offset the byte offset of the key within the segment
+	 * @param length the key length in bytes
+	 * @return the shard number
+	 */
+	public int shardOf(MemorySegment key, long offset, int length) {
+		return shardOf(hashAlgorithm.calculateHashcode(key, offset, length));
+	}
+
+	/**
+	 * Gets the shard number of an entry handle.
+	 *
+	 * @param handle the entry handle
+	 * @return the shard number
+	 */
+	public int shardOfHandle(int handle) {
+		return handle >>> indexBits;
+	}
+
+	/**
+	 * Total capacity of all of the shards.
+	 *
+	 * @return the size
+	 */
+	public int size() {
+		return shards.length << indexBits;
+	}
+
+	/**
+	 * Stream over the shards.
+	 *
+	 * @return the stream
+	 */
+	public Stream<HashTable<T>> shards() {
+		return Arrays.stream(shards);
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "ShardedHashTable [used=%d, size=%d, shards=%d]"
+				.formatted(getUsedEntriesCount(), size(), shards.length);
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * Sly Technologies Free License
+ * 
+ * Copyright 2024 Sly Technologies Inc.
+ *
+ * Licensed under the Sly Technologies Free License (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.slytechs.com/free-license-text
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.slytechs.jnet.jnetruntime.hash;
+
+import com.slytechs.jnet.jnetruntime.util.SystemProperties;
+
+/**
+ * Compares a bucket's worth of packed 16-bit key signatures against a single
+ * signature, producing a bitmask of matching bucket slots.
+ * 
+ * <p>
+ * A SIMD implementation based on the {@code jdk.incubator.vector} module is
+ * selected when the module has been added to the runtime (ie.
+ * {@code --add-modules jdk.incubator.vector}), otherwise a scalar
+ * implementation is used. The vector implementation can be disabled by setting
+ * the {@value #PROPERTY_HASH_VECTOR_ENABLE} system property to false.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+interface SignatureMatcher {
+
+	/** System property which enables the use of the vector API. */
+	String PROPERTY_HASH_VECTOR_ENABLE = "jnet.hash.vector.enable";
+
+	/**
+	 * Scalar implementation which compares one signature at a time, without
+	 * branching on the result.
+	 */
+	final class ScalarSignatureMatcher implements SignatureMatcher {
+
+		/** The number of signatures per bucket. */
+		private final int count;
+
+		/**
+		 * Instantiates a new scalar signature matcher.
+		 *
+		 * @param count the number of signatures per bucket
+		 */
+		ScalarSignatureMatcher(int count) {
+			this.count = count;
+		}
+
+		/**
+		 * Match.
+		 *
+		 * @param signatures the signatures
+		 * @param offset     the offset
+		 * @param signature  the signature
+		 * @return the int
+		 * @see com.slytechs.jnet.jnetruntime.hash.SignatureMatcher#match(short[],
+		 *      int, short)
+		 */
+		@Override
+		public int match(short[] signatures, int offset, short signature) {
+			int mask = 0;
+
+			for (int i = 0; i < count; i++)
+				mask |= ((signatures[offset + i] == signature) ? 1 : 0) << i;
+
+			return mask;
+		}
+
+		/**
+		 * To string.
+		 *
+		 * @return the string
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return "scalar";
+		}
+	}
+
+	/**
+	 * Selects the fastest signature matcher available in this runtime.
+	 *
+	 * @param count the number of signatures per bucket
+	 * @return the signature matcher
+	 */
+	static SignatureMatcher of(int count) {
+		if (SystemProperties.boolValue(PROPERTY_HASH_VECTOR_ENABLE, true)
+				&& ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+			try {
+				SignatureMatcher vector = VectorSignatureMatcher.of(count);
+				if (vector != null)
+					return vector;
+
+			} catch (LinkageError e) {
+				// Vector API classes not accessible, fallback to scalar
+			}
+		}
+
+		return new ScalarSignatureMatcher(count);
+	}
+
+	/**
+	 * Compare a bucket's signatures against a single signature.
+	 *
+	 * @param signatures the packed signature array
+	 * @param offset     the offset of the bucket's first signature
+	 * @param signature  the signature to match
+	 * @return bitmask where bit {@code i} is set if signature at
+	 *         {@code offset + i} matched
+	 */
+	int match(short[] signatures, int offset, short signature);
+}
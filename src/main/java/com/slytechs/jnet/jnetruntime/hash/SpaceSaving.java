@@ -0,0 +1,358 @@
+/*
+ * Sly Technologies Free License
+ *
+ * Copyright 2024 Sly Technologies Inc.
+ *
+ * Licensed under the Sly Technologies Free License (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.slytechs.com/free-license-text
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.slytechs.jnet.jnetruntime.hash;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import com.slytechs.jnet.jnetruntime.hash.HashTable.HashAlgorithm;
+
+/**
+ * The Space-Saving heavy hitter algorithm, tracking the most frequent keys in
+ * a stream with a fixed number of counters.
+ * <p>
+ * Each of the {@code capacity} counters monitors one key. A key which is not
+ * monitored replaces the key with the smallest count, inheriting its count as
+ * the new key's error. Every key whose true count exceeds the total count
+ * divided by the capacity is guaranteed to be monitored, and each monitored
+ * count overestimates the true count by at most its error. Unlike a Count-Min
+ * sketch, no memory is spent on keys outside the top, but every new key
+ * replaces a monitored one, so each tracked key costs a copy.
+ * </p>
+ * <p>
+ * A summary is not thread safe. Each thread or core updates its own summary,
+ * and the summaries are combined with {@link #merge(SpaceSaving)}, which keeps
+ * the same guarantees over the combined streams.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+public final class SpaceSaving {
+
+	/** The monitored keys. */
+	private final TopKHeap monitored;
+
+	/** The sum of all counts added. */
+	private long totalCount;
+
+	/** The hash algorithm. */
+	private HashAlgorithm hashAlgorithm = HashAlgorithms.xxHash64();
+
+	/**
+	 * Instantiates a new space saving summary.
+	 *
+	 * @param capacity the number of keys monitored
+	 */
+	public SpaceSaving(int capacity) {
+		this.monitored = new TopKHeap(capacity);
+	}
+
+	/**
+	 * Adds one occurrence of a key.
+	 *
+	 * @param key the key
+	 * @return the key's new estimated count
+	 */
+	public long add(ByteBuffer key) {
+		return add(key, 1);
+	}
+
+	/**
+	 * Adds occurrences of a key, such as a packet's byte count.
+	 *
+	 * @param key   the key
+	 * @param count the number of occurrences
+	 * @return the key's new estimated count
+	 */
+	public long add(ByteBuffer key, long count) {
+		long hashcode = hashAlgorithm.calculateHashcode(key);
+		long estimate = increment(hashcode, count);
+
+		if (estimate < 0)
+			return replaceMin(hashcode, MemorySegment.ofBuffer(key), 0, key.remaining(), count);
+
+		return estimate;
+	}
+
+	/**
+	 * Adds occurrences of a key.
+	 *
+	 * @param key    the key
+	 * @param offset the key offset
+	 * @param length the key length
+	 * @param count  the number of occurrences
+	 * @return the key's new estimated count
+	 */
+	public long add(byte[] key, int offset, int length, long count) {
+		long hashcode = hashAlgorithm.calculateHashcode(key, offset, length);
+		long estimate = increment(hashcode, count);
+
+		if (estimate < 0)
+			return replaceMin(hashcode, MemorySegment.ofArray(key), offset, length, count);
+
+		return estimate;
+	}
+
+	/**
+	 * Adds one occurrence of a key by its hashcode. Keys added by hashcode are
+	 * reported without their key.
+	 *
+	 * @param hashcode the hashcode
+	 * @return the key's new estimated count
+	 */
+	public long add(long hashcode) {
+		return add(hashcode, 1);
+	}
+
+	/**
+	 * Adds occurrences of a key by its hashcode.
+	 *
+	 * @param hashcode the hashcode
+	 * @param count    the number of occurrences
+	 * @return the key's new estimated count
+	 */
+	public long add(long hashcode, long count) {
+		long estimate = increment(hashcode, count);
+
+		if (estimate < 0)
+			return replaceMin(hashcode, null, 0, 0, count);
+
+		return estimate;
+	}
+
+	/**
+	 * Adds occurrences of a key.
+	 *
+	 * @param key    the key
+	 * @param offset the key offset
+	 * @param length the key length
+	 * @param count  the number of occurrences
+	 * @return the key's new estimated count
+	 */
+	public long add(MemorySegment key, long offset, int length, long count) {
+		long hashcode = hashAlgorithm.calculateHashcode(key, offset, length);
+		long estimate = increment(hashcode, count);
+
+		if (estimate < 0)
+			return replaceMin(hashcode, key, offset, length, count);
+
+		return estimate;
+	}
+
+	/**
+	 * Gets the number of keys monitored.
+	 *
+	 * @return the capacity
+	 */
+	public int capacity() {
+		return monitored.capacity();
+	}
+
+	/**
+	 * Removes all keys, for example at the start of an interval.
+	 */
+	public void clear() {
+		monitored.clear();
+		totalCount = 0;
+	}
+
+	/**
+	 * Estimates a key's count.
+	 *
+	 * @param key the key
+	 * @return the estimated count, never less than the true count
+	 */
+	public long estimate(ByteBuffer key) {
+		return estimate(hashAlgorithm.calculateHashcode(key));
+	}
+
+	/**
+	 * Estimates a key's count by its hashcode. A key which is not monitored has
+	 * a count of at most the smallest monitored count.
+	 *
+	 * @param hashcode the hashcode
+	 * @return the estimated count, never less than the true count
+	 */
+	public long estimate(long hashcode) {
+		int slot = monitored.find(hashcode);
+		if (slot != -1)
+			return monitored.count(slot);
+
+		return monitored.isFull() ? monitored.minCount() : 0;
+	}
+
+	/**
+	 * Hash algorithm.
+	 *
+	 * @return the hash algorithm
+	 */
+	public HashAlgorithm hashAlgorithm() {
+		return hashAlgorithm;
+	}
+
+	/**
+	 * Adds occurrences to a key if it is monitored.
+	 *
+	 * @param hashcode the hashcode
+	 * @param count    the number of occurrences
+	 * @return the key's new count, or -1 if the key is not monitored
+	 */
+	private long increment(long hashcode, long count) {
+		if (count < 0)
+			throw new IllegalArgumentException("negative count [%d]".formatted(count));
+
+		totalCount += count;
+
+		int slot = monitored.find(hashcode);
+		if (slot == -1)
+			return -1;
+
+		long newCount = monitored.count(slot) + count;
+		monitored.increase(slot, newCount);
+
+		return newCount;
+	}
+
+	/**
+	 * Combines another summary into this one. A key monitored by only one of the
+	 * summaries is counted in the other with that summary's smallest count, or
+	 * 0 if it is not full, and the keys with the largest combined counts are
+	 * kept. The summaries must use equal hash algorithms, the built in algorithms
+	 * are equal when of the same kind and seed.
+	 *
+	 * @param other the other summary
+	 * @return this summary
+	 */
+	public SpaceSaving merge(SpaceSaving other) {
+		if (!hashAlgorithm.equals(other.hashAlgorithm))
+			throw new IllegalArgumentException("hash algorithm differs [%s]".formatted(other.hashAlgorithm));
+
+		TopKHeap a = monitored;
+		TopKHeap b = other.monitored;
+		long minA = a.isFull() ? a.minCount() : 0;
+		long minB = b.isFull() ? b.minCount() : 0;
+
+		int count = a.size() + b.size();
+		long[] hashcodes = new long[count];
+		byte[][] keys = new byte[count][];
+		long[] counts = new long[count];
+		long[] errors = new long[count];
+
+		int n = 0;
+		for (int i = 0; i < a.size(); i++, n++) {
+			int slot = a.slotAt(i);
+			int otherSlot = b.find(a.hashcode(slot));
+
+			hashcodes[n] = a.hashcode(slot);
+			keys[n] = a.key(slot);
+			counts[n] = a.count(slot) + ((otherSlot == -1) ? minB : b.count(otherSlot));
+			errors[n] = a.error(slot) + ((otherSlot == -1) ? minB : b.error(otherSlot));
+		}
+
+		for (int i = 0; i < b.size(); i++) {
+			int slot = b.slotAt(i);
+			if (a.find(b.hashcode(slot)) != -1)
+				continue;
+
+			hashcodes[n] = b.hashcode(slot);
+			keys[n] = b.key(slot);
+			counts[n] = b.count(slot) + minA;
+			errors[n] = b.error(slot) + minA;
+			n++;
+		}
+
+		Integer[] order = new Integer[n];
+		Arrays.setAll(order, i -> i);
+		Arrays.sort(order, (i, j) -> Long.compare(counts[j], counts[i]));
+
+		a.clear();
+		for (int k = 0; k < n && !a.isFull(); k++) {
+			int i = order[k];
+			a.offer(hashcodes[i], (keys[i] == null) ? null : MemorySegment.ofArray(keys[i]), 0,
+					(keys[i] == null) ? 0 : keys[i].length, counts[i], errors[i]);
+		}
+
+		totalCount += other.totalCount;
+
+		return this;
+	}
+
+	/**
+	 * Replaces the key with the smallest count by a new key, or adds the key if
+	 * not all counters are in use.
+	 *
+	 * @param hashcode the hashcode
+	 * @param key      the key, or null
+	 * @param offset   the key offset
+	 * @param length   the key length
+	 * @param count    the number of occurrences
+	 * @return the key's new estimated count
+	 */
+	private long replaceMin(long hashcode, MemorySegment key, long offset, int length, long count) {
+		long error = monitored.isFull() ? monitored.minCount() : 0;
+
+		monitored.offer(hashcode, key, offset, length, error + count, error);
+
+		return error + count;
+	}
+
+	/**
+	 * Sets the hash algorithm. Must be set before any keys are added.
+	 *
+	 * @param newAlgorithm the new hash algorithm
+	 * @return this summary
+	 */
+	public SpaceSaving setHashAlgorithm(HashAlgorithm newAlgorithm) {
+		this.hashAlgorithm = Objects.requireNonNull(newAlgorithm, "newAlgorithm");
+
+		return this;
+	}
+
+	/**
+	 * The monitored keys, in decreasing order of estimated count.
+	 *
+	 * @return the top keys
+	 */
+	public List<HeavyHitter> topK() {
+		return monitored.toList();
+	}
+
+	/**
+	 * Gets the sum of all counts added.
+	 *
+	 * @return the total count
+	 */
+	public long totalCount() {
+		return totalCount;
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "SpaceSaving [capacity=%d, total=%d]".formatted(monitored.capacity(), totalCount);
+	}
+}
@@ -0,0 +1,383 @@
+/*
+ * Sly Technologies Free License
+ *
+ * Copyright 2024 Sly Technologies Inc.
+ *
+ * Licensed under the Sly Technologies Free License (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.slytechs.com/free-license-text
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.slytechs.jnet.jnetruntime.hash;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.slytechs.jnet.jnetruntime.hash.HashTable.HashAlgorithm;
+
+/**
+ * Declares the address and port fields of a bidirectional flow key, and hashes
+ * and matches keys independently of their direction.
+ * <p>
+ * A flow key holds an address and a port for each of the 2 endpoints, plus any
+ * number of non directional bytes such as the protocol. A packet travelling
+ * from A to B and one travelling from B to A produce keys with the endpoint
+ * fields swapped. This layout hashes each endpoint separately and combines the
+ * 2 endpoint values in an order independent way, so both keys produce the same
+ * hashcode, and compares the endpoint fields crosswise when a key does not
+ * match as is. Neither operation copies or canonicalizes the key.
+ * </p>
+ * <p>
+ * A layout is set on a table using
+ * {@link HashTable#setSymmetricKeyLayout(SymmetricKeyLayout)}, after which the
+ * direction of a matched key relative to the stored key is reported by
+ * {@link HashTable#isReverseMatch(int, MemorySegment, long, int)}. Keys shorter
+ * than the declared fields are hashed and matched as plain keys.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+public final class SymmetricKeyLayout implements HashAlgorithm {
+
+	/** Key does not match. */
+	public static final int NO_MATCH = 0;
+
+	/** Key matches in the same direction as the stored key. */
+	public static final int FORWARD = 1;
+
+	/** Key matches with the endpoints swapped relative to the stored key. */
+	public static final int REVERSE = -1;
+
+	/** Endpoint chunk multiplier. */
+	private static final long P1 = 0x9E3779B185EBCA87L;
+
+	/** Port multiplier. */
+	private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+
+	/** Non directional byte multiplier. */
+	private static final long P3 = 0x165667B19E3779F9L;
+
+	/** Address chunk layout, byte order is irrelevant to hashing. */
+	private static final ValueLayout.OfLong CHUNK = ValueLayout.JAVA_LONG_UNALIGNED;
+
+	/**
+	 * IPv4 5-tuple layout: source address, destination address, source port,
+	 * destination port and protocol, 13 bytes in total.
+	 *
+	 * @return the symmetric key layout
+	 */
+	public static SymmetricKeyLayout ipv4Tuple() {
+		return new SymmetricKeyLayout(0, 4, 4, 8, 10, 2);
+	}
+
+	/**
+	 * IPv6 5-tuple layout: source address, destination address, source port,
+	 * destination port and protocol, 37 bytes in total.
+	 *
+	 * @return the symmetric key layout
+	 */
+	public static SymmetricKeyLayout ipv6Tuple() {
+		return new SymmetricKeyLayout(0, 16, 16, 32, 34, 2);
+	}
+
+	/**
+	 * Final avalanche, from MurmurHash3.
+	 *
+	 * @param h the value
+	 * @return the mixed value
+	 */
+	private static long fmix(long h) {
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+
+		return h;
+	}
+
+	/** The address offsets of endpoints A and B. */
+	private final int addressA, addressB;
+
+	/** The address length. */
+	private final int addressLength;
+
+	/** The port offsets of endpoints A and B. */
+	private final int portA, portB;
+
+	/** The port length. */
+	private final int portLength;
+
+	/** Start offsets of the endpoint fields, in ascending order. */
+	private final int[] fieldStarts;
+
+	/** End offsets of the endpoint fields, matching the start offsets. */
+	private final int[] fieldEnds;
+
+	/** The minimum key length holding all of the endpoint fields. */
+	private final int minKeyLength;
+
+	/**
+	 * Instantiates a new symmetric key layout.
+	 *
+	 * @param addressA      the byte offset of endpoint A's address
+	 * @param addressB      the byte offset of endpoint B's address
+	 * @param addressLength the address length in bytes
+	 * @param portA         the byte offset of endpoint A's port
+	 * @param portB         the byte offset of endpoint B's port
+	 * @param portLength    the port length in bytes, at most 8
+	 * @throws IllegalArgumentException if any of the fields overlap
+	 */
+	public SymmetricKeyLayout(int addressA, int addressB, int addressLength, int portA, int portB,
+			int portLength) throws IllegalArgumentException {
+		if (addressLength <= 0)
+			throw new IllegalArgumentException("invalid address length [%d]".formatted(addressLength));
+
+		if (portLength < 0 || portLength > Long.BYTES)
+			throw new IllegalArgumentException("invalid port length [%d]".formatted(portLength));
+
+		this.addressA = addressA;
+		this.addressB = addressB;
+		this.addressLength = addressLength;
+		this.portA = portA;
+		this.portB = portB;
+		this.portLength = portLength;
+
+		int[][] fields = (portLength == 0)
+				? new int[][] { { addressA, addressLength }, { addressB, addressLength } }
+				: new int[][] { { addressA, addressLength }, { addressB, addressLength },
+						{ portA, portLength }, { portB, portLength } };
+		Arrays.sort(fields, (f1, f2) -> Integer.compare(f1[0], f2[0]));
+
+		this.fieldStarts = new int[fields.length];
+		this.fieldEnds = new int[fields.length];
+
+		for (int i = 0; i < fields.length; i++) {
+			if (fields[i][0] < 0 || (i > 0 && fields[i][0] < fieldEnds[i - 1]))
+				throw new IllegalArgumentException("overlapping key field at offset [%d]"
+						.formatted(fields[i][0]));
+
+			fieldStarts[i] = fields[i][0];
+			fieldEnds[i] = fields[i][0] + fields[i][1];
+		}
+
+		this.minKeyLength = fieldEnds[fields.length - 1];
+	}
+
+	/**
+	 * Calculate hashcode.
+	 *
+	 * @param buffer the buffer
+	 * @return the long
+	 * @see com.slytechs.jnet.jnetruntime.hash.HashTable.HashAlgorithm#calculateHashcode(java.nio.ByteBuffer)
+	 */
+	@Override
+	public long calculateHashcode(ByteBuffer buffer) {
+		return calculateHashcode(MemorySegment.ofBuffer(buffer), 0, buffer.remaining());
+	}
+
+	/**
+	 * Calculate hashcode.
+	 *
+	 * @param array  the array
+	 * @param offset the offset
+	 * @param length the length
+	 * @return the long
+	 * @see com.slytechs.jnet.jnetruntime.hash.HashTable.HashAlgorithm#calculateHashcode(byte[],
+	 *      int, int)
+	 */
+	@Override
+	public long calculateHashcode(byte[] array, int offset, int length) {
+		return calculateHashcode(MemorySegment.ofArray(array), offset, length);
+	}
+
+	/**
+	 * Calculates a direction independent hashcode. The 2 endpoint values are
+	 * combined in ascending order, followed by the non directional bytes.
+	 *
+	 * @param segment the segment
+	 * @param offset  the byte offset of the key
+	 * @param length  the key length
+	 * @return the long
+	 * @see com.slytechs.jnet.jnetruntime.hash.HashTable.HashAlgorithm#calculateHashcode(java.lang.foreign.MemorySegment,
+	 *      long, int)
+	 */
+	@Override
+	public long calculateHashcode(MemorySegment segment, long offset, int length) {
+		if (length < minKeyLength)
+			return fmix(hashRange(length, segment, offset, 0, length));
+
+		long a = endpoint(segment, offset + addressA, offset + portA);
+		long b = endpoint(segment, offset + addressB, offset + portB);
+
+		long h = (Long.compareUnsigned(a, b) < 0)
+				? (a * P1 + b)
+				: (b * P1 + a);
+
+		int start = 0;
+		for (int i = 0; i < fieldStarts.length; i++) {
+			h = hashRange(h, segment, offset + start, 0, fieldStarts[i] - start);
+			start = fieldEnds[i];
+		}
+
+		return fmix(hashRange(h, segment, offset + start, 0, length - start));
+	}
+
+	/**
+	 * Hashes one endpoint's address and port.
+	 *
+	 * @param segment the segment
+	 * @param address the absolute address offset
+	 * @param port    the absolute port offset
+	 * @return the endpoint value
+	 */
+	private long endpoint(MemorySegment segment, long address, long port) {
+		long e = addressLength;
+		int i = 0;
+
+		for (; i + Long.BYTES <= addressLength; i += Long.BYTES)
+			e = Long.rotateLeft(e ^ (segment.get(CHUNK, address + i) * P1), 31) * P2;
+
+		for (; i < addressLength; i++)
+			e = (e ^ (segment.get(ValueLayout.JAVA_BYTE, address + i) & 0xFF)) * P1;
+
+		for (i = 0; i < portLength; i++)
+			e = (e ^ (segment.get(ValueLayout.JAVA_BYTE, port + i) & 0xFF)) * P2;
+
+		return fmix(e);
+	}
+
+	/**
+	 * Folds a range of non directional bytes into a hash value.
+	 *
+	 * @param h       the hash value
+	 * @param segment the segment
+	 * @param offset  the absolute offset of the range
+	 * @param from    the first byte within the range
+	 * @param to      the end of the range, exclusive
+	 * @return the new hash value
+	 */
+	private static long hashRange(long h, MemorySegment segment, long offset, int from, int to) {
+		for (int i = from; i < to; i++)
+			h = (h ^ (segment.get(ValueLayout.JAVA_BYTE, offset + i) & 0xFF)) * P3;
+
+		return h;
+	}
+
+	/**
+	 * Matches a key against a stored key in either direction.
+	 *
+	 * @param stored       the segment holding the stored key
+	 * @param storedOffset the byte offset of the stored key
+	 * @param storedLength the stored key length
+	 * @param key          the segment holding the key to match
+	 * @param offset       the byte offset of the key
+	 * @param length       the key length
+	 * @return {@link #FORWARD}, {@link #REVERSE} or {@link #NO_MATCH}
+	 */
+	public int match(MemorySegment stored, long storedOffset, int storedLength,
+			MemorySegment key, long offset, int length) {
+		if (length != storedLength)
+			return NO_MATCH;
+
+		if (MemorySegment.mismatch(stored, storedOffset, storedOffset + length, key, offset, offset + length) == -1)
+			return FORWARD;
+
+		if (length < minKeyLength)
+			return NO_MATCH;
+
+		/* Non directional bytes must match as is */
+		int start = 0;
+		for (int i = 0; i <= fieldStarts.length; i++) {
+			int end = (i == fieldStarts.length) ? length : fieldStarts[i];
+
+			if (!equal(stored, storedOffset + start, key, offset + start, end - start))
+				return NO_MATCH;
+
+			if (i < fieldStarts.length)
+				start = fieldEnds[i];
+		}
+
+		/* Endpoint fields must match crosswise */
+		boolean reverse = equal(stored, storedOffset + addressA, key, offset + addressB, addressLength)
+				&& equal(stored, storedOffset + addressB, key, offset + addressA, addressLength)
+				&& equal(stored, storedOffset + portA, key, offset + portB, portLength)
+				&& equal(stored, storedOffset + portB, key, offset + portA, portLength);
+
+		return reverse ? REVERSE : NO_MATCH;
+	}
+
+	/**
+	 * Compares 2 byte ranges.
+	 *
+	 * @param s1     the first segment
+	 * @param o1     the first offset
+	 * @param s2     the second segment
+	 * @param o2     the second offset
+	 * @param length the length
+	 * @return true, if equal
+	 */
+	private static boolean equal(MemorySegment s1, long o1, MemorySegment s2, long o2, int length) {
+		return (length == 0) || MemorySegment.mismatch(s1, o1, o1 + length, s2, o2, o2 + length) == -1;
+	}
+
+	/**
+	 * Minimum key length holding all of the endpoint fields.
+	 *
+	 * @return the key length in bytes
+	 */
+	public int minKeyLength() {
+		return minKeyLength;
+	}
+
+	/**
+	 * Equals, layouts with the same endpoint fields produce the same hashcodes.
+	 *
+	 * @param obj the obj
+	 * @return true, if successful
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		return (obj instanceof SymmetricKeyLayout other)
+				&& (other.addressA == addressA)
+				&& (other.addressB == addressB)
+				&& (other.addressLength == addressLength)
+				&& (other.portA == portA)
+				&& (other.portB == portB)
+				&& (other.portLength == portLength);
+	}
+
+	/**
+	 * Hash code.
+	 *
+	 * @return the int
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(new int[] { addressA, addressB, addressLength, portA, portB, portLength });
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "symmetric[addr=%d/%d:%d, port=%d/%d:%d]"
+				.formatted(addressA, addressB, addressLength, portA, portB, portLength);
+	}
+}
@@ -0,0 +1,382 @@
+/*
+ * Sly Technologies Free License
+ *
+ * Copyright 2024 Sly Technologies Inc.
+ *
+ * Licensed under the Sly Technologies Free License (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.slytechs.com/free-license-text
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.slytechs.jnet.jnetruntime.hash;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import com.slytechs.jnet.jnetruntime.hash.HashTable.HashAlgorithm;
+
+/**
+ * Toeplitz hash algorithm, as used by network adapters for receive side
+ * scaling (RSS).
+ *
+ * <p>
+ * Given the same secret key and the same input tuple layout, the hashcode
+ * produced is bit for bit identical to the one calculated by the hardware,
+ * which allows software queues and flow tables to line up with the hardware
+ * receive queues. The input is hashed in network byte order, for example an
+ * IPv4 TCP/UDP tuple is the source address, destination address, source port
+ * and destination port, for a total of 12 bytes.
+ * </p>
+ * <p>
+ * Instead of the bit serial algorithm, a lookup table with 256 precomputed
+ * 32-bit values is built for every input byte position, reducing the hash to a
+ * single table lookup and XOR per input byte. A 40 byte key hashes up to 36
+ * bytes of input, enough for an IPv6 tuple with ports, and a 52 byte key hashes
+ * up to 48 bytes.
+ * </p>
+ * <p>
+ * A symmetric key, made up of a repeating 16-bit pattern, produces the same
+ * hashcode for both directions of a flow, when the source and destination
+ * address and port fields are swapped.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+public final class ToeplitzHash implements HashAlgorithm {
+
+	/** The Constant KEY_SIZE_40. */
+	public static final int KEY_SIZE_40 = 40;
+
+	/** The Constant KEY_SIZE_52. */
+	public static final int KEY_SIZE_52 = 52;
+
+	/** IPv4 address pair and port pair tuple size. */
+	public static final int IPV4_TUPLE_SIZE = 12;
+
+	/** IPv6 address pair and port pair tuple size. */
+	public static final int IPV6_TUPLE_SIZE = 36;
+
+	/** Default Microsoft RSS verification key, used by most NIC drivers. */
+	private static final byte[] DEFAULT_KEY = {
+			(byte) 0x6d, (byte) 0x5a, (byte) 0x56, (byte) 0xda, (byte) 0x25, (byte) 0x5b, (byte) 0x0e, (byte) 0xc2,
+			(byte) 0x41, (byte) 0x67, (byte) 0x25, (byte) 0x3d, (byte) 0x43, (byte) 0xa3, (byte) 0x8f, (byte) 0xb0,
+			(byte) 0xd0, (byte) 0xca, (byte) 0x2b, (byte) 0xcb, (byte) 0xae, (byte) 0x7b, (byte) 0x30, (byte) 0xb4,
+			(byte) 0x77, (byte) 0xcb, (byte) 0x2d, (byte) 0xa3, (byte) 0x80, (byte) 0x30, (byte) 0xf2, (byte) 0x0c,
+			(byte) 0x6a, (byte) 0x42, (byte) 0xb7, (byte) 0x3b, (byte) 0xbe, (byte) 0xac, (byte) 0x01, (byte) 0xfa,
+	};
+
+	/** Network byte order int layout. */
+	private static final ValueLayout.OfInt INT_BE = ValueLayout.JAVA_INT_UNALIGNED
+			.withOrder(ByteOrder.BIG_ENDIAN);
+
+	/**
+	 * Returns a copy of the default Microsoft RSS verification key.
+	 *
+	 * @return a new 40 byte key array
+	 */
+	public static byte[] defaultKey() {
+		return DEFAULT_KEY.clone();
+	}
+
+	/**
+	 * Creates a symmetric key, made up of the 0x6d5a pattern repeated. The
+	 * resulting hash is the same for both directions of a flow.
+	 *
+	 * @param keySize the key size, either 40 or 52 bytes
+	 * @return a new key array
+	 */
+	public static byte[] symmetricKey(int keySize) {
+		checkKeySize(keySize);
+
+		byte[] key = new byte[keySize];
+		for (int i = 0; i < keySize; i += 2) {
+			key[i] = (byte) 0x6d;
+			key[i + 1] = (byte) 0x5a;
+		}
+
+		return key;
+	}
+
+	/**
+	 * Selects a receive queue from a RSS hashcode, the same way a NIC does by
+	 * indexing its redirection table (RETA) with the low order bits of the hash.
+	 *
+	 * @param hashcode           the RSS hashcode
+	 * @param redirectionTable the redirection table, size must be a power of 2
+	 * @return the queue number
+	 */
+	public static int queueOf(long hashcode, int[] redirectionTable) {
+		return redirectionTable[(int) hashcode & (redirectionTable.length - 1)];
+	}
+
+	/**
+	 * Check key size.
+	 *
+	 * @param keySize the key size
+	 */
+	private static void checkKeySize(int keySize) {
+		if (keySize != KEY_SIZE_40 && keySize != KEY_SIZE_52)
+			throw new IllegalArgumentException("RSS key size must be 40 or 52 bytes [%d]"
+					.formatted(keySize));
+	}
+
+	/** The secret key. */
+	private final byte[] key;
+
+	/** The max number of input bytes the key is able to hash. */
+	private final int maxInputLength;
+
+	/** The precomputed lookup table, 256 entries per input byte position. */
+	private final int[] table;
+
+	/**
+	 * Instantiates a new Toeplitz hash using the default Microsoft RSS key.
+	 */
+	public ToeplitzHash() {
+		this(DEFAULT_KEY);
+	}
+
+	/**
+	 * Instantiates a new Toeplitz hash.
+	 *
+	 * @param key the secret key, either 40 or 52 bytes long
+	 */
+	public ToeplitzHash(byte[] key) {
+		checkKeySize(key.length);
+
+		this.key = key.clone();
+		this.maxInputLength = key.length - Integer.BYTES;
+		this.table = new int[maxInputLength * 256];
+
+		for (int i = 0; i < maxInputLength; i++) {
+
+			/* The 40 key bits which slide under the 8 bits of input byte i */
+			long window = ((key[i] & 0xFFL) << 32)
+					| ((key[i + 1] & 0xFFL) << 24)
+					| ((key[i + 2] & 0xFFL) << 16)
+					| ((key[i + 3] & 0xFFL) << 8)
+					| ((key[i + 4] & 0xFFL));
+
+			for (int b = 0; b < 256; b++) {
+				int v = 0;
+				for (int bit = 0; bit < 8; bit++)
+					if ((b & (0x80 >>> bit)) != 0)
+						v ^= (int) (window >>> (8 - bit));
+
+				table[(i << 8) | b] = v;
+			}
+		}
+	}
+
+	/**
+	 * Lookup the precomputed value for a byte at an input position.
+	 *
+	 * @param position the input byte position
+	 * @param b        the input byte value
+	 * @return the partial hash
+	 */
+	private int lookup(int position, int b) {
+		return table[(position << 8) | (b & 0xFF)];
+	}
+
+	/**
+	 * Hash 4 bytes of input, in network byte order, at an input position.
+	 *
+	 * @param position the input byte position
+	 * @param v        the 4 bytes of input
+	 * @return the partial hash
+	 */
+	private int lookupInt(int position, int v) {
+		return lookup(position, v >>> 24)
+				^ lookup(position + 1, v >>> 16)
+				^ lookup(position + 2, v >>> 8)
+				^ lookup(position + 3, v);
+	}
+
+	/**
+	 * Check input length.
+	 *
+	 * @param length the length
+	 */
+	private void checkInputLength(int length) {
+		if (length > maxInputLength)
+			throw new IllegalArgumentException("input too long for %d byte RSS key [%d]"
+					.formatted(key.length, length));
+	}
+
+	/**
+	 * Calculate hashcode.
+	 *
+	 * @param buffer the buffer
+	 * @return the long
+	 * @see com.slytechs.jnet.jnetruntime.hash.HashTable.HashAlgorithm#calculateHashcode(java.nio.ByteBuffer)
+	 */
+	@Override
+	public long calculateHashcode(ByteBuffer buffer) {
+		return calculateHashcode(MemorySegment.ofBuffer(buffer), 0, buffer.remaining());
+	}
+
+	/**
+	 * Calculate hashcode.
+	 *
+	 * @param array  the array
+	 * @param offset the offset
+	 * @param length the length
+	 * @return the long
+	 * @see com.slytechs.jnet.jnetruntime.hash.HashTable.HashAlgorithm#calculateHashcode(byte[],
+	 *      int, int)
+	 */
+	@Override
+	public long calculateHashcode(byte[] array, int offset, int length) {
+		return calculateHashcode(MemorySegment.ofArray(array), offset, length);
+	}
+
+	/**
+	 * Calculate hashcode.
+	 *
+	 * @param segment the segment
+	 * @param offset  the offset
+	 * @param length  the length
+	 * @return the long
+	 * @see com.slytechs.jnet.jnetruntime.hash.HashTable.HashAlgorithm#calculateHashcode(java.lang.foreign.MemorySegment,
+	 *      long, int)
+	 */
+	@Override
+	public long calculateHashcode(MemorySegment segment, long offset, int length) {
+		checkInputLength(length);
+
+		int h = 0;
+		int i = 0;
+
+		for (; i + 4 <= length; i += 4)
+			h ^= lookupInt(i, segment.get(INT_BE, offset + i));
+
+		for (; i < length; i++)
+			h ^= lookup(i, segment.get(ValueLayout.JAVA_BYTE, offset + i));
+
+		return h & 0xFFFFFFFFL;
+	}
+
+	/**
+	 * Hash an IPv4 address pair, the RSS IPv4 hash type.
+	 *
+	 * @param srcAddress the source address
+	 * @param dstAddress the destination address
+	 * @return the 32-bit hashcode
+	 */
+	public long hashIpv4(int srcAddress, int dstAddress) {
+		return (lookupInt(0, srcAddress) ^ lookupInt(4, dstAddress)) & 0xFFFFFFFFL;
+	}
+
+	/**
+	 * Hash an IPv4 address and port tuple, the RSS IPv4 TCP/UDP hash type.
+	 *
+	 * @param srcAddress the source address
+	 * @param dstAddress the destination address
+	 * @param srcPort    the source port
+	 * @param dstPort    the destination port
+	 * @return the 32-bit hashcode
+	 */
+	public long hashIpv4(int srcAddress, int dstAddress, int srcPort, int dstPort) {
+		return (lookupInt(0, srcAddress)
+				^ lookupInt(4, dstAddress)
+				^ lookupInt(8, (srcPort << 16) | (dstPort & 0xFFFF))) & 0xFFFFFFFFL;
+	}
+
+	/**
+	 * Hash an IPv6 address pair, the RSS IPv6 hash type.
+	 *
+	 * @param srcAddress the 16 byte source address
+	 * @param dstAddress the 16 byte destination address
+	 * @return the 32-bit hashcode
+	 */
+	public long hashIpv6(byte[] srcAddress, byte[] dstAddress) {
+		MemorySegment src = MemorySegment.ofArray(srcAddress);
+		MemorySegment dst = MemorySegment.ofArray(dstAddress);
+
+		int h = 0;
+		for (int i = 0; i < 16; i += 4)
+			h ^= lookupInt(i, src.get(INT_BE, i)) ^ lookupInt(16 + i, dst.get(INT_BE, i));
+
+		return h & 0xFFFFFFFFL;
+	}
+
+	/**
+	 * Hash an IPv6 address and port tuple, the RSS IPv6 TCP/UDP hash type.
+	 *
+	 * @param srcAddress the 16 byte source address
+	 * @param dstAddress the 16 byte destination address
+	 * @param srcPort    the source port
+	 * @param dstPort    the destination port
+	 * @return the 32-bit hashcode
+	 */
+	public long hashIpv6(byte[] srcAddress, byte[] dstAddress, int srcPort, int dstPort) {
+		return hashIpv6(srcAddress, dstAddress)
+				^ (lookupInt(32, (srcPort << 16) | (dstPort & 0xFFFF)) & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Gets a copy of the secret key.
+	 *
+	 * @return the key
+	 */
+	public byte[] key() {
+		return key.clone();
+	}
+
+	/**
+	 * The max number of input bytes this hash is able to process, which is the
+	 * key size less 4 bytes.
+	 *
+	 * @return the max input length
+	 */
+	public int maxInputLength() {
+		return maxInputLength;
+	}
+
+	/**
+	 * Equals, hashes with the same secret key produce the same hashcodes.
+	 *
+	 * @param obj the obj
+	 * @return true, if successful
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		return (obj instanceof ToeplitzHash other) && Arrays.equals(other.key, key);
+	}
+
+	/**
+	 * Hash code.
+	 *
+	 * @return the int
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(key);
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "toeplitz" + (Arrays.equals(key, symmetricKey(key.length)) ? "-symmetric" : "")
+				+ "(" + key.length + ")";
+	}
+}
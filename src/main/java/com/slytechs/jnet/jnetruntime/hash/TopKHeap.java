@@ -0,0 +1,332 @@
+/*
+ * Sly Technologies Free License
+ *
+ * Copyright 2024 Sly Technologies Inc.
+ *
+ * Licensed under the Sly Technologies Free License (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.slytechs.com/free-license-text
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.slytechs.jnet.jnetruntime.hash;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Bounded set of the most frequent keys shared by the heavy hitter sketches.
+ * Keys are indexed by hashcode in a {@link LongHashTable}, whose stable entry
+ * indexes, referred to as slots here, also index the counts, errors and a
+ * min-heap ordered by count. Finding a key is a single hash table lookup, and
+ * the least frequent key is always at the root of the heap.
+ * <p>
+ * A replaced key's buffer is reused when the new key has the same length, so
+ * a steady stream of same sized flow keys is tracked without allocating.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+final class TopKHeap {
+
+	/** The capacity. */
+	private final int capacity;
+
+	/** Index of keys by hashcode, holding each key's bytes as data. */
+	private final LongHashTable<byte[]> index;
+
+	/** The counts, indexed by slot. */
+	private final long[] counts;
+
+	/** The errors, indexed by slot. */
+	private final long[] errors;
+
+	/** The position of each slot in the heap. */
+	private final int[] positions;
+
+	/** Min-heap of slots ordered by count. */
+	private final int[] heap;
+
+	/** The number of keys. */
+	private int size;
+
+	/**
+	 * Instantiates a new top K heap.
+	 *
+	 * @param capacity the maximum number of keys
+	 */
+	TopKHeap(int capacity) {
+		if (capacity < 1 || capacity > (1 << 29))
+			throw new IllegalArgumentException("invalid top K capacity [%d]".formatted(capacity));
+
+		int tableSize = Integer.highestOneBit(capacity * 4 - 1);
+
+		this.capacity = capacity;
+		this.index = new LongHashTable<>(Math.max(tableSize, 2));
+		this.counts = new long[index.size()];
+		this.errors = new long[index.size()];
+		this.positions = new int[index.size()];
+		this.heap = new int[capacity];
+	}
+
+	/**
+	 * Adds a new key. The caller checks the key is not already present and the
+	 * heap is not full.
+	 *
+	 * @param hashcode the hashcode
+	 * @param key      the key bytes, or null
+	 * @param count    the count
+	 * @param error    the error
+	 */
+	void add(long hashcode, byte[] key, long count, long error) {
+		int slot = index.add(hashcode, key);
+
+		counts[slot] = count;
+		errors[slot] = error;
+		heap[size] = slot;
+		positions[slot] = size;
+
+		siftUp(size++);
+	}
+
+	/**
+	 * Capacity.
+	 *
+	 * @return the capacity
+	 */
+	int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * Removes all keys.
+	 */
+	void clear() {
+		index.clear();
+		size = 0;
+	}
+
+	/**
+	 * Copies a key into a new byte array, or the given one if it has the right
+	 * length.
+	 *
+	 * @param reuse  an array to reuse, or null
+	 * @param key    the key, or null
+	 * @param offset the key offset
+	 * @param length the key length
+	 * @return the key bytes, or null if there is no key
+	 */
+	private static byte[] copyKey(byte[] reuse, MemorySegment key, long offset, int length) {
+		if (key == null)
+			return null;
+
+		byte[] bytes = (reuse != null && reuse.length == length) ? reuse : new byte[length];
+		MemorySegment.copy(key, ValueLayout.JAVA_BYTE, offset, bytes, 0, length);
+
+		return bytes;
+	}
+
+	/**
+	 * Count of the key in a slot.
+	 *
+	 * @param slot the slot
+	 * @return the count
+	 */
+	long count(int slot) {
+		return counts[slot];
+	}
+
+	/**
+	 * Error of the key in a slot.
+	 *
+	 * @param slot the slot
+	 * @return the error
+	 */
+	long error(int slot) {
+		return errors[slot];
+	}
+
+	/**
+	 * Gets the slot of a key.
+	 *
+	 * @param hashcode the hashcode
+	 * @return the slot, or -1 if not present
+	 */
+	int find(long hashcode) {
+		return index.lookup(hashcode);
+	}
+
+	/**
+	 * Hashcode of the key in a slot.
+	 *
+	 * @param slot the slot
+	 * @return the hashcode
+	 */
+	long hashcode(int slot) {
+		return index.key(slot);
+	}
+
+	/**
+	 * Increases the count of a present key.
+	 *
+	 * @param slot     the slot
+	 * @param newCount the new count, not less than the current count
+	 */
+	void increase(int slot, long newCount) {
+		counts[slot] = newCount;
+		siftDown(positions[slot]);
+	}
+
+	/**
+	 * Checks if full.
+	 *
+	 * @return true, if full
+	 */
+	boolean isFull() {
+		return size == capacity;
+	}
+
+	/**
+	 * Key bytes of the key in a slot.
+	 *
+	 * @param slot the slot
+	 * @return the key, or null
+	 */
+	byte[] key(int slot) {
+		return index.data(slot);
+	}
+
+	/**
+	 * Smallest count, the count of the root.
+	 *
+	 * @return the min count, or 0 if empty
+	 */
+	long minCount() {
+		return (size == 0) ? 0 : counts[heap[0]];
+	}
+
+	/**
+	 * Adds a key if not full, otherwise replaces the key with the smallest
+	 * count. The key's bytes are copied.
+	 *
+	 * @param hashcode the hashcode
+	 * @param key      the key, or null
+	 * @param offset   the key offset
+	 * @param length   the key length
+	 * @param count    the count
+	 * @param error    the error
+	 */
+	void offer(long hashcode, MemorySegment key, long offset, int length, long count, long error) {
+		byte[] reuse = null;
+
+		if (size == capacity) {
+			int root = heap[0];
+			reuse = index.data(root);
+			index.remove(root);
+
+			heap[0] = heap[--size];
+			positions[heap[0]] = 0;
+			siftDown(0);
+		}
+
+		add(hashcode, copyKey(reuse, key, offset, length), count, error);
+	}
+
+	/**
+	 * Moves a heap entry towards the leaves until its children are larger.
+	 *
+	 * @param pos the heap position
+	 */
+	private void siftDown(int pos) {
+		int slot = heap[pos];
+		long count = counts[slot];
+
+		for (int child = 2 * pos + 1; child < size; child = 2 * pos + 1) {
+			if (child + 1 < size && counts[heap[child + 1]] < counts[heap[child]])
+				child++;
+
+			if (counts[heap[child]] >= count)
+				break;
+
+			heap[pos] = heap[child];
+			positions[heap[pos]] = pos;
+			pos = child;
+		}
+
+		heap[pos] = slot;
+		positions[slot] = pos;
+	}
+
+	/**
+	 * Moves a heap entry towards the root until its parent is smaller.
+	 *
+	 * @param pos the heap position
+	 */
+	private void siftUp(int pos) {
+		int slot = heap[pos];
+		long count = counts[slot];
+
+		while (pos > 0) {
+			int parent = (pos - 1) >>> 1;
+			if (counts[heap[parent]] <= count)
+				break;
+
+			heap[pos] = heap[parent];
+			positions[heap[pos]] = pos;
+			pos = parent;
+		}
+
+		heap[pos] = slot;
+		positions[slot] = pos;
+	}
+
+	/**
+	 * Number of keys.
+	 *
+	 * @return the size
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Slot of the key at a heap position, used to iterate over all keys.
+	 *
+	 * @param pos the heap position
+	 * @return the slot
+	 */
+	int slotAt(int pos) {
+		return heap[pos];
+	}
+
+	/**
+	 * Snapshot of the keys, most frequent first.
+	 *
+	 * @return the heavy hitters
+	 */
+	List<HeavyHitter> toList() {
+		List<HeavyHitter> list = new ArrayList<>(size);
+
+		for (int i = 0; i < size; i++) {
+			int slot = heap[i];
+			byte[] key = index.data(slot);
+
+			list.add(new HeavyHitter(index.key(slot), (key == null) ? null : key.clone(),
+					counts[slot], errors[slot]));
+		}
+
+		list.sort(Comparator.comparingLong(HeavyHitter::getCount).reversed());
+
+		return list;
+	}
+}
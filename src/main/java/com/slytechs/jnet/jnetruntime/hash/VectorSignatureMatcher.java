@@ -0,0 +1,111 @@
+/*
+ * Sly Technologies Free License
+ * 
+ * Copyright 2024 Sly Technologies Inc.
+ *
+ * Licensed under the Sly Technologies Free License (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.slytechs.com/free-license-text
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.slytechs.jnet.jnetruntime.hash;
+
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD signature matcher based on the incubating vector API. This class must
+ * only be loaded after checking that the {@code jdk.incubator.vector} module is
+ * present, see {@link SignatureMatcher#of(int)}.
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+final class VectorSignatureMatcher implements SignatureMatcher {
+
+	/**
+	 * Selects the widest vector species, no wider than the platform's preferred
+	 * species, which evenly divides the bucket.
+	 *
+	 * @param count the number of signatures per bucket
+	 * @return the vector signature matcher or null if no species fits the bucket
+	 */
+	static SignatureMatcher of(int count) {
+		VectorSpecies<Short> species = ShortVector.SPECIES_PREFERRED;
+
+		while (species.length() > count) {
+			species = switch (species.vectorBitSize()) {
+			case 512 -> ShortVector.SPECIES_256;
+			case 256 -> ShortVector.SPECIES_128;
+			case 128 -> ShortVector.SPECIES_64;
+			default -> null;
+			};
+
+			if (species == null)
+				return null;
+		}
+
+		if ((count % species.length()) != 0 || species.length() < 4)
+			return null;
+
+		return new VectorSignatureMatcher(species, count);
+	}
+
+	/** The vector species. */
+	private final VectorSpecies<Short> species;
+
+	/** The number of signatures per bucket. */
+	private final int count;
+
+	/**
+	 * Instantiates a new vector signature matcher.
+	 *
+	 * @param species the vector species
+	 * @param count   the number of signatures per bucket
+	 */
+	private VectorSignatureMatcher(VectorSpecies<Short> species, int count) {
+		this.species = species;
+		this.count = count;
+	}
+
+	/**
+	 * Match.
+	 *
+	 * @param signatures the signatures
+	 * @param offset     the offset
+	 * @param signature  the signature
+	 * @return the int
+	 * @see com.slytechs.jnet.jnetruntime.hash.SignatureMatcher#match(short[], int,
+	 *      short)
+	 */
+	@Override
+	public int match(short[] signatures, int offset, short signature) {
+		int mask = 0;
+		int step = species.length();
+
+		for (int i = 0; i < count; i += step)
+			mask |= (int) ShortVector.fromArray(species, signatures, offset + i)
+					.eq(signature)
+					.toLong() << i;
+
+		return mask;
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "vector" + species.vectorBitSize();
+	}
+}
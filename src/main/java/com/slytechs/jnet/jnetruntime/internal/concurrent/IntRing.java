@@ -17,12 +17,15 @@
  */
 package com.slytechs.jnet.jnetruntime.internal.concurrent;
 
+import java.util.Objects;
+
 /**
- * The Class IntRing.
+ * A lock-free ring of int values.
  *
  * @author Sly Technologies Inc
  * @author repos@slytechs.com
  * @author Mark Bednarczyk
+ * @see Ring
  */
 public class IntRing extends Ring {
 
@@ -30,12 +33,23 @@ public class IntRing extends Ring {
 	private final int[] table;
 
 	/**
-	 * Instantiates a new int ring.
+	 * Instantiates a new multi producer, multi consumer int ring.
 	 *
-	 * @param size the size
+	 * @param size the size, a power of 2
 	 */
 	public IntRing(int size) {
-		super(size);
+		this(size, SyncMode.MULTI, SyncMode.MULTI);
+	}
+
+	/**
+	 * Instantiates a new int ring.
+	 *
+	 * @param size         the size, a power of 2
+	 * @param producerMode the producer mode
+	 * @param consumerMode the consumer mode
+	 */
+	public IntRing(int size, SyncMode producerMode, SyncMode consumerMode) {
+		super(size, producerMode, consumerMode);
 		this.table = new int[size];
 	}
 
@@ -46,58 +60,166 @@ public class IntRing extends Ring {
 	 * @return true, if successful
 	 */
 	public boolean enqueue(int value) {
-		throw new UnsupportedOperationException();
+		long r = reserveProducer(1, true);
+		if (reservedCount(r) == 0)
+			return false;
+
+		table[index(reservedHead(r))] = value;
+		releaseProducer(r);
+
+		return true;
 	}
 
 	/**
-	 * Bulk enqueue.
+	 * Enqueues all of the values or none of them.
 	 *
 	 * @param values the values
 	 * @return true, if successful
 	 */
 	public boolean bulkEnqueue(int... values) {
-		throw new UnsupportedOperationException();
+		return bulkEnqueue(values, 0, values.length);
+	}
+
+	/**
+	 * Enqueues all of the values or none of them.
+	 *
+	 * @param values the values
+	 * @param offset the offset into values
+	 * @param count  the number of values
+	 * @return true, if successful
+	 */
+	public boolean bulkEnqueue(int[] values, int offset, int count) {
+		return enqueue(values, offset, count, true) == count;
 	}
 
 	/**
-	 * Burst enqueue.
+	 * Enqueues as many of the values as there is room for.
 	 *
 	 * @param values the values
-	 * @return the int
+	 * @return the number of values enqueued
 	 */
 	public int burstEnqueue(int... values) {
-		throw new UnsupportedOperationException();
+		return burstEnqueue(values, 0, values.length);
 	}
 
 	/**
-	 * Dequeue.
+	 * Enqueues as many of the values as there is room for.
+	 *
+	 * @param values the values
+	 * @param offset the offset into values
+	 * @param count  the number of values
+	 * @return the number of values enqueued
+	 */
+	public int burstEnqueue(int[] values, int offset, int count) {
+		return enqueue(values, offset, count, false);
+	}
+
+	/**
+	 * Enqueue.
+	 *
+	 * @param values the values
+	 * @param offset the offset
+	 * @param count  the count
+	 * @param bulk   the bulk
+	 * @return the number of values enqueued
+	 */
+	private int enqueue(int[] values, int offset, int count, boolean bulk) {
+		Objects.checkFromIndexSize(offset, count, values.length);
+
+		long r = reserveProducer(count, bulk);
+		int n = reservedCount(r);
+		if (n == 0)
+			return 0;
+
+		copyIn(values, offset, table, reservedHead(r), n);
+		releaseProducer(r);
+
+		return n;
+	}
+
+	/**
+	 * Dequeues a single value into the first element of dst.
 	 *
 	 * @param dstOfSizeOne the dst of size one
 	 * @return true, if successful
 	 */
 	public boolean dequeue(int[] dstOfSizeOne) {
-		throw new UnsupportedOperationException();
+		long r = reserveConsumer(1, true);
+		if (reservedCount(r) == 0)
+			return false;
+
+		dstOfSizeOne[0] = table[index(reservedHead(r))];
+		releaseConsumer(r);
+
+		return true;
 	}
 
 	/**
-	 * Bulk dequeue.
+	 * Dequeues exactly count values or none of them.
 	 *
 	 * @param count the count
 	 * @param dst   the dst
 	 * @return true, if successful
 	 */
 	public boolean bulkDequeue(int count, int[] dst) {
-		throw new UnsupportedOperationException();
+		return bulkDequeue(count, dst, 0);
+	}
+
+	/**
+	 * Dequeues exactly count values or none of them.
+	 *
+	 * @param count     the count
+	 * @param dst       the dst
+	 * @param dstOffset the offset into dst
+	 * @return true, if successful
+	 */
+	public boolean bulkDequeue(int count, int[] dst, int dstOffset) {
+		return dequeue(count, dst, dstOffset, true) == count;
 	}
 
 	/**
-	 * Burst dequeue.
+	 * Dequeues up to count values.
 	 *
 	 * @param count the count
 	 * @param dst   the dst
-	 * @return the int
+	 * @return the number of values dequeued
 	 */
 	public int burstDequeue(int count, int[] dst) {
-		throw new UnsupportedOperationException();
+		return burstDequeue(count, dst, 0);
+	}
+
+	/**
+	 * Dequeues up to count values.
+	 *
+	 * @param count     the count
+	 * @param dst       the dst
+	 * @param dstOffset the offset into dst
+	 * @return the number of values dequeued
+	 */
+	public int burstDequeue(int count, int[] dst, int dstOffset) {
+		return dequeue(count, dst, dstOffset, false);
+	}
+
+	/**
+	 * Dequeue.
+	 *
+	 * @param count     the count
+	 * @param dst       the dst
+	 * @param dstOffset the dst offset
+	 * @param bulk      the bulk
+	 * @return the number of values dequeued
+	 */
+	private int dequeue(int count, int[] dst, int dstOffset, boolean bulk) {
+		Objects.checkFromIndexSize(dstOffset, count, dst.length);
+
+		long r = reserveConsumer(count, bulk);
+		int n = reservedCount(r);
+		if (n == 0)
+			return 0;
+
+		copyOut(table, reservedHead(r), dst, dstOffset, n);
+		releaseConsumer(r);
+
+		return n;
 	}
 }
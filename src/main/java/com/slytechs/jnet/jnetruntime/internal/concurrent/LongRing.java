@@ -0,0 +1,225 @@
+/*
+ * Sly Technologies Free License
+ * 
+ * Copyright 2024 Sly Technologies Inc.
+ *
+ * Licensed under the Sly Technologies Free License (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.slytechs.com/free-license-text
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.slytechs.jnet.jnetruntime.internal.concurrent;
+
+import java.util.Objects;
+
+/**
+ * A lock-free ring of long values, such as addresses or packed descriptors,
+ * passed between threads without boxing.
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ * @see Ring
+ */
+public class LongRing extends Ring {
+
+	/** The table. */
+	private final long[] table;
+
+	/**
+	 * Instantiates a new multi producer, multi consumer long ring.
+	 *
+	 * @param size the size, a power of 2
+	 */
+	public LongRing(int size) {
+		this(size, SyncMode.MULTI, SyncMode.MULTI);
+	}
+
+	/**
+	 * Instantiates a new long ring.
+	 *
+	 * @param size         the size, a power of 2
+	 * @param producerMode the producer mode
+	 * @param consumerMode the consumer mode
+	 */
+	public LongRing(int size, SyncMode producerMode, SyncMode consumerMode) {
+		super(size, producerMode, consumerMode);
+		this.table = new long[size];
+	}
+
+	/**
+	 * Enqueue.
+	 *
+	 * @param value the value
+	 * @return true, if successful
+	 */
+	public boolean enqueue(long value) {
+		long r = reserveProducer(1, true);
+		if (reservedCount(r) == 0)
+			return false;
+
+		table[index(reservedHead(r))] = value;
+		releaseProducer(r);
+
+		return true;
+	}
+
+	/**
+	 * Enqueues all of the values or none of them.
+	 *
+	 * @param values the values
+	 * @return true, if successful
+	 */
+	public boolean bulkEnqueue(long... values) {
+		return bulkEnqueue(values, 0, values.length);
+	}
+
+	/**
+	 * Enqueues all of the values or none of them.
+	 *
+	 * @param values the values
+	 * @param offset the offset into values
+	 * @param count  the number of values
+	 * @return true, if successful
+	 */
+	public boolean bulkEnqueue(long[] values, int offset, int count) {
+		return enqueue(values, offset, count, true) == count;
+	}
+
+	/**
+	 * Enqueues as many of the values as there is room for.
+	 *
+	 * @param values the values
+	 * @return the number of values enqueued
+	 */
+	public int burstEnqueue(long... values) {
+		return burstEnqueue(values, 0, values.length);
+	}
+
+	/**
+	 * Enqueues as many of the values as there is room for.
+	 *
+	 * @param values the values
+	 * @param offset the offset into values
+	 * @param count  the number of values
+	 * @return the number of values enqueued
+	 */
+	public int burstEnqueue(long[] values, int offset, int count) {
+		return enqueue(values, offset, count, false);
+	}
+
+	/**
+	 * Enqueue.
+	 *
+	 * @param values the values
+	 * @param offset the offset
+	 * @param count  the count
+	 * @param bulk   the bulk
+	 * @return the number of values enqueued
+	 */
+	private int enqueue(long[] values, int offset, int count, boolean bulk) {
+		Objects.checkFromIndexSize(offset, count, values.length);
+
+		long r = reserveProducer(count, bulk);
+		int n = reservedCount(r);
+		if (n == 0)
+			return 0;
+
+		copyIn(values, offset, table, reservedHead(r), n);
+		releaseProducer(r);
+
+		return n;
+	}
+
+	/**
+	 * Dequeues a single value into the first element of dst.
+	 *
+	 * @param dstOfSizeOne the dst of size one
+	 * @return true, if successful
+	 */
+	public boolean dequeue(long[] dstOfSizeOne) {
+		long r = reserveConsumer(1, true);
+		if (reservedCount(r) == 0)
+			return false;
+
+		dstOfSizeOne[0] = table[index(reservedHead(r))];
+		releaseConsumer(r);
+
+		return true;
+	}
+
+	/**
+	 * Dequeues exactly count values or none of them.
+	 *
+	 * @param count the count
+	 * @param dst   the dst
+	 * @return true, if successful
+	 */
+	public boolean bulkDequeue(int count, long[] dst) {
+		return bulkDequeue(count, dst, 0);
+	}
+
+	/**
+	 * Dequeues exactly count values or none of them.
+	 *
+	 * @param count     the count
+	 * @param dst       the dst
+	 * @param dstOffset the offset into dst
+	 * @return true, if successful
+	 */
+	public boolean bulkDequeue(int count, long[] dst, int dstOffset) {
+		return dequeue(count, dst, dstOffset, true) == count;
+	}
+
+	/**
+	 * Dequeues up to count values.
+	 *
+	 * @param count the count
+	 * @param dst   the dst
+	 * @return the number of values dequeued
+	 */
+	public int burstDequeue(int count, long[] dst) {
+		return burstDequeue(count, dst, 0);
+	}
+
+	/**
+	 * Dequeues up to count values.
+	 *
+	 * @param count     the count
+	 * @param dst       the dst
+	 * @param dstOffset the offset into dst
+	 * @return the number of values dequeued
+	 */
+	public int burstDequeue(int count, long[] dst, int dstOffset) {
+		return dequeue(count, dst, dstOffset, false);
+	}
+
+	/**
+	 * Dequeue.
+	 *
+	 * @param count     the count
+	 * @param dst       the dst
+	 * @param dstOffset the dst offset
+	 * @param bulk      the bulk
+	 * @return the number of values dequeued
+	 */
+	private int dequeue(int count, long[] dst, int dstOffset, boolean bulk) {
+		Objects.checkFromIndexSize(dstOffset, count, dst.length);
+
+		long r = reserveConsumer(count, bulk);
+		int n = reservedCount(r);
+		if (n == 0)
+			return 0;
+
+		copyOut(table, reservedHead(r), dst, dstOffset, n);
+		releaseConsumer(r);
+
+		return n;
+	}
+}
@@ -17,32 +17,48 @@
  */
 package com.slytechs.jnet.jnetruntime.internal.concurrent;
 
+import java.util.Arrays;
+import java.util.Objects;
 import java.util.function.IntFunction;
 
 /**
- * The Class ObjRing.
+ * A lock-free ring of object references. Dequeued slots are cleared so the
+ * ring does not keep consumed objects reachable.
  *
  * @author Sly Technologies Inc
  * @author repos@slytechs.com
  * @author Mark Bednarczyk
  * @param <T> the generic type
+ * @see Ring
  */
 public class ObjRing<T> extends Ring {
 
 	/** The table. */
 	private final T[] table;
-	
+
 	/** The allocator. */
 	private final IntFunction<T[]> allocator;
 
 	/**
-	 * Instantiates a new obj ring.
+	 * Instantiates a new multi producer, multi consumer obj ring.
 	 *
-	 * @param size      the size
+	 * @param size      the size, a power of 2
 	 * @param allocator the allocator
 	 */
 	public ObjRing(int size, IntFunction<T[]> allocator) {
-		super(size);
+		this(size, allocator, SyncMode.MULTI, SyncMode.MULTI);
+	}
+
+	/**
+	 * Instantiates a new obj ring.
+	 *
+	 * @param size         the size, a power of 2
+	 * @param allocator    the allocator
+	 * @param producerMode the producer mode
+	 * @param consumerMode the consumer mode
+	 */
+	public ObjRing(int size, IntFunction<T[]> allocator, SyncMode producerMode, SyncMode consumerMode) {
+		super(size, producerMode, consumerMode);
 		this.table = allocator.apply(size);
 		this.allocator = allocator;
 	}
@@ -54,28 +70,198 @@ public class ObjRing<T> extends Ring {
 	 * @return true, if successful
 	 */
 	public boolean enqueue(T value) {
-		throw new UnsupportedOperationException();
+		Objects.requireNonNull(value, "value");
+
+		long r = reserveProducer(1, true);
+		if (reservedCount(r) == 0)
+			return false;
+
+		table[index(reservedHead(r))] = value;
+		releaseProducer(r);
+
+		return true;
 	}
 
 	/**
-	 * Bulk enqueue.
+	 * Enqueues all of the values or none of them.
 	 *
 	 * @param values the values
 	 * @return true, if successful
 	 */
 	@SuppressWarnings("unchecked")
 	public boolean bulkEnqueue(T... values) {
-		throw new UnsupportedOperationException();
+		return bulkEnqueue(values, 0, values.length);
 	}
 
 	/**
-	 * Burst enqueue.
+	 * Enqueues all of the values or none of them.
 	 *
 	 * @param values the values
-	 * @return the int
+	 * @param offset the offset into values
+	 * @param count  the number of values
+	 * @return true, if successful
+	 */
+	public boolean bulkEnqueue(T[] values, int offset, int count) {
+		return enqueue(values, offset, count, true) == count;
+	}
+
+	/**
+	 * Enqueues as many of the values as there is room for.
+	 *
+	 * @param values the values
+	 * @return the number of values enqueued
 	 */
 	@SuppressWarnings("unchecked")
 	public int burstEnqueue(T... values) {
-		throw new UnsupportedOperationException();
+		return burstEnqueue(values, 0, values.length);
+	}
+
+	/**
+	 * Enqueues as many of the values as there is room for.
+	 *
+	 * @param values the values
+	 * @param offset the offset into values
+	 * @param count  the number of values
+	 * @return the number of values enqueued
+	 */
+	public int burstEnqueue(T[] values, int offset, int count) {
+		return enqueue(values, offset, count, false);
+	}
+
+	/**
+	 * Enqueue.
+	 *
+	 * @param values the values
+	 * @param offset the offset
+	 * @param count  the count
+	 * @param bulk   the bulk
+	 * @return the number of values enqueued
+	 */
+	private int enqueue(T[] values, int offset, int count, boolean bulk) {
+		Objects.checkFromIndexSize(offset, count, values.length);
+
+		long r = reserveProducer(count, bulk);
+		int n = reservedCount(r);
+		if (n == 0)
+			return 0;
+
+		copyIn(values, offset, table, reservedHead(r), n);
+		releaseProducer(r);
+
+		return n;
+	}
+
+	/**
+	 * Dequeues a single value.
+	 *
+	 * @return the value or null if the ring is empty
+	 */
+	public T dequeue() {
+		long r = reserveConsumer(1, true);
+		if (reservedCount(r) == 0)
+			return null;
+
+		int index = index(reservedHead(r));
+		T value = table[index];
+		table[index] = null;
+		releaseConsumer(r);
+
+		return value;
+	}
+
+	/**
+	 * Dequeues exactly count values or none of them.
+	 *
+	 * @param count the count
+	 * @param dst   the dst
+	 * @return true, if successful
+	 */
+	public boolean bulkDequeue(int count, T[] dst) {
+		return bulkDequeue(count, dst, 0);
+	}
+
+	/**
+	 * Dequeues exactly count values or none of them.
+	 *
+	 * @param count     the count
+	 * @param dst       the dst
+	 * @param dstOffset the offset into dst
+	 * @return true, if successful
+	 */
+	public boolean bulkDequeue(int count, T[] dst, int dstOffset) {
+		return dequeue(count, dst, dstOffset, true) == count;
+	}
+
+	/**
+	 * Dequeues up to count values.
+	 *
+	 * @param count the count
+	 * @param dst   the dst
+	 * @return the number of values dequeued
+	 */
+	public int burstDequeue(int count, T[] dst) {
+		return burstDequeue(count, dst, 0);
+	}
+
+	/**
+	 * Dequeues up to count values.
+	 *
+	 * @param count     the count
+	 * @param dst       the dst
+	 * @param dstOffset the offset into dst
+	 * @return the number of values dequeued
+	 */
+	public int burstDequeue(int count, T[] dst, int dstOffset) {
+		return dequeue(count, dst, dstOffset, false);
+	}
+
+	/**
+	 * Dequeue.
+	 *
+	 * @param count     the count
+	 * @param dst       the dst
+	 * @param dstOffset the dst offset
+	 * @param bulk      the bulk
+	 * @return the number of values dequeued
+	 */
+	private int dequeue(int count, T[] dst, int dstOffset, boolean bulk) {
+		Objects.checkFromIndexSize(dstOffset, count, dst.length);
+
+		long r = reserveConsumer(count, bulk);
+		int n = reservedCount(r);
+		if (n == 0)
+			return 0;
+
+		int head = reservedHead(r);
+		copyOut(table, head, dst, dstOffset, n);
+		clear(head, n);
+		releaseConsumer(r);
+
+		return n;
+	}
+
+	/**
+	 * Clears dequeued slots, wrapping around the table's end.
+	 *
+	 * @param position the first ring position
+	 * @param count    the count
+	 */
+	private void clear(int position, int count) {
+		int index = index(position);
+		int first = Math.min(count, table.length - index);
+
+		Arrays.fill(table, index, index + first, null);
+		if (first < count)
+			Arrays.fill(table, 0, count - first, null);
+	}
+
+	/**
+	 * Allocates an array suitable for bulk and burst dequeues.
+	 *
+	 * @param size the size
+	 * @return the array
+	 */
+	public T[] newArray(int size) {
+		return allocator.apply(size);
 	}
 }
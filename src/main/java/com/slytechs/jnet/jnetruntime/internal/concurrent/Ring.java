@@ -1,14 +1,14 @@
 /*
  * Sly Technologies Free License
- * 
+ *
  * Copyright 2023 Sly Technologies Inc.
  *
  * Licensed under the Sly Technologies Free License (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
  * the License at
- * 
+ *
  * http://www.slytechs.com/free-license-text
- * 
+ *
  * Unless required by applicable law or agreed to in writing, software
  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
@@ -17,10 +17,38 @@
  */
 package com.slytechs.jnet.jnetruntime.internal.concurrent;
 
-import java.util.concurrent.atomic.AtomicInteger;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 
 /**
- * The Class Ring.
+ * Base of the lock-free fixed size rings, modeled after the DPDK
+ * {@code rte_ring}.
+ * <p>
+ * Producers and consumers each own a head and a tail counter. An enqueue
+ * first reserves slots by moving the producer head, then writes its elements
+ * and finally publishes them by moving the producer tail. A dequeue does the
+ * same with the consumer counters. Consumers only ever see slots up to the
+ * producer tail, and producers only reuse slots up to the consumer tail, so
+ * the elements themselves are accessed with plain reads and writes.
+ * </p>
+ * <p>
+ * With {@link SyncMode#MULTI} several threads may share a side: the head is
+ * moved with a CAS, and each thread waits for the threads that reserved
+ * earlier slots to publish theirs before moving the tail, keeping tail
+ * publication in order. With {@link SyncMode#SINGLE} only one thread may use
+ * that side, and the head is moved with plain stores.
+ * </p>
+ * <p>
+ * Operations come in 2 flavors: <em>bulk</em> operations transfer all of the
+ * requested elements or none of them, and <em>burst</em> operations transfer
+ * as many elements as are available, up to the requested count.
+ * </p>
+ * <p>
+ * Counters are free running 32-bit ints, which wrap around harmlessly since
+ * only their differences are used, and are masked with the power of 2 capacity
+ * to index slots. The producer and consumer counters sit in separate cache
+ * line padded regions so the 2 sides do not false share.
+ * </p>
  *
  * @author Sly Technologies Inc
  * @author repos@slytechs.com
@@ -29,168 +57,359 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class Ring {
 
 	/**
-	 * The Interface Guardian.
+	 * How many threads may use one side of a ring, producer or consumer.
 	 */
-	interface Guardian {
-		
-		/**
-		 * Bulk.
-		 *
-		 * @param count the count
-		 * @return true, if successful
-		 */
-		boolean bulk(int count);
+	public enum SyncMode {
+
+		/** A single thread, heads are moved without CAS. */
+		SINGLE,
 
-		/**
-		 * Burst.
-		 *
-		 * @param count the count
-		 * @return the int
-		 */
-		int burst(int count);
+		/** Multiple threads, heads are moved with CAS. */
+		MULTI,
 	}
 
-	/**
-	 * The Class SyncGuardian.
-	 */
-	public class SyncGuardian implements Guardian {
+	/** The maximum ring capacity. */
+	public static final int MAX_CAPACITY = 1 << 30;
 
-		/**
-		 * Bulk.
-		 *
-		 * @param count the count
-		 * @return true, if successful
-		 * @see com.slytechs.jnet.jnetruntime.internal.concurrent.Ring.Guardian#bulk()
-		 */
-		@Override
-		public synchronized boolean bulk(int count) {
-			int consTail = consumerTail.get();
-			int prodHead = producerHead.get();
-			int prodNext = producerHead.get();
-			int size = prodHead - consTail;
+	/** Ints of padding around each counter pair, 2 cache lines. */
+	private static final int PAD = 32;
 
-			return true;
-		}
+	/** Index of the producer head. */
+	private static final int PROD_HEAD = PAD;
 
-		/**
-		 * Burst.
-		 *
-		 * @param count the count
-		 * @return the int
-		 * @see com.slytechs.jnet.jnetruntime.internal.concurrent.Ring.Guardian#burst(int)
-		 */
-		@Override
-		public synchronized int burst(int count) {
-			int consTail = consumerTail.get();
-			int prodHead = producerHead.get();
-			int prodNext = producerHead.get();
-			int size = (prodHead - consTail) % capacity;
-
-			return size > count ? count : size;
-		}
+	/** Index of the producer tail, same cache line as its head. */
+	private static final int PROD_TAIL = PAD + 1;
+
+	/** Index of the consumer head. */
+	private static final int CONS_HEAD = 2 * PAD;
+
+	/** Index of the consumer tail, same cache line as its head. */
+	private static final int CONS_TAIL = 2 * PAD + 1;
+
+	/** Spins waiting for earlier reservations before yielding the CPU. */
+	private static final int MAX_SPINS = 128;
+
+	/** The Constant COUNTER. */
+	private static final VarHandle COUNTER = MethodHandles.arrayElementVarHandle(int[].class);
+
+	/**
+	 * Packs a reservation's first position and count into a single long.
+	 *
+	 * @param head  the first reserved position
+	 * @param count the number of reserved slots
+	 * @return the reservation
+	 */
+	private static long reservation(int head, int count) {
+		return ((long) head << 32) | count;
+	}
+
+	/**
+	 * The first position of a reservation.
+	 *
+	 * @param reservation the reservation
+	 * @return the position
+	 */
+	protected static int reservedHead(long reservation) {
+		return (int) (reservation >>> 32);
+	}
 
+	/**
+	 * The number of slots in a reservation, 0 if nothing was reserved.
+	 *
+	 * @param reservation the reservation
+	 * @return the count
+	 */
+	protected static int reservedCount(long reservation) {
+		return (int) reservation;
 	}
 
-	/** The consumer tail. */
-	private final AtomicInteger consumerTail = new AtomicInteger();
-	
-	/** The consumer head. */
-	private final AtomicInteger consumerHead = new AtomicInteger();
-	
-	/** The producer tail. */
-	private final AtomicInteger producerTail = new AtomicInteger();
-	
-	/** The producer head. */
-	private final AtomicInteger producerHead = new AtomicInteger();
-	
-	/** The size. */
-	private final AtomicInteger size = new AtomicInteger();
-	
-	/** The consumer guard. */
-	private final Guardian consumerGuard;
-	
-	/** The producer guard. */
-	private final Guardian producerGuard;
-	
+	/** The head and tail counters, padded apart. */
+	private final int[] counters = new int[3 * PAD];
+
 	/** The capacity. */
 	private final int capacity;
 
+	/** The slot index mask. */
+	private final int mask;
+
+	/** The producer mode. */
+	private final SyncMode producerMode;
+
+	/** The consumer mode. */
+	private final SyncMode consumerMode;
+
 	/**
-	 * Instantiates a new ring.
+	 * Instantiates a new multi producer, multi consumer ring.
 	 *
-	 * @param capacity the capacity
+	 * @param capacity the capacity, a power of 2
 	 */
 	protected Ring(int capacity) {
-		this(capacity, null, null);
+		this(capacity, SyncMode.MULTI, SyncMode.MULTI);
 	}
 
 	/**
 	 * Instantiates a new ring.
 	 *
-	 * @param capacity      the capacity
-	 * @param consumerGuard the consumer guard
-	 * @param producerGuard the producer guard
+	 * @param capacity     the capacity, a power of 2
+	 * @param producerMode the producer mode
+	 * @param consumerMode the consumer mode
 	 */
-	protected Ring(int capacity, Guardian consumerGuard, Guardian producerGuard) {
+	protected Ring(int capacity, SyncMode producerMode, SyncMode consumerMode) {
+		if (capacity < 1 || capacity > MAX_CAPACITY || Integer.bitCount(capacity) != 1)
+			throw new IllegalArgumentException("ring capacity not a power of 2 [%d]".formatted(capacity));
+
 		this.capacity = capacity;
-		this.consumerGuard = consumerGuard;
-		this.producerGuard = producerGuard;
+		this.mask = capacity - 1;
+		this.producerMode = producerMode;
+		this.consumerMode = consumerMode;
+	}
 
+	/**
+	 * Capacity.
+	 *
+	 * @return the capacity
+	 */
+	public int capacity() {
+		return capacity;
 	}
 
 	/**
-	 * Consumer.
+	 * Number of elements which can be enqueued before the ring is full.
 	 *
-	 * @return the int
+	 * @return the free count
 	 */
-	protected int consumer() {
-		throw new UnsupportedOperationException();
+	public int freeCount() {
+		return capacity - size();
 	}
 
 	/**
-	 * Consumer.
+	 * Slot index of a position.
 	 *
-	 * @param count the count
-	 * @return the int
+	 * @param position the position
+	 * @return the index
 	 */
-	protected int consumer(int count) {
-		throw new UnsupportedOperationException();
+	protected final int index(int position) {
+		return position & mask;
 	}
 
 	/**
-	 * Producer.
+	 * Checks if is empty.
 	 *
-	 * @return the int
+	 * @return true, if is empty
 	 */
-	protected int producer() {
-		throw new UnsupportedOperationException();
+	public boolean isEmpty() {
+		return size() == 0;
 	}
 
 	/**
-	 * Producer.
+	 * Checks if is full.
 	 *
-	 * @param count the count
-	 * @return the int
+	 * @return true, if is full
 	 */
-	protected int producer(int count) {
-		throw new UnsupportedOperationException();
+	public boolean isFull() {
+		return size() == capacity;
 	}
 
 	/**
-	 * Size.
+	 * Consumer mode.
+	 *
+	 * @return the sync mode
+	 */
+	public SyncMode consumerMode() {
+		return consumerMode;
+	}
+
+	/**
+	 * Producer mode.
+	 *
+	 * @return the sync mode
+	 */
+	public SyncMode producerMode() {
+		return producerMode;
+	}
+
+	/**
+	 * Reserves slots for dequeuing by moving the consumer head. The reserved
+	 * slots must be read and then released with
+	 * {@link #releaseConsumer(long)}.
+	 *
+	 * @param count the number of elements to dequeue
+	 * @param bulk  if true reserve all or nothing, otherwise as many as are
+	 *              available
+	 * @return the reservation, with a count of 0 if nothing was reserved
+	 */
+	protected final long reserveConsumer(int count, boolean bulk) {
+		int head;
+		int n;
+
+		if (consumerMode == SyncMode.SINGLE) {
+			head = counters[CONS_HEAD];
+			int entries = (int) COUNTER.getAcquire(counters, PROD_TAIL) - head;
+			n = (count <= entries) ? count : (bulk ? 0 : entries);
+
+			if (n > 0)
+				counters[CONS_HEAD] = head + n;
+
+			return reservation(head, n);
+		}
+
+		do {
+			head = (int) COUNTER.getVolatile(counters, CONS_HEAD);
+			int entries = (int) COUNTER.getAcquire(counters, PROD_TAIL) - head;
+			n = (count <= entries) ? count : (bulk ? 0 : entries);
+
+			if (n <= 0)
+				return reservation(head, 0);
+
+		} while (!COUNTER.compareAndSet(counters, CONS_HEAD, head, head + n));
+
+		return reservation(head, n);
+	}
+
+	/**
+	 * Releases dequeued slots back to the producers by moving the consumer tail.
+	 *
+	 * @param reservation the reservation returned by
+	 *                    {@link #reserveConsumer(int, boolean)}
+	 */
+	protected final void releaseConsumer(long reservation) {
+		publish(CONS_TAIL, consumerMode, reservedHead(reservation), reservedCount(reservation));
+	}
+
+	/**
+	 * Reserves slots for enqueuing by moving the producer head. The reserved
+	 * slots must be written and then published with
+	 * {@link #releaseProducer(long)}.
+	 *
+	 * @param count the number of elements to enqueue
+	 * @param bulk  if true reserve all or nothing, otherwise as many as there
+	 *              are free slots
+	 * @return the reservation, with a count of 0 if nothing was reserved
+	 */
+	protected final long reserveProducer(int count, boolean bulk) {
+		int head;
+		int n;
+
+		if (producerMode == SyncMode.SINGLE) {
+			head = counters[PROD_HEAD];
+			int free = capacity + (int) COUNTER.getAcquire(counters, CONS_TAIL) - head;
+			n = (count <= free) ? count : (bulk ? 0 : free);
+
+			if (n > 0)
+				counters[PROD_HEAD] = head + n;
+
+			return reservation(head, n);
+		}
+
+		do {
+			head = (int) COUNTER.getVolatile(counters, PROD_HEAD);
+			int free = capacity + (int) COUNTER.getAcquire(counters, CONS_TAIL) - head;
+			n = (count <= free) ? count : (bulk ? 0 : free);
+
+			if (n <= 0)
+				return reservation(head, 0);
+
+		} while (!COUNTER.compareAndSet(counters, PROD_HEAD, head, head + n));
+
+		return reservation(head, n);
+	}
+
+	/**
+	 * Publishes enqueued slots to the consumers by moving the producer tail.
+	 *
+	 * @param reservation the reservation returned by
+	 *                    {@link #reserveProducer(int, boolean)}
+	 */
+	protected final void releaseProducer(long reservation) {
+		publish(PROD_TAIL, producerMode, reservedHead(reservation), reservedCount(reservation));
+	}
+
+	/**
+	 * Moves a tail past a reservation. With multiple threads per side, waits
+	 * until all earlier reservations have moved the tail up to this one, so the
+	 * tail never passes slots which are still being accessed. The wait spins
+	 * briefly and then yields, since the thread it waits for may have been
+	 * preempted, which would otherwise stall every thread behind it for a whole
+	 * scheduler time slice.
+	 *
+	 * @param tailIndex the tail counter index
+	 * @param mode      the side's mode
+	 * @param head      the reservation's first position
+	 * @param count     the reservation's count
+	 */
+	private void publish(int tailIndex, SyncMode mode, int head, int count) {
+		if (count == 0)
+			return;
+
+		if (mode == SyncMode.MULTI)
+			for (int spins = 0; (int) COUNTER.getAcquire(counters, tailIndex) != head; spins++)
+				if (spins < MAX_SPINS)
+					Thread.onSpinWait();
+				else
+					Thread.yield();
+
+		COUNTER.setRelease(counters, tailIndex, head + count);
+	}
+
+	/**
+	 * Copies elements into the ring's table, wrapping around its end.
+	 *
+	 * @param src       the source array
+	 * @param srcOffset the source offset
+	 * @param table     the ring's table, an array of the same type as src
+	 * @param position  the first ring position
+	 * @param count     the number of elements
+	 */
+	protected final void copyIn(Object src, int srcOffset, Object table, int position, int count) {
+		int index = index(position);
+		int first = Math.min(count, capacity - index);
+
+		System.arraycopy(src, srcOffset, table, index, first);
+		if (first < count)
+			System.arraycopy(src, srcOffset + first, table, 0, count - first);
+	}
+
+	/**
+	 * Copies elements out of the ring's table, wrapping around its end.
+	 *
+	 * @param table     the ring's table, an array of the same type as dst
+	 * @param position  the first ring position
+	 * @param dst       the destination array
+	 * @param dstOffset the destination offset
+	 * @param count     the number of elements
+	 */
+	protected final void copyOut(Object table, int position, Object dst, int dstOffset, int count) {
+		int index = index(position);
+		int first = Math.min(count, capacity - index);
+
+		System.arraycopy(table, index, dst, dstOffset, first);
+		if (first < count)
+			System.arraycopy(table, 0, dst, dstOffset + first, count - first);
+	}
+
+	/**
+	 * Number of elements in the ring. Only a snapshot while other threads are
+	 * enqueuing or dequeuing.
 	 *
 	 * @return the int
 	 */
 	public int size() {
-		return size.get();
+		int consTail = (int) COUNTER.getAcquire(counters, CONS_TAIL);
+		int prodTail = (int) COUNTER.getAcquire(counters, PROD_TAIL);
+		int size = prodTail - consTail;
+
+		return (size < 0) ? 0 : Math.min(size, capacity);
 	}
 
 	/**
-	 * Checks if is empty.
+	 * To string.
 	 *
-	 * @return true, if is empty
+	 * @return the string
+	 * @see java.lang.Object#toString()
 	 */
-	public boolean isEmpty() {
-		return size.get() == 0;
+	@Override
+	public String toString() {
+		return "%s [capacity=%d, size=%d, producer=%s, consumer=%s]"
+				.formatted(getClass().getSimpleName(), capacity, size(), producerMode, consumerMode);
 	}
 }
@@ -0,0 +1,241 @@
+/*
+ * Sly Technologies Free License
+ *
+ * Copyright 2024 Sly Technologies Inc.
+ *
+ * Licensed under the Sly Technologies Free License (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.slytechs.com/free-license-text
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.slytechs.jnet.jnetruntime.internal.concurrent;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.Objects;
+
+/**
+ * A lock-free ring of fixed size records stored off-heap in a single
+ * {@link MemorySegment}, such as packet descriptors holding an address, length
+ * and timestamp.
+ * <p>
+ * Records are accessed in place, without any heap object per message. A
+ * producer claims slots, writes its records directly into {@link #segment()}
+ * at the offsets given by {@link #recordOffset(long, int)} and then commits
+ * the claim, which publishes the records to consumers. A consumer claims
+ * published records the same way, reads them in place and commits its claim,
+ * which returns the slots to producers.
+ * </p>
+ *
+ * <pre>{@code
+ * long claim = ring.claimEnqueue(1, true);
+ * if (SegmentRing.claimCount(claim) == 1) {
+ * 	long offset = ring.recordOffset(claim, 0);
+ * 	ring.segment().set(JAVA_LONG, offset, address);
+ * 	ring.segment().set(JAVA_INT, offset + 8, length);
+ * 	ring.commitEnqueue(claim);
+ * }
+ * }</pre>
+ * <p>
+ * Every claim must be committed, and claimed slots must not be accessed after
+ * their claim is committed. With {@link Ring.SyncMode#MULTI} claims are
+ * committed in claim order, so a thread holding a claim for a long time
+ * delays the commits of every thread which claimed after it.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ * @see Ring
+ */
+public class SegmentRing extends Ring {
+
+	/** Records start at multiples of this alignment. */
+	private static final long RECORD_ALIGNMENT = 8;
+
+	/** The segment starts on a cache line. */
+	private static final long SEGMENT_ALIGNMENT = 64;
+
+	/**
+	 * The number of records in a claim, 0 if nothing was claimed.
+	 *
+	 * @param claim the claim
+	 * @return the count
+	 */
+	public static int claimCount(long claim) {
+		return reservedCount(claim);
+	}
+
+	/** The records. */
+	private final MemorySegment segment;
+
+	/** The record size. */
+	private final long recordSize;
+
+	/** The distance between records, the record size aligned. */
+	private final long stride;
+
+	/**
+	 * Instantiates a new multi producer, multi consumer segment ring, allocated
+	 * from an automatic arena.
+	 *
+	 * @param size       the number of records, a power of 2
+	 * @param recordSize the record size in bytes
+	 */
+	public SegmentRing(int size, long recordSize) {
+		this(size, recordSize, SyncMode.MULTI, SyncMode.MULTI, Arena.ofAuto());
+	}
+
+	/**
+	 * Instantiates a new segment ring.
+	 *
+	 * @param size         the number of records, a power of 2
+	 * @param recordSize   the record size in bytes
+	 * @param producerMode the producer mode
+	 * @param consumerMode the consumer mode
+	 * @param arena        the arena to allocate the records from
+	 */
+	public SegmentRing(int size, long recordSize, SyncMode producerMode, SyncMode consumerMode, Arena arena) {
+		super(size, producerMode, consumerMode);
+
+		if (recordSize <= 0)
+			throw new IllegalArgumentException("invalid record size [%d]".formatted(recordSize));
+
+		this.recordSize = recordSize;
+		this.stride = (recordSize + RECORD_ALIGNMENT - 1) & -RECORD_ALIGNMENT;
+		this.segment = arena.allocate(stride * size, SEGMENT_ALIGNMENT);
+	}
+
+	/**
+	 * Checks that a claim count is not negative.
+	 *
+	 * @param count the number of records
+	 * @return the count
+	 */
+	private static int checkCount(int count) {
+		if (count < 0)
+			throw new IllegalArgumentException("negative claim count [%d]".formatted(count));
+
+		return count;
+	}
+
+	/**
+	 * Claims published records for reading. The claimed records must be
+	 * committed with {@link #commitDequeue(long)} once read.
+	 *
+	 * @param count the number of records
+	 * @param bulk  if true claim all or nothing, otherwise as many as are
+	 *              available
+	 * @return the claim, see {@link #claimCount(long)}
+	 * @throws IllegalArgumentException if count is negative
+	 */
+	public long claimDequeue(int count, boolean bulk) {
+		return reserveConsumer(checkCount(count), bulk);
+	}
+
+	/**
+	 * Claims free slots for writing. The claimed records must be committed with
+	 * {@link #commitEnqueue(long)} once written.
+	 *
+	 * @param count the number of records
+	 * @param bulk  if true claim all or nothing, otherwise as many as are free
+	 * @return the claim, see {@link #claimCount(long)}
+	 * @throws IllegalArgumentException if count is negative
+	 */
+	public long claimEnqueue(int count, boolean bulk) {
+		return reserveProducer(checkCount(count), bulk);
+	}
+
+	/**
+	 * Returns the claimed records' slots to producers.
+	 *
+	 * @param claim the claim returned by {@link #claimDequeue(int, boolean)}
+	 */
+	public void commitDequeue(long claim) {
+		releaseConsumer(claim);
+	}
+
+	/**
+	 * Publishes the claimed records to consumers.
+	 *
+	 * @param claim the claim returned by {@link #claimEnqueue(int, boolean)}
+	 */
+	public void commitEnqueue(long claim) {
+		releaseProducer(claim);
+	}
+
+	/**
+	 * Dequeues a single record by copying it out of the ring.
+	 *
+	 * @param dst the destination, at least the record size
+	 * @return true, if successful
+	 */
+	public boolean dequeue(MemorySegment dst) {
+		Objects.checkFromIndexSize(0, recordSize, dst.byteSize());
+
+		long claim = reserveConsumer(1, true);
+		if (reservedCount(claim) == 0)
+			return false;
+
+		MemorySegment.copy(segment, recordOffset(claim, 0), dst, 0, recordSize);
+		releaseConsumer(claim);
+
+		return true;
+	}
+
+	/**
+	 * Enqueues a single record by copying it into the ring.
+	 *
+	 * @param src the source, at least the record size
+	 * @return true, if successful
+	 */
+	public boolean enqueue(MemorySegment src) {
+		Objects.checkFromIndexSize(0, recordSize, src.byteSize());
+
+		long claim = reserveProducer(1, true);
+		if (reservedCount(claim) == 0)
+			return false;
+
+		MemorySegment.copy(src, 0, segment, recordOffset(claim, 0), recordSize);
+		releaseProducer(claim);
+
+		return true;
+	}
+
+	/**
+	 * Byte offset within {@link #segment()} of a claimed record.
+	 *
+	 * @param claim the claim
+	 * @param index the record's index within the claim
+	 * @return the offset
+	 */
+	public long recordOffset(long claim, int index) {
+		Objects.checkIndex(index, reservedCount(claim));
+
+		return index(reservedHead(claim) + index) * stride;
+	}
+
+	/**
+	 * Record size.
+	 *
+	 * @return the size in bytes
+	 */
+	public long recordSize() {
+		return recordSize;
+	}
+
+	/**
+	 * The segment holding all of the ring's records.
+	 *
+	 * @return the memory segment
+	 */
+	public MemorySegment segment() {
+		return segment;
+	}
+}
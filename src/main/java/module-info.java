@@ -37,5 +37,6 @@ module com.slytechs.jnet.jnetruntime {
 	exports com.slytechs.jnet.jnetruntime.internal.json;
 
 	requires java.logging;
+	requires static jdk.incubator.vector;
 
 }
\ No newline at end of file
@@ -0,0 +1,139 @@
+/*
+ * Sly Technologies Free License
+ *
+ * Copyright 2024 Sly Technologies Inc.
+ *
+ * Licensed under the Sly Technologies Free License (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.slytechs.com/free-license-text
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.slytechs.jnet.jnetruntime.hash;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.slytechs.jnet.jnetruntime.time.TimestampSource;
+import com.slytechs.jnet.jnetruntime.time.TimestampSource.AssignableTimestampSource;
+
+/**
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ *
+ */
+class TestExpiringKeyedTable {
+
+	private static final long TIMEOUT_MILLIS = 30_000;
+
+	ByteBuffer key;
+	AssignableTimestampSource clock;
+	ExpiringKeyedTable<String> table;
+	List<String> expired;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@BeforeEach
+	void setUp() throws Exception {
+		key = ByteBuffer.allocateDirect(16);
+		clock = TimestampSource.assignable();
+		clock.timestamp(1_700_000_000_000L); // Pcap replay time, far from zero
+		expired = new ArrayList<>();
+
+		table = new ExpiringKeyedTable<String>(new CuckooHashTable<>(1024), clock,
+				TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+				.setExpirationListener(e -> expired.add(e.data()));
+	}
+
+	private int add(int k) {
+		key.putInt(0, k);
+
+		return table.add(key, "flow_" + k);
+	}
+
+	private int lookup(int k) {
+		key.putInt(0, k);
+
+		return table.lookup(key);
+	}
+
+	private void advance(long millis) {
+		clock.timestamp(clock.millis() + millis);
+	}
+
+	@Test
+	void test_idleEntriesExpire() {
+		for (int i = 0; i < 100; i++)
+			add(i);
+
+		advance(TIMEOUT_MILLIS - 1000);
+		table.expire();
+		assertEquals(0, expired.size());
+
+		advance(2000);
+		table.expire();
+		assertEquals(100, expired.size());
+		assertEquals(0, table.getUsedEntriesCount());
+		assertEquals(-1, lookup(0));
+	}
+
+	@Test
+	void test_activeEntriesAreKept() {
+		for (int i = 0; i < 100; i++)
+			add(i);
+
+		for (int t = 0; t < 10; t++) {
+			advance(TIMEOUT_MILLIS / 4);
+
+			for (int i = 0; i < 100; i += 2)
+				assertNotEquals(-1, lookup(i), "at key %d".formatted(i));
+		}
+
+		assertEquals(50, expired.size());
+		assertTrue(expired.stream().allMatch(s -> (Integer.parseInt(s.substring(5)) & 1) == 1));
+		assertEquals(50, table.getUsedEntriesCount());
+	}
+
+	@Test
+	void test_removeAndTimeJump() {
+		int index = add(1);
+		add(2);
+
+		key.putInt(0, 1);
+		assertTrue(table.remove(key));
+		assertFalse(table.expirable(index).isNotExpired());
+
+		advance(TimeUnit.DAYS.toMillis(1)); // Capture gap
+		table.expire();
+
+		assertEquals(List.of("flow_2"), expired);
+		assertEquals(1, table.getExpiredCount());
+	}
+
+	@Test
+	void test_expirableView() {
+		int index = add(1);
+
+		advance(10_000);
+		assertEquals(20, table.expirable(index).expiresIn(TimeUnit.SECONDS));
+		assertFalse(table.expirable(index).isExpired());
+
+		table.expirable(index).expire();
+		assertEquals(List.of("flow_1"), expired);
+		assertEquals(-1, lookup(1));
+	}
+}
@@ -0,0 +1,212 @@
+/*
+ * Sly Technologies Free License
+ *
+ * Copyright 2024 Sly Technologies Inc.
+ *
+ * Licensed under the Sly Technologies Free License (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.slytechs.com/free-license-text
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.slytechs.jnet.jnetruntime.hash;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.slytechs.jnet.jnetruntime.hash.HashTable.HashAlgorithm;
+import com.slytechs.jnet.jnetruntime.internal.Benchmark;
+import com.slytechs.test.Tests;
+
+/**
+ * Verifies the hash algorithms against published test vectors and compares
+ * their throughput and bucket distribution on IPv4 5-tuple flow keys.
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ *
+ */
+class TestHashAlgorithms {
+
+	/** IPv4 5-tuple key size: 2 addresses, 2 ports and protocol. */
+	private static final int IPV4_TUPLE_SIZE = 13;
+
+	private static final int KEY_COUNT = 1 << 20;
+	private static final int BUCKET_COUNT = 1 << 16;
+
+	private static final List<HashAlgorithm> ALGORITHMS = List.of(
+			HashAlgorithms.xxHash64(),
+			HashAlgorithms.murmur3(),
+			HashAlgorithms.wyhash(),
+			HashAlgorithms.crc32c());
+
+	private static long hash(HashAlgorithm algorithm, String str) {
+		byte[] bytes = str.getBytes(StandardCharsets.US_ASCII);
+
+		return algorithm.calculateHashcode(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Generates realistic flow keys: clients in a /16 talking to a handful of
+	 * servers, from ephemeral ports to well known service ports.
+	 */
+	private static byte[] ipv4Tuples(int count) {
+		byte[] keys = new byte[count * IPV4_TUPLE_SIZE];
+		ByteBuffer buf = ByteBuffer.wrap(keys);
+
+		for (int i = 0; i < count; i++) {
+			buf.putInt(0x0A000000 | (i & 0xFFFF)); // 10.0.x.y
+			buf.putInt(0xC0A80100 | ((i >>> 16) & 0x07)); // 192.168.1.[0-7]
+			buf.putShort((short) (32768 + (i * 7) % 28232));
+			buf.putShort((short) (((i & 1) == 0) ? 443 : 80));
+			buf.put((byte) 6);
+		}
+
+		return keys;
+	}
+
+	@Test
+	void test_xxHash64_vectors() {
+		var xx = HashAlgorithms.xxHash64();
+
+		assertEquals(0xEF46DB3751D8E999L, hash(xx, ""));
+		assertEquals(0x44BC2CF5AD770999L, hash(xx, "abc"));
+		assertEquals(0xFBCEA83C8A378BF1L, hash(xx, "Nobody inspects the spammish repetition"));
+	}
+
+	@Test
+	void test_murmur3_vectors() {
+		assertEquals(0L, hash(HashAlgorithms.murmur3(), ""));
+		assertEquals(0xE34BBC7BBC071B6CL,
+				hash(HashAlgorithms.murmur3(), "The quick brown fox jumps over the lazy dog"));
+	}
+
+	@Test
+	void test_wyhash_vectors() {
+		assertEquals(0x93228A4DE0EEC5A2L, hash(HashAlgorithms.wyhash(0), ""));
+		assertEquals(0xC5BAC3DB178713C4L, hash(HashAlgorithms.wyhash(1), "a"));
+		assertEquals(0xA97F2F7B1D9B3314L, hash(HashAlgorithms.wyhash(2), "abc"));
+		assertEquals(0x786D1F1DF3801DF4L, hash(HashAlgorithms.wyhash(3), "message digest"));
+		assertEquals(0xDCA5A8138AD37C87L, hash(HashAlgorithms.wyhash(4), "abcdefghijklmnopqrstuvwxyz"));
+		assertEquals(0x6CC5EAB49A92D617L, hash(HashAlgorithms.wyhash(6),
+				"12345678901234567890123456789012345678901234567890123456789012345678901234567890"));
+	}
+
+	@Test
+	void test_crc32c_vectors() {
+		assertEquals(0xE3069283L, hash(HashAlgorithms.crc32c(), "123456789"));
+
+		byte[] large = ipv4Tuples(100);
+		MemorySegment segment = Arena.ofAuto().allocate(large.length + 1);
+		MemorySegment.copy(large, 0, segment, ValueLayout.JAVA_BYTE, 1, large.length);
+
+		assertEquals(HashAlgorithms.crc32c().calculateHashcode(large, 0, large.length),
+				HashAlgorithms.crc32c().calculateHashcode(segment, 1, large.length));
+	}
+
+	@Test
+	void test_allInputsHashAlikeWithoutSideEffects() {
+		byte[] array = "The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.US_ASCII);
+		ByteBuffer direct = ByteBuffer.allocateDirect(array.length).put(array).position(4);
+		MemorySegment segment = MemorySegment.ofBuffer(direct.duplicate().clear());
+
+		for (HashAlgorithm algorithm : ALGORITHMS) {
+			long expected = algorithm.calculateHashcode(array, 4, array.length - 4);
+
+			assertEquals(expected, algorithm.calculateHashcode(direct), algorithm.toString());
+			assertEquals(expected, algorithm.calculateHashcode(segment, 4, array.length - 4),
+					algorithm.toString());
+			assertEquals(4, direct.position(), algorithm.toString());
+			assertEquals(array.length, direct.limit(), algorithm.toString());
+		}
+	}
+
+	/**
+	 * Chi-squared test of the low hash bits used for bucket selection, and of the
+	 * 16 signature bits used by cuckoo buckets. With 64K buckets the statistic's
+	 * expected value is ~65535 with a standard deviation of ~362. CRC-32C is
+	 * linear and has no avalanche step, so its distribution is reported but not
+	 * asserted since structured keys are known to skew its low bits.
+	 */
+	@Test
+	void test_bucketDistribution() {
+		byte[] keys = ipv4Tuples(KEY_COUNT);
+
+		for (HashAlgorithm algorithm : ALGORITHMS) {
+			int[] buckets = new int[BUCKET_COUNT];
+			int[] signatures = new int[1 << 16];
+
+			for (int i = 0; i < KEY_COUNT; i++) {
+				long hash = algorithm.calculateHashcode(keys, i * IPV4_TUPLE_SIZE, IPV4_TUPLE_SIZE);
+
+				buckets[(int) (hash & (BUCKET_COUNT - 1))]++;
+				signatures[(int) ((hash >>> 16) & 0xFFFF)]++;
+			}
+
+			double bucketChi2 = chiSquared(buckets, KEY_COUNT);
+			double signatureChi2 = chiSquared(signatures, KEY_COUNT);
+
+			Tests.out.printf("%-10s bucket chi2=%.0f signature chi2=%.0f%n",
+					algorithm, bucketChi2, signatureChi2);
+
+			if (algorithm == HashAlgorithms.crc32c())
+				continue;
+
+			assertTrue(bucketChi2 < BUCKET_COUNT * 1.05, algorithm + " bucket chi2 " + bucketChi2);
+			assertTrue(signatureChi2 < BUCKET_COUNT * 1.05, algorithm + " signature chi2 " + signatureChi2);
+		}
+	}
+
+	private static double chiSquared(int[] counts, int total) {
+		double expected = (double) total / counts.length;
+		double chi2 = 0;
+
+		for (int c : counts)
+			chi2 += (c - expected) * (c - expected) / expected;
+
+		return chi2;
+	}
+
+	@Test
+	void benchmark_ipv4TupleThroughput() {
+		byte[] keys = ipv4Tuples(KEY_COUNT);
+		Map<String, HashAlgorithm> algorithms = new LinkedHashMap<>();
+		ALGORITHMS.forEach(a -> algorithms.put(a.toString(), a));
+		algorithms.put("crc32", Checksums::crc32);
+
+		algorithms.forEach((name, algorithm) -> {
+			long sink = 0;
+			int rounds = 4;
+
+			for (int i = 0; i < KEY_COUNT; i++) // Warmup
+				sink += algorithm.calculateHashcode(keys, i * IPV4_TUPLE_SIZE, IPV4_TUPLE_SIZE);
+
+			Benchmark bench = Benchmark.setup()
+					.reportRate((long) KEY_COUNT * rounds, (tsecs, rate, total) -> Tests.out
+							.printf("%-10s %6.1f Mhash/s%n", name, rate / 1_000_000));
+
+			for (int r = 0; r < rounds; r++)
+				for (int i = 0; i < KEY_COUNT; i++)
+					sink += algorithm.calculateHashcode(keys, i * IPV4_TUPLE_SIZE, IPV4_TUPLE_SIZE);
+
+			bench.complete();
+			assertNotEquals(0L, sink);
+		});
+	}
+}
@@ -0,0 +1,180 @@
+/*
+ * Sly Technologies Free License
+ *
+ * Copyright 2024 Sly Technologies Inc.
+ *
+ * Licensed under the Sly Technologies Free License (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.slytechs.com/free-license-text
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.slytechs.jnet.jnetruntime.hash;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.util.HexFormat;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the Internet checksum against a word at a time reference and a known
+ * IPv4 header, and checks RFC 1624 incremental updates against recalculation.
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ *
+ */
+class TestInternetChecksum {
+
+	/** IPv4 header with its checksum 0xB861 at offset 10. */
+	private static final byte[] IPV4_HEADER = HexFormat.of()
+			.parseHex("450000730000400040 11b861c0a80001c0a800c7".replace(" ", ""));
+
+	/** RFC 1071 reference, one 16-bit word at a time. */
+	private static int reference(byte[] data, int offset, int length) {
+		long sum = 0;
+		for (int i = 0; i < length; i += 2) {
+			int hi = data[offset + i] & 0xFF;
+			int lo = (i + 1 < length) ? data[offset + i + 1] & 0xFF : 0;
+			sum += (hi << 8) | lo;
+		}
+
+		while ((sum >>> 16) != 0)
+			sum = (sum & 0xFFFF) + (sum >>> 16);
+
+		return (int) (~sum & 0xFFFF);
+	}
+
+	@Test
+	void test_ipv4HeaderChecksum() {
+		assertEquals(0, InternetChecksum.checksum(IPV4_HEADER, 0, IPV4_HEADER.length));
+
+		byte[] header = IPV4_HEADER.clone();
+		header[10] = header[11] = 0;
+
+		assertEquals(0xB861, InternetChecksum.checksum(header, 0, header.length));
+		assertEquals(0xB861, Checksums.crc16(header));
+	}
+
+	@Test
+	void test_allInputsMatchReference() {
+		Random random = new Random(1);
+		byte[] data = new byte[300];
+		random.nextBytes(data);
+
+		MemorySegment segment = Arena.ofAuto().allocate(data.length);
+		segment.copyFrom(MemorySegment.ofArray(data));
+		ByteBuffer direct = segment.asByteBuffer();
+
+		for (int offset = 0; offset < 9; offset++) {
+			for (int length = 0; length + offset <= data.length; length++) {
+				int expected = reference(data, offset, length);
+
+				assertEquals(expected, InternetChecksum.checksum(data, offset, length), "array " + length);
+				assertEquals(expected, InternetChecksum.checksum(segment, offset, length), "segment " + length);
+				assertEquals(expected, Checksums.crc16(direct.clear().position(offset).limit(offset + length)));
+				assertEquals(offset, direct.position());
+			}
+		}
+	}
+
+	@Test
+	void test_chainedAndStreamingSums() {
+		Random random = new Random(2);
+		byte[] data = new byte[1501];
+		random.nextBytes(data);
+
+		int expected = reference(data, 0, data.length);
+
+		long sum = InternetChecksum.sum(0, data, 0, 20); // Even parts chain
+		sum = InternetChecksum.sum(sum, data, 20, 1000);
+		sum = InternetChecksum.sum(sum, data, 1020, data.length - 1020);
+		assertEquals(expected, InternetChecksum.complement(sum));
+
+		var crc16 = new Checksums.CRC16();
+		for (int offset = 0, part = 1; offset < data.length; offset += part, part = part * 3 % 17 + 1)
+			crc16.update(data, offset, Math.min(part, data.length - offset)); // Odd parts stream
+
+		assertEquals(expected, crc16.getValue());
+		assertEquals(expected, crc16.getValue());
+
+		crc16.reset();
+		for (byte b : data)
+			crc16.update(b);
+
+		assertEquals(expected, crc16.getValue());
+	}
+
+	@Test
+	void test_pseudoHeaderSum() {
+		byte[] pseudo = HexFormat.of().parseHex("c0a80001c0a800c70011005f");
+		long sum = InternetChecksum.pseudoHeaderSum(0xC0A80001, 0xC0A800C7, 17, 0x5F);
+
+		assertEquals(reference(pseudo, 0, pseudo.length), InternetChecksum.complement(sum));
+	}
+
+	@Test
+	void test_incrementalUpdateMatchesRecalculation() {
+		Random random = new Random(3);
+		byte[] header = IPV4_HEADER.clone();
+		ByteBuffer buf = ByteBuffer.wrap(header);
+
+		for (int i = 0; i < 10_000; i++) {
+			int checksum = buf.getShort(10) & 0xFFFF;
+
+			int oldTtlProto = buf.getShort(8) & 0xFFFF;
+			int newTtlProto = (i == 0) ? 0xFFFF - oldTtlProto : random.nextInt(0x10000);
+			buf.putShort(8, (short) newTtlProto);
+			checksum = InternetChecksum.update(checksum, oldTtlProto, newTtlProto);
+
+			int oldAddress = buf.getInt(12);
+			int newAddress = random.nextInt();
+			buf.putInt(12, newAddress);
+			checksum = InternetChecksum.update32(checksum, oldAddress, newAddress);
+
+			buf.putShort(10, (short) 0);
+			int expected = InternetChecksum.checksum(header, 0, header.length);
+
+			assertEquals(expected, checksum, "update " + i);
+			buf.putShort(10, (short) checksum);
+		}
+	}
+
+	@Test
+	void test_crc32PositionUnchanged() {
+		byte[] data = "123456789".getBytes();
+		ByteBuffer buffer = ByteBuffer.wrap(data).position(2);
+
+		var crc = new CRC32();
+		crc.update(data, 2, data.length - 2);
+
+		assertEquals(0xCBF43926L, Checksums.crc32(data));
+		assertEquals(crc.getValue(), Checksums.crc32(buffer));
+		assertEquals(2, buffer.position());
+		assertEquals(crc.getValue(), Checksums.crc32(MemorySegment.ofArray(data), 2, data.length - 2));
+	}
+
+	@Test
+	void test_crc32NonByteHeapSegment() {
+		int[] words = new Random(1).ints(1000).toArray();
+		MemorySegment segment = MemorySegment.ofArray(words);
+
+		var crc = new CRC32();
+		crc.update(segment.toArray(ValueLayout.JAVA_BYTE), 3, (int) segment.byteSize() - 3);
+
+		assertEquals(crc.getValue(), Checksums.crc32(segment, 3, segment.byteSize() - 3));
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * Sly Technologies Free License
+ *
+ * Copyright 2024 Sly Technologies Inc.
+ *
+ * Licensed under the Sly Technologies Free License (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.slytechs.com/free-license-text
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.slytechs.jnet.jnetruntime.hash;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ *
+ */
+class TestLongHashTable {
+
+	@Test
+	void test_addLookupRemove() {
+		var table = new LongHashTable<String>(1024);
+
+		for (long key = 0; key < 768; key++)
+			assertEquals(table.add(key, "v" + key), table.add(key, "other"));
+
+		assertEquals(768, table.getUsedEntriesCount());
+
+		for (long key = 0; key < 768; key++) {
+			int index = table.lookup(key);
+			assertEquals(key, table.key(index));
+			assertEquals("v" + key, table.data(index));
+		}
+
+		assertEquals(-1, table.lookup(768));
+		assertTrue(table.remove(5L));
+		assertFalse(table.remove(5L));
+		assertEquals(-1, table.lookup(5L));
+		assertEquals(767, table.getUsedEntriesCount());
+	}
+
+	@Test
+	void test_fullTableAndTombstoneReuse() {
+		var table = new LongHashTable<Long>(64);
+
+		for (long key = 0; key < 64; key++)
+			assertNotEquals(-1, table.add(key * 31, key));
+
+		assertEquals(-1, table.add(-1L, 0L));
+		assertEquals(-1, table.lookup(-1L));
+
+		int index = table.lookup(31L);
+		table.remove(index);
+		assertTrue(table.isEmpty(index));
+
+		assertEquals(index, table.add(-1L, 0L));
+		for (long key = 0; key < 64; key++)
+			assertEquals(key != 1, table.lookup(key * 31) != -1);
+	}
+
+	@Test
+	void test_churnAgainstReference() {
+		var table = new LongHashTable<Long>(4096);
+		var present = new HashMap<Long, Integer>();
+		var random = new Random(1);
+
+		for (int i = 0; i < 200_000; i++) {
+			long key = random.nextInt(6000);
+
+			if (random.nextBoolean() && present.size() < 3000) {
+				int index = table.add(key, key);
+				assertNotEquals(-1, index);
+				Integer old = present.put(key, index);
+				if (old != null)
+					assertEquals(old.intValue(), index);
+			} else {
+				assertEquals(present.remove(key) != null, table.remove(key));
+			}
+		}
+
+		assertEquals(present.size(), table.getUsedEntriesCount());
+		present.forEach((key, index) -> assertEquals(index.intValue(), table.lookup(key)));
+	}
+
+	/**
+	 * Flow table churn at high load: shifting probe slots back on removal must
+	 * keep every remaining key reachable and must not move any entry's index.
+	 */
+	@Test
+	void test_churnKeepsIndexes() {
+		var table = new LongHashTable<Long>(1024);
+		var pairs = new LongPairHashTable<Long>(1024);
+		var present = new HashMap<Long, Integer>();
+		var pairPresent = new HashMap<Long, Integer>();
+		var random = new Random(2);
+
+		for (int i = 0; i < 500_000; i++) {
+			long key = random.nextLong() & 0xFFFF;
+
+			if (present.size() < 900 && random.nextBoolean()) {
+				present.putIfAbsent(key, table.add(key, key));
+				pairPresent.putIfAbsent(key, pairs.add(key, ~key, key));
+
+			} else if (present.containsKey(key)) {
+				table.remove(present.remove(key).intValue());
+				pairs.remove(pairPresent.remove(key).intValue());
+			}
+		}
+
+		assertEquals(present.size(), table.getUsedEntriesCount());
+		assertEquals(pairPresent.size(), pairs.getUsedEntriesCount());
+
+		present.forEach((key, index) -> {
+			assertEquals(index.intValue(), table.lookup(key));
+			assertEquals(key.longValue(), table.key(index));
+		});
+		pairPresent.forEach((key, index) -> {
+			assertEquals(index.intValue(), pairs.lookup(key, ~key));
+			assertEquals(~key, pairs.keyLow(index));
+		});
+
+		for (long key = 0x10000; key < 0x10000 + 1000; key++) {
+			assertEquals(-1, table.lookup(key));
+			assertEquals(-1, pairs.lookup(key, ~key));
+		}
+	}
+
+	@Test
+	void test_pairKeysFromMemory() {
+		var table = new LongPairHashTable<String>(256);
+		ByteBuffer tuple = ByteBuffer.allocate(13)
+				.putInt(0x0A000001)
+				.putInt(0xC0A80101)
+				.putShort((short) 40000)
+				.putShort((short) 443)
+				.put((byte) 6);
+		MemorySegment key = MemorySegment.ofArray(tuple.array());
+
+		int index = table.add(key, 0, 13, "flow");
+		assertEquals(0x0A000001_C0A80101L, table.keyHigh(index));
+		assertEquals(0x9C40_01BB_06_000000L, table.keyLow(index));
+		assertEquals(index, table.lookup(0x0A000001_C0A80101L, 0x9C40_01BB_06_000000L));
+		assertEquals(index, table.lookup(key, 0, 13));
+		assertEquals(-1, table.lookup(0x0A000001_C0A80101L, 0));
+
+		assertThrows(IllegalArgumentException.class, () -> table.lookup(MemorySegment.ofArray(new byte[17]), 0, 17));
+
+		for (long i = 0; i < 200; i++)
+			assertNotEquals(-1, table.add(i, ~i, "k" + i));
+		for (long i = 0; i < 200; i++)
+			assertEquals("k" + i, table.data(table.lookup(i, ~i)));
+
+		assertTrue(table.remove(0x0A000001_C0A80101L, 0x9C40_01BB_06_000000L));
+		assertEquals(-1, table.lookup(key, 0, 13));
+	}
+}
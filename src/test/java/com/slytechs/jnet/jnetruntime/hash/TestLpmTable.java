@@ -0,0 +1,224 @@
+/*
+ * Sly Technologies Free License
+ *
+ * Copyright 2024 Sly Technologies Inc.
+ *
+ * Licensed under the Sly Technologies Free License (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.slytechs.com/free-license-text
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.slytechs.jnet.jnetruntime.hash;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.slytechs.test.Tests;
+
+/**
+ * Verifies the LPM tables against a brute force longest prefix search.
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ *
+ */
+class TestLpmTable {
+
+	private static final int ROUTE_COUNT = 2000;
+	private static final int PROBE_COUNT = 100_000;
+
+	/** Route with an address of up to 128 bits, held in 2 longs. */
+	private static final class Route {
+		final long high, low;
+		final int depth, nextHop;
+
+		Route(long high, long low, int depth, int nextHop) {
+			this.high = high;
+			this.low = low;
+			this.depth = depth;
+			this.nextHop = nextHop;
+		}
+
+		boolean matches(long addrHigh, long addrLow) {
+			if (depth <= 64)
+				return depth == 0 || ((addrHigh ^ high) >>> (64 - depth)) == 0;
+
+			return addrHigh == high && ((addrLow ^ low) >>> (128 - depth)) == 0;
+		}
+	}
+
+	private static int bruteForce(List<Route> routes, long high, long low) {
+		int best = -1, hop = -1;
+		for (Route r : routes)
+			if (r.depth > best && r.matches(high, low)) {
+				best = r.depth;
+				hop = r.nextHop;
+			}
+
+		return hop;
+	}
+
+	private static long maskHigh(long high, int depth) {
+		return (depth == 0) ? 0 : (depth >= 64) ? high : high & (-1L << (64 - depth));
+	}
+
+	private static long maskLow(long low, int depth) {
+		return (depth <= 64) ? 0 : (depth == 128) ? low : low & (-1L << (128 - depth));
+	}
+
+	@Test
+	void test_ipv4AgainstBruteForce() {
+		var table = new Ipv4LpmTable(1024);
+		var random = new Random(7);
+		List<Route> routes = new ArrayList<>();
+
+		table.add(0, 0, 999); // Default route
+		routes.add(new Route(0, 0, 0, 999));
+
+		for (int i = 0; i < ROUTE_COUNT; i++) {
+			int depth = 8 + random.nextInt(25);
+			long prefix = maskHigh((long) (0x0A000000 | random.nextInt(1 << 20)) << 32, depth);
+
+			routes.removeIf(r -> r.depth == depth && r.high == prefix);
+			routes.add(new Route(prefix, 0, depth, i));
+			assertTrue(table.add((int) (prefix >>> 32), depth, i));
+		}
+
+		verifyIpv4(table, routes, random);
+
+		List<Route> remaining = new ArrayList<>();
+		for (int i = 0; i < routes.size(); i++) {
+			Route r = routes.get(i);
+
+			if (i % 2 == 0)
+				assertTrue(table.remove((int) (r.high >>> 32), r.depth));
+			else
+				remaining.add(r);
+		}
+
+		verifyIpv4(table, remaining, random);
+
+		for (Route r : remaining)
+			assertTrue(table.remove((int) (r.high >>> 32), r.depth));
+
+		assertEquals(0, table.size());
+		assertEquals(Ipv4LpmTable.NO_ROUTE, table.lookup(0x0A000001));
+		assertEquals("Ipv4LpmTable [routes=0, groups=0]", table.toString());
+	}
+
+	private static void verifyIpv4(Ipv4LpmTable table, List<Route> routes, Random random) {
+		int[] addresses = new int[PROBE_COUNT];
+		int[] hops = new int[PROBE_COUNT];
+
+		for (int i = 0; i < PROBE_COUNT; i++)
+			addresses[i] = 0x0A000000 | random.nextInt(1 << 24);
+
+		table.lookupBulk(addresses, hops, PROBE_COUNT);
+
+		for (int i = 0; i < PROBE_COUNT; i++) {
+			int expected = bruteForce(routes, (long) addresses[i] << 32, 0);
+
+			assertEquals(expected, table.lookup(addresses[i]), "address 0x%08X".formatted(addresses[i]));
+			assertEquals(expected, hops[i]);
+		}
+	}
+
+	@Test
+	void test_ipv6AgainstBruteForce() {
+		var table = new Ipv6LpmTable();
+		var random = new Random(11);
+		List<Route> routes = new ArrayList<>();
+
+		for (int i = 0; i < ROUTE_COUNT / 4; i++) {
+			int depth = 16 + random.nextInt(113);
+			long high = maskHigh(0x2001_0DB8_0000_0000L | (random.nextLong() & 0x3_0000_FFFFL), depth);
+			long low = maskLow(random.nextLong() & 0xFF00_0000_0000_00FFL, depth);
+
+			routes.removeIf(r -> r.depth == depth && r.high == high && r.low == low);
+			routes.add(new Route(high, low, depth, i));
+			assertTrue(table.add(toBytes(high, low), depth, i));
+		}
+
+		int[] hops = new int[PROBE_COUNT / 10];
+		MemorySegment[] segments = new MemorySegment[hops.length];
+		long[] offsets = new long[hops.length];
+
+		for (int i = 0; i < hops.length; i++) {
+			Route r = routes.get(random.nextInt(routes.size())); // Mostly hit routes
+			long high = r.high ^ (random.nextInt(4) == 0 ? random.nextLong() & 0xFFFF : 0);
+			long low = r.low | (random.nextLong() & 0xFF);
+
+			segments[i] = MemorySegment.ofArray(toBytes(high, low));
+			int expected = bruteForce(routes, high, low);
+
+			assertEquals(expected, table.lookup(toBytes(high, low)));
+			hops[i] = expected;
+		}
+
+		int[] bulk = new int[hops.length];
+		table.lookupBulk(segments, offsets, bulk, hops.length);
+		for (int i = 0; i < hops.length; i++)
+			assertEquals(hops[i], bulk[i]);
+
+		for (Route r : routes)
+			assertTrue(table.remove(toBytes(r.high, r.low), r.depth));
+
+		assertEquals("Ipv6LpmTable [routes=0, groups=0]", table.toString());
+	}
+
+	private static byte[] toBytes(long high, long low) {
+		byte[] bytes = new byte[16];
+		for (int i = 0; i < 8; i++) {
+			bytes[i] = (byte) (high >>> (56 - i * 8));
+			bytes[8 + i] = (byte) (low >>> (56 - i * 8));
+		}
+
+		return bytes;
+	}
+
+	@Test
+	void benchmark_ipv4Lookup() {
+		var table = new Ipv4LpmTable(4096);
+		var random = new Random(3);
+
+		for (int i = 0; i < 100_000; i++)
+			table.add(random.nextInt(), 16 + random.nextInt(17), i);
+
+		int[] addresses = random.ints(1 << 20).toArray();
+		int[] hops = new int[addresses.length];
+		long sink = 0;
+
+		for (int r = 0; r < 3; r++)
+			for (int a : addresses)
+				sink += table.lookup(a);
+
+		long start = System.nanoTime();
+		for (int a : addresses)
+			sink += table.lookup(a);
+		long single = System.nanoTime() - start;
+
+		int[] burst = new int[32];
+		start = System.nanoTime();
+		for (int i = 0; i < addresses.length; i += burst.length) {
+			System.arraycopy(addresses, i, burst, 0, burst.length);
+			sink += table.lookupBulk(burst, hops, burst.length);
+		}
+		long bulk = System.nanoTime() - start;
+
+		Tests.out.printf("%s single %.1f ns/lookup, bulk %.1f ns/lookup (sink=%d)%n", table,
+				(double) single / addresses.length, (double) bulk / addresses.length, sink);
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * Sly Technologies Free License
+ *
+ * Copyright 2024 Sly Technologies Inc.
+ *
+ * Licensed under the Sly Technologies Free License (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.slytechs.com/free-license-text
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.slytechs.jnet.jnetruntime.hash;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+import com.slytechs.test.Tests;
+
+/**
+ * Checks the Bloom and cuckoo membership filters for false negatives, false
+ * positive rates, removal and bulk queries.
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ *
+ */
+class TestMembershipFilters {
+
+	private static final int KEY_COUNT = 100_000;
+	private static final int PROBE_COUNT = 1_000_000;
+
+	/** Hashcode of key i, probes use keys beyond KEY_COUNT. */
+	private static long hashOf(int i) {
+		return HashAlgorithms.xxHash64().calculateHashcode(ByteBuffer.allocate(4).putInt(0, i));
+	}
+
+	private static double falsePositiveRate(MembershipFilter filter) {
+		int falsePositives = 0;
+		for (int i = KEY_COUNT; i < KEY_COUNT + PROBE_COUNT; i++)
+			if (filter.mightContain(hashOf(i)))
+				falsePositives++;
+
+		return (double) falsePositives / PROBE_COUNT;
+	}
+
+	private static void assertNoFalseNegatives(MembershipFilter filter) {
+		for (int i = 0; i < KEY_COUNT; i++)
+			assertTrue(filter.mightContain(hashOf(i)), "false negative " + i);
+	}
+
+	@Test
+	void test_blockedBloomFalsePositiveRate() {
+		var filter = BlockedBloomFilter.forExpectedKeys(KEY_COUNT, 0.01);
+
+		for (int i = 0; i < KEY_COUNT; i++)
+			filter.add(hashOf(i));
+
+		assertNoFalseNegatives(filter);
+
+		double fpr = falsePositiveRate(filter);
+		Tests.out.printf("%s fpr=%.4f%%%n", filter, fpr * 100);
+
+		assertTrue(fpr < 0.015, "fpr " + fpr);
+	}
+
+	@Test
+	void test_countingBloomRemove() {
+		var filter = CountingBloomFilter.forExpectedKeys(KEY_COUNT, 0.01);
+
+		for (int i = 0; i < KEY_COUNT; i++)
+			filter.add(hashOf(i));
+
+		assertNoFalseNegatives(filter);
+		assertTrue(falsePositiveRate(filter) < 0.015);
+
+		for (int i = 0; i < KEY_COUNT; i += 2)
+			assertTrue(filter.remove(hashOf(i)));
+
+		for (int i = 1; i < KEY_COUNT; i += 2)
+			assertTrue(filter.mightContain(hashOf(i)), "false negative after remove " + i);
+
+		int stillPresent = 0;
+		for (int i = 0; i < KEY_COUNT; i += 2)
+			if (filter.mightContain(hashOf(i)))
+				stillPresent++;
+
+		assertTrue(stillPresent < KEY_COUNT / 2 / 50, "removed keys still present " + stillPresent);
+	}
+
+	@Test
+	void test_cuckooFilterHighLoadAndRemove() {
+		var filter = new CuckooFilter(1 << 15); // 128K entries
+
+		int added = 0;
+		while (filter.add(hashOf(added)))
+			added++;
+
+		Tests.out.printf("%s added=%d%n", filter, added);
+
+		assertTrue(filter.loadFactor() > 0.90, "load " + filter.loadFactor());
+
+		for (int i = 0; i < added; i++) // Includes the last key, held as the victim
+			assertTrue(filter.mightContain(hashOf(i)), "false negative " + i);
+
+		for (int i = 0; i < added; i += 2)
+			assertTrue(filter.remove(hashOf(i)), "remove " + i);
+
+		for (int i = 1; i < added; i += 2)
+			assertTrue(filter.mightContain(hashOf(i)), "false negative after remove " + i);
+
+		assertTrue(filter.add(hashOf(-1)), "space reclaimed after remove");
+		assertTrue(filter.count() < added);
+	}
+
+	@Test
+	void test_cuckooFilterFalsePositiveRate() {
+		var filter = CuckooFilter.forExpectedKeys(KEY_COUNT);
+
+		for (int i = 0; i < KEY_COUNT; i++)
+			assertTrue(filter.add(hashOf(i)));
+
+		assertNoFalseNegatives(filter);
+
+		double fpr = falsePositiveRate(filter);
+		Tests.out.printf("%s fpr=%.4f%%%n", filter, fpr * 100);
+
+		assertTrue(fpr < 0.0005, "fpr " + fpr);
+	}
+
+	@Test
+	void test_bulkMatchesSingleQueries() {
+		MembershipFilter[] filters = {
+				BlockedBloomFilter.forExpectedKeys(1000, 0.01),
+				CountingBloomFilter.forExpectedKeys(1000, 0.01),
+				CuckooFilter.forExpectedKeys(1000)
+		};
+
+		ByteBuffer[] keys = new ByteBuffer[64];
+		long[] hashcodes = new long[keys.length];
+		boolean[] results = new boolean[keys.length];
+
+		for (int i = 0; i < keys.length; i++)
+			keys[i] = ByteBuffer.allocate(4).putInt(0, i);
+
+		for (MembershipFilter filter : filters) {
+			for (int i = 0; i < keys.length; i += 2)
+				filter.add(keys[i]);
+
+			int found = filter.mightContainBulk(keys, hashcodes, results, keys.length);
+			int expected = 0;
+
+			for (int i = 0; i < keys.length; i++) {
+				assertEquals(filter.mightContain(keys[i]), results[i], filter + " key " + i);
+				assertEquals(hashOf(i), hashcodes[i]);
+				if (results[i])
+					expected++;
+			}
+
+			assertEquals(expected, found);
+			assertTrue(found >= keys.length / 2);
+		}
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ * Sly Technologies Free License
+ *
+ * Copyright 2024 Sly Technologies Inc.
+ *
+ * Licensed under the Sly Technologies Free License (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.slytechs.com/free-license-text
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.slytechs.jnet.jnetruntime.hash;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.slytechs.test.Tests;
+
+/**
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ *
+ */
+class TestResizableHashTable {
+
+	ByteBuffer key;
+	ResizableHashTable<String> table;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@BeforeEach
+	void setUp() throws Exception {
+		key = ByteBuffer.allocateDirect(16);
+		table = new ResizableHashTable<>(64);
+	}
+
+	@Test
+	void test_growsAndKeepsAllEntries() {
+		int count = 100_000;
+
+		for (int i = 0; i < count; i++) {
+			key.putInt(0, i);
+			assertNotEquals(-1, table.add(key, "entry_" + i), "at key %d".formatted(i));
+		}
+
+		assertTrue(table.capacity() >= count);
+		assertEquals(count, table.getUsedEntriesCount());
+
+		for (int i = 0; i < count; i++) {
+			key.putInt(0, i);
+
+			int index = table.lookup(key);
+			assertNotEquals(-1, index, "at key %d".formatted(i));
+			assertEquals("entry_" + i, table.get(index).data());
+		}
+
+		Tests.out.println(table);
+	}
+
+	/**
+	 * Entries added with caller supplied hashcodes, which the table's own hash
+	 * algorithm does not reproduce, must be migrated with those hashcodes.
+	 */
+	@Test
+	void test_growsWithPrecomputedHashcodes() {
+		List<IntFunction<HashTable<String>>> factories = List.of(
+				CuckooHashTable::new,
+				RobinHoodHashTable::new);
+
+		for (IntFunction<HashTable<String>> factory : factories) {
+			ResizableHashTable<String> table = new ResizableHashTable<>(64, factory);
+			MemorySegment mseg = MemorySegment.ofBuffer(key);
+			int count = 10_000;
+
+			for (int i = 0; i < count; i++) {
+				key.putInt(0, i);
+				assertNotEquals(-1, table.add(mseg, 0, 4, "entry_" + i, hashcodeOf(i)), "at key %d".formatted(i));
+			}
+
+			table.completeMigration();
+			assertTrue(table.capacity() >= count);
+
+			for (int i = 0; i < count; i++) {
+				key.putInt(0, i);
+
+				int index = table.lookup(mseg, 0, 4, hashcodeOf(i));
+				assertNotEquals(-1, index, "%s at key %d".formatted(table, i));
+				assertEquals("entry_" + i, table.get(index).data());
+			}
+
+			for (int i = 0; i < count; i += 2) {
+				key.putInt(0, i);
+				assertTrue(table.remove(mseg, 0, 4, hashcodeOf(i)), "at key %d".formatted(i));
+			}
+
+			assertEquals(count / 2, table.getUsedEntriesCount());
+		}
+	}
+
+	private static long hashcodeOf(int i) {
+		return (i + 1) * 0x9E3779B97F4A7C15L;
+	}
+
+	@Test
+	void test_remapListenerKeepsHandlesValid() {
+		int count = 10_000;
+		int[] handles = new int[count];
+
+		table.setRemapListener((oldIndex, newIndex, data) -> {
+			int i = Integer.parseInt(data.substring("entry_".length()));
+
+			assertEquals(handles[i], oldIndex);
+			handles[i] = newIndex;
+		});
+
+		for (int i = 0; i < count; i++) {
+			key.putInt(0, i);
+			handles[i] = table.add(key, "entry_" + i);
+		}
+
+		for (int i = 0; i < count; i++)
+			assertEquals("entry_" + i, table.get(handles[i]).data(), "at key %d".formatted(i));
+
+		table.completeMigration();
+		assertFalse(table.isMigrating());
+
+		for (int i = 0; i < count; i++) {
+			key.putInt(0, i);
+			assertEquals(handles[i], table.lookup(key), "at key %d".formatted(i));
+		}
+	}
+
+	@Test
+	void test_removeDuringMigration() {
+		int count = 1000;
+		table.setMigrationStep(1);
+
+		for (int i = 0; i < count; i++) {
+			key.putInt(0, i);
+			table.add(key, "entry_" + i);
+		}
+
+		assertTrue(table.isMigrating());
+
+		for (int i = 0; i < count; i += 2) {
+			key.putInt(0, i);
+			assertTrue(table.remove(key), "at key %d".formatted(i));
+		}
+
+		for (int i = 0; i < count; i++) {
+			key.putInt(0, i);
+			assertEquals((i & 1) == 0, table.lookup(key) == -1, "at key %d".formatted(i));
+		}
+
+		assertEquals(count / 2, table.getUsedEntriesCount());
+	}
+
+	@Test
+	void test_maxTableSize() {
+		table.setMaxTableSize(128);
+
+		int added = 0;
+		for (int i = 0; i < 1000; i++) {
+			key.putInt(0, i);
+			if (table.add(key, "entry_" + i) != -1)
+				added++;
+		}
+
+		assertEquals(128, table.capacity());
+		assertTrue(added <= 128 + 64);
+		assertEquals(added, table.getUsedEntriesCount());
+	}
+}
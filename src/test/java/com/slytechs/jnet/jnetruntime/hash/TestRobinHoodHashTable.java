@@ -0,0 +1,255 @@
+/*
+ * Sly Technologies Free License
+ * 
+ * Copyright 2024 Sly Technologies Inc.
+ *
+ * Licensed under the Sly Technologies Free License (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.slytechs.com/free-license-text
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.slytechs.jnet.jnetruntime.hash;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.slytechs.jnet.jnetruntime.hash.HashTable.SnapshotCodec;
+import com.slytechs.test.Tests;
+
+/**
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ *
+ */
+class TestRobinHoodHashTable {
+
+	ByteBuffer key;
+	RobinHoodHashTable<String> table;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@BeforeEach
+	void setUp() throws Exception {
+		key = ByteBuffer.allocateDirect(16);
+		table = new RobinHoodHashTable<>();
+	}
+
+	@Test
+	void test_emptyLookup() {
+		key.putInt(0, 10);
+
+		assertEquals(-1, table.lookup(key));
+	}
+
+	@Test
+	void test_addAndLookup() {
+		var VALUE = "entry1";
+		key.putInt(0, 10);
+
+		int index = table.add(key, VALUE);
+		assertNotEquals(-1, index);
+		assertEquals(index, table.lookup(key));
+		assertEquals(VALUE, table.get(index).data());
+	}
+
+	@Test
+	void test_addExistingReturnsSameIndex() {
+		key.putInt(0, 10);
+
+		int index = table.add(key, "entry1");
+		assertEquals(index, table.add(key, "entry2"));
+	}
+
+	@Test
+	void test_longKeysFailLikeFullTableWhenSlabIsFull() {
+		table = new RobinHoodHashTable<>(1024, 16, 16);
+		table.enableKeyOverflow(4 * 64);
+
+		ByteBuffer longKey = ByteBuffer.allocate(40);
+
+		for (int i = 0; i < 4; i++)
+			assertNotEquals(-1, table.add(longKey.putInt(36, i), "long_" + i));
+
+		assertEquals(-1, table.add(longKey.putInt(36, 4), "slab full"));
+		assertEquals(4, table.getUsedEntriesCount());
+		assertNotEquals(-1, table.add(key.putInt(0, 4), "short keys still fit"));
+
+		for (int i = 0; i < 4; i++)
+			assertEquals("long_" + i, table.get(table.lookup(longKey.putInt(36, i))).data());
+
+		assertTrue(table.remove(longKey.putInt(36, 0)));
+		assertNotEquals(-1, table.add(longKey.putInt(36, 4), "reused"));
+	}
+
+	@Test
+	void test_addAtHighLoadFactor() {
+		int count = (table.size() * 9) / 10;
+
+		for (int i = 0; i < count; i++) {
+			key.putInt(0, i);
+
+			assertNotEquals(-1, table.add(key, "entry_" + i), "at key %d".formatted(i));
+		}
+
+		for (int i = 0; i < count; i++) {
+			key.putInt(0, i);
+
+			int index = table.lookup(key);
+			assertNotEquals(-1, index, "at key %d".formatted(i));
+			assertEquals("entry_" + i, table.get(index).data());
+		}
+
+		Tests.out.println(table);
+	}
+
+	@Test
+	void test_removeKeepsOtherEntriesAndIndexes() {
+		int count = (table.size() * 9) / 10;
+		int[] indexes = new int[count];
+
+		for (int i = 0; i < count; i++) {
+			key.putInt(0, i);
+			indexes[i] = table.add(key, "entry_" + i);
+		}
+
+		for (int i = 0; i < count; i += 2) {
+			key.putInt(0, i);
+			assertTrue(table.remove(key));
+			assertEquals(-1, table.lookup(key));
+		}
+
+		for (int i = 1; i < count; i += 2) {
+			key.putInt(0, i);
+			assertEquals(indexes[i], table.lookup(key), "at key %d".formatted(i));
+		}
+
+		for (int i = 0; i < count; i += 2) {
+			key.putInt(0, i);
+			assertNotEquals(-1, table.add(key, "entry_" + i), "at key %d".formatted(i));
+		}
+	}
+
+	/**
+	 * Index based removal, used by eviction and expiration, must not depend on
+	 * the table's own hash algorithm reproducing a caller supplied hashcode.
+	 */
+	@Test
+	void test_removeByIndexWithPrecomputedHashcodes() {
+		int count = (table.size() * 9) / 10;
+		int[] indexes = new int[count];
+		MemorySegment mseg = MemorySegment.ofBuffer(key);
+
+		for (int i = 0; i < count; i++) {
+			key.putInt(0, i);
+			indexes[i] = table.add(mseg, 0, 4, "entry_" + i, i * 0x9E3779B97F4A7C15L);
+			assertNotEquals(-1, indexes[i], "at key %d".formatted(i));
+		}
+
+		for (int i = 0; i < count; i += 2)
+			table.remove(indexes[i]);
+
+		assertEquals(count / 2, table.getUsedEntriesCount());
+
+		for (int i = 0; i < count; i++) {
+			key.putInt(0, i);
+			int expected = ((i & 1) == 0) ? -1 : indexes[i];
+
+			assertEquals(expected, table.lookup(mseg, 0, 4, i * 0x9E3779B97F4A7C15L), "at key %d".formatted(i));
+		}
+	}
+
+	@Test
+	void test_stats() {
+		int count = (table.size() * 9) / 10;
+
+		for (int i = 0; i < count; i++) {
+			key.putInt(0, i);
+			table.add(key, "entry_" + i);
+		}
+
+		for (int i = 0; i < count; i += 3) {
+			key.putInt(0, i);
+			table.remove(key);
+		}
+
+		HashTableStats stats = table.stats();
+		long used = count - (count + 2) / 3;
+
+		assertEquals(used, stats.usedCount());
+		assertEquals(0, stats.failedInsertCount());
+		assertEquals(used, Arrays.stream(stats.probeLengthHistogram()).sum());
+		assertTrue(stats.maxProbeLength() <= table.maxProbeLength());
+	}
+
+	@Test
+	void test_evictionWhenFull() {
+		table.setEvictionPolicy(EvictionPolicy.SAMPLED_LRU);
+		int count = table.size() * 4;
+
+		for (int i = 0; i < count; i++) {
+			key.putInt(0, i);
+			table.add(key, "entry_" + i);
+
+			key.putInt(0, 0);
+			assertNotEquals(-1, table.lookup(key), "at key %d".formatted(i)); // Keep key 0 hot
+		}
+
+		HashTableStats stats = table.stats();
+
+		assertTrue(stats.evictionCount() > 0);
+		assertEquals(count, stats.usedCount() + stats.evictionCount() + stats.failedInsertCount());
+		assertTrue(stats.failedInsertCount() < count / 100, stats.toString());
+	}
+
+	@Test
+	void test_snapshotAndRestoreKeysOnly() throws Exception {
+		int count = (table.size() * 3) / 4;
+
+		for (int i = 0; i < count; i++) {
+			key.putInt(0, i);
+			table.add(key, "entry_" + i);
+		}
+
+		for (int i = 0; i < count; i += 2) {
+			key.putInt(0, i);
+			table.remove(key);
+		}
+
+		Path file = Files.createTempFile("robinhood", ".snapshot");
+		try {
+			table.snapshot(file, SnapshotCodec.keysOnly());
+
+			var restored = new RobinHoodHashTable<String>();
+			restored.restore(file, SnapshotCodec.keysOnly());
+
+			assertEquals(table.getUsedEntriesCount(), restored.getUsedEntriesCount());
+			for (int i = 0; i < count; i++) {
+				key.putInt(0, i);
+				assertEquals(table.lookup(key), restored.lookup(key));
+			}
+
+			for (int i = count; i < table.size() + count / 2; i++) {
+				key.putInt(0, i);
+				assertEquals(table.add(key, "new"), restored.add(key, "new"));
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Sly Technologies Free License
+ *
+ * Copyright 2024 Sly Technologies Inc.
+ *
+ * Licensed under the Sly Technologies Free License (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.slytechs.com/free-license-text
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.slytechs.jnet.jnetruntime.hash;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ *
+ */
+class TestShardedHashTable {
+
+	private static final int SHARD_COUNT = 4;
+	private static final int SHARD_SIZE = 4096;
+	private static final int KEY_COUNT = 8192;
+
+	private static MemorySegment keyOf(int id) {
+		MemorySegment key = MemorySegment.ofArray(new byte[16]);
+		key.set(ValueLayout.JAVA_INT_UNALIGNED, 0, id);
+
+		return key;
+	}
+
+	@Test
+	void test_routingAndHandles() {
+		var table = new ShardedHashTable<Integer>(SHARD_COUNT, SHARD_SIZE);
+		int[] perShard = new int[SHARD_COUNT];
+
+		for (int i = 0; i < KEY_COUNT; i++) {
+			MemorySegment key = keyOf(i);
+			int shard = table.shardOf(key, 0, 16);
+			int handle = table.add(key, 0, 16, i);
+
+			assertNotEquals(-1, handle);
+			assertEquals(shard, table.shardOfHandle(handle));
+			assertEquals(handle, table.lookup(key, 0, 16));
+			assertEquals(Integer.valueOf(i), table.get(handle).data());
+			assertSame(table.get(handle), table.shard(shard).get(table.indexOfHandle(handle)));
+
+			perShard[shard]++;
+		}
+
+		assertEquals(KEY_COUNT, table.getUsedEntriesCount());
+		for (int count : perShard)
+			assertTrue(count > KEY_COUNT / SHARD_COUNT / 2, "unbalanced shards");
+
+		assertTrue(table.remove(keyOf(0), 0, 16));
+		assertEquals(-1, table.lookup(keyOf(0), 0, 16));
+	}
+
+	@Test
+	void test_workerPerShard() throws InterruptedException {
+		var table = new ShardedHashTable<Integer>(SHARD_COUNT, SHARD_SIZE);
+		List<Thread> workers = new ArrayList<>();
+		int[] added = new int[SHARD_COUNT];
+
+		for (int s = 0; s < SHARD_COUNT; s++) {
+			final int shard = s;
+
+			workers.add(Thread.ofPlatform().start(() -> {
+				for (int i = 0; i < KEY_COUNT; i++) {
+					MemorySegment key = keyOf(i);
+					long hashcode = table.calculateHashcode(key, 0, 16);
+
+					if (table.shardOf(hashcode) == shard && table.add(key, 0, 16, i, hashcode) != -1)
+						added[shard]++;
+				}
+			}));
+		}
+
+		for (Thread worker : workers)
+			worker.join();
+
+		int total = 0;
+		for (int s = 0; s < SHARD_COUNT; s++) {
+			assertEquals(added[s], table.shard(s).getUsedEntriesCount());
+			total += added[s];
+		}
+
+		assertEquals(KEY_COUNT, total);
+		for (int i = 0; i < KEY_COUNT; i++)
+			assertEquals(Integer.valueOf(i), table.get(table.lookup(keyOf(i), 0, 16)).data());
+	}
+}
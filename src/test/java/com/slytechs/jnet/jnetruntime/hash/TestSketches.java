@@ -0,0 +1,248 @@
+/*
+ * Sly Technologies Free License
+ *
+ * Copyright 2024 Sly Technologies Inc.
+ *
+ * Licensed under the Sly Technologies Free License (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.slytechs.com/free-license-text
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.slytechs.jnet.jnetruntime.hash;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.slytechs.test.Tests;
+
+/**
+ * Checks the streaming sketches' estimates against exact counts, on skewed
+ * streams where a few keys dominate, and checks that merged sketches agree
+ * with sketches of the combined streams.
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ *
+ */
+class TestSketches {
+
+	private static final int KEY_COUNT = 10_000;
+	private static final int STREAM_LENGTH = 1_000_000;
+	private static final int TOP = 10;
+
+	/** Zipf-like stream of key ids, key 0 being the most frequent. */
+	private static int[] skewedStream(long seed) {
+		Random random = new Random(seed);
+		int[] stream = new int[STREAM_LENGTH];
+
+		for (int i = 0; i < STREAM_LENGTH; i++)
+			stream[i] = (int) Math.min(KEY_COUNT - 1, Math.floor(Math.pow(KEY_COUNT, random.nextDouble()) - 1));
+
+		return stream;
+	}
+
+	private static long[] exactCounts(int[]... streams) {
+		long[] counts = new long[KEY_COUNT];
+		for (int[] stream : streams)
+			for (int key : stream)
+				counts[key]++;
+
+		return counts;
+	}
+
+	private static ByteBuffer keyOf(int id) {
+		return ByteBuffer.allocate(4).putInt(0, id);
+	}
+
+	private static void assertTopKeys(List<HeavyHitter> top) {
+		assertTrue(top.size() >= TOP);
+
+		for (int id = 0; id < TOP; id++) {
+			ByteBuffer key = keyOf(id);
+			assertTrue(top.stream().anyMatch(h -> key.equals(h.getKey())), "missing top key " + id);
+		}
+
+		for (int i = 1; i < top.size(); i++)
+			assertTrue(top.get(i - 1).getCount() >= top.get(i).getCount());
+	}
+
+	@Test
+	void test_countMinEstimatesAndTopK() {
+		int[] stream = skewedStream(1);
+		long[] exact = exactCounts(stream);
+		var sketch = CountMinSketch.forError(0.001, 0.01, TOP * 2);
+
+		for (int id : stream)
+			sketch.add(keyOf(id));
+
+		assertEquals(STREAM_LENGTH, sketch.totalCount());
+
+		int withinBound = 0;
+		for (int id = 0; id < KEY_COUNT; id++) {
+			long estimate = sketch.estimate(keyOf(id));
+
+			assertTrue(estimate >= exact[id], "underestimate " + id);
+			if (estimate - exact[id] <= sketch.errorBound())
+				withinBound++;
+		}
+
+		Tests.out.printf("%s errorBound=%d withinBound=%d%n", sketch, sketch.errorBound(), withinBound);
+
+		assertTrue(withinBound >= KEY_COUNT * 0.99);
+		assertTopKeys(sketch.topK());
+		assertEquals(sketch.estimate(keyOf(0)), sketch.topK().get(0).getCount());
+	}
+
+	@Test
+	void test_countMinMerge() {
+		int[] stream1 = skewedStream(2);
+		int[] stream2 = skewedStream(3);
+		long[] exact = exactCounts(stream1, stream2);
+
+		var sketch1 = new CountMinSketch(4096, 4, TOP * 2);
+		var sketch2 = new CountMinSketch(4096, 4, TOP * 2);
+
+		for (int id : stream1)
+			sketch1.add(keyOf(id));
+		for (int id : stream2)
+			sketch2.add(keyOf(id));
+
+		sketch1.merge(sketch2);
+
+		assertEquals(2L * STREAM_LENGTH, sketch1.totalCount());
+
+		for (int id = 0; id < KEY_COUNT; id++)
+			assertTrue(sketch1.estimate(keyOf(id)) >= exact[id], "underestimate " + id);
+
+		assertTopKeys(sketch1.topK());
+		assertThrows(IllegalArgumentException.class, () -> sketch1.merge(new CountMinSketch(1024, 4)));
+	}
+
+	@Test
+	void test_hyperLogLogAccuracy() {
+		for (int cardinality : new int[] { 10, 1_000, 100_000, 2_000_000 }) {
+			var hll = new HyperLogLog();
+
+			for (int i = 0; i < cardinality; i++) {
+				hll.add(keyOf(i));
+				hll.add(keyOf(i)); // Duplicates do not count
+			}
+
+			double error = Math.abs(hll.estimate() - cardinality) / (double) cardinality;
+			Tests.out.printf("%s cardinality=%d error=%.2f%%%n", hll, cardinality, error * 100);
+
+			assertTrue(error < 4 * hll.relativeError(), hll + " cardinality " + cardinality);
+		}
+	}
+
+	@Test
+	void test_hyperLogLogMergeEqualsUnion() {
+		var hll1 = new HyperLogLog(12);
+		var hll2 = new HyperLogLog(12);
+		var union = new HyperLogLog(12);
+
+		for (int i = 0; i < 60_000; i++) {
+			(i < 40_000 ? hll1 : hll2).add(keyOf(i));
+			if (i >= 20_000 && i < 40_000)
+				hll2.add(keyOf(i)); // Overlap
+			union.add(keyOf(i));
+		}
+
+		assertEquals(union.estimate(), hll1.merge(hll2).estimate());
+		assertThrows(IllegalArgumentException.class, () -> hll1.merge(new HyperLogLog(14)));
+	}
+
+	/**
+	 * Per core sketches each configure their own, equal, hash algorithm instance.
+	 */
+	@Test
+	void test_mergeWithEqualHashAlgorithms() {
+		var cms1 = new CountMinSketch(1024, 4).setHashAlgorithm(HashAlgorithms.murmur3(42));
+		var cms2 = new CountMinSketch(1024, 4).setHashAlgorithm(HashAlgorithms.murmur3(42));
+		var hll1 = new HyperLogLog(12).setHashAlgorithm(HashAlgorithms.xxHash64(7));
+		var hll2 = new HyperLogLog(12).setHashAlgorithm(HashAlgorithms.xxHash64(7));
+		var ss1 = new SpaceSaving(10).setHashAlgorithm(new ToeplitzHash());
+		var ss2 = new SpaceSaving(10).setHashAlgorithm(new ToeplitzHash());
+
+		cms2.add(keyOf(1));
+		hll2.add(keyOf(1));
+		ss2.add(keyOf(1));
+
+		assertEquals(1, cms1.merge(cms2).estimate(keyOf(1)));
+		assertEquals(1, Math.round(hll1.merge(hll2).estimate()));
+		assertEquals(1, ss1.merge(ss2).totalCount());
+
+		assertThrows(IllegalArgumentException.class,
+				() -> cms1.merge(new CountMinSketch(1024, 4).setHashAlgorithm(HashAlgorithms.murmur3(43))));
+		assertThrows(IllegalArgumentException.class,
+				() -> hll1.merge(new HyperLogLog(12).setHashAlgorithm(HashAlgorithms.wyhash(7))));
+	}
+
+	@Test
+	void test_spaceSavingGuarantees() {
+		int[] stream = skewedStream(4);
+		long[] exact = exactCounts(stream);
+		var summary = new SpaceSaving(100);
+
+		for (int id : stream)
+			summary.add(keyOf(id));
+
+		List<HeavyHitter> top = summary.topK();
+
+		assertEquals(100, top.size());
+		assertTopKeys(top);
+
+		for (HeavyHitter hitter : top) {
+			int id = hitter.getKey().getInt(0);
+
+			assertTrue(hitter.getCount() >= exact[id], "underestimate " + id);
+			assertTrue(hitter.getCount() - hitter.getError() <= exact[id], "lower bound " + id);
+		}
+
+		for (int id = 0; id < KEY_COUNT; id++) {
+			ByteBuffer key = keyOf(id);
+
+			if (exact[id] > STREAM_LENGTH / summary.capacity()) // Guaranteed to be monitored
+				assertTrue(top.stream().anyMatch(h -> key.equals(h.getKey())), "not monitored " + id);
+		}
+	}
+
+	@Test
+	void test_spaceSavingMerge() {
+		int[] stream1 = skewedStream(5);
+		int[] stream2 = skewedStream(6);
+		long[] exact = exactCounts(stream1, stream2);
+
+		var summary1 = new SpaceSaving(100);
+		var summary2 = new SpaceSaving(100);
+
+		for (int id : stream1)
+			summary1.add(keyOf(id));
+		for (int id : stream2)
+			summary2.add(keyOf(id));
+
+		summary1.merge(summary2);
+
+		assertEquals(2L * STREAM_LENGTH, summary1.totalCount());
+		assertTopKeys(summary1.topK());
+
+		for (HeavyHitter hitter : summary1.topK()) {
+			int id = hitter.getKey().getInt(0);
+
+			assertTrue(hitter.getCount() >= exact[id], "underestimate " + id);
+			assertTrue(hitter.getCount() - hitter.getError() <= exact[id], "lower bound " + id);
+		}
+	}
+}
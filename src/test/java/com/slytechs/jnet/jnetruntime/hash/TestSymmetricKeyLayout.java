@@ -0,0 +1,105 @@
+/*
+ * Sly Technologies Free License
+ *
+ * Copyright 2024 Sly Technologies Inc.
+ *
+ * Licensed under the Sly Technologies Free License (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.slytechs.com/free-license-text
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.slytechs.jnet.jnetruntime.hash;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ *
+ */
+class TestSymmetricKeyLayout {
+
+	private static ByteBuffer ipv4(int src, int dst, int sport, int dport, int proto) {
+		return ByteBuffer.allocate(13)
+				.putInt(src)
+				.putInt(dst)
+				.putShort((short) sport)
+				.putShort((short) dport)
+				.put((byte) proto)
+				.flip();
+	}
+
+	@Test
+	void test_hashIsDirectionIndependent() {
+		var ipv4 = SymmetricKeyLayout.ipv4Tuple();
+		Set<Long> hashes = new HashSet<>();
+
+		for (int i = 0; i < 10_000; i++) {
+			long forward = ipv4.calculateHashcode(ipv4(0x0A000000 + i, 0xC0A80101, 40000 + i, 443, 6));
+			long reverse = ipv4.calculateHashcode(ipv4(0xC0A80101, 0x0A000000 + i, 443, 40000 + i, 6));
+
+			assertEquals(forward, reverse);
+			hashes.add(forward);
+		}
+
+		assertEquals(10_000, hashes.size());
+
+		var ipv6 = SymmetricKeyLayout.ipv6Tuple();
+		byte[] key = new byte[37];
+		byte[] swapped = new byte[37];
+		for (int i = 0; i < 16; i++) {
+			key[i] = swapped[16 + i] = (byte) i;
+			key[16 + i] = swapped[i] = (byte) (0x80 | i);
+		}
+		key[32] = swapped[34] = 1;
+		key[34] = swapped[32] = 2;
+		key[36] = swapped[36] = 17;
+
+		assertEquals(ipv6.calculateHashcode(key, 0, 37), ipv6.calculateHashcode(swapped, 0, 37));
+		assertEquals(SymmetricKeyLayout.REVERSE,
+				ipv6.match(MemorySegment.ofArray(key), 0, 37,
+						MemorySegment.ofArray(swapped), 0, 37));
+	}
+
+	@Test
+	void test_tableMatchesBothDirections() {
+		var table = new CuckooHashTable<String>(1024, 4)
+				.setSymmetricKeyLayout(SymmetricKeyLayout.ipv4Tuple());
+
+		ByteBuffer forward = ipv4(0x0A000001, 0xC0A80101, 40000, 443, 6);
+		ByteBuffer reverse = ipv4(0xC0A80101, 0x0A000001, 443, 40000, 6);
+
+		int index = table.add(forward, "conversation");
+		assertEquals(index, table.lookup(reverse));
+		assertEquals(index, table.add(reverse, "other"));
+		assertEquals(1, table.getUsedEntriesCount());
+
+		assertFalse(table.isReverseMatch(index, forward));
+		assertTrue(table.isReverseMatch(index, reverse));
+
+		assertEquals(-1, table.lookup(ipv4(0xC0A80101, 0x0A000001, 443, 40000, 17)));
+		assertEquals(-1, table.lookup(ipv4(0xC0A80101, 0x0A000001, 40000, 443, 6)));
+
+		assertTrue(table.remove(reverse));
+		assertEquals(-1, table.lookup(forward));
+	}
+
+	@Test
+	void test_overlappingFieldsRejected() {
+		assertThrows(IllegalArgumentException.class, () -> new SymmetricKeyLayout(0, 2, 4, 8, 10, 2));
+	}
+}
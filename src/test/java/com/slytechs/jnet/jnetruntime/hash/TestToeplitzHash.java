@@ -0,0 +1,137 @@
+/*
+ * Sly Technologies Free License
+ *
+ * Copyright 2024 Sly Technologies Inc.
+ *
+ * Licensed under the Sly Technologies Free License (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.slytechs.com/free-license-text
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.slytechs.jnet.jnetruntime.hash;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+import com.slytechs.jnet.jnetruntime.internal.Benchmark;
+import com.slytechs.test.Tests;
+
+/**
+ * Verifies the Toeplitz hash against the Microsoft RSS verification suite.
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ *
+ */
+class TestToeplitzHash {
+
+	private static int ipv4(String address) throws UnknownHostException {
+		return ByteBuffer.wrap(InetAddress.getByName(address).getAddress()).getInt();
+	}
+
+	private static byte[] ipv6(String address) throws UnknownHostException {
+		return InetAddress.getByName(address).getAddress();
+	}
+
+	private static void assertIpv4(ToeplitzHash rss, String src, int srcPort, String dst, int dstPort,
+			long expectedIp, long expectedTcp) throws UnknownHostException {
+		assertEquals(expectedIp, rss.hashIpv4(ipv4(src), ipv4(dst)), src);
+		assertEquals(expectedTcp, rss.hashIpv4(ipv4(src), ipv4(dst), srcPort, dstPort), src);
+
+		byte[] tuple = ByteBuffer.allocate(ToeplitzHash.IPV4_TUPLE_SIZE)
+				.putInt(ipv4(src))
+				.putInt(ipv4(dst))
+				.putShort((short) srcPort)
+				.putShort((short) dstPort)
+				.array();
+
+		assertEquals(expectedTcp, rss.calculateHashcode(tuple, 0, tuple.length), src);
+		assertEquals(expectedIp, rss.calculateHashcode(ByteBuffer.wrap(tuple, 0, 8)), src);
+	}
+
+	@Test
+	void test_ipv4VerificationSuite() throws UnknownHostException {
+		ToeplitzHash rss = HashAlgorithms.toeplitz();
+
+		assertIpv4(rss, "66.9.149.187", 2794, "161.142.100.80", 1766, 0x323e8fc2L, 0x51ccc178L);
+		assertIpv4(rss, "199.92.111.2", 14230, "65.69.140.83", 4739, 0xd718262aL, 0xc626b0eaL);
+		assertIpv4(rss, "24.19.198.95", 12898, "12.22.207.184", 38024, 0xd2d0a5deL, 0x5c2b394aL);
+		assertIpv4(rss, "38.27.205.30", 48228, "209.142.163.6", 2217, 0x82989176L, 0xafc7327fL);
+		assertIpv4(rss, "153.39.163.191", 44251, "202.188.127.2", 1303, 0x5d1809c5L, 0x10e828a2L);
+	}
+
+	@Test
+	void test_ipv6VerificationSuite() throws UnknownHostException {
+		ToeplitzHash rss = HashAlgorithms.toeplitz();
+
+		byte[] src = ipv6("3ffe:2501:200:1fff::7");
+		byte[] dst = ipv6("3ffe:2501:200:3::1");
+
+		assertEquals(0x2cc18cd5L, rss.hashIpv6(src, dst));
+		assertEquals(0x40207d3dL, rss.hashIpv6(src, dst, 2794, 1766));
+
+		byte[] tuple = ByteBuffer.allocate(ToeplitzHash.IPV6_TUPLE_SIZE)
+				.put(src)
+				.put(dst)
+				.putShort((short) 2794)
+				.putShort((short) 1766)
+				.array();
+
+		assertEquals(0x40207d3dL, rss.calculateHashcode(tuple, 0, tuple.length));
+	}
+
+	@Test
+	void test_symmetricKeyHashesBothDirectionsAlike() throws UnknownHostException {
+		ToeplitzHash rss = HashAlgorithms.toeplitzSymmetric();
+
+		int a = ipv4("66.9.149.187");
+		int b = ipv4("161.142.100.80");
+
+		assertEquals(rss.hashIpv4(a, b, 2794, 1766), rss.hashIpv4(b, a, 1766, 2794));
+		assertEquals(rss.hashIpv6(ipv6("3ffe:2501:200:1fff::7"), ipv6("3ffe:2501:200:3::1"), 2794, 1766),
+				rss.hashIpv6(ipv6("3ffe:2501:200:3::1"), ipv6("3ffe:2501:200:1fff::7"), 1766, 2794));
+	}
+
+	@Test
+	void test_keySizeAndInputLength() {
+		assertThrows(IllegalArgumentException.class, () -> new ToeplitzHash(new byte[32]));
+		assertThrows(IllegalArgumentException.class,
+				() -> HashAlgorithms.toeplitz().calculateHashcode(new byte[37], 0, 37));
+
+		ToeplitzHash rss = new ToeplitzHash(ToeplitzHash.symmetricKey(ToeplitzHash.KEY_SIZE_52));
+		assertEquals(48, rss.maxInputLength());
+		rss.calculateHashcode(new byte[48], 0, 48);
+	}
+
+	@Test
+	void benchmark_ipv4Throughput() {
+		ToeplitzHash rss = HashAlgorithms.toeplitz();
+		int count = 1 << 24;
+		long sink = 0;
+
+		for (int i = 0; i < count; i++) // Warmup
+			sink += rss.hashIpv4(0x0A000000 | i, 0xC0A80101, i, 443);
+
+		Benchmark bench = Benchmark.setup()
+				.reportRate(count, (tsecs, rate, total) -> Tests.out
+						.printf("toeplitz ipv4 tuple %6.1f Mhash/s%n", rate / 1_000_000));
+
+		for (int i = 0; i < count; i++)
+			sink += rss.hashIpv4(0x0A000000 | i, 0xC0A80101, i, 443);
+
+		bench.complete();
+		assertNotEquals(0L, sink);
+	}
+}
@@ -0,0 +1,263 @@
+/*
+ * Sly Technologies Free License
+ *
+ * Copyright 2024 Sly Technologies Inc.
+ *
+ * Licensed under the Sly Technologies Free License (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.slytechs.com/free-license-text
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.slytechs.jnet.jnetruntime.internal.concurrent;
+
+import static java.lang.foreign.ValueLayout.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import com.slytechs.jnet.jnetruntime.internal.concurrent.Ring.SyncMode;
+import com.slytechs.test.Tests;
+
+/**
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ *
+ */
+class TestRings {
+
+	private static final int PER_PRODUCER = 50_000;
+
+	@Test
+	void test_bulkIsAllOrNothingAndBurstIsBestEffort() {
+		IntRing ring = new IntRing(8, SyncMode.SINGLE, SyncMode.SINGLE);
+		int[] dst = new int[16];
+
+		assertTrue(ring.bulkEnqueue(1, 2, 3, 4, 5));
+		assertFalse(ring.bulkEnqueue(6, 7, 8, 9));
+		assertEquals(5, ring.size());
+
+		assertEquals(3, ring.burstEnqueue(6, 7, 8, 9));
+		assertTrue(ring.isFull());
+		assertFalse(ring.enqueue(10));
+
+		assertFalse(ring.bulkDequeue(9, dst));
+		assertEquals(8, ring.size());
+
+		/* Wrap around the end of the table */
+		assertEquals(6, ring.burstDequeue(6, dst));
+		assertArrayEquals(new int[] { 1, 2, 3, 4, 5, 6 }, Arrays.copyOf(dst, 6));
+		assertTrue(ring.bulkEnqueue(10, 11, 12, 13));
+		assertEquals(6, ring.burstDequeue(8, dst));
+		assertArrayEquals(new int[] { 7, 8, 10, 11, 12, 13 }, Arrays.copyOf(dst, 6));
+
+		assertTrue(ring.isEmpty());
+		assertFalse(ring.dequeue(dst));
+		assertEquals(0, ring.burstDequeue(4, dst));
+	}
+
+	@Test
+	void test_objRingClearsDequeuedSlots() {
+		ObjRing<String> ring = new ObjRing<>(4, String[]::new);
+
+		assertTrue(ring.bulkEnqueue("a", "b", "c"));
+		assertEquals("a", ring.dequeue());
+
+		String[] dst = ring.newArray(4);
+		assertEquals(2, ring.burstDequeue(4, dst));
+		assertEquals("b", dst[0]);
+		assertEquals("c", dst[1]);
+		assertNull(ring.dequeue());
+
+		assertThrows(IllegalArgumentException.class, () -> new ObjRing<>(6, String[]::new));
+	}
+
+	@Test
+	void test_spscPreservesOrder() throws InterruptedException {
+		IntRing ring = new IntRing(256, SyncMode.SINGLE, SyncMode.SINGLE);
+		int total = 250_000;
+		AtomicLong errors = new AtomicLong();
+
+		Thread consumer = new Thread(() -> {
+			int[] dst = new int[32];
+			int expected = 0;
+
+			while (expected < total) {
+				int n = ring.burstDequeue(dst.length, dst);
+				for (int i = 0; i < n; i++)
+					if (dst[i] != expected++)
+						errors.incrementAndGet();
+
+				if (n == 0)
+					Thread.yield();
+			}
+		});
+		consumer.start();
+
+		int[] src = new int[16];
+		for (int next = 0; next < total;) {
+			int count = Math.min(src.length, total - next);
+			for (int i = 0; i < count; i++)
+				src[i] = next + i;
+
+			next += ring.burstEnqueue(src, 0, count);
+		}
+
+		consumer.join();
+		assertEquals(0, errors.get());
+		assertTrue(ring.isEmpty());
+	}
+
+	/**
+	 * Every producer enqueues a disjoint range of values in bulk, and every
+	 * consumer dequeues in bursts. Each value must be dequeued exactly once.
+	 */
+	@Test
+	void test_mpmcDeliversEveryValueOnce() throws InterruptedException {
+		int producers = 4;
+		int consumers = 4;
+		int total = producers * PER_PRODUCER;
+		IntRing ring = new IntRing(1024);
+		byte[] seen = new byte[total];
+		AtomicLong dequeued = new AtomicLong();
+		List<Thread> threads = new ArrayList<>();
+
+		for (int p = 0; p < producers; p++) {
+			int base = p * PER_PRODUCER;
+
+			threads.add(new Thread(() -> {
+				int[] src = new int[8];
+
+				for (int next = 0; next < PER_PRODUCER; next += src.length) {
+					for (int i = 0; i < src.length; i++)
+						src[i] = base + next + i;
+
+					while (!ring.bulkEnqueue(src))
+						Thread.yield();
+				}
+			}));
+		}
+
+		for (int c = 0; c < consumers; c++) {
+			threads.add(new Thread(() -> {
+				int[] dst = new int[16];
+
+				while (dequeued.get() < total) {
+					int n = ring.burstDequeue(dst.length, dst);
+					for (int i = 0; i < n; i++)
+						seen[dst[i]]++;
+
+					if (n == 0)
+						Thread.yield();
+					else
+						dequeued.addAndGet(n);
+				}
+			}));
+		}
+
+		long start = System.nanoTime();
+		threads.forEach(Thread::start);
+		for (Thread t : threads)
+			t.join();
+
+		Tests.out.printf("mpmc %d values in %.1f ms%n", total, (System.nanoTime() - start) / 1e6);
+
+		assertEquals(total, dequeued.get());
+		for (int i = 0; i < total; i++)
+			assertEquals(1, seen[i], "value " + i);
+	}
+
+	@Test
+	void test_longRingKeepsFull64Bits() {
+		LongRing ring = new LongRing(4, SyncMode.SINGLE, SyncMode.MULTI);
+		long[] dst = new long[4];
+
+		assertTrue(ring.bulkEnqueue(Long.MIN_VALUE, -1L, 0x1234_5678_9ABC_DEF0L));
+		assertEquals(1, ring.burstEnqueue(7L, 8L));
+		assertTrue(ring.bulkDequeue(4, dst));
+		assertArrayEquals(new long[] { Long.MIN_VALUE, -1L, 0x1234_5678_9ABC_DEF0L, 7L }, dst);
+	}
+
+	/**
+	 * Passes address, length and timestamp descriptors written and read in place
+	 * through claimed records, from a producer to a consumer thread.
+	 */
+	@Test
+	void test_segmentRingClaimCommit() throws InterruptedException {
+		SegmentRing ring = new SegmentRing(64, 20, SyncMode.SINGLE, SyncMode.SINGLE, Arena.ofAuto());
+		int total = 100_000;
+		AtomicLong errors = new AtomicLong();
+
+		assertEquals(24 * 64, ring.segment().byteSize());
+
+		Thread consumer = new Thread(() -> {
+			MemorySegment records = ring.segment();
+
+			for (int expected = 0; expected < total;) {
+				long claim = ring.claimDequeue(16, false);
+				int n = SegmentRing.claimCount(claim);
+
+				for (int i = 0; i < n; i++, expected++) {
+					long offset = ring.recordOffset(claim, i);
+
+					if (records.get(JAVA_LONG_UNALIGNED, offset) != 0x1000L * expected
+							|| records.get(JAVA_INT_UNALIGNED, offset + 8) != expected % 1500
+							|| records.get(JAVA_LONG_UNALIGNED, offset + 12) != -expected)
+						errors.incrementAndGet();
+				}
+
+				ring.commitDequeue(claim);
+				if (n == 0)
+					Thread.yield();
+			}
+		});
+		consumer.start();
+
+		MemorySegment records = ring.segment();
+		for (int next = 0; next < total;) {
+			long claim = ring.claimEnqueue(Math.min(8, total - next), false);
+			int n = SegmentRing.claimCount(claim);
+
+			for (int i = 0; i < n; i++, next++) {
+				long offset = ring.recordOffset(claim, i);
+
+				records.set(JAVA_LONG_UNALIGNED, offset, 0x1000L * next);
+				records.set(JAVA_INT_UNALIGNED, offset + 8, next % 1500);
+				records.set(JAVA_LONG_UNALIGNED, offset + 12, -next);
+			}
+
+			ring.commitEnqueue(claim);
+			if (n == 0)
+				Thread.yield();
+		}
+
+		consumer.join();
+		assertEquals(0, errors.get());
+
+		MemorySegment record = Arena.ofAuto().allocate(20);
+		record.set(JAVA_INT, 0, 42);
+		assertTrue(ring.enqueue(record));
+		record.fill((byte) 0);
+		assertTrue(ring.dequeue(record));
+		assertEquals(42, record.get(JAVA_INT, 0));
+		assertFalse(ring.dequeue(record));
+
+		assertThrows(IllegalArgumentException.class, () -> ring.claimEnqueue(-1, true));
+		assertThrows(IllegalArgumentException.class, () -> ring.claimDequeue(-1, false));
+		assertTrue(ring.enqueue(record));
+		assertTrue(ring.dequeue(record));
+	}
+}
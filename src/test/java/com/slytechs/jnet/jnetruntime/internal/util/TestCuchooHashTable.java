@@ -19,14 +19,31 @@ package com.slytechs.jnet.jnetruntime.internal.util;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import com.slytechs.jnet.jnetruntime.hash.CuckooHashTable;
+import com.slytechs.jnet.jnetruntime.hash.EvictionPolicy;
+import com.slytechs.jnet.jnetruntime.hash.HashAlgorithms;
 import com.slytechs.jnet.jnetruntime.hash.HashTable;
+import com.slytechs.jnet.jnetruntime.hash.HashTable.SnapshotCodec;
+import com.slytechs.jnet.jnetruntime.hash.HashTableStats;
 import com.slytechs.test.Tests;
 
 /**
@@ -118,4 +135,433 @@ class TestCuchooHashTable {
 		Tests.out.println(table);
 	}
 
+	@Test
+	void test_addAtHighLoadFactor() {
+		int count = (table.size() * 95) / 100;
+
+		for (int i = 0; i < count; i++) {
+			key.putInt(0, i);
+
+			assertNotEquals(-1, table.add(key, "entry_" + i), "at key %d".formatted(i));
+		}
+
+		for (int i = 0; i < count; i++) {
+			key.putInt(0, i);
+
+			int index = table.lookup(key);
+			assertNotEquals(-1, index, "at key %d".formatted(i));
+			assertEquals("entry_" + i, table.get(index).data());
+		}
+		Tests.out.println(table);
+	}
+
+	@Test
+	void test_addAndRemove() {
+		key.putInt(0, 10);
+
+		table.add(key, "entry1");
+
+		assertTrue(table.remove(key));
+		assertEquals(-1, table.lookup(key));
+		assertFalse(table.remove(key));
+	}
+
+	@Test
+	void test_addBulkAndLookupBulk() {
+		final int BURST = 32;
+		ByteBuffer[] keys = new ByteBuffer[BURST];
+		String[] values = new String[BURST];
+		int[] indexes = new int[BURST];
+
+		for (int i = 0; i < BURST; i++) {
+			keys[i] = ByteBuffer.allocate(HashTable.MAX_KEY_SIZE_BYTES);
+			keys[i].putInt(0, i);
+			values[i] = "entry_" + i;
+		}
+
+		assertEquals(BURST, table.addBulk(keys, values, null, indexes, BURST));
+		assertEquals(BURST, table.lookupBulk(keys, null, indexes, BURST));
+
+		for (int i = 0; i < BURST; i++) {
+			assertEquals(table.lookup(keys[i]), indexes[i]);
+			assertEquals(values[i], table.get(indexes[i]).data());
+		}
+	}
+
+	@Test
+	void test_addBulkWithEvictionReportsEvictedKeys() {
+		HashTable<String> direct = new HashTable<>(2);
+		direct.setEvictionPolicy(EvictionPolicy.CLOCK);
+
+		ByteBuffer k1 = ByteBuffer.allocate(4).putInt(0, 1);
+		ByteBuffer k2 = ByteBuffer.allocate(4).putInt(0, 2);
+		ByteBuffer[] keys = { k1, k2 };
+		long[] hashcodes = { 0, 2 }; // Both select entry 0
+		int[] indexes = new int[2];
+
+		assertEquals(0, direct.add(k1, "K1", hashcodes[0]));
+		assertEquals(1, direct.addBulk(keys, new String[] { "K1", "K2" }, hashcodes, indexes, 2));
+
+		assertEquals(-1, indexes[0]);
+		assertEquals(0, indexes[1]);
+		assertEquals("K2", direct.get(indexes[1]).data());
+		assertEquals(-1, direct.lookup(k1, hashcodes[0]));
+	}
+
+	@Test
+	void test_segmentAndArrayKeys() {
+		final int KEY_OFFSET = 14;
+		final int KEY_LENGTH = 13;
+		byte[] packet = new byte[64];
+		for (int i = 0; i < packet.length; i++)
+			packet[i] = (byte) i;
+
+		MemorySegment segment = Arena.ofAuto().allocate(packet.length)
+				.copyFrom(MemorySegment.ofArray(packet));
+		ByteBuffer buffer = ByteBuffer.wrap(packet, KEY_OFFSET, KEY_LENGTH);
+
+		int index = table.add(segment, KEY_OFFSET, KEY_LENGTH, "flow");
+		assertNotEquals(-1, index);
+
+		assertEquals(index, table.lookup(packet, KEY_OFFSET, KEY_LENGTH));
+		assertEquals(index, table.lookup(buffer));
+		assertEquals(index, table.add(packet, KEY_OFFSET, KEY_LENGTH, "other"));
+		assertEquals(-1, table.lookup(packet, KEY_OFFSET, KEY_LENGTH - 1));
+
+		assertEquals(KEY_OFFSET, buffer.position());
+		assertEquals(KEY_OFFSET + KEY_LENGTH, buffer.limit());
+
+		assertTrue(table.remove(segment, KEY_OFFSET, KEY_LENGTH));
+		assertEquals(-1, table.lookup(buffer));
+	}
+
+	@Test
+	void test_stats() {
+		int count = table.size();
+		int added = 0;
+
+		for (int i = 0; i < count; i++) {
+			key.putInt(0, i);
+			if (table.add(key, "entry_" + i) != -1)
+				added++;
+		}
+
+		assertEquals(count - added, table.stats().failedInsertCount());
+
+		for (int i = 0; i < count; i += 2) {
+			key.putInt(0, i);
+			if (table.remove(key))
+				added--;
+		}
+
+		HashTableStats stats = table.stats();
+		Tests.out.println(stats);
+
+		assertEquals(added, stats.usedCount());
+		assertEquals(added, table.getUsedEntriesCount());
+		assertEquals(table.size() - added, table.getUnusedEntriesCount());
+		assertTrue(stats.kickCount() > 0);
+
+		long[] probes = stats.probeLengthHistogram();
+		assertEquals(added, probes[0] + probes[1]);
+
+		long[] fill = stats.bucketFillHistogram();
+		long filled = 0;
+		for (int i = 0; i < fill.length; i++)
+			filled += fill[i] * i;
+		assertEquals(added, filled);
+	}
+
+	@Test
+	void test_evictionKeepsActiveEntries() {
+		final int HOT_COUNT = 100;
+		final int SCAN_COUNT = 10_000;
+
+		for (EvictionPolicy policy : List.of(EvictionPolicy.CLOCK, EvictionPolicy.SAMPLED_LRU)) {
+			List<String> evicted = new ArrayList<>();
+			table = new CuckooHashTable<String>(1024, 4)
+					.setEvictionPolicy(policy)
+					.setEvictionListener(e -> evicted.add(e.data()));
+
+			for (int i = 0; i < HOT_COUNT; i++) {
+				key.putInt(0, i);
+				table.add(key, "hot_" + i);
+			}
+
+			for (int i = HOT_COUNT; i < HOT_COUNT + SCAN_COUNT; i++) {
+				key.putInt(0, i);
+				assertNotEquals(-1, table.add(key, "scan_" + i), policy + " at key %d".formatted(i));
+
+				for (int h = 0; h < HOT_COUNT; h++) {
+					key.putInt(0, h);
+					assertNotEquals(-1, table.lookup(key), policy + " hot key %d".formatted(h));
+				}
+			}
+
+			HashTableStats stats = table.stats();
+			Tests.out.println(policy + " " + stats);
+
+			assertEquals(0, stats.failedInsertCount());
+			assertEquals(evicted.size(), stats.evictionCount());
+			assertEquals(HOT_COUNT + SCAN_COUNT - evicted.size(), stats.usedCount());
+			assertTrue(evicted.stream().allMatch(s -> s.startsWith("scan_")), policy.toString());
+		}
+	}
+
+
+	/** Encodes string data holding decimal numbers as a long. */
+	private static final SnapshotCodec<String> NUMBER_CODEC = new SnapshotCodec<>() {
+
+		@Override
+		public int dataSize() {
+			return Long.BYTES;
+		}
+
+		@Override
+		public void encode(String data, MemorySegment dst, long offset) {
+			dst.set(ValueLayout.JAVA_LONG_UNALIGNED, offset, Long.parseLong(data));
+		}
+
+		@Override
+		public String decode(MemorySegment src, long offset) {
+			return Long.toString(src.get(ValueLayout.JAVA_LONG_UNALIGNED, offset));
+		}
+	};
+
+	@Test
+	void test_snapshotAndRestore() throws Exception {
+		final int count = 3000;
+		var original = new CuckooHashTable<String>(4096, 4);
+		int[] indexes = new int[count];
+
+		for (int i = 0; i < count; i++) {
+			key.clear().putInt(0, i).putInt(4, ~i).limit(8);
+			indexes[i] = original.add(key, Integer.toString(i));
+		}
+		for (int i = 0; i < count; i += 3) {
+			key.clear().putInt(0, i).putInt(4, ~i).limit(8);
+			original.remove(key);
+		}
+
+		Path file = Files.createTempFile("cuckoo", ".snapshot");
+		try {
+			original.snapshot(file, NUMBER_CODEC);
+
+			var restored = new CuckooHashTable<String>(4096, 4);
+			long start = System.nanoTime();
+			restored.restore(file, NUMBER_CODEC);
+			Tests.out.printf("restored %d entries in %.2f ms%n", restored.getUsedEntriesCount(),
+					(System.nanoTime() - start) / 1e6);
+
+			assertEquals(original.getUsedEntriesCount(), restored.getUsedEntriesCount());
+			assertTrue(Arrays.equals(original.stats().probeLengthHistogram(),
+					restored.stats().probeLengthHistogram()));
+			assertTrue(Arrays.equals(original.stats().bucketFillHistogram(),
+					restored.stats().bucketFillHistogram()));
+
+			for (int i = 0; i < count; i++) {
+				key.clear().putInt(0, i).putInt(4, ~i).limit(8);
+				int index = restored.lookup(key);
+
+				if (i % 3 == 0) {
+					assertEquals(-1, index);
+				} else {
+					assertEquals(indexes[i], index);
+					assertEquals(Integer.toString(i), restored.get(index).data());
+				}
+			}
+
+			key.clear().putInt(0, count).limit(4);
+			assertNotEquals(-1, restored.add(key, "1"));
+
+			var mismatched = new CuckooHashTable<String>(2048, 4);
+			assertThrows(IOException.class, () -> mismatched.restore(file, NUMBER_CODEC));
+		} finally {
+			Files.delete(file);
+		}
+	}
+	/**
+	 * One writer churns entries at high load, forcing cuckoo displacements of the
+	 * stable entries, while readers verify that stable keys are always found with
+	 * their own data and that absent keys never match a torn key.
+	 */
+	@Test
+	void test_concurrentReadersNeverSeeTornKeys() throws InterruptedException {
+		final int STABLE_COUNT = 3000;
+		final int CHURN_WINDOW = 600;
+		final int KEY_SIZE = 32;
+		final int READER_COUNT = 3;
+		final long DURATION_MILLIS = 1000;
+
+		var cuckoo = new CuckooHashTable<String>(4096, 4).enableConcurrentReaders(true);
+		ByteBuffer writerKey = ByteBuffer.allocateDirect(KEY_SIZE);
+
+		for (int i = 0; i < STABLE_COUNT; i++)
+			assertNotEquals(-1, cuckoo.add(fillKey(writerKey, i), "stable_" + i));
+
+		AtomicBoolean done = new AtomicBoolean();
+		AtomicLong lookups = new AtomicLong();
+		List<String> failures = Collections.synchronizedList(new ArrayList<>());
+		List<Thread> readers = new ArrayList<>();
+
+		for (int r = 0; r < READER_COUNT; r++) {
+			readers.add(Thread.ofPlatform().start(() -> {
+				ByteBuffer readerKey = ByteBuffer.allocateDirect(KEY_SIZE);
+				long count = 0;
+
+				for (int i = 0; !done.get() && failures.isEmpty(); i++, count += 2) {
+					int id = (int) ((i * 7919L) % STABLE_COUNT);
+					int index = cuckoo.lookup(fillKey(readerKey, id));
+					if (index == -1)
+						failures.add("stable key %d not found".formatted(id));
+					else if (!("stable_" + id).equals(cuckoo.get(index).data()))
+						failures.add("stable key %d matched %s".formatted(id, cuckoo.get(index).data()));
+
+					if (cuckoo.lookup(fillKey(readerKey, -1 - id)) != -1)
+						failures.add("absent key %d found".formatted(-1 - id));
+				}
+
+				lookups.addAndGet(count);
+			}));
+		}
+
+		long deadline = System.currentTimeMillis() + DURATION_MILLIS;
+		int churn = STABLE_COUNT;
+		while (System.currentTimeMillis() < deadline && failures.isEmpty()) {
+			cuckoo.add(fillKey(writerKey, churn), "churn_" + churn);
+
+			if (churn - CHURN_WINDOW >= STABLE_COUNT)
+				cuckoo.remove(fillKey(writerKey, churn - CHURN_WINDOW));
+
+			churn++;
+		}
+
+		done.set(true);
+		for (Thread reader : readers)
+			reader.join();
+
+		Tests.out.printf("lookups=%d churned=%d %s%n", lookups.get(), churn - STABLE_COUNT, cuckoo.stats());
+
+		assertEquals(List.of(), failures);
+		assertTrue(cuckoo.stats().kickCount() > 0);
+	}
+
+	/**
+	 * Shared scratch space and eviction state would be raced on by readers, so
+	 * the table refuses to use them in concurrent readers mode.
+	 */
+	@Test
+	void test_concurrentReadersRejectSharedState() {
+		var cuckoo = new CuckooHashTable<String>(1024, 4).enableConcurrentReaders(true);
+		ByteBuffer[] keys = { key.putInt(0, 1) };
+		int[] indexes = new int[1];
+
+		cuckoo.add(key, "entry");
+		assertThrows(IllegalStateException.class, () -> cuckoo.lookupBulk(keys, null, indexes, 1));
+		assertEquals(1, cuckoo.lookupBulk(keys, new long[] { HashAlgorithms.xxHash64().calculateHashcode(key) }, indexes, 1));
+
+		assertThrows(IllegalStateException.class, () -> cuckoo.setEvictionPolicy(EvictionPolicy.SAMPLED_LRU));
+
+		var evicting = new CuckooHashTable<String>(1024, 4);
+		evicting.setEvictionPolicy(EvictionPolicy.CLOCK);
+		assertThrows(IllegalStateException.class, () -> evicting.enableConcurrentReaders(true));
+	}
+
+	@Test
+	void test_longKeysSpillToOverflowSlab() {
+		final int LONG_KEY_SIZE = 200;
+		ByteBuffer longKey = ByteBuffer.allocate(LONG_KEY_SIZE);
+
+		assertThrows(IllegalArgumentException.class, () -> table.add(longKey, "no overflow"));
+
+		table = new CuckooHashTable<String>(1024, 4)
+				.enableKeyOverflow(100 * 256); // Room for 100 long keys
+
+		/* Long keys share their inline prefix, differing only in the overflow block */
+		for (int i = 0; i < 100; i++) {
+			longKey.putInt(LONG_KEY_SIZE - 4, i);
+			assertNotEquals(-1, table.add(longKey, "long_" + i));
+
+			key.putInt(0, i);
+			assertNotEquals(-1, table.add(key, "short_" + i));
+		}
+
+		assertEquals(100 * 256, table.keyOverflowUsed());
+
+		longKey.putInt(LONG_KEY_SIZE - 4, 100);
+		assertEquals(-1, table.add(longKey, "slab full"));
+		assertEquals(1, table.stats().failedInsertCount());
+
+		for (int i = 0; i < 100; i++) {
+			longKey.putInt(LONG_KEY_SIZE - 4, i);
+			int index = table.lookup(longKey);
+
+			assertNotEquals(-1, index);
+			assertEquals("long_" + i, table.get(index).data());
+			assertEquals(longKey, table.get(index).key());
+
+			key.putInt(0, i);
+			assertEquals("short_" + i, table.get(table.lookup(key)).data());
+		}
+
+		/* A removed entry's block is freed for the next long key */
+		longKey.putInt(LONG_KEY_SIZE - 4, 7);
+		assertTrue(table.remove(longKey));
+		longKey.putInt(LONG_KEY_SIZE - 4, 100);
+
+		int added = table.add(longKey, "reused");
+		assertNotEquals(-1, added);
+		assertEquals(added, table.lookup(longKey));
+		assertEquals(100 * 256, table.keyOverflowUsed());
+
+		longKey.putInt(LONG_KEY_SIZE - 4, 7);
+		assertEquals(-1, table.lookup(longKey));
+	}
+
+	@Test
+	void test_occupiedTraversal() {
+		table = new CuckooHashTable<>(1 << 16, 4);
+
+		for (int i = 0; i < 40_000; i++)
+			table.add(key.putInt(0, i), "entry_" + i);
+
+		for (int i = 0; i < 40_000; i += 3)
+			table.remove(key.putInt(0, i));
+
+		long used = table.getUsedEntriesCount();
+		List<Integer> indexes = new ArrayList<>();
+		table.forEachOccupied(indexes::add);
+
+		assertEquals(used, indexes.size());
+		assertTrue(indexes.stream().noneMatch(i -> table.get(i).isEmpty()));
+		for (int i = 1; i < indexes.size(); i++)
+			assertTrue(indexes.get(i - 1) < indexes.get(i));
+
+		var spliterator = table.spliteratorOccupied();
+		assertTrue(spliterator.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED));
+		assertEquals(used, spliterator.getExactSizeIfKnown());
+
+		var prefix = spliterator.trySplit();
+		assertNotNull(prefix);
+		assertEquals(used, prefix.estimateSize() + spliterator.estimateSize());
+
+		long[] counted = new long[2];
+		prefix.forEachRemaining(e -> counted[0]++);
+		while (spliterator.tryAdvance(e -> counted[1]++));
+		assertEquals(used, counted[0] + counted[1]);
+
+		assertEquals(indexes, table.streamOccupied()
+				.parallel()
+				.map(e -> e.index())
+				.toList());
+		assertEquals(used, table.streamOccupied().parallel().filter(e -> e.data() != null).count());
+	}
+
+	/** Fills every word of the key with its id, so a torn key can not match. */
+	private static ByteBuffer fillKey(ByteBuffer key, int id) {
+		for (int i = 0; i < key.capacity(); i += Integer.BYTES)
+			key.putInt(i, id);
+
+		return key.clear();
+	}
 }